@@ -19,14 +19,19 @@ import static java.util.Objects.isNull;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.microsoft.azure.storage.blob.BlockBlobURL;
 import com.microsoft.azure.storage.blob.DownloadResponse;
+import com.microsoft.azure.storage.blob.Metadata;
 import com.microsoft.azure.storage.blob.models.BlobGetPropertiesResponse;
 import com.microsoft.azure.storage.blob.models.BlobHTTPHeaders;
 import com.microsoft.azure.storage.blob.models.BlobItem;
 import com.microsoft.rest.v2.RestException;
 import com.microsoft.rest.v2.util.FlowableUtil;
 import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -36,9 +41,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.filter.parameters.ParametersUtils;
@@ -52,6 +62,8 @@ import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.BlobStoreListenerList;
 import org.geowebcache.storage.CompositeBlobStore;
+import org.geowebcache.storage.ContentHash;
+import org.geowebcache.storage.ParametersMetadataCache;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
@@ -62,17 +74,50 @@ public class AzureBlobStore implements BlobStore {
 
     static Log log = LogFactory.getLog(AzureBlobStore.class);
 
+    /** Blob metadata holding the tile content hash, see {@link ContentHash} */
+    static final String CONTENT_HASH_METADATA = "gwccontenthash";
+
+    /** Size of the chunks tiles not held in memory are uploaded in */
+    private static final int UPLOAD_CHUNK_SIZE = 64 * 1024;
+
     private final TMSKeyBuilder keyBuilder;
     private final BlobStoreListenerList listeners = new BlobStoreListenerList();
     private final AzureClient client;
     private DeleteManager deleteManager;
+    private final ParametersMetadataCache parametersMetadata =
+            new ParametersMetadataCache(this::listParametersIds);
+
+    /** Bounds the tile reads and writes in flight to the configured amount of connections */
+    private final Semaphore inFlight;
+
+    /**
+     * Runs the blocking parts of the asynchronous uploads, reading the tiles not held in memory and
+     * notifying the listeners, off the Azure SDK I/O threads
+     */
+    private final ExecutorService uploadExecutor;
+
+    private final Scheduler uploadScheduler;
 
     private volatile boolean shutDown = false;
 
+    private ContentHash contentHashing = ContentHash.fromProperties();
+
     public AzureBlobStore(
             AzureBlobStoreData configuration, TileLayerDispatcher layers, LockProvider lockProvider)
             throws StorageException {
         this.client = new AzureClient(configuration);
+        this.inFlight = new Semaphore(configuration.getMaxConnections());
+        // at most one blocking step per request in flight
+        this.uploadExecutor =
+                Executors.newFixedThreadPool(
+                        configuration.getMaxConnections(),
+                        new ThreadFactoryBuilder()
+                                .setDaemon(true)
+                                .setNameFormat(
+                                        "GWC AzureBlobStore upload thread-%d. Container: "
+                                                + configuration.getContainer())
+                                .build());
+        this.uploadScheduler = Schedulers.from(uploadExecutor);
 
         String prefix = Optional.ofNullable(configuration.getPrefix()).orElse("");
         this.keyBuilder = new TMSKeyBuilder(prefix, layers);
@@ -99,6 +144,7 @@ public class AzureBlobStore implements BlobStore {
 
         final String metadataKey = keyBuilder.layerMetadata(layerName);
         final String layerPrefix = keyBuilder.forLayer(layerName);
+        parametersMetadata.invalidate(layerName);
 
         // this might not be there, tolerant delete
         try {
@@ -111,7 +157,10 @@ public class AzureBlobStore implements BlobStore {
             return false;
         }
 
-        boolean layerExists = deleteManager.scheduleAsyncDelete(layerPrefix);
+        // the parameters metadata blobs may be listed again while being deleted
+        boolean layerExists =
+                deleteManager.scheduleAsyncDelete(
+                        layerPrefix, () -> parametersMetadata.invalidate(layerName));
         if (layerExists) {
             listeners.sendLayerDeleted(layerName);
         }
@@ -124,6 +173,7 @@ public class AzureBlobStore implements BlobStore {
         checkNotNull(layerName, "layerName");
         checkNotNull(parametersId, "parametersId");
 
+        parametersMetadata.invalidate(layerName, parametersId);
         boolean prefixExists =
                 keyBuilder
                         .forParameters(layerName, parametersId)
@@ -277,96 +327,202 @@ public class AzureBlobStore implements BlobStore {
 
     @Override
     public boolean get(TileObject obj) throws StorageException {
+        return AzureClient.join(getAsync(obj));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> getAsync(TileObject obj) {
         final String key = keyBuilder.forTile(obj);
         final BlockBlobURL blob = client.getBlockBlobURL(key);
-        try {
-            DownloadResponse response = blob.download().blockingGet();
-            ByteBuffer buffer =
-                    FlowableUtil.collectBytesInBuffer(response.body(null)).blockingGet();
-            byte[] bytes = new byte[buffer.remaining()];
-            buffer.get(bytes);
-
-            obj.setBlobSize(bytes.length);
-            obj.setBlob(new ByteArrayResource(bytes));
-            obj.setCreated(response.headers().lastModified().toEpochSecond() * 1000l);
-        } catch (RestException e) {
-            if (e.response().statusCode() == 404) {
-                return false;
-            }
-            throw new StorageException("Error getting " + key, e);
-        }
+        Single<Boolean> download =
+                blob.download()
+                        .flatMap(
+                                response ->
+                                        FlowableUtil.collectBytesInBuffer(response.body(null))
+                                                .map(buffer -> read(obj, response, buffer)))
+                        .onErrorResumeNext(
+                                (Throwable e) ->
+                                        AzureClient.isNotFound(e)
+                                                ? Single.just(false)
+                                                : Single.error(
+                                                        new StorageException(
+                                                                "Error getting " + key, e)));
+        return inFlight(download);
+    }
+
+    private static boolean read(TileObject obj, DownloadResponse response, ByteBuffer buffer) {
+        byte[] bytes = AzureClient.toByteArray(buffer);
+        obj.setBlobSize(bytes.length);
+        obj.setBlob(new ByteArrayResource(bytes));
+        obj.setCreated(response.headers().lastModified().toEpochSecond() * 1000l);
+        Map<String, String> metadata = response.headers().metadata();
+        obj.setContentHash(metadata == null ? null : metadata.get(CONTENT_HASH_METADATA));
         return true;
     }
 
     @Override
     public void put(TileObject obj) throws StorageException {
+        AzureClient.join(putAsync(obj));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(TileObject obj) {
         final Resource blob = obj.getBlob();
         checkNotNull(blob);
         checkNotNull(obj.getBlobFormat());
 
         final String key = keyBuilder.forTile(obj);
+        final BlockBlobURL blobURL = client.getBlockBlobURL(key);
 
-        BlockBlobURL blobURL = client.getBlockBlobURL(key);
-
-        // if there are listeners, gather first the old size with a "head" request
-        Long oldSize = null;
-        boolean existed = false;
-        if (!listeners.isEmpty()) {
-            try {
-                BlobGetPropertiesResponse properties = blobURL.getProperties().blockingGet();
-                oldSize = properties.headers().contentLength();
-                existed = true;
-            } catch (RestException e) {
-                if (e.response().statusCode() != HttpStatus.NOT_FOUND.value()) {
-                    throw new StorageException("Failed to check if the container exists", e);
-                }
+        final BlobHTTPHeaders headers;
+        final Metadata metadata;
+        try {
+            String mimeType = MimeType.createFromFormat(obj.getBlobFormat()).getMimeType();
+            headers = new BlobHTTPHeaders().withBlobContentType(mimeType);
+            String contentHash = contentHashing.record(obj, blob);
+            if (contentHash != null) {
+                metadata = new Metadata();
+                metadata.put(CONTENT_HASH_METADATA, contentHash);
+            } else {
+                metadata = null;
             }
+            // along with the metadata, written once per parameters id so it's fine to block here
+            putParametersMetadata(obj.getLayerName(), obj.getParametersId(), obj.getParameters());
+        } catch (IOException | MimeException | RuntimeException e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new StorageException(uploadError(key), e));
+            return future;
         }
 
-        // then upload
-        try (InputStream is = blob.getInputStream()) {
-            byte[] bytes = IOUtils.toByteArray(is);
-            ByteBuffer buffer = ByteBuffer.wrap(bytes);
-            String mimeType = MimeType.createFromFormat(obj.getBlobFormat()).getMimeType();
-            BlobHTTPHeaders headers = new BlobHTTPHeaders().withBlobContentType(mimeType);
-            int status =
-                    blobURL.upload(Flowable.just(buffer), bytes.length, headers, null, null, null)
-                            .blockingGet()
-                            .statusCode();
-            if (!HttpStatus.valueOf(status).is2xxSuccessful()) {
-                throw new StorageException(
-                        "Failed to upload tile to Azure on container "
-                                + client.getContainerName()
-                                + " and key "
-                                + key
-                                + " got HTTP  status "
-                                + status);
-            }
-        } catch (RestException | IOException | MimeException e) {
-            throw new StorageException(
-                    "Failed to upload tile to Azure on container "
-                            + client.getContainerName()
-                            + " and key "
-                            + key,
-                    e);
+        // if there are listeners, gather first the old size with a "head" request
+        Single<Optional<BlobGetPropertiesResponse>> existing;
+        if (listeners.isEmpty()) {
+            existing = Single.just(Optional.empty());
+        } else {
+            existing =
+                    blobURL.getProperties()
+                            .map(Optional::of)
+                            .onErrorResumeNext(
+                                    (Throwable e) ->
+                                            AzureClient.isNotFound(e)
+                                                    ? Single.just(Optional.empty())
+                                                    : Single.error(
+                                                            new StorageException(
+                                                                    "Failed to check if the container exists",
+                                                                    e)));
         }
-        // along with the metadata
-        putParametersMetadata(obj.getLayerName(), obj.getParametersId(), obj.getParameters());
 
+        // then upload, streaming the resource contents
+        Single<Boolean> upload =
+                existing.flatMap(
+                                properties ->
+                                        blobURL.upload(
+                                                        body(blob),
+                                                        blob.getSize(),
+                                                        headers,
+                                                        metadata,
+                                                        null,
+                                                        null)
+                                                .observeOn(uploadScheduler)
+                                                .map(
+                                                        response ->
+                                                                stored(
+                                                                        obj,
+                                                                        key,
+                                                                        response.statusCode(),
+                                                                        properties)))
+                        .onErrorResumeNext(
+                                (Throwable e) ->
+                                        Single.error(
+                                                e instanceof StorageException
+                                                        ? e
+                                                        : new StorageException(
+                                                                uploadError(key), e)));
+        return inFlight(upload).thenApply(stored -> null);
+    }
+
+    private boolean stored(
+            TileObject obj, String key, int status, Optional<BlobGetPropertiesResponse> properties)
+            throws StorageException {
+        if (!HttpStatus.valueOf(status).is2xxSuccessful()) {
+            throw new StorageException(uploadError(key) + " got HTTP  status " + status);
+        }
         // This is important because listeners may be tracking tile existence
         if (!listeners.isEmpty()) {
-            if (existed) {
-                listeners.sendTileUpdated(obj, oldSize);
+            if (properties.isPresent()) {
+                listeners.sendTileUpdated(obj, properties.get().headers().contentLength());
             } else {
                 listeners.sendTileStored(obj);
             }
         }
+        return true;
+    }
+
+    private String uploadError(String key) {
+        return "Failed to upload tile to Azure on container "
+                + client.getContainerName()
+                + " and key "
+                + key;
+    }
+
+    /**
+     * The upload body, read again from the resource on retries. Tiles held in memory are sent as
+     * they are, the other resources are streamed in chunks rather than copied in a byte array.
+     */
+    private Flowable<ByteBuffer> body(Resource blob) {
+        if (blob instanceof ByteArrayResource) {
+            return Flowable.fromCallable(
+                    () -> ByteBuffer.wrap(((ByteArrayResource) blob).getContents()));
+        }
+        return Flowable.using(
+                        blob::getInputStream,
+                        in ->
+                                Flowable.<ByteBuffer>generate(
+                                        emitter -> {
+                                            byte[] chunk = new byte[UPLOAD_CHUNK_SIZE];
+                                            int read = in.read(chunk);
+                                            if (read == -1) {
+                                                emitter.onComplete();
+                                            } else {
+                                                emitter.onNext(ByteBuffer.wrap(chunk, 0, read));
+                                            }
+                                        }),
+                        InputStream::close)
+                // the reads block, keep them off the I/O threads requesting the chunks
+                .subscribeOn(uploadScheduler);
+    }
+
+    /**
+     * Subscribes to the request once there's a free slot among the requests in flight, blocking the
+     * caller otherwise, so that asynchronous callers cannot queue up an unbounded amount of
+     * requests
+     */
+    private <T> CompletableFuture<T> inFlight(Single<T> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(
+                    new StorageException("Interrupted while waiting for an Azure connection", e));
+            return future;
+        }
+        request.subscribe(
+                value -> {
+                    inFlight.release();
+                    future.complete(value);
+                },
+                e -> {
+                    inFlight.release();
+                    future.completeExceptionally(e);
+                });
+        return future;
     }
 
     private void putParametersMetadata(
             String layerName, String parametersId, Map<String, String> parameters) {
         assert (isNull(parametersId) == isNull(parameters));
-        if (isNull(parametersId)) {
+        if (isNull(parametersId) || parametersMetadata.isStored(layerName, parametersId)) {
             return;
         }
         Properties properties = new Properties();
@@ -377,6 +533,19 @@ public class AzureBlobStore implements BlobStore {
         } catch (StorageException e) {
             throw new RuntimeException(e);
         }
+        parametersMetadata.stored(layerName, parametersId);
+    }
+
+    /** @return the ids of the parameters metadata blobs stored for the layer */
+    private Set<String> listParametersIds(String layerName) {
+        final String prefix = keyBuilder.parametersMetadataPrefix(layerName);
+        final String suffix = TMSKeyBuilder.PARAMETERS_METADATA_OBJECT_SUFFIX;
+        return client.listBlobs(prefix, Integer.MAX_VALUE)
+                .stream()
+                .map(BlobItem::name)
+                .filter(name -> name.endsWith(suffix))
+                .map(name -> name.substring(prefix.length(), name.length() - suffix.length()))
+                .collect(Collectors.toSet());
     }
 
     @Override
@@ -395,6 +564,7 @@ public class AzureBlobStore implements BlobStore {
         if (deleteManager != null) {
             deleteManager.close();
         }
+        uploadExecutor.shutdownNow();
     }
 
     @Override
@@ -407,9 +577,18 @@ public class AzureBlobStore implements BlobStore {
         return listeners.removeListener(listener);
     }
 
+    /**
+     * Overrides the content hashing configured by the {@link ContentHash#GEOWEBCACHE_CONTENT_ETAGS}
+     * property
+     */
+    public void setContentHashing(ContentHash contentHashing) {
+        this.contentHashing = contentHashing;
+    }
+
     @Override
     public boolean rename(String oldLayerName, String newLayerName) throws StorageException {
         log.debug("No need to rename layers, AzureBlobStore uses layer id as key root");
+        parametersMetadata.invalidate(oldLayerName);
         if (client.listBlobs(oldLayerName, 1).size() > 0) {
             listeners.sendLayerRenamed(oldLayerName, newLayerName);
         }
@@ -16,7 +16,6 @@ package org.geowebcache.azure;
 
 import com.microsoft.azure.storage.blob.BlockBlobURL;
 import com.microsoft.azure.storage.blob.ContainerURL;
-import com.microsoft.azure.storage.blob.DownloadResponse;
 import com.microsoft.azure.storage.blob.ListBlobsOptions;
 import com.microsoft.azure.storage.blob.PipelineOptions;
 import com.microsoft.azure.storage.blob.ServiceURL;
@@ -46,6 +45,8 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 import org.geowebcache.storage.StorageException;
 import org.springframework.http.HttpStatus;
@@ -137,19 +138,64 @@ class AzureClient implements Closeable {
 
     @Nullable
     public byte[] getBytes(String key) throws StorageException {
+        return join(getBytesAsync(key));
+    }
+
+    /**
+     * Downloads the blob without blocking the calling thread
+     *
+     * @return a future completing with the blob contents, {@code null} if it does not exist, or
+     *     exceptionally with a {@link StorageException}
+     */
+    public CompletableFuture<byte[]> getBytesAsync(String key) {
         BlockBlobURL blob = getBlockBlobURL(key);
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        blob.download()
+                .flatMap(response -> FlowableUtil.collectBytesInBuffer(response.body(null)))
+                .subscribe(
+                        buffer -> future.complete(toByteArray(buffer)),
+                        e -> {
+                            if (isNotFound(e)) {
+                                future.complete(null);
+                            } else {
+                                future.completeExceptionally(
+                                        new StorageException(
+                                                "Failed to retreive bytes for " + key, e));
+                            }
+                        });
+        return future;
+    }
+
+    static boolean isNotFound(Throwable e) {
+        return e instanceof RestException
+                && ((RestException) e).response().statusCode() == HttpStatus.NOT_FOUND.value();
+    }
+
+    static byte[] toByteArray(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+     * Waits for an asynchronous Azure operation, rethrowing its {@link StorageException} if it
+     * failed
+     */
+    static <T> T join(CompletableFuture<T> future) throws StorageException {
         try {
-            DownloadResponse response = blob.download().blockingGet();
-            ByteBuffer buffer =
-                    FlowableUtil.collectBytesInBuffer(response.body(null)).blockingGet();
-            byte[] result = new byte[buffer.remaining()];
-            buffer.get(result);
-            return result;
-        } catch (RestException e) {
-            if (e.response().statusCode() == 404) {
-                return null;
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for Azure", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof StorageException) {
+                throw (StorageException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-            throw new StorageException("Failed to retreive bytes for " + key, e);
+            throw new StorageException("Azure operation failed", cause);
         }
     }
 
@@ -38,6 +38,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.locks.LockProvider;
 import org.geowebcache.locks.LockProvider.Lock;
@@ -133,6 +134,15 @@ class DeleteManager implements Closeable {
     }
 
     public boolean scheduleAsyncDelete(final String prefix) throws StorageException {
+        return scheduleAsyncDelete(prefix, null);
+    }
+
+    /**
+     * @param onCompletion run once the blobs have been deleted, or the delete failed or was
+     *     aborted, not run if there is nothing to delete
+     */
+    public boolean scheduleAsyncDelete(final String prefix, @Nullable Runnable onCompletion)
+            throws StorageException {
         final long timestamp = currentTimeSeconds();
         String msg =
                 String.format(
@@ -143,7 +153,7 @@ class DeleteManager implements Closeable {
         try {
             Lock lock = locks.getLock(prefix);
             try {
-                boolean taskRuns = asyncDelete(prefix, timestamp);
+                boolean taskRuns = asyncDelete(prefix, timestamp, onCompletion);
                 if (taskRuns) {
                     final String pendingDeletesKey = keyBuilder.pendingDeletes();
                     Properties deletes = client.getProperties(pendingDeletesKey);
@@ -189,6 +199,11 @@ class DeleteManager implements Closeable {
     }
 
     public synchronized boolean asyncDelete(String prefix, long timestamp) {
+        return asyncDelete(prefix, timestamp, null);
+    }
+
+    private synchronized boolean asyncDelete(
+            String prefix, long timestamp, @Nullable Runnable onCompletion) {
         // do we have anything to delete?
         if (client.listBlobs(prefix, 1).size() == 0) {
             return false;
@@ -200,7 +215,7 @@ class DeleteManager implements Closeable {
             return false;
         }
 
-        PrefixTimeBulkDelete task = new PrefixTimeBulkDelete(prefix, timestamp);
+        PrefixTimeBulkDelete task = new PrefixTimeBulkDelete(prefix, timestamp, onCompletion);
         deleteExecutor.submit(task);
         pendingDeletesKeyTime.put(prefix, timestamp);
 
@@ -247,14 +262,31 @@ class DeleteManager implements Closeable {
     public class PrefixTimeBulkDelete implements Callable<Long> {
         private final String prefix;
         private final long timestamp;
+        @Nullable private final Runnable onCompletion;
 
         public PrefixTimeBulkDelete(String prefix, long timestamp) {
+            this(prefix, timestamp, null);
+        }
+
+        public PrefixTimeBulkDelete(
+                String prefix, long timestamp, @Nullable Runnable onCompletion) {
             this.prefix = prefix;
             this.timestamp = timestamp;
+            this.onCompletion = onCompletion;
         }
 
         @Override
         public Long call() throws Exception {
+            try {
+                return delete();
+            } finally {
+                if (onCompletion != null) {
+                    onCompletion.run();
+                }
+            }
+        }
+
+        private Long delete() throws Exception {
             long count = 0L;
             try {
                 checkInterrupted();
@@ -33,10 +33,13 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.config.DefaultGridsets;
@@ -54,6 +57,7 @@ import org.geowebcache.locks.NoOpLockProvider;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.storage.BlobStoreListener;
+import org.geowebcache.storage.ContentHash;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
@@ -120,6 +124,41 @@ public abstract class AbstractAzureBlobStoreIntegrationTest {
         assertEquals(bytes.length, resource.getSize());
     }
 
+    @Test
+    public void testPutGetAsync() throws Exception {
+        byte[] bytes = new byte[1024];
+        Arrays.fill(bytes, (byte) 0xaf);
+        List<CompletableFuture<Void>> puts = new ArrayList<>();
+        for (int x = 0; x < 16; x++) {
+            TileObject tile = queryTile(x, 30, 12);
+            tile.setBlob(new ByteArrayResource(bytes));
+            puts.add(blobStore.putAsync(tile));
+        }
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture[0])).get();
+
+        for (int x = 0; x < 16; x++) {
+            TileObject queryTile = queryTile(x, 30, 12);
+            assertTrue(blobStore.getAsync(queryTile).get());
+            assertEquals(bytes.length, queryTile.getBlob().getSize());
+        }
+        assertFalse(blobStore.getAsync(queryTile(16, 30, 12)).get());
+    }
+
+    @Test
+    public void testPutGetContentHash() throws MimeException, StorageException {
+        byte[] bytes = new byte[1024];
+        Arrays.fill(bytes, (byte) 0xaf);
+        blobStore.setContentHashing(new ContentHash(true));
+        TileObject tile = queryTile(20, 30, 12);
+        tile.setBlob(new ByteArrayResource(bytes));
+        blobStore.put(tile);
+        assertEquals(ContentHash.of(bytes), tile.getContentHash());
+
+        TileObject queryTile = queryTile(20, 30, 12);
+        assertTrue(blobStore.get(queryTile));
+        assertEquals(ContentHash.of(bytes), queryTile.getContentHash());
+    }
+
     @Test
     public void testPutGetBlobIsNotByteArrayResource() throws MimeException, IOException {
         File tileFile = File.createTempFile("tile", ".png");
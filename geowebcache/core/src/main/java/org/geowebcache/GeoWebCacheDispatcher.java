@@ -56,6 +56,7 @@ import org.geowebcache.storage.*;
 import org.geowebcache.storage.blobstore.memory.CacheStatistics;
 import org.geowebcache.storage.blobstore.memory.MemoryBlobStore;
 import org.geowebcache.util.ResponseUtils;
+import org.geowebcache.util.SendFileSupport;
 import org.geowebcache.util.ServletUtils;
 import org.springframework.http.MediaType;
 import org.springframework.web.servlet.ModelAndView;
@@ -96,6 +97,10 @@ public class GeoWebCacheDispatcher extends AbstractController {
 
     private SecurityDispatcher securityDispatcher;
 
+    private SendFileSupport sendFileSupport = SendFileSupport.fromProperties();
+
+    private ContentHash contentHashing = ContentHash.fromProperties();
+
     /**
      * Should be invoked through Spring
      *
@@ -419,13 +424,24 @@ public class GeoWebCacheDispatcher extends AbstractController {
             // A3 The service object takes it from here
             service.handleRequest(conv);
         } else {
+            final long start = System.nanoTime();
             ResponseUtils.writeTile(
                     getSecurityDispatcher(),
                     conv,
                     layerName,
                     tileLayerDispatcher,
                     defaultStorageFinder,
-                    runtimeStats);
+                    runtimeStats,
+                    sendFileSupport,
+                    contentHashing);
+            if (runtimeStats != null) {
+                runtimeStats.logLatency(
+                        layerName,
+                        service.getPathName(),
+                        conv.getCacheResult(),
+                        System.nanoTime() - start,
+                        conv.getBackendTime());
+            }
         }
     }
 
@@ -733,4 +749,24 @@ public class GeoWebCacheDispatcher extends AbstractController {
     public void setSecurityDispatcher(SecurityDispatcher secDispatcher) {
         this.securityDispatcher = secDispatcher;
     }
+
+    /**
+     * Set how tiles stored as files are handed over to the servlet container, by default as
+     * configured by the {@link SendFileSupport#GEOWEBCACHE_SENDFILE} properties.
+     *
+     * @param sendFileSupport
+     */
+    public void setSendFileSupport(SendFileSupport sendFileSupport) {
+        this.sendFileSupport = sendFileSupport;
+    }
+
+    /**
+     * Set whether the hash of the tile contents is served as ETag, by default as configured by the
+     * {@link ContentHash#GEOWEBCACHE_CONTENT_ETAGS} property.
+     *
+     * @param contentHashing
+     */
+    public void setContentHashing(ContentHash contentHashing) {
+        this.contentHashing = contentHashing;
+    }
 }
@@ -22,6 +22,7 @@ import org.geowebcache.locks.LockProvider;
 import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.BlobStoreAggregator;
 import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.blobstore.tiered.TieredBlobStore;
 
 /**
  * Base class for configuration and factory of concrete {@link BlobStore} implementations.
@@ -51,6 +52,8 @@ public abstract class BlobStoreInfo implements Serializable, Cloneable, Info {
 
     private boolean _default;
 
+    private LocalTierInfo localTier;
+
     protected BlobStoreInfo() {
         //
     }
@@ -129,6 +132,24 @@ public abstract class BlobStoreInfo implements Serializable, Cloneable, Info {
         this._default = def;
     }
 
+    /**
+     * @return the local disk tier to put in front of the blob store, usually a remote one, or
+     *     {@code null} if none
+     * @see TieredBlobStore
+     */
+    public LocalTierInfo getLocalTier() {
+        return localTier;
+    }
+
+    /**
+     * Sets the local disk tier to put in front of the blob store, {@code null} for none.
+     *
+     * @param localTier The local tier configuration
+     */
+    public void setLocalTier(LocalTierInfo localTier) {
+        this.localTier = localTier;
+    }
+
     @Override
     public abstract String toString();
 
@@ -145,7 +166,11 @@ public abstract class BlobStoreInfo implements Serializable, Cloneable, Info {
     @Override
     public Object clone() {
         try {
-            return super.clone();
+            BlobStoreInfo clone = (BlobStoreInfo) super.clone();
+            if (localTier != null) {
+                clone.localTier = localTier.clone();
+            }
+            return clone;
         } catch (CloneNotSupportedException e) {
             throw new UnsupportedOperationException(e);
         }
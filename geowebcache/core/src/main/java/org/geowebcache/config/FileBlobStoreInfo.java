@@ -21,6 +21,7 @@ import org.geowebcache.locks.LockProvider;
 import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.blobstore.file.BundledFileBlobStore;
 import org.geowebcache.storage.blobstore.file.FileBlobStore;
 
 /**
@@ -37,6 +38,8 @@ public class FileBlobStoreInfo extends BlobStoreInfo {
 
     private int fileSystemBlockSize;
 
+    private Integer tileBundleSize;
+
     public FileBlobStoreInfo() {
         super();
     }
@@ -87,6 +90,25 @@ public class FileBlobStoreInfo extends BlobStoreInfo {
         this.fileSystemBlockSize = fileSystemBlockSize;
     }
 
+    /**
+     * The number of tile columns and rows to pack in a single bundle file, or {@code null} to store
+     * each tile in its own file.
+     *
+     * @return the tile bundle size, or {@code null} if tiles are not bundled
+     * @see BundledFileBlobStore
+     */
+    public Integer getTileBundleSize() {
+        return tileBundleSize;
+    }
+
+    /**
+     * Sets the number of tile columns and rows to pack in a single bundle file. A {@code null} or
+     * zero value means each tile is stored in its own file.
+     */
+    public void setTileBundleSize(Integer tileBundleSize) {
+        this.tileBundleSize = tileBundleSize;
+    }
+
     @Override
     public String toString() {
         return new StringBuilder("FileBlobStore[id:")
@@ -97,6 +119,8 @@ public class FileBlobStoreInfo extends BlobStoreInfo {
                 .append(baseDirectory)
                 .append(", fileSystemBlockSize:")
                 .append(fileSystemBlockSize)
+                .append(", tileBundleSize:")
+                .append(tileBundleSize)
                 .append(']')
                 .toString();
     }
@@ -114,7 +138,16 @@ public class FileBlobStoreInfo extends BlobStoreInfo {
                 fileSystemBlockSize >= 0,
                 "fileSystemBlockSize must be a positive integer: %s",
                 fileSystemBlockSize);
-        FileBlobStore fileBlobStore = new FileBlobStore(baseDirectory);
+        checkState(
+                tileBundleSize == null || tileBundleSize >= 0,
+                "tileBundleSize must be a positive integer: %s",
+                tileBundleSize);
+        FileBlobStore fileBlobStore;
+        if (tileBundleSize != null && tileBundleSize > 0) {
+            fileBlobStore = new BundledFileBlobStore(baseDirectory, tileBundleSize);
+        } else {
+            fileBlobStore = new FileBlobStore(baseDirectory);
+        }
         if (fileSystemBlockSize > 0) {
             fileBlobStore.setBlockSize(fileSystemBlockSize);
         }
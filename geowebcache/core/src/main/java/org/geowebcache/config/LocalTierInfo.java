@@ -0,0 +1,112 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.config;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Serializable;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.blobstore.tiered.TieredBlobStore;
+
+/**
+ * Configuration and factory of the local disk tier a blob store can be fronted with, see {@link
+ * TieredBlobStore}.
+ *
+ * @see BlobStoreInfo#getLocalTier()
+ */
+public class LocalTierInfo implements Serializable, Cloneable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Size of the local tier when not configured, in megabytes */
+    public static final int DEFAULT_MAX_SIZE_MB = 1024;
+
+    private String baseDirectory;
+
+    private Integer maxSizeMB;
+
+    /** @return the directory holding the local tier, emptied on startup */
+    public String getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    /** Sets the directory holding the local tier, emptied on startup */
+    public void setBaseDirectory(String baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    /**
+     * @return the maximum size of the tiles in the local tier, in megabytes, or {@code null} for
+     *     {@link #DEFAULT_MAX_SIZE_MB}
+     */
+    public Integer getMaxSizeMB() {
+        return maxSizeMB;
+    }
+
+    /** Sets the maximum size of the tiles in the local tier, in megabytes */
+    public void setMaxSizeMB(Integer maxSizeMB) {
+        this.maxSizeMB = maxSizeMB;
+    }
+
+    /**
+     * Wraps the blob store with a local tier configured as per this object properties.
+     *
+     * @param remote the blob store to put the local tier in front of
+     * @throws StorageException if the local tier can't be created in the {@link #getBaseDirectory()
+     *     base directory}
+     * @throws IllegalStateException if the base directory is not set or the size is not positive
+     */
+    public TieredBlobStore createInstance(BlobStore remote) throws StorageException {
+        checkState(baseDirectory != null, "local tier baseDirectory not provided");
+        checkState(
+                maxSizeMB == null || maxSizeMB > 0,
+                "maxSizeMB must be a positive integer: %s",
+                maxSizeMB);
+        long maxSize = (maxSizeMB == null ? DEFAULT_MAX_SIZE_MB : maxSizeMB) * 1024L * 1024L;
+        return new TieredBlobStore(remote, baseDirectory, maxSize);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("LocalTier[baseDirectory:")
+                .append(baseDirectory)
+                .append(", maxSizeMB:")
+                .append(maxSizeMB)
+                .append(']')
+                .toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return EqualsBuilder.reflectionEquals(this, o);
+    }
+
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    @Override
+    public LocalTierInfo clone() {
+        try {
+            return (LocalTierInfo) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+}
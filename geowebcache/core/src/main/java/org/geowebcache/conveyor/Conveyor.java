@@ -66,6 +66,9 @@ public abstract class Conveyor {
 
     protected CacheResult cacheResult;
 
+    /** Time spent waiting for the backend, in nanoseconds */
+    protected long backendTime = 0;
+
     protected Conveyor(
             String layerId, StorageBroker sb, HttpServletRequest srq, HttpServletResponse srp) {
         this.layerId = layerId;
@@ -135,6 +138,16 @@ public abstract class Conveyor {
         this.cacheResult = cacheResult;
     }
 
+    /** @return the time spent waiting for the backend, in nanoseconds */
+    public long getBackendTime() {
+        return backendTime;
+    }
+
+    /** @param nanos time spent in a backend request, as measured with {@link System#nanoTime()} */
+    public void addBackendTime(long nanos) {
+        this.backendTime += nanos;
+    }
+
     // public abstract boolean persist() throws GeoWebCacheException;
 
     // public abstract boolean retrieve(int maxAge) throws GeoWebCacheException;
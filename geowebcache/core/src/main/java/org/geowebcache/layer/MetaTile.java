@@ -347,7 +347,8 @@ public class MetaTile implements TileResponseReceiver {
     }
 
     /**
-     * Outputs one tile from the internal array of tiles to a provided resource
+     * Outputs one tile from the internal array of tiles to a provided resource. Different tiles can
+     * be written concurrently from multiple threads.
      *
      * @param tileIdx the index of the tile relative to the internal array
      * @param target the resource
@@ -392,7 +393,7 @@ public class MetaTile implements TileResponseReceiver {
         return true;
     }
 
-    protected void disposeLater(RenderedImage tile) {
+    protected synchronized void disposeLater(RenderedImage tile) {
         if (disposableImages == null) {
             disposableImages = new ArrayList<RenderedImage>(tiles.length);
         }
@@ -0,0 +1,139 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.layer;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.io.Resource;
+
+/**
+ * Coalesces concurrent renders of the same meta tile inside this JVM.
+ *
+ * <p>The first thread missing a meta tile becomes the leader of a "flight" and renders it as usual.
+ * Threads missing the same meta tile while the flight is in progress attach to it, and get their
+ * tile straight from the encoded tiles of the leader, without queueing on the meta tile lock and
+ * without reading the tile back from the storage. This sits in front of whatever {@link
+ * org.geowebcache.locks.LockProvider} is configured, which keeps serializing renders across
+ * processes.
+ */
+public class MetaTileCoalescer {
+
+    private static Log log = LogFactory.getLog(MetaTileCoalescer.class);
+
+    private final ConcurrentMap<String, CompletableFuture<Resource[]>> flights =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Starts a flight for the given key, unless one is already in progress.
+     *
+     * @return a new flight the caller must render and eventually {@link #land}, or {@code null} if
+     *     another thread is already rendering the same meta tile, in which case the caller should
+     *     use {@link #await}
+     */
+    @Nullable
+    public CompletableFuture<Resource[]> takeOff(String key) {
+        CompletableFuture<Resource[]> flight = new CompletableFuture<>();
+        return flights.putIfAbsent(key, flight) == null ? flight : null;
+    }
+
+    /**
+     * Completes a flight started with {@link #takeOff}, handing the encoded tiles over to the
+     * threads waiting on it.
+     *
+     * @param tiles the encoded tiles, in the same order as {@link
+     *     MetaTile#getTilesGridPositions()}, or {@code null} if the leader did not render the meta
+     *     tile, in which case followers fall back to the regular code path
+     */
+    public void land(String key, CompletableFuture<Resource[]> flight, @Nullable Resource[] tiles) {
+        flights.remove(key, flight);
+        flight.complete(tiles);
+    }
+
+    /**
+     * Aborts a flight started with {@link #takeOff}, followers will fall back to the regular code
+     * path
+     */
+    public void abort(String key, CompletableFuture<Resource[]> flight, Throwable cause) {
+        flights.remove(key, flight);
+        flight.completeExceptionally(cause);
+    }
+
+    /**
+     * Waits for the flight in progress for the given key, if any, and returns the requested tile
+     * out of it
+     *
+     * @param key the meta tile key
+     * @param gridPositions the grid positions of the meta tile tiles
+     * @param tileIndex the requested tile
+     * @param timeout how long to wait for the flight to land
+     * @param unit the unit of the timeout
+     * @return the encoded tile, or {@code null} if there is no flight in progress, the flight did
+     *     not produce the tile, failed, or did not land in time
+     */
+    @Nullable
+    public Resource await(
+            String key, long[][] gridPositions, long[] tileIndex, long timeout, TimeUnit unit) {
+        CompletableFuture<Resource[]> flight = flights.get(key);
+        if (flight == null) {
+            return null;
+        }
+        Resource[] tiles;
+        try {
+            tiles = flight.get(timeout, unit);
+        } catch (TimeoutException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Render of "
+                                + key
+                                + " still in progress after "
+                                + timeout
+                                + " "
+                                + unit
+                                + ", falling back");
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Render of " + key + " failed, falling back", e.getCause());
+            }
+            return null;
+        }
+        if (tiles == null) {
+            return null;
+        }
+        for (int i = 0; i < gridPositions.length && i < tiles.length; i++) {
+            if (Arrays.equals(tileIndex, gridPositions[i])) {
+                return tiles[i];
+            }
+        }
+        return null;
+    }
+
+    /** @return the number of meta tiles being rendered */
+    public int getInFlightCount() {
+        return flights.size();
+    }
+}
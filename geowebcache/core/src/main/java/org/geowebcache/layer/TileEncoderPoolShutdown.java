@@ -0,0 +1,34 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.layer;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Owns the lifecycle of the pool encoding and storing the meta tile sub-tiles, shutting it down
+ * with the application context. Register it once, in the core application context.
+ */
+public class TileEncoderPoolShutdown implements DisposableBean {
+
+    /**
+     * Lets the queued encodings and stores complete, and stops the pool threads
+     *
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    @Override
+    public void destroy() throws Exception {
+        TileLayer.TileEncoderPool.shutdown();
+    }
+}
@@ -14,6 +14,7 @@
  */
 package org.geowebcache.layer;
 
+import com.google.common.base.Throwables;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -23,11 +24,21 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.GeoWebCacheExtensions;
 import org.geowebcache.config.Info;
 import org.geowebcache.conveyor.ConveyorTile;
 import org.geowebcache.filter.parameters.ParameterFilter;
@@ -48,10 +59,13 @@ import org.geowebcache.layer.meta.MetadataURL;
 import org.geowebcache.layer.updatesource.UpdateSourceDefinition;
 import org.geowebcache.mime.FormatModifier;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.util.GWCVars;
 import org.geowebcache.util.ServletUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * "Pure virtual" base class for Layers.
@@ -69,6 +83,10 @@ public abstract class TileLayer implements Info {
     protected static final ThreadLocal<ByteArrayResource> WMS_BUFFER2 =
             new ThreadLocal<ByteArrayResource>();
 
+    /** Encoding buffer of the {@link TileEncoderPool} threads, see {@link #encodeTile} */
+    private static final ThreadLocal<ByteArrayResource> ENCODER_BUFFER =
+            new ThreadLocal<ByteArrayResource>();
+
     // cached default parameter filter values
     protected transient Map<String, String> defaultParameterFilterValues;
 
@@ -577,7 +595,14 @@ public abstract class TileLayer implements Info {
     }
 
     /**
-     * Loops over the gridPositions, generates cache keys and saves to cache
+     * Loops over the gridPositions, generates cache keys and saves to cache.
+     *
+     * <p>The tiles are encoded in parallel on a shared, bounded encoder pool, and each one is
+     * stored as soon as it has been encoded. The requested tile is attached to {@code tileProto} as
+     * soon as its encoding is done. This method returns once all tiles have been encoded (the meta
+     * tile image can then be safely disposed) and either all of them are stored, or the storage
+     * grace period has elapsed, whatever comes first. Tiles still being stored after the grace
+     * period complete in the background.
      *
      * @param metaTile
      * @param tileProto
@@ -585,6 +610,19 @@ public abstract class TileLayer implements Info {
      */
     protected void saveTiles(MetaTile metaTile, ConveyorTile tileProto, long requestTime)
             throws GeoWebCacheException {
+        encodeAndSaveTiles(metaTile, tileProto, requestTime);
+    }
+
+    /**
+     * Same as {@link #saveTiles(MetaTile, ConveyorTile, long)}, but returns the encoded tiles.
+     *
+     * @return the encoded tiles, in the same order as {@link MetaTile#getTilesGridPositions()},
+     *     with {@code null} entries for the tiles that have not been encoded (outside of the
+     *     coverage, failed, or not cached)
+     */
+    protected Resource[] encodeAndSaveTiles(
+            MetaTile metaTile, ConveyorTile tileProto, long requestTime)
+            throws GeoWebCacheException {
 
         final long[][] gridPositions = metaTile.getTilesGridPositions();
         final long[] gridLoc = tileProto.getTileIndex();
@@ -593,60 +631,312 @@ public abstract class TileLayer implements Info {
         final int zoomLevel = (int) gridLoc[2];
         final boolean store = this.getExpireCache(zoomLevel) != GWCVars.CACHE_DISABLE_CACHE;
 
-        Resource resource;
-        boolean encode;
+        // the stores may complete after we return, so they get their own copy of the request
+        // state rather than the conveyor tile, which is handed back to the caller
+        final String gridSetId = tileProto.getGridSetId();
+        final String format = tileProto.getMimeType().getFormat();
+        final Map<String, String> parameters =
+                tileProto.getParameters() == null
+                        ? null
+                        : Collections.unmodifiableMap(new HashMap<>(tileProto.getParameters()));
+        final StorageBroker storageBroker = tileProto.getStorageBroker();
+        final boolean transientOnly = tileProto.isMetaTileCacheOnly();
+
+        final Executor executor = TileEncoderPool.getExecutor();
+        final Resource[] encoded = new Resource[gridPositions.length];
+        int requestedIdx = -1;
+        CompletableFuture<Void> requestedStore = null;
+        List<CompletableFuture<Resource>> encodings = new ArrayList<>(gridPositions.length);
+        List<CompletableFuture<Void>> stores = new ArrayList<>(gridPositions.length);
         for (int i = 0; i < gridPositions.length; i++) {
             final long[] gridPos = gridPositions[i];
-            if (Arrays.equals(gridLoc, gridPos)) {
-                // Is this the one we need to save? then don't use the buffer or it'll be overridden
-                // by the next tile
-                resource = getImageBuffer(WMS_BUFFER2);
-                tileProto.setBlob(resource);
-                encode = true;
-            } else {
-                resource = getImageBuffer(WMS_BUFFER);
-                encode = store;
+            final boolean requested = Arrays.equals(gridLoc, gridPos);
+            if (requested) {
+                requestedIdx = i;
+            }
+            if (!requested && !store) {
+                continue;
+            }
+            if (!gridSubset.covers(gridPos)) {
+                // edge tile outside coverage, do not store it
+                continue;
             }
 
-            if (encode) {
-                if (!gridSubset.covers(gridPos)) {
-                    // edge tile outside coverage, do not store it
-                    continue;
+            final int tileIdx = i;
+            CompletableFuture<Resource> encoding =
+                    CompletableFuture.supplyAsync(
+                            () -> {
+                                Resource resource = encodeTile(metaTile, tileIdx);
+                                encoded[tileIdx] = resource;
+                                return resource;
+                            },
+                            executor);
+            encodings.add(encoding);
+            if (store) {
+                final TileObject tile =
+                        TileObject.createCompleteTileObject(
+                                this.getName(),
+                                new long[] {gridPos[0], gridPos[1], gridPos[2]},
+                                gridSetId,
+                                format,
+                                parameters,
+                                null);
+                tile.setCreated(requestTime);
+                // stores backed by a non blocking client pipeline the uploads rather than holding
+                // an encoder thread for each of them
+                CompletableFuture<Void> stored =
+                        encoding.thenCompose(
+                                resource -> {
+                                    if (resource == null) {
+                                        return CompletableFuture.<Void>completedFuture(null);
+                                    }
+                                    tile.setBlob(resource);
+                                    return storeTile(storageBroker, tile, transientOnly);
+                                });
+                stores.add(stored);
+                if (requested) {
+                    requestedStore = stored;
                 }
+            }
+        }
 
-                try {
-                    boolean completed = metaTile.writeTileToStream(i, resource);
-                    if (!completed) {
-                        log.error("metaTile.writeTileToStream returned false, no tiles saved");
-                    }
-                    if (store) {
-                        long[] idx = {gridPos[0], gridPos[1], gridPos[2]};
-
-                        TileObject tile =
-                                TileObject.createCompleteTileObject(
-                                        this.getName(),
-                                        idx,
-                                        tileProto.getGridSetId(),
-                                        tileProto.getMimeType().getFormat(),
-                                        tileProto.getParameters(),
-                                        resource);
-                        tile.setCreated(requestTime);
-
-                        try {
-                            if (tileProto.isMetaTileCacheOnly()) {
-                                tileProto.getStorageBroker().putTransient(tile);
-                            } else {
-                                tileProto.getStorageBroker().put(tile);
-                            }
-                            tileProto.getStorageObject().setCreated(tile.getCreated());
-                        } catch (StorageException e) {
-                            throw new GeoWebCacheException(e);
+        // the meta tile image gets disposed as soon as we return, so all encodings must be done
+        try {
+            CompletableFuture.allOf(encodings.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        } finally {
+            if (requestedIdx >= 0) {
+                Resource blob = encoded[requestedIdx];
+                tileProto.setBlob(blob == null ? new ByteArrayResource() : blob);
+            }
+        }
+
+        final long gracePeriod = TileEncoderPool.getStoreGracePeriod();
+        try {
+            CompletableFuture.allOf(stores.toArray(new CompletableFuture<?>[0]))
+                    .get(gracePeriod, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Tiles of meta tile "
+                                + metaTile.debugString()
+                                + " are still being stored after "
+                                + gracePeriod
+                                + "ms, completing in background");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedStorageException) {
+                throw new GeoWebCacheException(cause.getCause());
+            }
+            Throwables.throwIfUnchecked(cause);
+            throw new GeoWebCacheException(cause);
+        }
+        if (requestedStore != null
+                && requestedStore.isDone()
+                && !requestedStore.isCompletedExceptionally()
+                && encoded[requestedIdx] != null) {
+            tileProto.getStorageObject().setCreated(requestTime);
+        }
+        return encoded;
+    }
+
+    /**
+     * Encodes a tile into the encoding thread buffer, then copies it into a resource sized to the
+     * encoded tile, as the resource is stored and returned after the buffer gets reused.
+     *
+     * @return the encoded tile, or {@code null} if the encoding failed
+     */
+    private Resource encodeTile(MetaTile metaTile, int tileIdx) {
+        ByteArrayResource buffer = getImageBuffer(ENCODER_BUFFER);
+        try {
+            boolean completed = metaTile.writeTileToStream(tileIdx, buffer);
+            if (!completed) {
+                log.error("metaTile.writeTileToStream returned false, no tiles saved");
+                return null;
+            }
+            return new ByteArrayResource(buffer.getContents());
+        } catch (IOException ioe) {
+            log.error("Unable to write image tile to " + "ByteArrayOutputStream", ioe);
+            return null;
+        } finally {
+            buffer.truncate();
+        }
+    }
+
+    /**
+     * Checks, without fetching their contents, whether all the tiles of a meta tile are cached and
+     * not expired, in which case seeding can skip the meta tile altogether.
+     *
+     * @param tileProto the tile being seeded
+     * @param metaTile the meta tile containing it
+     * @return {@code true} if all the tiles of the meta tile are cached
+     */
+    protected boolean isMetaTileCached(ConveyorTile tileProto, MetaTile metaTile) {
+        final long[][] positions = metaTile.getTilesGridPositions();
+        final int expireCache = getExpireCache((int) tileProto.getTileIndex()[2]);
+        if (positions == null
+                || tileProto.isMetaTileCacheOnly()
+                || expireCache == GWCVars.CACHE_DISABLE_CACHE) {
+            return false;
+        }
+        // tiles outside the coverage are never stored, see saveTiles
+        final GridSubset gridSubset = getGridSubset(tileProto.getGridSetId());
+        List<TileObject> tiles = new ArrayList<>(positions.length);
+        for (long[] gridPos : positions) {
+            if (!gridSubset.covers(gridPos)) {
+                continue;
+            }
+            tiles.add(
+                    TileObject.createQueryTileObject(
+                            this.getName(),
+                            new long[] {gridPos[0], gridPos[1], gridPos[2]},
+                            tileProto.getGridSetId(),
+                            tileProto.getMimeType().getFormat(),
+                            tileProto.getParameters()));
+        }
+        final long[] created;
+        try {
+            created = tileProto.getStorageBroker().getCreationTimes(tiles);
+        } catch (StorageException e) {
+            log.warn("Unable to check the cached tiles of " + tileProto + ", seeding them", e);
+            return false;
+        }
+        // same rule as ConveyorTile.retrieve(long)
+        final long oldestValid = System.currentTimeMillis() - expireCache * 1000L;
+        for (long tileCreated : created) {
+            if (tileCreated == BlobStore.NOT_STORED
+                    || (expireCache > 0 && tileCreated < oldestValid)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CompletableFuture<Void> storeTile(
+            StorageBroker storageBroker, TileObject tile, boolean transientOnly) {
+        CompletableFuture<Void> stored;
+        if (transientOnly) {
+            storageBroker.putTransient(tile);
+            stored = CompletableFuture.completedFuture(null);
+        } else {
+            stored = storageBroker.putAsync(tile);
+        }
+        return stored.handle(
+                (result, e) -> {
+                    if (e != null) {
+                        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                        log.error("Unable to store tile " + tile, cause);
+                        if (cause instanceof StorageException) {
+                            throw new UncheckedStorageException((StorageException) cause);
                         }
+                        Throwables.throwIfUnchecked(cause);
+                        throw new CompletionException(cause);
+                    }
+                    return null;
+                });
+    }
+
+    /** Carries a {@link StorageException} out of an asynchronous tile store */
+    private static final class UncheckedStorageException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        UncheckedStorageException(StorageException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Shared pool encoding and storing meta tile sub-tiles.
+     *
+     * <p>The number of threads is controlled by the {@code GEOWEBCACHE_TILE_ENCODER_THREADS}
+     * property (defaults to the number of available processors, {@code 0} encodes on the calling
+     * thread). The pool queue is bounded, once full the calling thread does the work itself. The
+     * time {@link TileLayer#saveTiles} waits for the tiles to be stored is controlled by {@code
+     * GEOWEBCACHE_TILE_STORE_GRACE_PERIOD}, in milliseconds.
+     */
+    static final class TileEncoderPool {
+
+        static final String THREADS_PROPERTY = "GEOWEBCACHE_TILE_ENCODER_THREADS";
+
+        static final String GRACE_PERIOD_PROPERTY = "GEOWEBCACHE_TILE_STORE_GRACE_PERIOD";
+
+        static final long DEFAULT_GRACE_PERIOD = 10000;
+
+        private static volatile Executor executor;
+
+        static Executor getExecutor() {
+            Executor result = executor;
+            if (result == null) {
+                synchronized (TileEncoderPool.class) {
+                    result = executor;
+                    if (result == null) {
+                        executor = result = createExecutor();
                     }
-                } catch (IOException ioe) {
-                    log.error("Unable to write image tile to " + "ByteArrayOutputStream", ioe);
                 }
             }
+            return result;
+        }
+
+        /**
+         * Shuts the pool down, letting the queued encodings and stores complete. Called by {@link
+         * TileEncoderPoolShutdown} when the application context is destroyed, a later encoding
+         * creates a new pool.
+         */
+        static void shutdown() {
+            Executor pool;
+            synchronized (TileEncoderPool.class) {
+                pool = executor;
+                executor = null;
+            }
+            if (pool instanceof ExecutorService) {
+                ((ExecutorService) pool).shutdown();
+            }
+        }
+
+        static long getStoreGracePeriod() {
+            return getLongProperty(GRACE_PERIOD_PROPERTY, DEFAULT_GRACE_PERIOD);
+        }
+
+        private static Executor createExecutor() {
+            int threads =
+                    (int)
+                            getLongProperty(
+                                    THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+            if (threads <= 0) {
+                return Runnable::run;
+            }
+            CustomizableThreadFactory tf = new CustomizableThreadFactory("GWC tile encoder-");
+            tf.setDaemon(true);
+            ThreadPoolExecutor pool =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            60,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(threads * 64),
+                            tf,
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+
+        private static long getLongProperty(String name, long defaultValue) {
+            String value = GeoWebCacheExtensions.getProperty(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value for " + name + ": " + value + ", using " + defaultValue);
+                return defaultValue;
+            }
         }
     }
 }
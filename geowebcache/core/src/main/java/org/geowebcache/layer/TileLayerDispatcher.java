@@ -26,11 +26,17 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.GeoWebCacheExtensions;
 import org.geowebcache.config.ConfigurationAggregator;
+import org.geowebcache.config.ListenerCollection;
+import org.geowebcache.config.ListenerCollection.HandlerMethod;
 import org.geowebcache.config.TileLayerConfiguration;
 import org.geowebcache.config.meta.ServiceInformation;
 import org.geowebcache.grid.GridSet;
@@ -45,6 +51,11 @@ import org.springframework.util.Assert;
 
 /**
  * Serves tile layers from the {@link TileLayerConfiguration}s available in the application context.
+ *
+ * <p>Layer lookups go through an index of the configuration holding each layer, filled as layers
+ * are looked up and updated by the changes made through the dispatcher. Index entries are checked
+ * against their configuration on use, layers changed directly on a configuration are looked up
+ * again in all the configurations.
  */
 public class TileLayerDispatcher
         implements DisposableBean,
@@ -52,7 +63,16 @@ public class TileLayerDispatcher
                 ApplicationContextAware,
                 ConfigurationAggregator<TileLayerConfiguration> {
 
-    private List<TileLayerConfiguration> configs;
+    private static final Log log = LogFactory.getLog(TileLayerDispatcher.class);
+
+    private volatile List<TileLayerConfiguration> configs;
+
+    /** Configuration holding each layer looked up so far, by layer name */
+    private final ConcurrentMap<String, TileLayerConfiguration> layerIndex =
+            new ConcurrentHashMap<>();
+
+    private final ListenerCollection<TileLayerDispatcherListener> listeners =
+            new ListenerCollection<>();
 
     private GridSetBroker gridSetBroker;
 
@@ -75,14 +95,32 @@ public class TileLayerDispatcher
     }
 
     public boolean layerExists(final String layerName) {
+        return findLayer(layerName).isPresent();
+    }
+
+    /**
+     * Looks up a layer in the configuration it is indexed with, or else in all the configurations
+     * in order, indexing the one it is found in.
+     */
+    private Optional<TileLayer> findLayer(final String layerName) {
+        TileLayerConfiguration indexed = layerIndex.get(layerName);
+        if (indexed != null) {
+            Optional<TileLayer> layer = indexed.getLayer(layerName);
+            if (layer.isPresent()) {
+                return layer;
+            }
+            layerIndex.remove(layerName, indexed);
+        }
+        final List<TileLayerConfiguration> configs = this.configs;
         for (int i = 0; i < configs.size(); i++) {
             TileLayerConfiguration configuration = configs.get(i);
             Optional<TileLayer> layer = configuration.getLayer(layerName);
             if (layer.isPresent()) {
-                return true;
+                layerIndex.put(layerName, configuration);
+                return layer;
             }
         }
-        return false;
+        return Optional.empty();
     }
 
     /**
@@ -93,12 +131,9 @@ public class TileLayerDispatcher
     public TileLayer getTileLayer(final String layerName) throws GeoWebCacheException {
         Preconditions.checkNotNull(layerName, "layerName is null");
 
-        for (int i = 0; i < configs.size(); i++) {
-            TileLayerConfiguration configuration = configs.get(i);
-            Optional<TileLayer> layer = configuration.getLayer(layerName);
-            if (layer.isPresent()) {
-                return layer.get();
-            }
+        Optional<TileLayer> layer = findLayer(layerName);
+        if (layer.isPresent()) {
+            return layer.get();
         }
         throw new GeoWebCacheException(
                 "Thread "
@@ -166,6 +201,8 @@ public class TileLayerDispatcher
         for (TileLayerConfiguration config : configs) {
             if (config.containsLayer(layerName)) {
                 config.removeLayer(layerName);
+                layerIndex.remove(layerName);
+                fireLayerChange(listener -> listener.handleRemoveLayer(layerName));
                 return;
             }
         }
@@ -183,6 +220,9 @@ public class TileLayerDispatcher
         for (TileLayerConfiguration c : configs) {
             if (c.canSave(tl)) {
                 c.addLayer(tl);
+                // looked up again, in case an earlier configuration has a layer with this name
+                layerIndex.remove(tl.getName());
+                fireLayerChange(listener -> listener.handleAddLayer(tl));
                 return;
             }
         }
@@ -200,6 +240,9 @@ public class TileLayerDispatcher
             throws NoSuchElementException, IllegalArgumentException {
         TileLayerConfiguration config = getConfiguration(oldName);
         config.renameLayer(oldName, newName);
+        layerIndex.remove(oldName);
+        layerIndex.remove(newName);
+        fireLayerChange(listener -> listener.handleRenameLayer(oldName, newName));
     }
 
     /**
@@ -212,6 +255,34 @@ public class TileLayerDispatcher
         TileLayerConfiguration config = getConfiguration(tl);
         // TODO: this won't work with GetCapabilitiesConfiguration
         config.modifyLayer(tl);
+        fireLayerChange(listener -> listener.handleModifyLayer(tl));
+    }
+
+    /**
+     * Adds a listener notified of the layer changes made through this dispatcher
+     *
+     * @param listener the listener
+     */
+    public void addListener(TileLayerDispatcherListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(TileLayerDispatcherListener)}
+     *
+     * @param listener the listener
+     */
+    public void removeListener(TileLayerDispatcherListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Notifies the listeners of a change already saved, their failures are only logged */
+    private void fireLayerChange(HandlerMethod<TileLayerDispatcherListener> method) {
+        try {
+            listeners.safeForEach(method);
+        } catch (GeoWebCacheException | IOException | RuntimeException e) {
+            log.error("Exception while handling listeners for a layer change", e);
+        }
     }
 
     public TileLayerConfiguration getConfiguration(TileLayer tl) throws IllegalArgumentException {
@@ -222,8 +293,13 @@ public class TileLayerDispatcher
     public TileLayerConfiguration getConfiguration(final String tileLayerName)
             throws IllegalArgumentException {
         Assert.notNull(tileLayerName, "tileLayerName is null");
+        TileLayerConfiguration indexed = layerIndex.get(tileLayerName);
+        if (indexed != null && indexed.containsLayer(tileLayerName)) {
+            return indexed;
+        }
         for (TileLayerConfiguration c : configs) {
             if (c.containsLayer(tileLayerName)) {
+                layerIndex.put(tileLayerName, c);
                 return c;
             }
         }
@@ -304,6 +380,7 @@ public class TileLayerDispatcher
         this.configs =
                 GeoWebCacheExtensions.configurations(
                         TileLayerConfiguration.class, applicationContext);
+        layerIndex.clear();
     }
 
     @Override
@@ -317,5 +394,6 @@ public class TileLayerDispatcher
     /** @deprecated use GeoWebCacheExtensions.reinitializeConfigurations instead */
     public void reInit() { // do not know how to get rid of it, it's used in mock testing...
         GeoWebCacheExtensions.reinitialize(this.applicationContext);
+        layerIndex.clear();
     }
 }
@@ -0,0 +1,42 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.layer;
+
+import java.util.EventListener;
+
+/**
+ * Listens to the layer changes made through a {@link TileLayerDispatcher}. Implementations are
+ * responsible for registering themselves via {@link
+ * TileLayerDispatcher#addListener(TileLayerDispatcherListener)}.
+ *
+ * <p>Handlers are called once the change has been saved, they can't veto it.
+ */
+public interface TileLayerDispatcherListener extends EventListener {
+
+    /** @param layer the layer that was added */
+    void handleAddLayer(TileLayer layer);
+
+    /** @param layerName the name of the layer that was removed */
+    void handleRemoveLayer(String layerName);
+
+    /** @param layer the new version of the layer */
+    void handleModifyLayer(TileLayer layer);
+
+    /**
+     * @param oldName the old name of the layer
+     * @param newName the new name of the layer
+     */
+    void handleRenameLayer(String oldName, String newName);
+}
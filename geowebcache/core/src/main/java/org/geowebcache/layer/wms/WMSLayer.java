@@ -22,6 +22,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpMethodBase;
@@ -43,11 +45,13 @@ import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.AbstractTileLayer;
 import org.geowebcache.layer.ExpirationRule;
+import org.geowebcache.layer.MetaTileCoalescer;
 import org.geowebcache.layer.ProxyLayer;
 import org.geowebcache.layer.meta.LayerMetaInformation;
 import org.geowebcache.layer.meta.MetadataURL;
 import org.geowebcache.locks.LockProvider;
 import org.geowebcache.locks.LockProvider.Lock;
+import org.geowebcache.locks.StripedLockProvider;
 import org.geowebcache.mime.FormatModifier;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.mime.XMLMime;
@@ -59,6 +63,9 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
 
     private static Log log = LogFactory.getLog(org.geowebcache.layer.wms.WMSLayer.class);
 
+    /** Meta tiles being rendered by this JVM, shared by all WMS layers */
+    private static final MetaTileCoalescer IN_FLIGHT = new MetaTileCoalescer();
+
     public enum RequestType {
         MAP,
         FEATUREINFO
@@ -290,7 +297,7 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
             if (tryCacheFetch(tile)) {
                 returnTile = finalizeTile(tile);
             } else if (mime.supportsTiling()) { // Okay, so we need to go to the backend
-                returnTile = getMetatilingReponse(tile, true);
+                returnTile = getMetatilingReponse(tile, true, false);
             } else {
                 returnTile = getNonMetatilingReponse(tile, true);
             }
@@ -310,7 +317,7 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
         if (gridSubset.shouldCacheAtZoom(tile.getTileIndex()[2])) {
             if (tile.getMimeType().supportsTiling()
                     && (metaWidthHeight[0] > 1 || metaWidthHeight[1] > 1)) {
-                getMetatilingReponse(tile, tryCache);
+                getMetatilingReponse(tile, tryCache, tryCache);
             } else {
                 getNonMetatilingReponse(tile, tryCache);
             }
@@ -322,10 +329,11 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
      *
      * @param tile the Tile with all the information
      * @param tryCache whether to try the cache, or seed
+     * @param skipCached whether to skip the meta tile if all its tiles are already cached
      * @throws GeoWebCacheException
      */
-    private ConveyorTile getMetatilingReponse(ConveyorTile tile, boolean tryCache)
-            throws GeoWebCacheException {
+    private ConveyorTile getMetatilingReponse(
+            ConveyorTile tile, boolean tryCache, boolean skipCached) throws GeoWebCacheException {
 
         // int idx = this.getSRSIndex(tile.getSRS());
         long[] gridLoc = tile.getTileIndex();
@@ -355,11 +363,40 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
             metaTile.setExpiresHeader(GWCVars.CACHE_USE_WMS_BACKEND_VALUE);
         }
 
-        String metaKey = buildLockKey(tile, metaTile);
+        if (skipCached && isMetaTileCached(tile, metaTile)) {
+            tile.setCacheResult(CacheResult.HIT);
+            metaTile.dispose();
+            return finalizeTile(tile);
+        }
+
+        // only needed to coalesce requests, the lock provider may not need it
+        String metaKey = tryCache ? buildLockKey(tile, metaTile) : null;
+        CompletableFuture<Resource[]> flight = null;
+        if (tryCache) {
+            flight = IN_FLIGHT.takeOff(metaKey);
+            if (flight == null) {
+                /** ****************** Attach to the render in progress ****** */
+                // the leader render is bounded by the backend timeout, past it go through the lock
+                Integer timeout = getBackendTimeout();
+                Resource blob =
+                        IN_FLIGHT.await(
+                                metaKey,
+                                metaTile.getTilesGridPositions(),
+                                tile.getTileIndex(),
+                                timeout == null ? 120 : timeout,
+                                TimeUnit.SECONDS);
+                if (blob != null) {
+                    tile.setBlob(blob);
+                    tile.setCacheResult(CacheResult.MISS);
+                    return finalizeTile(tile);
+                }
+            }
+        }
+        Resource[] tiles = null;
         Lock lock = null;
         try {
             /** ****************** Acquire lock ******************* */
-            lock = lockProvider.getLock(metaKey);
+            lock = acquireLock(tile, metaTile, metaKey);
             /** ****************** Check cache again ************** */
             if (tryCache && tryCacheFetch(tile)) {
                 // Someone got it already, return lock and we're done
@@ -379,7 +416,9 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
                 metaTile.setExpiresHeader(GWCVars.CACHE_USE_WMS_BACKEND_VALUE);
             }
             long requestTime = System.currentTimeMillis();
+            long requestStart = System.nanoTime();
             sourceHelper.makeRequest(metaTile, buffer);
+            tile.addBackendTime(System.nanoTime() - requestStart);
 
             if (metaTile.getError()) {
                 throw new GeoWebCacheException(
@@ -393,10 +432,19 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
 
             metaTile.setImageBytes(buffer);
 
-            saveTiles(metaTile, tile, requestTime);
+            tiles = encodeAndSaveTiles(metaTile, tile, requestTime);
 
             /** ****************** Return lock and response ****** */
+        } catch (GeoWebCacheException | RuntimeException e) {
+            if (flight != null) {
+                IN_FLIGHT.abort(metaKey, flight, e);
+                flight = null;
+            }
+            throw e;
         } finally {
+            if (flight != null) {
+                IN_FLIGHT.land(metaKey, flight, tiles);
+            }
             if (lock != null) {
                 lock.release();
             }
@@ -405,6 +453,45 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
         return finalizeTile(tile);
     }
 
+    /**
+     * Acquires the lock for the tile, or the meta tile if not null. Providers able to lock on the
+     * tile coordinates directly get them without going through a lock key, the lock is the same as
+     * the one of the {@link #buildLockKey} key.
+     *
+     * @param lockKey the key built by {@link #buildLockKey}, if already available
+     */
+    private Lock acquireLock(ConveyorTile tile, WMSMetaTile metaTile, String lockKey)
+            throws GeoWebCacheException {
+        if (lockProvider instanceof StripedLockProvider) {
+            final long x;
+            final long y;
+            final long z;
+            if (metaTile != null) {
+                long[] metaGridCov = metaTile.getMetaTileGridBounds();
+                x = metaGridCov[0];
+                y = metaGridCov[1];
+                z = metaGridCov[4];
+            } else {
+                long[] tileIndex = tile.getTileIndex();
+                x = tileIndex[0];
+                y = tileIndex[1];
+                z = tileIndex[2];
+            }
+            return ((StripedLockProvider) lockProvider)
+                    .getLock(
+                            metaTile != null ? "meta_" : "tile_",
+                            tile.getLayerId(),
+                            tile.getGridSetId(),
+                            x,
+                            y,
+                            z,
+                            tile.getParametersId(),
+                            tile.getMimeType().getFileExtension());
+        }
+        return lockProvider.getLock(
+                lockKey != null ? lockKey : buildLockKey(tile, metaTile), tile.getLayerId());
+    }
+
     private String buildLockKey(ConveyorTile tile, WMSMetaTile metaTile) {
         StringBuilder metaKey = new StringBuilder();
 
@@ -443,11 +530,10 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
         // String debugHeadersStr = null;
         long[] gridLoc = tile.getTileIndex();
 
-        String lockKey = buildLockKey(tile, null);
         Lock lock = null;
         try {
             /** ****************** Acquire lock ******************* */
-            lock = lockProvider.getLock(lockKey);
+            lock = acquireLock(tile, null, null);
 
             /** ****************** Check cache again ************** */
             if (tryCache && tryCacheFetch(tile)) {
@@ -501,7 +587,9 @@ public class WMSLayer extends AbstractTileLayer implements ProxyLayer {
         tile.setTileLayer(this);
 
         ByteArrayResource buffer = getImageBuffer(WMS_BUFFER);
+        long requestStart = System.nanoTime();
         sourceHelper.makeRequest(tile, buffer);
+        tile.addBackendTime(System.nanoTime() - requestStart);
 
         if (tile.getError() || buffer.getSize() == 0) {
             throw new GeoWebCacheException("Empty tile, error message: " + tile.getErrorMessage());
@@ -0,0 +1,244 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.locks;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.sql.DataSource;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * A lock provider storing the locks in a database table shared by all the GeoWebCache instances of
+ * a cluster.
+ *
+ * <p>A lock is a row in the {@code GWC_LOCKS} table, keyed by the SHA-1 of the lock key: inserting
+ * it acquires the lock, the primary key makes sure only one node can hold it, and deleting it
+ * releases it. No database connection or transaction is held while the lock is owned, so the
+ * connection pool is not drained by long renders.
+ *
+ * <p>Threads of the same JVM synchronize in memory first, so only one thread per key and node goes
+ * to the database. If the row is already there the thread retries with an exponential, jittered,
+ * backoff. Locks held longer than the lease timeout are considered stale (e.g., the owning node
+ * died) and get removed by the next node trying to acquire them, so the lease should be longer than
+ * the longest meta tile render, and the node clocks reasonably in synch.
+ *
+ * <p>The data source is expected to be pooled, e.g. a DBCP {@code BasicDataSource} or a JNDI one,
+ * as done for the JDBC disk quota store.
+ */
+public class JDBCLockProvider implements LockProvider {
+
+    static final Log LOGGER = LogFactory.getLog(JDBCLockProvider.class);
+
+    static final String TABLE = "GWC_LOCKS";
+
+    /** First wait before retrying to acquire a lock held by another node */
+    static final long MIN_BACKOFF = 10;
+
+    /** Max wait between two attempts to acquire a lock held by another node */
+    static final long MAX_BACKOFF = 1000;
+
+    private final JdbcTemplate template;
+
+    private final String owner = UUID.randomUUID().toString();
+
+    private final LockProvider memoryProvider = new StripedLockProvider();
+
+    private long maxWait = 120 * 1000;
+
+    private long leaseTimeout = 120 * 1000;
+
+    private volatile boolean initialized;
+
+    public JDBCLockProvider(DataSource dataSource) {
+        this.template = new JdbcTemplate(dataSource);
+    }
+
+    /** @return the max time, in milliseconds, a thread waits to acquire a lock */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * @return the time, in milliseconds, after which a lock still held is considered stale and can
+     *     be taken over by another node
+     */
+    public long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    public void setLeaseTimeout(long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    public Lock getLock(final String lockKey) throws GeoWebCacheException {
+        // first off, synchronize among threads in the same jvm
+        final Lock memoryLock = memoryProvider.getLock(lockKey);
+        boolean acquired = false;
+        try {
+            final String key = DigestUtils.sha1Hex(lockKey);
+            ensureTable();
+
+            final long start = System.currentTimeMillis();
+            long backoff = MIN_BACKOFF;
+            int attempts = 0;
+            while (!tryInsert(key)) {
+                attempts++;
+                long now = System.currentTimeMillis();
+                if (removeStale(key, now)) {
+                    continue;
+                }
+                if (now - start >= maxWait) {
+                    throw new GeoWebCacheException(
+                            "Failed to get a lock on key "
+                                    + lockKey
+                                    + " after "
+                                    + attempts
+                                    + " attempts and "
+                                    + (now - start)
+                                    + "ms");
+                }
+                // full jitter, so that the nodes waiting on the same key do not retry in lockstep
+                long wait = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+                try {
+                    Thread.sleep(Math.min(wait, maxWait - (now - start)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new GeoWebCacheException(
+                            "Interrupted while waiting for lock on key " + lockKey);
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+            }
+            acquired = true;
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(
+                        "Lock "
+                                + lockKey
+                                + " acquired by thread "
+                                + Thread.currentThread().getId()
+                                + " after "
+                                + attempts
+                                + " retries");
+            }
+
+            return new Lock() {
+
+                boolean released;
+
+                public void release() throws GeoWebCacheException {
+                    if (released) {
+                        return;
+                    }
+                    released = true;
+                    try {
+                        int count =
+                                template.update(
+                                        "DELETE FROM "
+                                                + TABLE
+                                                + " WHERE LOCK_KEY = ? AND LOCK_OWNER = ?",
+                                        key,
+                                        owner);
+                        if (count == 0 && LOGGER.isDebugEnabled()) {
+                            // do not crap out, the lease expired and another node took over
+                            LOGGER.debug(
+                                    "Lock "
+                                            + lockKey
+                                            + " was not found while releasing it, "
+                                            + "the lease likely expired");
+                        }
+                    } catch (DataAccessException e) {
+                        throw new GeoWebCacheException(
+                                "Failure while trying to release lock for key " + lockKey, e);
+                    } finally {
+                        memoryLock.release();
+                    }
+                }
+            };
+        } catch (DataAccessException e) {
+            throw new GeoWebCacheException(
+                    "Failure while trying to get lock for key " + lockKey, e);
+        } finally {
+            if (!acquired) {
+                memoryLock.release();
+            }
+        }
+    }
+
+    private boolean tryInsert(String key) {
+        try {
+            template.update(
+                    "INSERT INTO " + TABLE + " (LOCK_KEY, LOCK_OWNER, ACQUIRED) VALUES (?, ?, ?)",
+                    key,
+                    owner,
+                    System.currentTimeMillis());
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // the lock is held by someone else
+            return false;
+        }
+    }
+
+    private boolean removeStale(String key, long now) {
+        int count =
+                template.update(
+                        "DELETE FROM " + TABLE + " WHERE LOCK_KEY = ? AND ACQUIRED < ?",
+                        key,
+                        now - leaseTimeout);
+        if (count > 0) {
+            LOGGER.warn(
+                    "Removed stale lock " + key + ", held for more than " + leaseTimeout + "ms");
+        }
+        return count > 0;
+    }
+
+    /** Creates the locks table, if missing */
+    private void ensureTable() {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (initialized) {
+                return;
+            }
+            try {
+                template.queryForObject("SELECT COUNT(*) FROM " + TABLE, Integer.class);
+            } catch (DataAccessException e) {
+                LOGGER.info("Creating the " + TABLE + " table");
+                try {
+                    template.execute(
+                            "CREATE TABLE "
+                                    + TABLE
+                                    + " (LOCK_KEY VARCHAR(64) NOT NULL PRIMARY KEY,"
+                                    + " LOCK_OWNER VARCHAR(64) NOT NULL,"
+                                    + " ACQUIRED BIGINT NOT NULL)");
+                } catch (DataAccessException ce) {
+                    // another node might have created it in the meantime
+                    template.queryForObject("SELECT COUNT(*) FROM " + TABLE, Integer.class);
+                }
+            }
+            initialized = true;
+        }
+    }
+}
@@ -30,6 +30,18 @@ public interface LockProvider {
      */
     public Lock getLock(String lockKey) throws GeoWebCacheException;
 
+    /**
+     * Acquires a exclusive lock on the specified key, on behalf of a layer. Providers keeping
+     * statistics can use the layer name to break them down, by default this is the same as {@link
+     * #getLock(String)}
+     *
+     * @param lockKey
+     * @param layerName
+     */
+    public default Lock getLock(String lockKey, String layerName) throws GeoWebCacheException {
+        return getLock(lockKey);
+    }
+
     public interface Lock {
         /** Releases the lock on the specified key */
         public void release() throws GeoWebCacheException;
@@ -0,0 +1,131 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.locks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock acquisition statistics: how long threads waited to get their locks, how many had to wait for
+ * another holder, and how many gave up, by layer.
+ *
+ * <p>Wait times are kept in a histogram with power of two millisecond buckets, bucket {@code i}
+ * counting the waits shorter than {@code 2^i} milliseconds (and longer than the previous bucket),
+ * the last one counting everything longer.
+ */
+public class LockStatistics {
+
+    /** Number of histogram buckets, the last one holds waits of 32 seconds or more */
+    public static final int BUCKETS = 17;
+
+    /** Name used for the locks that cannot be associated to a layer */
+    public static final String UNKNOWN_LAYER = "";
+
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    private final LongAdder acquisitions = new LongAdder();
+
+    private final LongAdder contended = new LongAdder();
+
+    private final LongAdder totalWait = new LongAdder();
+
+    private final ConcurrentMap<String, LongAdder> timeouts = new ConcurrentHashMap<>();
+
+    public LockStatistics() {
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a successful acquisition
+     *
+     * @param waitMillis how long it took to get the lock
+     * @param contention whether the lock was held by someone else on the first attempt
+     */
+    public void acquired(long waitMillis, boolean contention) {
+        acquisitions.increment();
+        totalWait.add(waitMillis);
+        histogram[bucket(waitMillis)].increment();
+        if (contention) {
+            contended.increment();
+        }
+    }
+
+    /** Records a failure to acquire a lock in the allotted time */
+    public void timedOut(String layerName) {
+        String key = layerName == null ? UNKNOWN_LAYER : layerName;
+        timeouts.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    static int bucket(long waitMillis) {
+        if (waitMillis <= 0) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(waitMillis);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /** @return the number of locks acquired */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /** @return the number of acquisitions that had to wait for another holder */
+    public long getContentions() {
+        return contended.sum();
+    }
+
+    /** @return the overall time spent waiting for locks, in milliseconds */
+    public long getTotalWait() {
+        return totalWait.sum();
+    }
+
+    /**
+     * @return a copy of the wait time histogram, see the class javadoc for the meaning of the
+     *     buckets
+     */
+    public long[] getWaitHistogram() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = histogram[i].sum();
+        }
+        return result;
+    }
+
+    /** @return the number of lock timeouts by layer name */
+    public Map<String, Long> getTimeouts() {
+        Map<String, Long> result = new HashMap<>();
+        timeouts.forEach((layer, count) -> result.put(layer, count.sum()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public String toString() {
+        return "LockStatistics[acquisitions="
+                + getAcquisitions()
+                + ", contentions="
+                + getContentions()
+                + ", totalWait="
+                + getTotalWait()
+                + "ms, timeouts="
+                + getTimeouts()
+                + "]";
+    }
+}
@@ -19,6 +19,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -44,8 +48,13 @@ public class NIOLockProvider implements LockProvider {
     /** max lock attempts */
     private final int maxLockAttempts;
 
+    /** Max backoff between two lock attempts, as a multiple of {@code waitBeforeRetry} */
+    static final int MAX_BACKOFF_FACTOR = 32;
+
     MemoryLockProvider memoryProvider = new MemoryLockProvider();
 
+    private final LockStatistics statistics = new LockStatistics();
+
     public NIOLockProvider(DefaultStorageFinder storageFinder) throws ConfigurationException {
         this(storageFinder.getDefaultPath());
     }
@@ -64,8 +73,28 @@ public class NIOLockProvider implements LockProvider {
         this.maxLockAttempts = 120 * 1000 / waitBeforeRetry;
     }
 
+    /** @return the lock acquisition statistics of this provider */
+    public LockStatistics getStatistics() {
+        return statistics;
+    }
+
     public LockProvider.Lock getLock(final String lockKey) throws GeoWebCacheException {
+        return getLock(lockKey, null);
+    }
+
+    /**
+     * Acquires the lock, trying to lock the file with an exponential backoff with jitter between
+     * attempts, starting at {@code waitBeforeRetry} and up to {@link #MAX_BACKOFF_FACTOR} times
+     * that, for an overall max wait of {@code waitBeforeRetry * maxLockAttempts}. The lock file
+     * handle is kept open across attempts, and reopened only if the file got deleted or replaced by
+     * the previous holder, as told by the file system identity of the locked file and of the one
+     * currently at the lock path.
+     */
+    @Override
+    public LockProvider.Lock getLock(final String lockKey, final String layerName)
+            throws GeoWebCacheException {
         File file = null;
+        final long start = System.currentTimeMillis();
         // first off, synchronize among threads in the same jvm (the nio locks won't lock
         // threads in the same JVM)
         final LockProvider.Lock memoryLock = memoryProvider.getLock(lockKey);
@@ -74,37 +103,75 @@ public class NIOLockProvider implements LockProvider {
             file = getFile(lockKey);
             FileOutputStream currFos = null;
             FileLock currLock = null;
+            Object openedKey = null;
+            boolean acquired = false;
             try {
                 // try to lock
+                final long maxWait = (long) waitBeforeRetry * maxLockAttempts;
+                long backoff = Math.max(1, waitBeforeRetry);
                 int count = 0;
-                while (currLock == null && count < maxLockAttempts) {
+                boolean contention = false;
+                while (currLock == null) {
                     // the file output stream can also fail to be acquired due to the
                     // other nodes deleting the file
                     try {
-                        currFos = new FileOutputStream(file);
-
-                        currLock = currFos.getChannel().lock();
+                        if (currFos == null) {
+                            final Object before = fileKey(file);
+                            currFos = new FileOutputStream(file);
+                            openedKey = fileKey(file);
+                            if (before != null && !before.equals(openedKey)) {
+                                // replaced while opening, no telling which one got opened
+                                IOUtils.closeQuietly(currFos);
+                                currFos = null;
+                                continue;
+                            }
+                        }
+                        currLock = currFos.getChannel().tryLock();
+                        if (currLock != null
+                                && (!file.exists() || !Objects.equals(openedKey, fileKey(file)))) {
+                            // the previous holder deleted the file after we opened it, and maybe
+                            // someone else created a new one, this lock is on a file nobody else
+                            // will see
+                            currLock.release();
+                            currLock = null;
+                            IOUtils.closeQuietly(currFos);
+                            currFos = null;
+                            continue;
+                        }
                     } catch (OverlappingFileLockException | IOException e) {
                         IOUtils.closeQuietly(currFos);
+                        currFos = null;
+                    }
+                    if (currLock == null) {
+                        contention = true;
+                        count++;
+                        long elapsed = System.currentTimeMillis() - start;
+                        // verify we can still wait for the FS lock
+                        if (elapsed >= maxWait) {
+                            statistics.timedOut(layerName);
+                            throw new GeoWebCacheException(
+                                    "Failed to get a lock on key "
+                                            + lockKey
+                                            + " after "
+                                            + count
+                                            + " attempts");
+                        }
+                        // full jitter, waiting nodes should not retry in lockstep
+                        long wait = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
                         try {
-                            Thread.sleep(waitBeforeRetry);
+                            Thread.sleep(Math.min(wait, maxWait - elapsed));
                         } catch (InterruptedException ie) {
                             Thread.currentThread().interrupt();
-                            // ok, moving on
+                            throw new GeoWebCacheException(
+                                    "Interrupted while waiting for lock on key " + lockKey);
                         }
+                        backoff =
+                                Math.min(
+                                        backoff * 2,
+                                        (long) Math.max(1, waitBeforeRetry) * MAX_BACKOFF_FACTOR);
                     }
-                    count++;
-                }
-
-                // verify we managed to get the FS lock
-                if (count >= maxLockAttempts) {
-                    throw new GeoWebCacheException(
-                            "Failed to get a lock on key "
-                                    + lockKey
-                                    + " after "
-                                    + count
-                                    + " attempts");
                 }
+                statistics.acquired(System.currentTimeMillis() - start, contention);
 
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug(
@@ -125,6 +192,7 @@ public class NIOLockProvider implements LockProvider {
                 currLock = null;
 
                 final File lockFile = file;
+                acquired = true;
                 return new LockProvider.Lock() {
 
                     boolean released;
@@ -154,9 +222,11 @@ public class NIOLockProvider implements LockProvider {
                                 }
                             }
                             try {
+                                // delete before releasing, so that whoever gets the lock next
+                                // can tell it's locking a stale file
+                                lockFile.delete();
                                 lock.release();
                                 IOUtils.closeQuietly(fos);
-                                lockFile.delete();
 
                                 if (LOGGER.isDebugEnabled()) {
                                     LOGGER.debug(
@@ -176,14 +246,16 @@ public class NIOLockProvider implements LockProvider {
                     }
                 };
             } finally {
-                try {
-                    if (currLock != null) {
-                        currLock.release();
+                // clean up only if the lock was not handed out, the returned lock does otherwise
+                if (!acquired) {
+                    try {
+                        if (currLock != null) {
+                            currLock.release();
+                        }
+                        IOUtils.closeQuietly(currFos);
+                    } finally {
+                        memoryLock.release();
                     }
-                    IOUtils.closeQuietly(currFos);
-                    file.delete();
-                } finally {
-                    memoryLock.release();
                 }
             }
         } catch (IOException e) {
@@ -192,6 +264,18 @@ public class NIOLockProvider implements LockProvider {
         }
     }
 
+    /**
+     * @return the file system identity of the file, {@code null} if it does not exist or the file
+     *     system has none
+     */
+    private static Object fileKey(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     private File getFile(String lockKey) {
         File locks = new File(root, "lockfiles");
         locks.mkdirs();
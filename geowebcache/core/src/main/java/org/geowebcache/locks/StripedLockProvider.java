@@ -0,0 +1,171 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.locks;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in memory lock provider based on a striped lock, like {@link MemoryLockProvider}, that avoids
+ * any allocation when acquiring a lock.
+ *
+ * <p>Keys are spread over the stripes with a cheap, well mixing, non cryptographic hash instead of
+ * a SHA-1 digest, and each stripe hands out the same {@link Lock} handle every time. Tile locks can
+ * also be acquired from the tile coordinates directly, see {@link #getLock(String, String, String,
+ * long, long, long, String, String)}, without building a key string first. Both hash the same key,
+ * so code locking a tile by key synchronizes with code locking it by coordinates.
+ */
+public class StripedLockProvider implements LockProvider {
+
+    private final StripeLock[] stripes;
+
+    private final int mask;
+
+    public StripedLockProvider() {
+        this(1024);
+    }
+
+    /** @param concurrency the number of stripes, rounded up to the next power of two */
+    public StripedLockProvider(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        int size = Integer.highestOneBit(concurrency);
+        if (size < concurrency) {
+            size <<= 1;
+        }
+        stripes = new StripeLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new StripeLock();
+        }
+        mask = size - 1;
+    }
+
+    /** Acquires the lock of the stripe the key hashes to */
+    public Lock getLock(String lockKey) {
+        return lock(mix(lockKey.hashCode()));
+    }
+
+    /**
+     * Acquires the lock for a tile, or a meta tile, hashing its coordinates directly. The lock is
+     * the same as the one {@link #getLock(String)} returns for the key {@code
+     * <prefix><layerName>_<gridSetId>_<x>_<y>_<z>[_<parametersId>].<extension>}, as the hash is
+     * computed the way {@link String#hashCode()} would on that key, without building it.
+     *
+     * @param prefix the key prefix, e.g. {@code meta_} or {@code tile_}
+     * @param layerName the layer name
+     * @param gridSetId the grid set
+     * @param x the tile (or meta tile origin) column
+     * @param y the tile (or meta tile origin) row
+     * @param z the zoom level
+     * @param parametersId the parameters id, may be {@code null}
+     * @param extension the tile format file extension
+     */
+    public Lock getLock(
+            String prefix,
+            String layerName,
+            String gridSetId,
+            long x,
+            long y,
+            long z,
+            String parametersId,
+            String extension) {
+        int h = append(0, prefix);
+        h = append(h, layerName);
+        h = append(31 * h + '_', gridSetId);
+        h = append(31 * h + '_', x);
+        h = append(31 * h + '_', y);
+        h = append(31 * h + '_', z);
+        if (parametersId != null) {
+            h = append(31 * h + '_', parametersId);
+        }
+        h = append(31 * h + '.', extension);
+        return lock(mix(h));
+    }
+
+    private Lock lock(long hash) {
+        StripeLock stripe = stripes[(int) hash & mask];
+        stripe.lock.lock();
+        return stripe;
+    }
+
+    /** @return the stripe a key maps to, exposed for testing purposes */
+    int getStripe(String lockKey) {
+        return (int) mix(lockKey.hashCode()) & mask;
+    }
+
+    /** @return the {@link String#hashCode()} of a string hashing to h, followed by the value */
+    private static int append(int h, String value) {
+        String s = String.valueOf(value);
+        // String caches its hash code, only 31^length is computed, in log(length) steps
+        return h * pow31(s.length()) + s.hashCode();
+    }
+
+    /** @return 31 raised to the given power, overflowing as {@link String#hashCode()} does */
+    private static int pow31(int exponent) {
+        int result = 1;
+        int base = 31;
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    /** @return the {@link String#hashCode()} of a string hashing to h, followed by the number */
+    private static int append(int h, long value) {
+        // work on negative values, Long.MIN_VALUE has no positive counterpart
+        if (value < 0) {
+            h = 31 * h + '-';
+        } else {
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor <= -10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            h = 31 * h + ('0' - (int) (value / divisor % 10));
+        }
+        return h;
+    }
+
+    /** The MurmurHash3 64 bit finalizer, spreads every input bit over the whole output */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * A stripe, and the reusable handle to it. Releasing more times than it has been acquired by
+     * the current thread is a no-op, like with the handles of {@link MemoryLockProvider}.
+     */
+    private static final class StripeLock implements Lock {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        public void release() {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+}
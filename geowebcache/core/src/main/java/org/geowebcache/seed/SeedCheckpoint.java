@@ -0,0 +1,314 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.mime.MimeException;
+import org.geowebcache.mime.MimeType;
+import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.TileRangeIterator;
+
+/**
+ * The persisted state of a seed job: what it is seeding, how, and how far it got. Enough to resume
+ * the job after a restart, see {@link TileBreeder#resume(String)}.
+ *
+ * <p>The progress is recorded as the number of {@link TileRangeIterator} chunks completed, so it is
+ * only meaningful for the same tile range and meta tiling factors.
+ */
+public class SeedCheckpoint {
+
+    private static final String PARAMETER_PREFIX = "parameter.";
+
+    private static final String BOUNDS_PREFIX = "bounds.";
+
+    private final String jobId;
+
+    private final TYPE type;
+
+    private final String layerName;
+
+    private final String gridSetId;
+
+    private final String format;
+
+    private final int zoomStart;
+
+    private final int zoomStop;
+
+    private final long[][] bounds;
+
+    private final Map<String, String> parameters;
+
+    private final int[] metaTilingFactors;
+
+    private final int threadCount;
+
+    private final boolean filterUpdate;
+
+    private final long chunkCount;
+
+    private final long tilesTotal;
+
+    private volatile long completedChunks;
+
+    private volatile long tilesDone;
+
+    private volatile long lastUpdate;
+
+    SeedCheckpoint(
+            String jobId,
+            TYPE type,
+            TileRange tr,
+            int[] metaTilingFactors,
+            int threadCount,
+            boolean filterUpdate,
+            long chunkCount,
+            long tilesTotal) {
+        this.jobId = jobId;
+        this.type = type;
+        this.layerName = tr.getLayerName();
+        this.gridSetId = tr.getGridSetId();
+        this.format = tr.getMimeType() == null ? null : tr.getMimeType().getFormat();
+        this.zoomStart = tr.getZoomStart();
+        this.zoomStop = tr.getZoomStop();
+        this.bounds = new long[zoomStop - zoomStart + 1][];
+        for (int z = zoomStart; z <= zoomStop; z++) {
+            this.bounds[z - zoomStart] = tr.rangeBounds(z).clone();
+        }
+        this.parameters =
+                tr.getParameters() == null
+                        ? Collections.emptyMap()
+                        : new TreeMap<>(tr.getParameters());
+        this.metaTilingFactors = metaTilingFactors.clone();
+        this.threadCount = threadCount;
+        this.filterUpdate = filterUpdate;
+        this.chunkCount = chunkCount;
+        this.tilesTotal = tilesTotal;
+    }
+
+    private SeedCheckpoint(Properties properties) {
+        this.jobId = properties.getProperty("jobId");
+        this.type = TYPE.valueOf(properties.getProperty("type"));
+        this.layerName = properties.getProperty("layer");
+        this.gridSetId = properties.getProperty("gridSet");
+        this.format = properties.getProperty("format");
+        this.zoomStart = Integer.parseInt(properties.getProperty("zoomStart"));
+        this.zoomStop = Integer.parseInt(properties.getProperty("zoomStop"));
+        this.bounds = new long[zoomStop - zoomStart + 1][];
+        for (int z = zoomStart; z <= zoomStop; z++) {
+            String value = properties.getProperty(BOUNDS_PREFIX + z);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing bounds for zoom level " + z);
+            }
+            this.bounds[z - zoomStart] = parseLongs(value);
+        }
+        Map<String, String> parameters = new TreeMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(PARAMETER_PREFIX)) {
+                parameters.put(
+                        name.substring(PARAMETER_PREFIX.length()), properties.getProperty(name));
+            }
+        }
+        this.parameters = parameters;
+        long[] factors = parseLongs(properties.getProperty("metaTilingFactors"));
+        this.metaTilingFactors = new int[] {(int) factors[0], (int) factors[1]};
+        this.threadCount = Integer.parseInt(properties.getProperty("threadCount"));
+        this.filterUpdate = Boolean.parseBoolean(properties.getProperty("filterUpdate"));
+        this.chunkCount = Long.parseLong(properties.getProperty("chunkCount"));
+        this.tilesTotal = Long.parseLong(properties.getProperty("tilesTotal"));
+        this.completedChunks = Long.parseLong(properties.getProperty("completedChunks"));
+        this.tilesDone = Long.parseLong(properties.getProperty("tilesDone"));
+        this.lastUpdate = Long.parseLong(properties.getProperty("lastUpdate"));
+    }
+
+    /**
+     * Parses a checkpoint back from its properties
+     *
+     * @throws IllegalArgumentException if the properties are not a valid checkpoint
+     */
+    static SeedCheckpoint fromProperties(Properties properties) {
+        try {
+            return new SeedCheckpoint(properties);
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Incomplete seed checkpoint", e);
+        }
+    }
+
+    Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("jobId", jobId);
+        properties.setProperty("type", type.name());
+        properties.setProperty("layer", layerName);
+        properties.setProperty("gridSet", gridSetId);
+        if (format != null) {
+            properties.setProperty("format", format);
+        }
+        properties.setProperty("zoomStart", String.valueOf(zoomStart));
+        properties.setProperty("zoomStop", String.valueOf(zoomStop));
+        for (int z = zoomStart; z <= zoomStop; z++) {
+            properties.setProperty(BOUNDS_PREFIX + z, formatLongs(bounds[z - zoomStart]));
+        }
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            properties.setProperty(PARAMETER_PREFIX + parameter.getKey(), parameter.getValue());
+        }
+        properties.setProperty(
+                "metaTilingFactors", metaTilingFactors[0] + "," + metaTilingFactors[1]);
+        properties.setProperty("threadCount", String.valueOf(threadCount));
+        properties.setProperty("filterUpdate", String.valueOf(filterUpdate));
+        properties.setProperty("chunkCount", String.valueOf(chunkCount));
+        properties.setProperty("tilesTotal", String.valueOf(tilesTotal));
+        properties.setProperty("completedChunks", String.valueOf(completedChunks));
+        properties.setProperty("tilesDone", String.valueOf(tilesDone));
+        properties.setProperty("lastUpdate", String.valueOf(lastUpdate));
+        return properties;
+    }
+
+    private static String formatLongs(long[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (long value : values) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    private static long[] parseLongs(String value) {
+        return Arrays.stream(value.split(",")).mapToLong(v -> Long.parseLong(v.trim())).toArray();
+    }
+
+    /** Rebuilds the tile range being seeded */
+    public TileRange toTileRange() throws GeoWebCacheException {
+        MimeType mimeType = null;
+        if (format != null) {
+            try {
+                mimeType = MimeType.createFromFormat(format);
+            } catch (MimeException e) {
+                throw new GeoWebCacheException(e);
+            }
+        }
+        long[][] rangeBounds = new long[bounds.length][];
+        for (int i = 0; i < bounds.length; i++) {
+            rangeBounds[i] = bounds[i].clone();
+        }
+        return new TileRange(
+                layerName,
+                gridSetId,
+                zoomStart,
+                zoomStop,
+                rangeBounds,
+                mimeType,
+                parameters.isEmpty() ? null : new HashMap<>(parameters));
+    }
+
+    /** Records the progress of the job */
+    void update(long completedChunks, long tilesDone) {
+        this.completedChunks = completedChunks;
+        this.tilesDone = tilesDone;
+        this.lastUpdate = System.currentTimeMillis();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public TYPE getType() {
+        return type;
+    }
+
+    public String getLayerName() {
+        return layerName;
+    }
+
+    public String getGridSetId() {
+        return gridSetId;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int getZoomStart() {
+        return zoomStart;
+    }
+
+    public int getZoomStop() {
+        return zoomStop;
+    }
+
+    public Map<String, String> getParameters() {
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    public int[] getMetaTilingFactors() {
+        return metaTilingFactors.clone();
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public boolean isFilterUpdate() {
+        return filterUpdate;
+    }
+
+    /** @return the number of chunks the tile range was split into */
+    public long getChunkCount() {
+        return chunkCount;
+    }
+
+    /** @return the number of chunks, from the start of the range, already seeded */
+    public long getCompletedChunks() {
+        return completedChunks;
+    }
+
+    /** @return total number of tiles of the job, or < 0 if too many to count */
+    public long getTilesTotal() {
+        return tilesTotal;
+    }
+
+    /** @return the number of tiles in the completed chunks */
+    public long getTilesDone() {
+        return tilesDone;
+    }
+
+    /** @return when the checkpoint was last updated, in milliseconds since the epoch */
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    @Override
+    public String toString() {
+        return "["
+                + jobId
+                + ": "
+                + layerName
+                + ", "
+                + type
+                + ", "
+                + tilesDone
+                + "/"
+                + tilesTotal
+                + " tiles]";
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.config.ConfigurationException;
+import org.geowebcache.storage.DefaultStorageFinder;
+
+/**
+ * Keeps the {@link SeedCheckpoint seed checkpoints} as property files in the {@code seeding}
+ * directory of the cache, one per job.
+ */
+public class SeedCheckpointStore {
+
+    private static final Log log = LogFactory.getLog(SeedCheckpointStore.class);
+
+    static final String DIRECTORY = "seeding";
+
+    static final String EXTENSION = ".properties";
+
+    private final File directory;
+
+    public SeedCheckpointStore(DefaultStorageFinder storageFinder) throws ConfigurationException {
+        this(new File(storageFinder.getDefaultPath(), DIRECTORY));
+    }
+
+    public SeedCheckpointStore(File directory) {
+        this.directory = directory;
+    }
+
+    /** Writes the checkpoint, replacing atomically the previous version if any */
+    public synchronized void save(SeedCheckpoint checkpoint) throws IOException {
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        File file = getFile(checkpoint.getJobId());
+        File tmp = new File(directory, checkpoint.getJobId() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp.toPath())) {
+            checkpoint
+                    .toProperties()
+                    .store(os, "Checkpoint of seed job on layer " + checkpoint.getLayerName());
+        }
+        Files.move(
+                tmp.toPath(),
+                file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the checkpoint of the given job, or {@code null} if not found or unreadable
+     * @throws IllegalArgumentException if the id is not a job id
+     */
+    public synchronized SeedCheckpoint get(String jobId) {
+        File file = getFile(jobId);
+        if (!file.exists()) {
+            return null;
+        }
+        return read(file);
+    }
+
+    /** @return all the checkpoints, oldest first */
+    public synchronized List<SeedCheckpoint> list() {
+        List<SeedCheckpoint> result = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                SeedCheckpoint checkpoint = read(file);
+                if (checkpoint != null) {
+                    result.add(checkpoint);
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(SeedCheckpoint::getLastUpdate));
+        return result;
+    }
+
+    /**
+     * @return {@code true} if the checkpoint existed and got removed
+     * @throws IllegalArgumentException if the id is not a job id
+     */
+    public synchronized boolean delete(String jobId) {
+        File file = getFile(jobId);
+        return file.exists() && file.delete();
+    }
+
+    /** @return whether the id is a job id, as generated by {@link TileBreeder} */
+    public static boolean isJobId(String jobId) {
+        try {
+            // the canonical form only, as the id makes the file name
+            return jobId != null && UUID.fromString(jobId).toString().equals(jobId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private File getFile(String jobId) {
+        if (!isJobId(jobId)) {
+            throw new IllegalArgumentException("Not a seed job id: " + jobId);
+        }
+        return new File(directory, jobId + EXTENSION);
+    }
+
+    private SeedCheckpoint read(File file) {
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            properties.load(is);
+            return SeedCheckpoint.fromProperties(properties);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Skipping unreadable seed checkpoint " + file, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.storage.TileRangeIterator;
+
+/**
+ * Periodically saves the progress of the tasks of a seed job, sharing the same {@link
+ * TileRangeIterator}, to the {@link SeedCheckpointStore}.
+ *
+ * <p>The checkpoint is removed once the job completes, or when any of its tasks is killed by the
+ * user, and kept when the tasks stop for any other reason (failures, shutdown), so that the job can
+ * be resumed later.
+ */
+class SeedCheckpointer {
+
+    private static final Log log = LogFactory.getLog(SeedCheckpointer.class);
+
+    private final SeedCheckpointStore store;
+
+    private final SeedCheckpoint checkpoint;
+
+    private final TileRangeIterator trIter;
+
+    private final long interval;
+
+    private final Runnable onFinish;
+
+    private final AtomicLong lastSave = new AtomicLong();
+
+    private final AtomicInteger running;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param interval min time between two checkpoints, in milliseconds
+     * @param taskCount the number of tasks sharing the iterator
+     * @param onFinish called once all the tasks are done
+     */
+    SeedCheckpointer(
+            SeedCheckpointStore store,
+            SeedCheckpoint checkpoint,
+            TileRangeIterator trIter,
+            long interval,
+            int taskCount,
+            Runnable onFinish) {
+        this.store = store;
+        this.checkpoint = checkpoint;
+        this.trIter = trIter;
+        this.interval = interval;
+        this.running = new AtomicInteger(taskCount);
+        this.onFinish = onFinish;
+    }
+
+    SeedCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /** Called by the tasks after each meta tile, saves a checkpoint if it is time to */
+    void progress() {
+        final long now = System.currentTimeMillis();
+        final long last = lastSave.get();
+        // only one of the tasks gets to save
+        if (now - last >= interval && lastSave.compareAndSet(last, now)) {
+            save();
+        }
+    }
+
+    /**
+     * Called by each task when it stops
+     *
+     * @param terminated whether the task was killed by the user
+     */
+    void taskFinished(boolean terminated) {
+        if (terminated) {
+            cancelled = true;
+        }
+        if (running.decrementAndGet() > 0) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                if (cancelled || trIter.getCompletedChunks() >= trIter.getChunkCount()) {
+                    store.delete(checkpoint.getJobId());
+                } else {
+                    save();
+                    log.info(
+                            "Seed job "
+                                    + checkpoint
+                                    + " stopped before completion, it can be resumed later");
+                }
+            }
+        } finally {
+            onFinish.run();
+        }
+    }
+
+    private synchronized void save() {
+        long completed = trIter.getCompletedChunks();
+        checkpoint.update(completed, trIter.getTilesBefore(completed));
+        try {
+            store.save(checkpoint);
+        } catch (IOException e) {
+            // not a reason to stop seeding
+            log.warn("Failed to save the checkpoint of seed job " + checkpoint, e);
+        }
+    }
+}
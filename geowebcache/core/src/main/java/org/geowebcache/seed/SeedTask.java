@@ -55,6 +55,8 @@ class SeedTask extends GWCTask {
 
     private AtomicLong sharedFailureCounter;
 
+    private SeedCheckpointer checkpointer;
+
     @VisibleForTesting Sleeper sleeper = Thread::sleep;
 
     /**
@@ -114,16 +116,17 @@ class SeedTask extends GWCTask {
         checkInterrupted();
         // TODO move to TileRange object, or distinguish between thread and task
         super.tilesTotal = tileCount(tr);
-
-        final int metaTilingFactorX = tl.getMetaTilingFactors()[0];
-        final int metaTilingFactorY = tl.getMetaTilingFactors()[1];
+        if (tilesTotal > 0 && trIter.getStartChunk() > 0) {
+            // resumed job, only count what is left
+            super.tilesTotal -= trIter.getTilesBefore(trIter.getStartChunk());
+        }
 
         final boolean tryCache = !reseed;
 
         checkInterrupted();
         long[] gridLoc = trIter.nextMetaGridLocation(new long[3]);
 
-        long seedCalls = 0;
+        long tilesCompletedByThisThread = 0;
         while (gridLoc != null && this.terminate == false) {
 
             checkInterrupted();
@@ -193,17 +196,17 @@ class SeedTask extends GWCTask {
                 log.trace(getThreadName() + " seeded " + Arrays.toString(gridLoc));
             }
 
-            // final long totalTilesCompleted = trIter.getTilesProcessed();
-            // note: computing the # of tiles processed by this thread instead of by the whole group
-            // also reduces thread contention as the trIter methods are synchronized and profiler
-            // shows 16 threads block on synchronization about 40% the time
-            final long tilesCompletedByThisThread =
-                    seedCalls * metaTilingFactorX * metaTilingFactorY;
+            // note: the # of tiles processed by this thread instead of by the whole group, the
+            // meta tiles on the edges of the range are counted only for the tiles in the range
+            tilesCompletedByThisThread += trIter.tilesForMetaGridLocation(gridLoc);
 
             updateStatusInfo(tl, tilesCompletedByThisThread, START_TIME);
 
+            if (checkpointer != null) {
+                checkpointer.progress();
+            }
+
             checkInterrupted();
-            seedCalls++;
             gridLoc = trIter.nextMetaGridLocation(gridLoc);
         }
 
@@ -333,10 +336,18 @@ class SeedTask extends GWCTask {
         this.sharedFailureCounter = sharedFailureCounter;
     }
 
+    /** Sets the checkpointer saving the progress of the job this task is part of */
+    void setCheckpointer(SeedCheckpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
     @Override
     protected void dispose() {
         if (tl instanceof WMSLayer) {
             ((WMSLayer) tl).cleanUpThreadLocals();
         }
+        if (checkpointer != null) {
+            checkpointer.taskFinished(terminate);
+        }
     }
 }
@@ -19,6 +19,7 @@ package org.geowebcache.seed;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -26,6 +27,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -44,6 +47,7 @@ import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.seed.GWCTask.STATE;
 import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.DiscontinuousTileRange;
 import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.TileRangeIterator;
@@ -72,6 +76,9 @@ import org.springframework.context.ApplicationContextAware;
  *       10} and you launch a seed task with four threads, when {@code 10} failures are reached by
  *       all or any of those four threads the four threads will abort the seeding task. The default
  *       is {@code 1000}.
+ *   <li>{@code GWC_SEED_CHECKPOINT_INTERVAL}: specifies how often, in seconds, seed jobs save their
+ *       progress when a {@link SeedCheckpointStore} is configured, so that they can be resumed
+ *       after a restart. Use {@code 0} to disable checkpoints. Defaults to {@code 60}.
  * </ul>
  *
  * These environment variables can be established by any of the following ways, in order of
@@ -103,6 +110,8 @@ public class TileBreeder implements ApplicationContextAware {
 
     private static final String GWC_SEED_RETRY_COUNT = "GWC_SEED_RETRY_COUNT";
 
+    private static final String GWC_SEED_CHECKPOINT_INTERVAL = "GWC_SEED_CHECKPOINT_INTERVAL";
+
     private static Log log = LogFactory.getLog(TileBreeder.class);
 
     private ThreadPoolExecutor threadPool;
@@ -123,6 +132,14 @@ public class TileBreeder implements ApplicationContextAware {
      */
     private long totalFailuresBeforeAborting = 1000;
 
+    /** How often (in milliseconds) seed jobs save their progress, 0 means never */
+    private long checkpointInterval = 60 * 1000;
+
+    private SeedCheckpointStore checkpointStore;
+
+    /** The checkpointers of the jobs running in this instance, by job id */
+    private final Map<String, SeedCheckpointer> runningJobs = new ConcurrentHashMap<>();
+
     private Map<Long, SubmittedTask> currentPool = new TreeMap<Long, SubmittedTask>();
 
     private AtomicLong currentId = new AtomicLong();
@@ -156,14 +173,18 @@ public class TileBreeder implements ApplicationContextAware {
         String retryCount = GWCVars.findEnvVar(applicationContext, GWC_SEED_RETRY_COUNT);
         String retryWait = GWCVars.findEnvVar(applicationContext, GWC_SEED_RETRY_WAIT);
         String abortLimit = GWCVars.findEnvVar(applicationContext, GWC_SEED_ABORT_LIMIT);
+        String checkpoint = GWCVars.findEnvVar(applicationContext, GWC_SEED_CHECKPOINT_INTERVAL);
 
         tileFailureRetryCount = (int) toLong(GWC_SEED_RETRY_COUNT, retryCount, 0);
         tileFailureRetryWaitTime = toLong(GWC_SEED_RETRY_WAIT, retryWait, 100);
         totalFailuresBeforeAborting = toLong(GWC_SEED_ABORT_LIMIT, abortLimit, 1000);
+        long checkpointSeconds = toLong(GWC_SEED_CHECKPOINT_INTERVAL, checkpoint, 60);
 
         checkPositive(tileFailureRetryCount, GWC_SEED_RETRY_COUNT);
         checkPositive(tileFailureRetryWaitTime, GWC_SEED_RETRY_WAIT);
         checkPositive(totalFailuresBeforeAborting, GWC_SEED_ABORT_LIMIT);
+        checkPositive(checkpointSeconds, GWC_SEED_CHECKPOINT_INTERVAL);
+        checkpointInterval = checkpointSeconds * 1000;
     }
 
     @SuppressWarnings("serial")
@@ -250,13 +271,50 @@ public class TileBreeder implements ApplicationContextAware {
     public GWCTask[] createTasks(
             TileRange tr, TileLayer tl, GWCTask.TYPE type, int threadCount, boolean filterUpdate)
             throws GeoWebCacheException {
+        return createTasks(tr, tl, type, threadCount, filterUpdate, null);
+    }
+
+    private GWCTask[] createTasks(
+            TileRange tr,
+            TileLayer tl,
+            GWCTask.TYPE type,
+            int threadCount,
+            boolean filterUpdate,
+            SeedCheckpoint resumed)
+            throws GeoWebCacheException {
 
         if (threadCount < 1) {
             log.trace("Forcing thread count to 1");
             threadCount = 1;
         }
 
-        TileRangeIterator trIter = new TileRangeIterator(tr, tl.getMetaTilingFactors());
+        final int[] metaTilingFactors = tl.getMetaTilingFactors();
+        TileRangeIterator trIter =
+                new TileRangeIterator(
+                        tr, metaTilingFactors, resumed == null ? 0 : resumed.getCompletedChunks());
+
+        SeedCheckpointer checkpointer = null;
+        if (resumed != null) {
+            if (resumed.getChunkCount() != trIter.getChunkCount()) {
+                throw new GeoWebCacheException(
+                        "Cannot resume seed job "
+                                + resumed.getJobId()
+                                + ", the tile range does not match the checkpoint anymore");
+            }
+            checkpointer = createCheckpointer(resumed, trIter, threadCount);
+        } else if (isCheckpointable(tr, type)) {
+            SeedCheckpoint checkpoint =
+                    new SeedCheckpoint(
+                            UUID.randomUUID().toString(),
+                            type,
+                            tr,
+                            metaTilingFactors,
+                            threadCount,
+                            filterUpdate,
+                            trIter.getChunkCount(),
+                            trIter.getTilesBefore(trIter.getChunkCount()));
+            checkpointer = createCheckpointer(checkpoint, trIter, threadCount);
+        }
 
         GWCTask[] tasks = new GWCTask[threadCount];
 
@@ -272,6 +330,7 @@ public class TileBreeder implements ApplicationContextAware {
                         tileFailureRetryWaitTime,
                         totalFailuresBeforeAborting,
                         failureCounter);
+                task.setCheckpointer(checkpointer);
                 tasks[i] = task;
             }
             tasks[i].setThreadInfo(sharedThreadCount, i);
@@ -280,6 +339,107 @@ public class TileBreeder implements ApplicationContextAware {
         return tasks;
     }
 
+    private boolean isCheckpointable(TileRange tr, GWCTask.TYPE type) {
+        // the raster mask of a discontinuous range is not something we can persist
+        return checkpointStore != null
+                && checkpointInterval > 0
+                && (type == TYPE.SEED || type == TYPE.RESEED)
+                && !(tr instanceof DiscontinuousTileRange);
+    }
+
+    private SeedCheckpointer createCheckpointer(
+            SeedCheckpoint checkpoint, TileRangeIterator trIter, int threadCount)
+            throws GeoWebCacheException {
+        final String jobId = checkpoint.getJobId();
+        SeedCheckpointer checkpointer =
+                new SeedCheckpointer(
+                        checkpointStore,
+                        checkpoint,
+                        trIter,
+                        checkpointInterval,
+                        threadCount,
+                        () -> runningJobs.remove(jobId));
+        if (runningJobs.putIfAbsent(jobId, checkpointer) != null) {
+            // another resume of the same job won the race
+            throw new GeoWebCacheException("Seed job " + jobId + " is already running");
+        }
+        return checkpointer;
+    }
+
+    /**
+     * Returns the seed jobs that were stopped before completion, e.g. by a restart or by too many
+     * failures, and can be resumed with {@link #resume(String)}. Empty if no {@link
+     * SeedCheckpointStore} is configured.
+     */
+    public List<SeedCheckpoint> getInterruptedJobs() {
+        if (checkpointStore == null) {
+            return Collections.emptyList();
+        }
+        List<SeedCheckpoint> result = new ArrayList<>();
+        for (SeedCheckpoint checkpoint : checkpointStore.list()) {
+            if (!runningJobs.containsKey(checkpoint.getJobId())) {
+                result.add(checkpoint);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resumes an interrupted seed job, seeding only the part of the tile range that was not
+     * completed yet
+     *
+     * @param jobId the job identifier, as found in {@link #getInterruptedJobs()}
+     * @throws GeoWebCacheException if the job is not found, already running, or the layer changed
+     *     in ways that make the checkpoint unusable
+     */
+    public void resume(String jobId) throws GeoWebCacheException {
+        if (!SeedCheckpointStore.isJobId(jobId)) {
+            throw new GeoWebCacheException("Not a seed job id: " + jobId);
+        }
+        SeedCheckpoint checkpoint = checkpointStore == null ? null : checkpointStore.get(jobId);
+        if (checkpoint == null) {
+            throw new GeoWebCacheException("No interrupted seed job found with id " + jobId);
+        }
+        if (runningJobs.containsKey(jobId)) {
+            // checked again when registering the job, in case of concurrent resumes
+            throw new GeoWebCacheException("Seed job " + jobId + " is already running");
+        }
+        TileLayer tl = findTileLayer(checkpoint.getLayerName());
+        if (!Arrays.equals(tl.getMetaTilingFactors(), checkpoint.getMetaTilingFactors())) {
+            throw new GeoWebCacheException(
+                    "Cannot resume seed job "
+                            + jobId
+                            + ", the meta tiling factors of layer "
+                            + tl.getName()
+                            + " changed since it was started");
+        }
+        TileRange tr = checkpoint.toTileRange();
+        log.info("Resuming seed job " + checkpoint);
+        GWCTask[] tasks =
+                createTasks(
+                        tr,
+                        tl,
+                        checkpoint.getType(),
+                        checkpoint.getThreadCount(),
+                        checkpoint.isFilterUpdate(),
+                        checkpoint);
+        dispatchTasks(tasks);
+    }
+
+    /**
+     * Forgets about an interrupted seed job
+     *
+     * @return {@code true} if the job was found and discarded
+     */
+    public boolean discardInterruptedJob(String jobId) {
+        if (checkpointStore == null
+                || !SeedCheckpointStore.isJobId(jobId)
+                || runningJobs.containsKey(jobId)) {
+            return false;
+        }
+        return checkpointStore.delete(jobId);
+    }
+
     /**
      * Dispatches tasks
      *
@@ -505,6 +665,26 @@ public class TileBreeder implements ApplicationContextAware {
         return storageBroker;
     }
 
+    /**
+     * Sets the store for the seed job checkpoints, enabling resumable seed jobs. Interrupted jobs
+     * found in the store are logged, and can then be resumed with {@link #resume(String)}.
+     */
+    public void setCheckpointStore(SeedCheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+        List<SeedCheckpoint> interrupted = getInterruptedJobs();
+        if (!interrupted.isEmpty()) {
+            log.info(
+                    "Found "
+                            + interrupted.size()
+                            + " interrupted seed jobs that can be resumed: "
+                            + interrupted);
+        }
+    }
+
+    public SeedCheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
     /**
      * Find a layer by name.
      *
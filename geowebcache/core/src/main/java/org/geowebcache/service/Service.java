@@ -15,9 +15,6 @@
 package org.geowebcache.service;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.geowebcache.GeoWebCacheException;
@@ -26,6 +23,8 @@ import org.geowebcache.conveyor.ConveyorTile;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.stats.RuntimeStats;
+import org.geowebcache.util.ResponseUtils;
+import org.geowebcache.util.SendFileSupport;
 import org.geowebcache.util.ServletUtils;
 
 /** One of the services exposed by GeoWebCache, for example TMS, WMTS, KML, ... */
@@ -33,6 +32,8 @@ public abstract class Service {
 
     private String pathName = null;
 
+    private SendFileSupport sendFileSupport = SendFileSupport.fromProperties();
+
     public Service(String pathName) {
         this.pathName = pathName;
     }
@@ -50,6 +51,21 @@ public abstract class Service {
         return pathName;
     }
 
+    /** @return the servlet container sendfile support used to write the tiles */
+    protected SendFileSupport getSendFileSupport() {
+        return sendFileSupport;
+    }
+
+    /**
+     * Set how tiles stored as files are handed over to the servlet container, by default as
+     * configured by the {@link SendFileSupport#GEOWEBCACHE_SENDFILE} properties.
+     *
+     * @param sendFileSupport
+     */
+    public void setSendFileSupport(SendFileSupport sendFileSupport) {
+        this.sendFileSupport = sendFileSupport;
+    }
+
     // TODO these should be renamed / removed
     public Conveyor getConveyor(HttpServletRequest request, HttpServletResponse response)
             throws GeoWebCacheException, OWSException {
@@ -102,6 +118,16 @@ public abstract class Service {
             boolean writeExpiration,
             RuntimeStats stats,
             String mimeTypeOverride) {
+        writeTileResponse(conv, writeExpiration, stats, mimeTypeOverride, null);
+    }
+
+    /** @param sendFile the servlet container sendfile support, may be {@code null} */
+    protected static void writeTileResponse(
+            ConveyorTile conv,
+            boolean writeExpiration,
+            RuntimeStats stats,
+            String mimeTypeOverride,
+            SendFileSupport sendFile) {
         HttpServletResponse response = conv.servletResp;
         Resource data = conv.getBlob();
 
@@ -131,9 +157,7 @@ public abstract class Service {
         response.setContentLength(size);
 
         try {
-            OutputStream os = response.getOutputStream();
-            WritableByteChannel channel = Channels.newChannel(os);
-            data.transferTo(channel);
+            ResponseUtils.writeResource(sendFile, conv.servletReq, response, data);
 
             if (stats != null) {
                 stats.log(size, conv.getCacheResult());
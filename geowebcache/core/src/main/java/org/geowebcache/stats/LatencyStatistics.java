@@ -0,0 +1,81 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.stats;
+
+import java.io.Serializable;
+
+/** Summary of a {@link LatencyHistogram}, all the latencies are in microseconds. */
+public class LatencyStatistics implements Serializable {
+
+    private static final long serialVersionUID = 4137393580233454452L;
+
+    /** Number of latencies recorded */
+    private long count;
+
+    /** Mean latency */
+    private double mean;
+
+    /** Median latency */
+    private long p50;
+
+    private long p90;
+
+    private long p99;
+
+    private long p999;
+
+    /** Highest latency */
+    private long max;
+
+    public LatencyStatistics() {}
+
+    public LatencyStatistics(LatencyHistogram.Snapshot snapshot) {
+        this.count = snapshot.getCount();
+        this.mean = snapshot.getMean();
+        this.p50 = snapshot.getValueAtPercentile(50);
+        this.p90 = snapshot.getValueAtPercentile(90);
+        this.p99 = snapshot.getValueAtPercentile(99);
+        this.p999 = snapshot.getValueAtPercentile(99.9);
+        this.max = snapshot.getMax();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+}
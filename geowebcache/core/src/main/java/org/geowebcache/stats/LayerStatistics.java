@@ -0,0 +1,97 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.stats;
+
+import java.io.Serializable;
+
+/**
+ * Tile request statistics of a layer through a service, as collected by {@link RuntimeStats}.
+ *
+ * <p>Hit and miss latencies go from the moment the tile is looked up to the moment the response is
+ * written, backend latencies are the time spent waiting for the backend on misses.
+ */
+public class LayerStatistics implements Serializable {
+
+    private static final long serialVersionUID = -6393838405767302231L;
+
+    private String layer;
+
+    private String service;
+
+    /** Tiles served from the cache */
+    private long hits;
+
+    /** Tiles generated on request */
+    private long misses;
+
+    /** Percentage of the tiles served from the cache */
+    private double hitRatio;
+
+    private LatencyStatistics hitLatency;
+
+    private LatencyStatistics missLatency;
+
+    private LatencyStatistics backendLatency;
+
+    public LayerStatistics() {}
+
+    public LayerStatistics(
+            String layer,
+            String service,
+            LatencyStatistics hitLatency,
+            LatencyStatistics missLatency,
+            LatencyStatistics backendLatency) {
+        this.layer = layer;
+        this.service = service;
+        this.hits = hitLatency.getCount();
+        this.misses = missLatency.getCount();
+        this.hitRatio = hits + misses == 0 ? 0 : (hits * 100.0) / (hits + misses);
+        this.hitLatency = hitLatency;
+        this.missLatency = missLatency;
+        this.backendLatency = backendLatency;
+    }
+
+    public String getLayer() {
+        return layer;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        return hitRatio;
+    }
+
+    public LatencyStatistics getHitLatency() {
+        return hitLatency;
+    }
+
+    public LatencyStatistics getMissLatency() {
+        return missLatency;
+    }
+
+    public LatencyStatistics getBackendLatency() {
+        return backendLatency;
+    }
+}
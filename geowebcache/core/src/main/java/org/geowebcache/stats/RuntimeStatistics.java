@@ -0,0 +1,100 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.stats;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Snapshot of the {@link RuntimeStats} counters, for machine readable reports. */
+public class RuntimeStatistics implements Serializable {
+
+    private static final long serialVersionUID = 2868187519364592876L;
+
+    /** Time the statistics started being collected, in milliseconds since the epoch */
+    private long startTime;
+
+    /** Requests and bytes accounted for, up to the last poll interval */
+    private long totalRequests;
+
+    private long totalBytes;
+
+    private long totalHits;
+
+    private long totalMisses;
+
+    /** Untiled WMS requests */
+    private long totalWMS;
+
+    private List<LayerStatistics> layers = new ArrayList<>();
+
+    /** Counters of the storage broker transient cache, {@code null} if there is none */
+    private TransientCacheStatistics transientCache;
+
+    public RuntimeStatistics() {}
+
+    public RuntimeStatistics(
+            long startTime,
+            long totalRequests,
+            long totalBytes,
+            long totalHits,
+            long totalMisses,
+            long totalWMS,
+            List<LayerStatistics> layers) {
+        this.startTime = startTime;
+        this.totalRequests = totalRequests;
+        this.totalBytes = totalBytes;
+        this.totalHits = totalHits;
+        this.totalMisses = totalMisses;
+        this.totalWMS = totalWMS;
+        this.layers = layers;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getTotalRequests() {
+        return totalRequests;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public long getTotalMisses() {
+        return totalMisses;
+    }
+
+    public long getTotalWMS() {
+        return totalWMS;
+    }
+
+    public List<LayerStatistics> getLayers() {
+        return layers;
+    }
+
+    public TransientCacheStatistics getTransientCache() {
+        return transientCache;
+    }
+
+    public void setTransientCache(TransientCacheStatistics transientCache) {
+        this.transientCache = transientCache;
+    }
+}
@@ -15,12 +15,25 @@
 package org.geowebcache.stats;
 
 import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.conveyor.Conveyor.CacheResult;
 import org.geowebcache.util.ServletUtils;
 
+/**
+ * Collects the tile requests statistics.
+ *
+ * <p>Requests are counted in {@link LongAdder}s and their latencies in {@link LatencyHistogram}s
+ * per layer and service, so that logging a request takes no lock. The counters are aggregated every
+ * poll interval by a background thread.
+ */
 public class RuntimeStats {
     private static Log log = LogFactory.getLog(RuntimeStats.class);
 
@@ -33,9 +46,9 @@ public class RuntimeStats {
 
     final String[] intervalDescs;
 
-    int curBytes = 0;
+    final LongAdder curBytes = new LongAdder();
 
-    int curRequests = 0;
+    final LongAdder curRequests = new LongAdder();
 
     long peakBytesTime = 0;
 
@@ -49,11 +62,15 @@ public class RuntimeStats {
 
     long totalRequests = 0;
 
-    long totalHits;
+    final LongAdder totalHits = new LongAdder();
 
-    long totalMisses;
+    final LongAdder totalMisses = new LongAdder();
 
-    long totalWMS;
+    final LongAdder totalWMS = new LongAdder();
+
+    /** Latencies by layer name, then by service name */
+    final ConcurrentMap<String, ConcurrentMap<String, LayerLatencies>> latencies =
+            new ConcurrentHashMap<>();
 
     final int[] bytes;
 
@@ -125,6 +142,11 @@ public class RuntimeStats {
         statsThread.start();
     }
 
+    /** @return {@code true} if the statistics are being collected */
+    public boolean isStarted() {
+        return statsThread != null;
+    }
+
     public void destroy() {
         if (this.statsThread != null) {
             statsThread.run = false;
@@ -137,30 +159,98 @@ public class RuntimeStats {
 
     public void log(int size, CacheResult cacheResult) {
         if (this.statsThread != null) {
-            synchronized (bytes) {
-                curBytes += size;
-                curRequests += 1;
-
-                if (cacheResult == CacheResult.HIT) {
-                    totalHits++;
-                } else if (cacheResult == CacheResult.MISS) {
-                    totalMisses++;
-                } else if (cacheResult == CacheResult.WMS) {
-                    totalWMS++;
-                }
+            curBytes.add(size);
+            curRequests.increment();
+
+            if (cacheResult == CacheResult.HIT) {
+                totalHits.increment();
+            } else if (cacheResult == CacheResult.MISS) {
+                totalMisses.increment();
+            } else if (cacheResult == CacheResult.WMS) {
+                totalWMS.increment();
             }
         }
     }
 
-    protected int[] popIntervalData() {
-        synchronized (bytes) {
-            int[] ret = {curBytes, curRequests};
+    /**
+     * Records the latency of a tile request. Only cache hits and misses are recorded.
+     *
+     * @param layerName the layer of the tile
+     * @param serviceName the service the tile was requested through
+     * @param cacheResult whether the tile was found in the cache
+     * @param latency time taken to look up and write the tile, in nanoseconds
+     * @param backendTime time spent waiting for the backend, in nanoseconds
+     */
+    public void logLatency(
+            String layerName,
+            String serviceName,
+            CacheResult cacheResult,
+            long latency,
+            long backendTime) {
+        if (this.statsThread == null
+                || layerName == null
+                || serviceName == null
+                || (cacheResult != CacheResult.HIT && cacheResult != CacheResult.MISS)) {
+            return;
+        }
+        LayerLatencies layerLatencies = layerLatencies(layerName, serviceName);
+        if (cacheResult == CacheResult.HIT) {
+            layerLatencies.hits.recordNanos(latency);
+        } else {
+            layerLatencies.misses.recordNanos(latency);
+            if (backendTime > 0) {
+                layerLatencies.backend.recordNanos(backendTime);
+            }
+        }
+    }
 
-            curBytes = 0;
-            curRequests = 0;
+    private LayerLatencies layerLatencies(String layerName, String serviceName) {
+        // look up before computing, computeIfAbsent locks even when the key is present
+        ConcurrentMap<String, LayerLatencies> byService = latencies.get(layerName);
+        if (byService == null) {
+            byService = latencies.computeIfAbsent(layerName, k -> new ConcurrentHashMap<>());
+        }
+        LayerLatencies layerLatencies = byService.get(serviceName);
+        if (layerLatencies == null) {
+            layerLatencies = byService.computeIfAbsent(serviceName, k -> new LayerLatencies());
+        }
+        return layerLatencies;
+    }
 
-            return ret;
+    /** @return a snapshot of the counters, with the statistics of each layer and service */
+    public RuntimeStatistics getStatistics() {
+        List<LayerStatistics> layers = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentMap<String, LayerLatencies>> layer :
+                latencies.entrySet()) {
+            for (Map.Entry<String, LayerLatencies> service : layer.getValue().entrySet()) {
+                LayerLatencies layerLatencies = service.getValue();
+                layers.add(
+                        new LayerStatistics(
+                                layer.getKey(),
+                                service.getKey(),
+                                new LatencyStatistics(layerLatencies.hits.snapshot()),
+                                new LatencyStatistics(layerLatencies.misses.snapshot()),
+                                new LatencyStatistics(layerLatencies.backend.snapshot())));
+            }
         }
+        layers.sort(
+                Comparator.comparing(LayerStatistics::getLayer)
+                        .thenComparing(LayerStatistics::getService));
+        synchronized (bytes) {
+            return new RuntimeStatistics(
+                    startTime,
+                    totalRequests,
+                    totalBytes,
+                    totalHits.sum(),
+                    totalMisses.sum(),
+                    totalWMS.sum(),
+                    layers);
+        }
+    }
+
+    protected int[] popIntervalData() {
+        int[] ret = {(int) curBytes.sumThenReset(), (int) curRequests.sumThenReset()};
+        return ret;
     }
 
     public String getHTMLStats() {
@@ -168,6 +258,10 @@ public class RuntimeStats {
 
         StringBuilder str = new StringBuilder();
 
+        final long totalHits = this.totalHits.sum();
+        final long totalMisses = this.totalMisses.sum();
+        final long totalWMS = this.totalWMS.sum();
+
         str.append("<table border=\"0\" cellspacing=\"5\" class=\"stats\">");
 
         synchronized (bytes) {
@@ -385,6 +479,16 @@ public class RuntimeStats {
         }
     }
 
+    /** Latencies of the tiles of a layer requested through a service */
+    static class LayerLatencies {
+
+        final LatencyHistogram hits = new LatencyHistogram();
+
+        final LatencyHistogram misses = new LatencyHistogram();
+
+        final LatencyHistogram backend = new LatencyHistogram();
+    }
+
     private class RuntimeStatsThread extends Thread {
 
         final RuntimeStats stats;
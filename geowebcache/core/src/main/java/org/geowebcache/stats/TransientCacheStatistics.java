@@ -0,0 +1,70 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.stats;
+
+import java.io.Serializable;
+import org.geowebcache.storage.TransientCache;
+
+/** Snapshot of the {@link TransientCache} counters, holding the meta tile parts not stored. */
+public class TransientCacheStatistics implements Serializable {
+
+    private static final long serialVersionUID = -6240417365385735207L;
+
+    /** Tiles retrieved from the cache */
+    private long hits;
+
+    /** Tiles not found in the cache, or found expired */
+    private long misses;
+
+    /** Tiles removed because they expired or to make room */
+    private long evictions;
+
+    /** Tiles currently cached */
+    private int tiles;
+
+    /** Bytes currently cached */
+    private long storage;
+
+    public TransientCacheStatistics() {}
+
+    public TransientCacheStatistics(
+            long hits, long misses, long evictions, int tiles, long storage) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.tiles = tiles;
+        this.storage = storage;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getTiles() {
+        return tiles;
+    }
+
+    public long getStorage() {
+        return storage;
+    }
+}
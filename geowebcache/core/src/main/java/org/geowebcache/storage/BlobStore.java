@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.commons.logging.Log;
@@ -108,6 +109,32 @@ public interface BlobStore {
      */
     public boolean get(TileObject obj) throws StorageException;
 
+    /** Value returned by {@link #getCreationTimes(List)} for the tiles not found in the store */
+    public static final long NOT_STORED = -1;
+
+    /**
+     * Checks which of the given tiles are stored, without fetching their contents. Meant for
+     * batches of neighbouring tiles, like the ones of a meta tile, that stores can usually look up
+     * with less round trips than fetching them one by one.
+     *
+     * <p>The default implementation calls {@link #get(TileObject)} on each tile, stores should
+     * override it with a cheaper lookup.
+     *
+     * @param tiles the tiles to look up, only their coordinates, format, grid set and parameters
+     *     are used
+     * @return for each tile, in the same order, its creation time, {@code 0} if the tile is stored
+     *     but its creation time is unknown, or {@link #NOT_STORED}
+     * @throws StorageException
+     */
+    public default long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        long[] result = new long[tiles.size()];
+        for (int i = 0; i < result.length; i++) {
+            TileObject tile = tiles.get(i);
+            result[i] = get(tile) ? Math.max(0, tile.getCreated()) : NOT_STORED;
+        }
+        return result;
+    }
+
     /**
      * Store blob. Calls getBlob() on passed object, does not modify the object.
      *
@@ -116,6 +143,46 @@ public interface BlobStore {
      */
     public void put(TileObject obj) throws StorageException;
 
+    /**
+     * Retrieves a tile without waiting for the storage round trip, for the stores backed by a non
+     * blocking client.
+     *
+     * <p>The default implementation calls {@link #get(TileObject)} on the calling thread.
+     *
+     * @return a future completing with {@literal true} if the tile was found, or exceptionally with
+     *     a {@link StorageException}
+     */
+    public default CompletableFuture<Boolean> getAsync(TileObject obj) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        try {
+            future.complete(get(obj));
+        } catch (StorageException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Stores a tile without waiting for the storage round trip, so that a single thread can keep
+     * several uploads in flight. Stores may block the caller while too many requests are in flight.
+     * The future may complete on a storage client thread, dependent stages should not block.
+     *
+     * <p>The default implementation calls {@link #put(TileObject)} on the calling thread.
+     *
+     * @return a future completing once the tile is stored, or exceptionally with a {@link
+     *     StorageException}
+     */
+    public default CompletableFuture<Void> putAsync(TileObject obj) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            put(obj);
+            future.complete(null);
+        } catch (StorageException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * Wipes the entire storage. Should only be invoked during testing.
      *
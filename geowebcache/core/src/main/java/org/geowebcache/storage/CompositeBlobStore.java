@@ -17,13 +17,21 @@ package org.geowebcache.storage;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.logging.Log;
@@ -33,6 +41,7 @@ import org.geowebcache.GeoWebCacheExtensions;
 import org.geowebcache.config.*;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
+import org.geowebcache.layer.TileLayerDispatcherListener;
 import org.geowebcache.locks.LockProvider;
 import org.geowebcache.storage.blobstore.file.FileBlobStore;
 
@@ -50,9 +59,16 @@ import org.geowebcache.storage.blobstore.file.FileBlobStore;
  * <p>At construction time, {@link BlobStore} instances will be created for all {@link
  * BlobStoreInfo#isEnabled() enabled} configs.
  *
+ * <p>The blob stores and the store each layer was routed to are kept in an immutable snapshot,
+ * replaced as a whole when a blob store or a layer is changed through the {@link
+ * BlobStoreAggregator} or the {@link TileLayerDispatcher}, so that tile operations neither lock nor
+ * look up the layer again. A layer whose {@link TileLayer#getBlobStoreId() blob store id} has been
+ * changed in place is routed again on its next use.
+ *
  * @since 1.8
  */
-public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationListener {
+public class CompositeBlobStore
+        implements BlobStore, BlobStoreConfigurationListener, TileLayerDispatcherListener {
 
     static final String GEOWEBCACHE_BLOBSTORE_SUITABILITY_CHECK =
             "GEOWEBCACHE_BLOBSTORE_SUITABILITY_CHECK";
@@ -61,7 +77,8 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
 
     public static final String DEFAULT_STORE_DEFAULT_ID = "_DEFAULT_STORE_";
 
-    @VisibleForTesting Map<String, LiveStore> blobStores = new ConcurrentHashMap<>();
+    /** The current blob stores and layer routes, replaced on configuration changes */
+    private volatile Routing routing = new Routing(Collections.emptyMap());
 
     private TileLayerDispatcher layers;
 
@@ -71,8 +88,6 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
 
     private LockProvider lockProvider;
 
-    private final ReadWriteLock configLock = new ReentrantReadWriteLock();
-
     private final BlobStoreListenerList listeners = new BlobStoreListenerList();
 
     @VisibleForTesting
@@ -88,6 +103,43 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         }
     }
 
+    /** Immutable snapshot of the blob stores, with the routes of the layers resolved against it */
+    private static final class Routing {
+
+        /**
+         * Live stores by blob store id, including {@link
+         * CompositeBlobStore#DEFAULT_STORE_DEFAULT_ID}
+         */
+        final Map<String, LiveStore> stores;
+
+        /** Routes by layer name, filled as layers are used */
+        final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+
+        Routing(Map<String, LiveStore> stores) {
+            this.stores = Collections.unmodifiableMap(stores);
+        }
+    }
+
+    /** The store a layer is routed to, as long as its blob store id does not change */
+    private static final class Route {
+
+        final TileLayer layer;
+
+        final String blobStoreId;
+
+        final LiveStore store;
+
+        Route(TileLayer layer, String blobStoreId, LiveStore store) {
+            this.layer = layer;
+            this.blobStoreId = blobStoreId;
+            this.store = store;
+        }
+
+        boolean isValid() {
+            return Objects.equals(blobStoreId, layer.getBlobStoreId());
+        }
+    }
+
     public static enum StoreSuitabilityCheck {
         /** Don't check the persistence content of new stores */
         NONE,
@@ -150,11 +202,18 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         // Disable suitability checks when loading during startup.
         storeSuitability.set(StoreSuitabilityCheck.NONE);
         try {
-            this.blobStores = loadBlobStores(blobStoreAggregator.getBlobStores());
+            this.routing = new Routing(loadBlobStores(blobStoreAggregator.getBlobStores()));
         } finally {
             storeSuitability.set(oldCheck);
         }
         blobStoreAggregator.addListener(this);
+        layers.addListener(this);
+    }
+
+    /** @return the current live stores by blob store id, not to be modified */
+    @VisibleForTesting
+    Map<String, LiveStore> blobStores() {
+        return routing.stores;
     }
 
     @Override
@@ -182,11 +241,45 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         return readFunctionUnsafe(() -> store(obj.getLayerName()).get(obj));
     }
 
+    @Override
+    public long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        if (tiles.isEmpty()) {
+            return new long[0];
+        }
+        final String layerName = tiles.get(0).getLayerName();
+        if (tiles.stream().allMatch(t -> layerName.equals(t.getLayerName()))) {
+            return readFunctionUnsafe(() -> store(layerName).getCreationTimes(tiles));
+        }
+        return BlobStore.super.getCreationTimes(tiles);
+    }
+
     @Override
     public void put(TileObject obj) throws StorageException {
         readActionUnsafe(() -> store(obj.getLayerName()).put(obj));
     }
 
+    @Override
+    public CompletableFuture<Boolean> getAsync(TileObject obj) {
+        try {
+            return readFunctionUnsafe(() -> store(obj.getLayerName()).getAsync(obj));
+        } catch (StorageException e) {
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(TileObject obj) {
+        try {
+            return readFunctionUnsafe(() -> store(obj.getLayerName()).putAsync(obj));
+        } catch (StorageException e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
     @Deprecated
     @Override
     public void clear() throws StorageException {
@@ -195,20 +288,25 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
 
     @Override
     public synchronized void destroy() {
-        destroy(blobStores);
+        Map<String, LiveStore> stores = routing.stores;
+        routing = new Routing(Collections.emptyMap());
+        destroy(stores);
     }
 
     private void destroy(Map<String, LiveStore> blobStores) {
         for (LiveStore bs : blobStores.values()) {
-            try {
-                if (bs.config.isEnabled()) {
-                    bs.liveInstance.destroy();
-                }
-            } catch (Exception e) {
-                log.error("Error disposing BlobStore " + bs.config.getName(), e);
+            if (bs.config.isEnabled()) {
+                destroy(bs);
             }
         }
-        blobStores.clear();
+    }
+
+    private void destroy(LiveStore bs) {
+        try {
+            bs.liveInstance.destroy();
+        } catch (Exception e) {
+            log.error("Error disposing BlobStore " + bs.config.getName(), e);
+        }
     }
 
     /** Adds the listener to all enabled blob stores */
@@ -219,7 +317,7 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
                     this.listeners.addListener(
                             listener); // save it for later in case setBlobStores is
                     // called
-                    for (LiveStore bs : blobStores.values()) {
+                    for (LiveStore bs : routing.stores.values()) {
                         if (bs.config.isEnabled()) {
                             bs.liveInstance.addListener(listener);
                         }
@@ -233,7 +331,7 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         return readFunction(
                 () -> {
                     this.listeners.removeListener(listener);
-                    return blobStores
+                    return routing.stores
                             .values()
                             .stream()
                             .filter(bs -> bs.config.isEnabled())
@@ -249,7 +347,7 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
     public boolean rename(String oldLayerName, String newLayerName) throws StorageException {
         return readFunctionUnsafe(
                 () -> {
-                    for (LiveStore bs : blobStores.values()) {
+                    for (LiveStore bs : routing.stores.values()) {
                         BlobStoreInfo config = bs.config;
                         if (config.isEnabled()) {
                             if (bs.liveInstance.rename(oldLayerName, newLayerName)) {
@@ -278,7 +376,7 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
     public boolean layerExists(String layerName) {
         return readFunction(
                 () ->
-                        blobStores
+                        routing.stores
                                 .values()
                                 .stream()
                                 .anyMatch(
@@ -308,47 +406,43 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
      * @throws GeoWebCacheException if the layer is not found
      */
     private LiveStore forLayer(String layerName) throws StorageException, GeoWebCacheException {
-        TileLayer layer;
-        try {
-            layer = layers.getTileLayer(layerName);
-        } catch (GeoWebCacheException e) {
-            throw e;
-        }
-        String storeId = layer.getBlobStoreId();
-        LiveStore store;
-        if (null == storeId) {
-            store = defaultStore();
-        } else {
-            store = blobStores.get(storeId);
-        }
-        if (store == null) {
-            throw new StorageException("No BlobStore with id '" + storeId + "' found");
+        final Routing current = this.routing;
+        Route route = current.routes.get(layerName);
+        if (route == null || !route.isValid()) {
+            TileLayer layer = layers.getTileLayer(layerName);
+            String storeId = layer.getBlobStoreId();
+            LiveStore store;
+            if (null == storeId) {
+                store = defaultStore(current.stores);
+            } else {
+                store = current.stores.get(storeId);
+            }
+            if (store == null) {
+                throw new StorageException("No BlobStore with id '" + storeId + "' found");
+            }
+            route = new Route(layer, storeId, store);
+            current.routes.put(layerName, route);
         }
-        return store;
+        return route.store;
     }
 
-    private LiveStore defaultStore() throws StorageException {
-        LiveStore store = blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
+    private LiveStore defaultStore(Map<String, LiveStore> stores) throws StorageException {
+        LiveStore store = stores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
         if (store == null) {
             throw new StorageException("No default BlobStore has been defined");
         }
         return store;
     }
 
-    public void setBlobStores(Iterable<? extends BlobStoreInfo> configs)
+    public synchronized void setBlobStores(Iterable<? extends BlobStoreInfo> configs)
             throws StorageException, ConfigurationException {
-        configLock.writeLock().lock();
-        try {
-            Map<String, LiveStore> newStores = loadBlobStores(configs);
-            Map<String, LiveStore> oldStores = this.blobStores;
-            this.blobStores = newStores;
-            for (LiveStore ls : oldStores.values()) {
-                if (ls.liveInstance != null) {
-                    ls.liveInstance.destroy();
-                }
+        Map<String, LiveStore> newStores = loadBlobStores(configs);
+        Map<String, LiveStore> oldStores = this.routing.stores;
+        this.routing = new Routing(newStores);
+        for (LiveStore ls : oldStores.values()) {
+            if (ls.liveInstance != null) {
+                ls.liveInstance.destroy();
             }
-        } finally {
-            configLock.writeLock().unlock();
         }
     }
 
@@ -372,6 +466,11 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         Map<String, LiveStore> stores = new HashMap<>();
 
         try {
+            List<BlobStoreInfo> all = new ArrayList<>();
+            configs.forEach(all::add);
+            boolean legacyDefault = all.stream().noneMatch(BlobStoreInfo::isDefault);
+            checkLocalTiers(all, legacyDefault ? defaultStorageFinder.getDefaultPath() : null);
+
             for (BlobStoreInfo config : configs) {
                 loadBlobStore(stores, config);
             }
@@ -393,7 +492,7 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
             throw e;
         }
 
-        return new ConcurrentHashMap<>(stores);
+        return stores;
     }
 
     /**
@@ -433,7 +532,26 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
 
         BlobStore store = null;
         if (enabled) {
+            if (config.getLocalTier() != null) {
+                List<BlobStoreInfo> others =
+                        stores.values()
+                                .stream()
+                                .map(liveStore -> liveStore.config)
+                                .filter(other -> !id.equals(other.getName()))
+                                .distinct()
+                                .collect(Collectors.toList());
+                others.add(config);
+                checkLocalTiers(others, null);
+            }
             store = config.createInstance(layers, lockProvider);
+            if (config.getLocalTier() != null) {
+                try {
+                    store = config.getLocalTier().createInstance(store);
+                } catch (StorageException | RuntimeException e) {
+                    store.destroy();
+                    throw e;
+                }
+            }
         }
 
         LiveStore liveStore = new LiveStore(config, store);
@@ -458,6 +576,53 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
         return liveStore;
     }
 
+    /**
+     * Checks that no local tier directory overlaps the directory of a file blob store or of another
+     * local tier, as a local tier takes over its directory
+     *
+     * @param configs the blob store configurations
+     * @param defaultPath the directory of the legacy default store, {@code null} if not used
+     * @throws ConfigurationException if a local tier directory overlaps another store directory
+     */
+    private static void checkLocalTiers(List<BlobStoreInfo> configs, @Nullable String defaultPath)
+            throws ConfigurationException {
+        Map<Path, String> directories = new LinkedHashMap<>();
+        if (defaultPath != null) {
+            directories.put(normalize(defaultPath), "the default cache directory");
+        }
+        for (BlobStoreInfo config : configs) {
+            if (config instanceof FileBlobStoreInfo) {
+                String baseDirectory = ((FileBlobStoreInfo) config).getBaseDirectory();
+                if (baseDirectory != null) {
+                    directories.put(normalize(baseDirectory), "blob store " + config.getName());
+                }
+            }
+        }
+        for (BlobStoreInfo config : configs) {
+            LocalTierInfo localTier = config.getLocalTier();
+            if (localTier == null || localTier.getBaseDirectory() == null) {
+                continue;
+            }
+            Path directory = normalize(localTier.getBaseDirectory());
+            for (Map.Entry<Path, String> other : directories.entrySet()) {
+                if (directory.startsWith(other.getKey()) || other.getKey().startsWith(directory)) {
+                    throw new ConfigurationException(
+                            "The local tier directory of blob store "
+                                    + config.getName()
+                                    + " overlaps the directory of "
+                                    + other.getValue()
+                                    + ": "
+                                    + localTier.getBaseDirectory());
+                }
+            }
+            directories.put(directory, "the local tier of blob store " + config.getName());
+        }
+    }
+
+    private static Path normalize(String directory) {
+        return Paths.get(directory).toAbsolutePath().normalize();
+    }
+
     @Override
     public boolean deleteByParametersId(String layerName, String parametersId)
             throws StorageException {
@@ -486,12 +651,8 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
     }
 
     protected <T> T readFunctionUnsafe(StorageAccessor<T> function) throws StorageException {
-        configLock.readLock().lock();
-        try {
-            return function.get();
-        } finally {
-            configLock.readLock().unlock();
-        }
+        // no locking, the function works on the current routing snapshot
+        return function.get();
     }
 
     protected <T> T readFunction(StorageAccessor<T> function) {
@@ -525,18 +686,21 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
     }
 
     @Override
-    public void handleAddBlobStore(BlobStoreInfo newBlobStore)
+    public synchronized void handleAddBlobStore(BlobStoreInfo newBlobStore)
             throws ConfigurationException, StorageException {
+        Map<String, LiveStore> blobStores = new HashMap<>(routing.stores);
         if (newBlobStore.isDefault()) {
             loadBlobStoreOverwritingDefault(blobStores, newBlobStore);
         } else {
             loadBlobStore(blobStores, newBlobStore);
         }
+        publish(blobStores);
     }
 
     @Override
-    public void handleRemoveBlobStore(BlobStoreInfo removedBlobStore)
+    public synchronized void handleRemoveBlobStore(BlobStoreInfo removedBlobStore)
             throws ConfigurationException, StorageException {
+        Map<String, LiveStore> blobStores = new HashMap<>(routing.stores);
         if (removedBlobStore
                 .getName()
                 .equals(blobStores.get(DEFAULT_STORE_DEFAULT_ID).config.getName())) {
@@ -544,64 +708,106 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
                     "The default blob store can't be removed: " + removedBlobStore.getName());
         }
         blobStores.remove(removedBlobStore.getName());
+        publish(blobStores);
     }
 
     @Override
-    public void handleModifyBlobStore(BlobStoreInfo modifiedBlobStore)
+    public synchronized void handleModifyBlobStore(BlobStoreInfo modifiedBlobStore)
             throws ConfigurationException, StorageException {
-        LiveStore removedStore = blobStores.remove(modifiedBlobStore.getName());
-        try {
-            if (modifiedBlobStore.isDefault()
-                    && !modifiedBlobStore
-                            .getName()
-                            .equals(blobStores.get(DEFAULT_STORE_DEFAULT_ID).config.getName())) {
-                loadBlobStoreOverwritingDefault(blobStores, modifiedBlobStore);
-            } else {
-                loadBlobStore(blobStores, modifiedBlobStore);
-            }
-        } catch (StorageException | ConfigurationException e) {
-            blobStores.put(modifiedBlobStore.getName(), removedStore);
-            throw e;
+        Map<String, LiveStore> blobStores = new HashMap<>(routing.stores);
+        blobStores.remove(modifiedBlobStore.getName());
+        if (modifiedBlobStore.isDefault()
+                && !modifiedBlobStore
+                        .getName()
+                        .equals(blobStores.get(DEFAULT_STORE_DEFAULT_ID).config.getName())) {
+            loadBlobStoreOverwritingDefault(blobStores, modifiedBlobStore);
+        } else {
+            loadBlobStore(blobStores, modifiedBlobStore);
         }
+        publish(blobStores);
     }
 
     @Override
-    public void handleRenameBlobStore(String oldName, BlobStoreInfo modifiedBlobStore)
+    public synchronized void handleRenameBlobStore(String oldName, BlobStoreInfo modifiedBlobStore)
             throws ConfigurationException, StorageException {
-        LiveStore removedStore = blobStores.remove(oldName);
-        try {
-            if (modifiedBlobStore.isDefault()) {
-                BlobStoreInfo oldConfig = blobStores.get(DEFAULT_STORE_DEFAULT_ID).config;
-                // This was already the default
-                if (oldName.equals(oldConfig.getName()) || modifiedBlobStore.equals(oldConfig)) {
-                    // Make sure the BlobStoreInfo names match, loadBlobStore will handle setting
-                    // the default BlobStore
-                    try {
-                        blobStores.get(DEFAULT_STORE_DEFAULT_ID).config = modifiedBlobStore;
-                        loadBlobStore(blobStores, modifiedBlobStore);
-                    } catch (StorageException | ConfigurationException e) {
-                        blobStores.get(DEFAULT_STORE_DEFAULT_ID).config = oldConfig;
-                        throw e;
-                    }
-                } else {
-                    // This should probably not happen
-                    log.warn("Changing default blobstore during rename, this should not happen");
-                    loadBlobStoreOverwritingDefault(blobStores, modifiedBlobStore);
+        Map<String, LiveStore> blobStores = new HashMap<>(routing.stores);
+        blobStores.remove(oldName);
+        if (modifiedBlobStore.isDefault()) {
+            LiveStore oldDefault = blobStores.get(DEFAULT_STORE_DEFAULT_ID);
+            BlobStoreInfo oldConfig = oldDefault.config;
+            // This was already the default
+            if (oldName.equals(oldConfig.getName()) || modifiedBlobStore.equals(oldConfig)) {
+                if (!modifiedBlobStore.isEnabled()) {
+                    throw new ConfigurationException(
+                            "The default blob store can't be disabled: "
+                                    + modifiedBlobStore.getName());
                 }
-            } else {
+                // Make sure the BlobStoreInfo names match, loadBlobStore will handle setting
+                // the default BlobStore
+                blobStores.put(
+                        DEFAULT_STORE_DEFAULT_ID,
+                        new LiveStore(modifiedBlobStore, oldDefault.liveInstance));
                 loadBlobStore(blobStores, modifiedBlobStore);
+            } else {
+                // This should probably not happen
+                log.warn("Changing default blobstore during rename, this should not happen");
+                loadBlobStoreOverwritingDefault(blobStores, modifiedBlobStore);
             }
-        } catch (StorageException | ConfigurationException e) {
-            blobStores.put(oldName, removedStore);
-            throw e;
+        } else {
+            loadBlobStore(blobStores, modifiedBlobStore);
         }
+        publish(blobStores);
+    }
+
+    /** Publishes the blob stores snapshot, then destroys the live instances it replaced */
+    private void publish(Map<String, LiveStore> blobStores) {
+        Map<String, LiveStore> previous = routing.stores;
+        routing = new Routing(blobStores);
+        Set<BlobStore> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (LiveStore store : blobStores.values()) {
+            instances.add(store.liveInstance);
+        }
+        // the default store is registered under two ids, destroy each instance once
+        for (LiveStore store : previous.values()) {
+            if (store.liveInstance != null && instances.add(store.liveInstance)) {
+                destroy(store);
+            }
+        }
+    }
+
+    @Override
+    public void handleAddLayer(TileLayer layer) {
+        invalidateRoutes();
+    }
+
+    @Override
+    public void handleRemoveLayer(String layerName) {
+        invalidateRoutes();
+    }
+
+    @Override
+    public void handleModifyLayer(TileLayer layer) {
+        invalidateRoutes();
+    }
+
+    @Override
+    public void handleRenameLayer(String oldName, String newName) {
+        invalidateRoutes();
+    }
+
+    /**
+     * Drops the layer routes. A new snapshot is published rather than clearing the routes, so that
+     * a route resolved against the layer before the change can't be added back.
+     */
+    private synchronized void invalidateRoutes() {
+        routing = new Routing(routing.stores);
     }
 
     /**
      * Sets the old default blob store to no longer be the default, and adds a new blob store as the
      * default.
      *
-     * <p>1) Removes DEFAULT_STORE_DEFAULT_ID from blobStores 2) Calls {@link #loadBlobStore(Map,
+     * <p>1) Removes DEFAULT_STORE_DEFAULT_ID from stores 2) Calls {@link #loadBlobStore(Map,
      * BlobStoreInfo)} 3) Calls setDefault(false) on the config of the old default LiveStore, then
      * saves this modified config via the aggregator 4) If anything goes wrong, reverts these
      * changes
@@ -609,7 +815,7 @@ public class CompositeBlobStore implements BlobStore, BlobStoreConfigurationList
      * <p>THIS METHOD SHOULD ONLY BE CALLED IF THE CONFIG ARGUMENT HAS <code>default=true</code> AND
      * WAS NOT ALREADY THE DEFAULT BLOB STORE.
      *
-     * @param stores The blobStores map to update
+     * @param stores The copy of the blob stores map to update
      * @param config The new default blob store
      * @throws StorageException
      * @throws ConfigurationException
@@ -0,0 +1,119 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+
+/**
+ * Fast, non cryptographic hash of the tile contents, used as a strong ETag so that tiles whose
+ * contents did not change after a reseed still validate.
+ *
+ * <p>Enabled by setting the {@link #GEOWEBCACHE_CONTENT_ETAGS} property to {@code true}, each blob
+ * store and dispatcher reading it when created. Blob stores able to keep metadata along with the
+ * tiles then record the hash when the tile is stored and set it back with {@link
+ * TileObject#setContentHash(String)} when the tile is read. Tiles served straight from a file, as
+ * the ones of the file blob store, get a token of their size and modification time rather than
+ * being read once more, see {@link #of(long, long)}. For the other stores the hash is computed when
+ * the tile is served.
+ */
+public final class ContentHash {
+
+    /**
+     * Set to {@code true} to serve the content hash of the tiles as ETag for the layers using
+     * ETags, instead of their timestamp
+     */
+    public static final String GEOWEBCACHE_CONTENT_ETAGS = "GEOWEBCACHE_CONTENT_ETAGS";
+
+    /** 64 bit FarmHash, as fast as xxHash64 and with a stable output across Guava versions */
+    private static final HashFunction FUNCTION = Hashing.farmHashFingerprint64();
+
+    private final boolean enabled;
+
+    /** @param enabled whether the tile content hashes are recorded and served as ETags */
+    public ContentHash(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** @return the content hashing configured by the {@link #GEOWEBCACHE_CONTENT_ETAGS} property */
+    public static ContentHash fromProperties() {
+        return new ContentHash(
+                Boolean.parseBoolean(GeoWebCacheExtensions.getProperty(GEOWEBCACHE_CONTENT_ETAGS)));
+    }
+
+    /** @return {@code true} if the tile content hashes are recorded and served as ETags */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** @return the hash of the contents, as 16 hexadecimal characters */
+    public static String of(byte[] contents) {
+        return FUNCTION.hashBytes(contents).toString();
+    }
+
+    /** @return the hash of the resource contents, as 16 hexadecimal characters */
+    public static String of(Resource resource) throws IOException {
+        if (resource instanceof ByteArrayResource) {
+            return of(((ByteArrayResource) resource).getContents());
+        }
+        Hasher hasher = FUNCTION.newHasher();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = resource.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                hasher.putBytes(buffer, 0, read);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Sets the content hash of the tile if enabled and not known yet, for the blob stores to call
+     * when storing the tile
+     *
+     * @param tile the tile being stored
+     * @param contents the tile contents
+     * @return the tile content hash, {@code null} if not enabled
+     */
+    public String record(TileObject tile, byte[] contents) {
+        if (!enabled) {
+            return null;
+        }
+        if (tile.getContentHash() == null) {
+            tile.setContentHash(of(contents));
+        }
+        return tile.getContentHash();
+    }
+
+    /**
+     * Same as {@link #record(TileObject, byte[])}, streaming the resource contents through the hash
+     * function rather than requiring them in memory
+     */
+    public String record(TileObject tile, Resource contents) throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        if (tile.getContentHash() == null) {
+            tile.setContentHash(of(contents));
+        }
+        return tile.getContentHash();
+    }
+}
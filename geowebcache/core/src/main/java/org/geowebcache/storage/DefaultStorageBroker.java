@@ -14,12 +14,15 @@
  */
 package org.geowebcache.storage;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.TileLayer;
+import org.geowebcache.stats.TransientCacheStatistics;
 
 /**
  * Handles cacheable objects (tiles, wfs responses) both in terms of data storage and metadata
@@ -81,11 +84,21 @@ public class DefaultStorageBroker implements StorageBroker {
         return blobStore.get(tileObj);
     }
 
+    @Override
+    public long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        return blobStore.getCreationTimes(tiles);
+    }
+
     public boolean put(TileObject tileObj) throws StorageException {
         blobStore.put(tileObj);
         return true;
     }
 
+    @Override
+    public CompletableFuture<Void> putAsync(TileObject tileObj) {
+        return blobStore.putAsync(tileObj);
+    }
+
     public void destroy() {
         log.info("Destroying StorageBroker");
     }
@@ -99,20 +112,18 @@ public class DefaultStorageBroker implements StorageBroker {
     }
 
     public boolean getTransient(TileObject tile) {
-        String key = TransientCache.computeTransientKey(tile);
-        Resource resource;
-        synchronized (transientCache) {
-            resource = transientCache.get(key);
-        }
+        Resource resource = transientCache.get(tile);
         tile.setBlob(resource);
         return resource != null;
     }
 
     public void putTransient(TileObject tile) {
-        String key = TransientCache.computeTransientKey(tile);
-        synchronized (transientCache) {
-            transientCache.put(key, tile.getBlob());
-        }
+        transientCache.put(tile);
+    }
+
+    @Override
+    public TransientCacheStatistics getTransientCacheStatistics() {
+        return transientCache.getStatistics();
     }
 
     /**
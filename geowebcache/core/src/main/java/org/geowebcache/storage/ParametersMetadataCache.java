@@ -0,0 +1,89 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Write-once record of the parameters metadata objects a blob store already holds, for the object
+ * store backed blob stores that write the parameters of a tile along with it, so that they don't
+ * rewrite the same object on every tile put.
+ *
+ * <p>The parameters ids of a layer are listed from the store the first time the layer is looked up,
+ * then kept up to date by the blob store calling {@link #stored(String, String)} after writing the
+ * metadata and {@link #invalidate(String, String)} or {@link #invalidate(String)} when deleting.
+ */
+public class ParametersMetadataCache {
+
+    private static Log log = LogFactory.getLog(ParametersMetadataCache.class);
+
+    private final Function<String, Collection<String>> lister;
+
+    private final ConcurrentMap<String, Set<String>> known = new ConcurrentHashMap<>();
+
+    /** @param lister lists the ids of the parameters metadata objects stored for a layer */
+    public ParametersMetadataCache(Function<String, Collection<String>> lister) {
+        this.lister = lister;
+    }
+
+    /**
+     * @return {@code true} if the metadata of the parameters is known to be stored, {@code false}
+     *     if it has to be written
+     */
+    public boolean isStored(String layerName, String parametersId) {
+        Set<String> ids = known.get(layerName);
+        if (ids == null) {
+            Set<String> listed = ConcurrentHashMap.newKeySet();
+            try {
+                listed.addAll(lister.apply(layerName));
+            } catch (RuntimeException e) {
+                // not fatal, the metadata objects just get written once more
+                log.warn("Unable to list the parameters metadata of layer " + layerName, e);
+            }
+            ids = known.putIfAbsent(layerName, listed);
+            if (ids == null) {
+                ids = listed;
+            }
+        }
+        return ids.contains(parametersId);
+    }
+
+    /** Records the metadata of the parameters has been written */
+    public void stored(String layerName, String parametersId) {
+        Set<String> ids = known.get(layerName);
+        if (ids != null) {
+            ids.add(parametersId);
+        }
+    }
+
+    /** Forgets about the metadata of the parameters, to be called when deleting them */
+    public void invalidate(String layerName, String parametersId) {
+        Set<String> ids = known.get(layerName);
+        if (ids != null) {
+            ids.remove(parametersId);
+        }
+    }
+
+    /** Forgets about all the metadata of the layer, to be listed again on the next lookup */
+    public void invalidate(String layerName) {
+        known.remove(layerName);
+    }
+}
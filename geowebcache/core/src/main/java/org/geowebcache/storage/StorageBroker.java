@@ -14,9 +14,13 @@
  */
 package org.geowebcache.storage;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
 import org.geowebcache.layer.TileLayer;
+import org.geowebcache.stats.TransientCacheStatistics;
 
 /** Abstracts and manages the storing of cachable objects and their metadata. */
 public interface StorageBroker {
@@ -71,6 +75,20 @@ public interface StorageBroker {
      */
     boolean get(TileObject tileObj) throws StorageException;
 
+    /**
+     * Checks which of the given tiles are stored, without fetching their contents
+     *
+     * @see BlobStore#getCreationTimes(List)
+     */
+    default long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        long[] result = new long[tiles.size()];
+        for (int i = 0; i < result.length; i++) {
+            TileObject tile = tiles.get(i);
+            result[i] = get(tile) ? Math.max(0, tile.getCreated()) : BlobStore.NOT_STORED;
+        }
+        return result;
+    }
+
     /**
      * Puts the given TileObject into storage
      *
@@ -80,6 +98,22 @@ public interface StorageBroker {
      */
     boolean put(TileObject tileObj) throws StorageException;
 
+    /**
+     * Puts the given TileObject into storage without waiting for the storage round trip
+     *
+     * @see BlobStore#putAsync(TileObject)
+     */
+    default CompletableFuture<Void> putAsync(TileObject tileObj) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            put(tileObj);
+            future.complete(null);
+        } catch (StorageException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /** Destroy method for Spring */
     void destroy();
 
@@ -105,6 +139,12 @@ public interface StorageBroker {
 
     void putTransient(TileObject tile);
 
+    /** @return the counters of the cache used by the transient methods, if any */
+    @Nullable
+    default TransientCacheStatistics getTransientCacheStatistics() {
+        return null;
+    }
+
     /**
      * Get the set of parameter IDs cached for the given layer
      *
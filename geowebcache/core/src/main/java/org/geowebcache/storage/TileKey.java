@@ -0,0 +1,214 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.geowebcache.filter.parameters.ParametersUtils;
+
+/**
+ * Immutable key of a tile in the in memory caches and indexes, with the tile coordinates as
+ * primitives and a precomputed hash code.
+ *
+ * <p>The parameters are identified by their id, as computed by {@link ParametersUtils#getId(Map)},
+ * so that keys built from a {@link TileObject} match those built from the {@link BlobStoreListener}
+ * events. The id is only computed for tiles with parameters that did not go through a {@link
+ * BlobStore} yet, and only once per distinct set of parameters, as computing it takes a SHA-1
+ * digest. It is then set on the tile so that the blob stores do not compute it again.
+ *
+ * <p>Keys looked up reference the fields of the {@link TileObject} they are built from, keys stored
+ * use interned names so that the many keys of the same layer share them.
+ */
+public final class TileKey {
+
+    private static final Interner<String> NAMES = Interners.newWeakInterner();
+
+    /** The ids of the recently seen parameters, layers usually use only a handful of them */
+    private static final Cache<Map<String, String>, String> PARAMETERS_IDS =
+            CacheBuilder.newBuilder().maximumSize(1024).build();
+
+    private final String layerName;
+
+    private final String gridSetId;
+
+    private final String format;
+
+    private final String parametersId;
+
+    private final long x;
+
+    private final long y;
+
+    private final long z;
+
+    private final int hash;
+
+    public TileKey(
+            String layerName,
+            String gridSetId,
+            String format,
+            String parametersId,
+            long x,
+            long y,
+            long z) {
+        this.layerName = layerName;
+        this.gridSetId = gridSetId;
+        this.format = format;
+        this.parametersId = parametersId;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        int h = Objects.hashCode(layerName);
+        h = 31 * h + Objects.hashCode(gridSetId);
+        h = 31 * h + Objects.hashCode(format);
+        h = 31 * h + Objects.hashCode(parametersId);
+        h = 31 * h + Long.hashCode(x);
+        h = 31 * h + Long.hashCode(y);
+        h = 31 * h + Long.hashCode(z);
+        this.hash = h;
+    }
+
+    /** @return a key for looking up the tile, sharing the tile fields */
+    public static TileKey lookup(TileObject obj) {
+        long[] xyz = obj.getXYZ();
+        return new TileKey(
+                obj.getLayerName(),
+                obj.getGridSetId(),
+                obj.getBlobFormat(),
+                parametersId(obj),
+                xyz[0],
+                xyz[1],
+                xyz[2]);
+    }
+
+    /** @return a key for storing the tile, with interned names */
+    public static TileKey store(TileObject obj) {
+        long[] xyz = obj.getXYZ();
+        return new TileKey(
+                intern(obj.getLayerName()),
+                intern(obj.getGridSetId()),
+                intern(obj.getBlobFormat()),
+                intern(parametersId(obj)),
+                xyz[0],
+                xyz[1],
+                xyz[2]);
+    }
+
+    private static String parametersId(TileObject obj) {
+        String parametersId = obj.getParametersId();
+        Map<String, String> parameters = obj.getParameters();
+        if (parametersId == null && parameters != null && !parameters.isEmpty()) {
+            parametersId = PARAMETERS_IDS.getIfPresent(parameters);
+            if (parametersId == null) {
+                parametersId = ParametersUtils.getId(parameters);
+                PARAMETERS_IDS.put(
+                        Collections.unmodifiableMap(new HashMap<>(parameters)), parametersId);
+            }
+            obj.setParametersId(parametersId);
+        }
+        return parametersId;
+    }
+
+    private static String intern(String name) {
+        return name == null ? null : NAMES.intern(name);
+    }
+
+    /**
+     * @param parameters the parameters of the tile, if known
+     * @return a tile object to look the tile up in a blob store
+     */
+    public TileObject toTileObject(Map<String, String> parameters) {
+        TileObject obj =
+                TileObject.createQueryTileObject(
+                        layerName, new long[] {x, y, z}, gridSetId, format, parameters);
+        obj.setParametersId(parametersId);
+        return obj;
+    }
+
+    public String getLayerName() {
+        return layerName;
+    }
+
+    public String getGridSetId() {
+        return gridSetId;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /** @return the id of the tile parameters, {@code null} if there are none */
+    public String getParametersId() {
+        return parametersId;
+    }
+
+    public long getX() {
+        return x;
+    }
+
+    public long getY() {
+        return y;
+    }
+
+    public long getZ() {
+        return z;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TileKey)) {
+            return false;
+        }
+        TileKey other = (TileKey) obj;
+        return hash == other.hash
+                && x == other.x
+                && y == other.y
+                && z == other.z
+                && Objects.equals(layerName, other.layerName)
+                && Objects.equals(gridSetId, other.gridSetId)
+                && Objects.equals(format, other.format)
+                && Objects.equals(parametersId, other.parametersId);
+    }
+
+    @Override
+    public String toString() {
+        return layerName
+                + ", "
+                + gridSetId
+                + ", ["
+                + x
+                + ", "
+                + y
+                + ", "
+                + z
+                + "], "
+                + format
+                + (parametersId == null ? "" : ", " + parametersId);
+    }
+}
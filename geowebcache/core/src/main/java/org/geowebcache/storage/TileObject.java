@@ -43,6 +43,8 @@ public class TileObject extends StorageObject implements Serializable {
 
     String gridSetId;
 
+    String contentHash;
+
     public static TileObject createQueryTileObject(
             String layerName,
             long[] xyz,
@@ -100,6 +102,8 @@ public class TileObject extends StorageObject implements Serializable {
         }
 
         this.blob = blob;
+        // the stores set it back after the blob
+        this.contentHash = null;
     }
 
     public String getGridSetId() {
@@ -140,6 +144,19 @@ public class TileObject extends StorageObject implements Serializable {
         return parameters;
     }
 
+    /**
+     * May be null if the BlobStore does not record it, see {@link ContentHash}
+     *
+     * @return the hash of the tile contents
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public String getType() {
         return TYPE;
     }
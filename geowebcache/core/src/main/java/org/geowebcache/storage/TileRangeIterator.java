@@ -14,10 +14,30 @@
  */
 package org.geowebcache.storage;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Iterates over the meta tile locations of a {@link TileRange}, can be shared by several threads.
+ *
+ * <p>The range is split in chunks, each one a band of consecutive meta tiles on the same meta tile
+ * row and zoom level. Threads claim the chunks in order with an atomic cursor and then walk them on
+ * their own, so the only point of contention is one atomic increment every {@link
+ * #CHUNK_META_TILES} meta tiles, and a thread done with its chunk just grabs the next one
+ * available. A single thread sees the locations in the same order as a plain row by row, level by
+ * level, scan.
+ *
+ * <p>Chunks are also the unit of progress tracking: {@link #getCompletedChunks()} tells how many
+ * chunks, from the start of the range, have been fully processed, and a new iterator can be told to
+ * start from there to resume an interrupted traversal.
+ */
 public class TileRangeIterator {
 
+    /** Max number of meta tiles in a chunk handed out to a thread */
+    static final int CHUNK_META_TILES = 64;
+
     private final TileRange tr;
 
     private final DiscontinuousTileRange dtr;
@@ -26,11 +46,26 @@ public class TileRangeIterator {
 
     private final int metaY;
 
-    private AtomicLong tilesSkippedCount = new AtomicLong();
+    private final LongAdder tilesSkippedCount = new LongAdder();
 
-    private AtomicLong tilesRenderedCount = new AtomicLong();
+    private final LongAdder tilesRenderedCount = new LongAdder();
 
-    private volatile long[] lastGridLoc;
+    private final long startChunk;
+
+    private final AtomicLong nextChunk;
+
+    /** All the partitions handed out to threads, to compute the completed chunks */
+    private final Queue<Partition> allPartitions = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Partition> partitions =
+            ThreadLocal.withInitial(
+                    () -> {
+                        Partition partition = new Partition();
+                        allPartitions.add(partition);
+                        return partition;
+                    });
+
+    private volatile Chunks chunks;
 
     /**
      * Note that the bounds of the tile range must already be expanded to the meta tile factors for
@@ -40,7 +75,22 @@ public class TileRangeIterator {
      * @param metaTilingFactors
      */
     public TileRangeIterator(TileRange tr, int[] metaTilingFactors) {
+        this(tr, metaTilingFactors, 0);
+    }
+
+    /**
+     * Creates an iterator skipping the first {@code startChunk} chunks of the range, as returned by
+     * {@link #getCompletedChunks()} on a previous iterator over the same range and meta tiling
+     * factors.
+     *
+     * @param tr
+     * @param metaTilingFactors
+     * @param startChunk
+     */
+    public TileRangeIterator(TileRange tr, int[] metaTilingFactors, long startChunk) {
         this.tr = tr;
+        this.startChunk = startChunk;
+        this.nextChunk = new AtomicLong(startChunk);
         this.metaX = metaTilingFactors[0];
         this.metaY = metaTilingFactors[1];
 
@@ -67,63 +117,227 @@ public class TileRangeIterator {
      * <p>If the TileRange object provided is a DiscontinuousTileRange implementation, each location
      * is checked against the filter of that class.
      *
+     * <p>Each calling thread works on its own chunk of the range, see the class javadoc, so the
+     * locations handed out to different threads are interleaved in no specific order.
+     *
      * @param gridLoc as an optimization, re-use the previous gridLoc. It will be changed and used
      *     as the return value. The values passed in will not impact the result. For the first call,
      *     use a new 3 element array.
      * @return {@code null} if there're no more tiles to return, the next grid location in the
      *     iterator otherwise. The array has three elements: {x,y,z}
      */
-    public synchronized long[] nextMetaGridLocation(final long[] gridLoc) {
-        long[] levelBounds;
-        long x;
-        long y;
-        int z;
+    public long[] nextMetaGridLocation(final long[] gridLoc) {
+        final Partition partition = partitions.get();
+        while (true) {
+            if (partition.x > partition.maxX && !claim(partition)) {
+                return null;
+            }
 
-        // Figure out the starting point
-        if (lastGridLoc == null) {
-            z = tr.getZoomStart();
-            levelBounds = tr.rangeBounds(z);
-            x = levelBounds[0];
-            y = levelBounds[1];
+            final Chunks chunks = this.chunks;
+            final long[] levelBounds = chunks.bounds[partition.level];
+            final int z = tr.getZoomStart() + partition.level;
+            while (partition.x <= partition.maxX) {
+                gridLoc[0] = partition.x;
+                gridLoc[1] = partition.y;
+                gridLoc[2] = z;
+                partition.x += metaX;
 
-        } else {
-            z = (int) lastGridLoc[2];
-            levelBounds = tr.rangeBounds(z);
-            x = lastGridLoc[0] + metaX;
-            y = lastGridLoc[1];
+                int tileCount = tilesForLocation(gridLoc, levelBounds);
+
+                if (checkGridLocation(gridLoc)) {
+                    tilesRenderedCount.add(tileCount);
+                    return gridLoc;
+                }
+
+                tilesSkippedCount.add(tileCount);
+            }
         }
+    }
 
-        // Loop over any remaining zoom levels
-        for (; z <= tr.getZoomStop(); z++) {
-            for (; y <= levelBounds[3]; y += metaY) {
-                for (; x <= levelBounds[2]; x += metaX) {
+    /**
+     * Returns the number of tiles of the range covered by the meta tile at the given location, that
+     * is, the full meta tile but for the ones at the right and top edges of the range.
+     *
+     * @param gridLoc a location returned by {@link #nextMetaGridLocation(long[])}
+     */
+    public int tilesForMetaGridLocation(long[] gridLoc) {
+        return tilesForLocation(gridLoc, tr.rangeBounds((int) gridLoc[2]));
+    }
 
-                    gridLoc[0] = x;
-                    gridLoc[1] = y;
-                    gridLoc[2] = z;
+    /**
+     * @return the number of tiles covered by the meta tiles returned so far by {@link
+     *     #nextMetaGridLocation(long[])}, by all threads
+     */
+    public long getTilesRendered() {
+        return tilesRenderedCount.sum();
+    }
 
-                    int tileCount = tilesForLocation(gridLoc, levelBounds);
+    /**
+     * @return the number of tiles covered by the meta tiles skipped so far because outside of a
+     *     {@link DiscontinuousTileRange}
+     */
+    public long getTilesSkipped() {
+        return tilesSkippedCount.sum();
+    }
 
-                    if (checkGridLocation(gridLoc)) {
-                        tilesRenderedCount.addAndGet(tileCount);
-                        lastGridLoc = gridLoc.clone();
-                        return gridLoc;
-                    }
+    /** @return the number of chunks the range is split into */
+    public long getChunkCount() {
+        return getChunks().total;
+    }
+
+    /** @return the chunk this iterator started from */
+    public long getStartChunk() {
+        return startChunk;
+    }
+
+    /**
+     * Returns the number of chunks, from the start of the range, whose meta tiles have all been
+     * processed. A chunk is considered processed when the thread that claimed it asks for a
+     * location past its end, that is, once it is done with the last location of the chunk.
+     *
+     * <p>The result is a low water mark: chunks past it might have been processed already too, by
+     * threads that are faster than the one holding it back.
+     */
+    public long getCompletedChunks() {
+        final Chunks chunks = getChunks();
+        // read the cursor first, threads publish the chunk they are claiming before moving it
+        long completed = Math.min(nextChunk.get(), chunks.total);
+        for (Partition partition : allPartitions) {
+            completed = Math.min(completed, partition.chunk);
+        }
+        return completed;
+    }
+
+    /**
+     * Returns the number of tiles of the range covered by the first {@code chunk} chunks, tiles
+     * filtered out by a {@link DiscontinuousTileRange} included.
+     */
+    public long getTilesBefore(long chunk) {
+        final Chunks chunks = getChunks();
+        long tiles = 0;
+        for (int level = 0; level < chunks.bounds.length && chunks.first[level] < chunk; level++) {
+            final long[] levelBounds = chunks.bounds[level];
+            final long width = 1 + levelBounds[2] - levelBounds[0];
+            final long height = 1 + levelBounds[3] - levelBounds[1];
+            if (width <= 0 || height <= 0) {
+                continue;
+            }
+            if (chunk >= chunks.first[level + 1]) {
+                tiles += width * height;
+                continue;
+            }
+            final long offset = chunk - chunks.first[level];
+            final long rows = offset / chunks.rowChunks[level];
+            final long columns = offset % chunks.rowChunks[level];
+            tiles += Math.min(rows * metaY, height) * width;
+            tiles +=
+                    Math.min(columns * CHUNK_META_TILES * metaX, width)
+                            * Math.min(metaY, height - rows * metaY);
+        }
+        return tiles;
+    }
+
+    /**
+     * Claims the next chunk for the calling thread, and sets the partition to walk it
+     *
+     * @return {@code false} if there are no more chunks
+     */
+    private boolean claim(Partition partition) {
+        final Chunks chunks = getChunks();
+        long chunk;
+        do {
+            chunk = nextChunk.get();
+            if (chunk >= chunks.total) {
+                partition.chunk = Long.MAX_VALUE;
+                return false;
+            }
+            // publish the chunk before claiming it, see getCompletedChunks()
+            partition.chunk = chunk;
+        } while (!nextChunk.compareAndSet(chunk, chunk + 1));
+        // chunks are claimed in increasing order, no need to restart the search from the first
+        // level
+        int level = partition.level;
+        while (chunk >= chunks.first[level + 1]) {
+            level++;
+        }
+        final long offset = chunk - chunks.first[level];
+        final long row = offset / chunks.rowChunks[level];
+        final long column = offset % chunks.rowChunks[level];
+        final long[] levelBounds = chunks.bounds[level];
+
+        partition.level = level;
+        partition.y = levelBounds[1] + row * metaY;
+        partition.x = levelBounds[0] + column * CHUNK_META_TILES * metaX;
+        partition.maxX =
+                Math.min(levelBounds[2], partition.x + (long) (CHUNK_META_TILES - 1) * metaX);
+        return true;
+    }
 
-                    tilesSkippedCount.addAndGet(tileCount);
+    /** Splits the range in chunks on first usage */
+    private Chunks getChunks() {
+        Chunks result = chunks;
+        if (result == null) {
+            synchronized (this) {
+                result = chunks;
+                if (result == null) {
+                    result = new Chunks(tr, metaX, metaY);
+                    chunks = result;
                 }
-                x = levelBounds[0];
             }
+        }
+        return result;
+    }
+
+    /** The layout of the chunks over the zoom levels of the range */
+    private static final class Chunks {
+
+        /** The range bounds, by level */
+        final long[][] bounds;
+
+        /** The number of chunks covering a meta tile row, by level */
+        final long[] rowChunks;
+
+        /** The index of the first chunk of each level, plus the total number of chunks */
+        final long[] first;
+
+        final long total;
 
-            // Get ready for the next level
-            if (z < tr.getZoomStop()) { // but be careful not to go out of index
-                levelBounds = tr.rangeBounds(z + 1);
-                x = levelBounds[0];
-                y = levelBounds[1];
+        Chunks(TileRange tr, int metaX, int metaY) {
+            final int levels = tr.getZoomStop() - tr.getZoomStart() + 1;
+            bounds = new long[levels][];
+            rowChunks = new long[levels];
+            first = new long[levels + 1];
+            for (int i = 0; i < levels; i++) {
+                long[] levelBounds = tr.rangeBounds(tr.getZoomStart() + i);
+                long columns = divideRoundingUp(1 + levelBounds[2] - levelBounds[0], metaX);
+                long rows = divideRoundingUp(1 + levelBounds[3] - levelBounds[1], metaY);
+                bounds[i] = levelBounds;
+                rowChunks[i] = Math.max(1, divideRoundingUp(columns, CHUNK_META_TILES));
+                first[i + 1] = first[i] + (columns == 0 ? 0 : rows * rowChunks[i]);
             }
+            total = first[levels];
         }
 
-        return null;
+        private static long divideRoundingUp(long value, long divisor) {
+            return value <= 0 ? 0 : (value + divisor - 1) / divisor;
+        }
+    }
+
+    /** The chunk a thread is working on */
+    private static final class Partition {
+
+        /** The chunk being processed, {@link Long#MAX_VALUE} if none */
+        volatile long chunk = Long.MAX_VALUE;
+
+        int level;
+
+        long y;
+
+        /** The next column to return */
+        long x = 1;
+
+        /** The last column of the chunk */
+        long maxX = 0;
     }
 
     /**
@@ -17,32 +17,56 @@ package org.geowebcache.storage;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Ticker;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.io.IOUtils;
 import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.mime.MimeType;
+import org.geowebcache.stats.TransientCacheStatistics;
 import org.geowebcache.storage.blobstore.file.FilePathGenerator;
 
 /**
- * Non-thread safe Resource cache. Currently in-memory only.
+ * Thread safe Resource cache. Currently in-memory only.
+ *
+ * <p>Resources are removed from the cache when they are retrieved, when they expire, or when the
+ * maximum number of tiles or storage is reached, the oldest resources being evicted first. The
+ * cache does not lock, resources are kept in a concurrent map and their insertion order in a
+ * concurrent queue.
  *
  * @author Ian Schneider <ischneider@opengeo.org>
  * @author Kevin Smith, Boundless
  */
 public class TransientCache {
 
+    /** Minimum number of removed resources in the insertion queue before sweeping it */
+    private static final int MIN_SWEEP = 64;
+
     private final int maxTiles;
 
-    private final int maxStorage;
+    private final long maxStorage;
 
     private final long expireDelay;
 
-    private long currentStorage;
+    private final AtomicLong currentStorage = new AtomicLong();
+
+    private final AtomicInteger currentTiles = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
 
-    private Ticker ticker = Ticker.systemTicker();
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private volatile Ticker ticker = Ticker.systemTicker();
 
     /**
      * A path generator that uses the key set as its key to build keys suitable for usage in the in
@@ -50,17 +74,17 @@ public class TransientCache {
      */
     private static FilePathGenerator keyGenerator = new FilePathGenerator("");
 
-    private Map<String, CachedResource> cache =
-            new LinkedHashMap<String, CachedResource>() {
+    private final Map<Object, CachedResource> cache = new ConcurrentHashMap<>();
 
-                /** serialVersionUID */
-                private static final long serialVersionUID = -4106644240603796847L;
+    /**
+     * Cached resources, oldest first. May include resources already removed from the cache, whose
+     * content is released, until they reach the head of the queue or are swept.
+     */
+    private final ConcurrentLinkedQueue<CachedResource> insertionOrder =
+            new ConcurrentLinkedQueue<>();
 
-                @Override
-                protected boolean removeEldestEntry(Entry<String, CachedResource> eldest) {
-                    return removeEntries(eldest);
-                }
-            };
+    /** Length of {@link #insertionOrder}, as its size() traverses it */
+    private final AtomicInteger queued = new AtomicInteger();
 
     /**
      * @param maxTiles Maximum number of tiles in cache
@@ -69,7 +93,7 @@ public class TransientCache {
      */
     public TransientCache(int maxTiles, int maxStorageKB, long expireDelay) {
         this.maxTiles = maxTiles;
-        this.maxStorage = maxStorageKB * 1024;
+        this.maxStorage = maxStorageKB * 1024L;
         this.expireDelay = expireDelay;
     }
 
@@ -79,7 +103,7 @@ public class TransientCache {
      * @return
      */
     public int size() {
-        return cache.size();
+        return currentTiles.get();
     }
 
     /**
@@ -88,7 +112,28 @@ public class TransientCache {
      * @return
      */
     public long storageSize() {
-        return currentStorage;
+        return currentStorage.get();
+    }
+
+    /** @return the number of resources retrieved from the cache */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of resources not found in the cache, or found expired */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** @return the number of resources removed because they expired or to make room */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /** @return a snapshot of the cache counters */
+    public TransientCacheStatistics getStatistics() {
+        return new TransientCacheStatistics(
+                getHitCount(), getMissCount(), getEvictionCount(), size(), storageSize());
     }
 
     /**
@@ -98,15 +143,16 @@ public class TransientCache {
      * @param r the resource to cache
      */
     public void put(String key, Resource r) {
-        byte[] buf = new byte[(int) r.getSize()];
-        try {
-            r.getInputStream().read(buf);
-        } catch (IOException ex) {
-            throw new RuntimeException(ex);
-        }
-        CachedResource blob = new CachedResource(new ByteArrayResource(buf));
-        currentStorage += r.getSize();
-        cache.put(key, blob);
+        doPut(key, r);
+    }
+
+    /**
+     * Store the resource of a tile
+     *
+     * @param tile the tile to cache
+     */
+    public void put(TileObject tile) {
+        doPut(TileKey.store(tile), tile.getBlob());
     }
 
     /**
@@ -116,17 +162,53 @@ public class TransientCache {
      * @return The resource cached under the given key, or null if no resource is cached.
      */
     public Resource get(String key) {
-        CachedResource cached = cache.get(key);
-        if (cached != null) {
-            cache.remove(key);
-            currentStorage -= cached.content.getSize();
+        return doGet(key);
+    }
+
+    /**
+     * Retrieve the resource of a tile
+     *
+     * @param tile
+     * @return The resource cached for the tile, or null if no resource is cached.
+     */
+    public Resource get(TileObject tile) {
+        return doGet(TileKey.lookup(tile));
+    }
+
+    private void doPut(Object key, Resource r) {
+        byte[] buf = new byte[(int) r.getSize()];
+        try (InputStream is = r.getInputStream()) {
+            IOUtils.readFully(is, buf);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        long now = currentTime();
+        CachedResource blob = new CachedResource(key, new ByteArrayResource(buf), now);
+        currentStorage.addAndGet(buf.length);
+        currentTiles.incrementAndGet();
+        CachedResource previous = cache.put(key, blob);
+        if (previous != null) {
+            previous.release();
+        }
+        insertionOrder.add(blob);
+        queued.incrementAndGet();
+        removeEntries(now);
+    }
 
+    private Resource doGet(Object key) {
+        CachedResource cached = cache.remove(key);
+        if (cached != null) {
+            // only the thread removing the resource from the map releases it
+            Resource content = cached.content;
+            cached.release();
             if (cached.time + expireDelay < currentTime()) {
-                return null;
+                evictions.increment();
             } else {
-                return cached.content;
+                hits.increment();
+                return content;
             }
         }
+        misses.increment();
         return null;
     }
 
@@ -136,23 +218,54 @@ public class TransientCache {
      * @return
      */
     protected long currentTime() {
-        return ticker.read() / 1000;
+        return TimeUnit.NANOSECONDS.toMillis(ticker.read());
     }
 
-    // Gets called by overridden LinkedHashMap.removeEldestEntry
-    private boolean removeEntries(Entry<String, CachedResource> eldest) {
-        // iterator returns items in order added so oldest items are first
-        Iterator<CachedResource> items = cache.values().iterator();
-        while (items.hasNext() && (currentStorage > maxStorage || cache.size() > maxTiles)) {
-            CachedResource r = items.next();
-            currentStorage -= r.content.getSize();
-            items.remove();
+    /** Removes the expired resources and the oldest ones while over the limits */
+    private void removeEntries(long now) {
+        CachedResource eldest;
+        while ((eldest = insertionOrder.peek()) != null) {
+            if (!eldest.removed.get()) {
+                boolean expired = eldest.time + expireDelay < now;
+                if (!expired && currentStorage.get() <= maxStorage && size() <= maxTiles) {
+                    break;
+                }
+                if (cache.remove(eldest.key, eldest) && eldest.release()) {
+                    evictions.increment();
+                }
+            }
+            // the eldest is at the head of the queue, removing it does not traverse it
+            if (insertionOrder.remove(eldest)) {
+                queued.decrementAndGet();
+            }
+        }
+        // resources retrieved behind a long lived one stay queued, sweep them once they
+        // outnumber the cached ones
+        if (queued.get() - size() > Math.max(size(), MIN_SWEEP)) {
+            for (Iterator<CachedResource> it = insertionOrder.iterator(); it.hasNext(); ) {
+                if (it.next().removed.get()) {
+                    it.remove();
+                    queued.decrementAndGet();
+                }
+            }
         }
-        assert currentStorage <= maxStorage;
-        assert currentStorage >= 0;
-        assert cache.size() <= maxStorage;
+    }
+
+    /** @return the number of resources in the insertion queue, including removed ones */
+    int queueLength() {
+        return queued.get();
+    }
 
-        return false;
+    /** @return the size of the contents referenced by the insertion queue */
+    long queuedStorage() {
+        long storage = 0;
+        for (CachedResource cached : insertionOrder) {
+            Resource content = cached.content;
+            if (content != null) {
+                storage += content.getSize();
+            }
+        }
+        return storage;
     }
 
     public static String computeTransientKey(TileObject tile) {
@@ -165,17 +278,30 @@ public class TransientCache {
     }
 
     private class CachedResource {
-        Resource content;
-        long time;
+        final Object key;
+        final long size;
+        final long time;
+        final AtomicBoolean removed = new AtomicBoolean();
+        /** The cached content, cleared once removed so that queued resources do not retain it */
+        volatile Resource content;
 
-        public CachedResource(Resource content, long time) {
+        public CachedResource(Object key, Resource content, long time) {
             super();
+            this.key = key;
             this.content = content;
+            this.size = content.getSize();
             this.time = time;
         }
 
-        public CachedResource(Resource content) {
-            this(content, currentTime());
+        /** Accounts for the removal of the resource and drops its content, once */
+        boolean release() {
+            if (removed.compareAndSet(false, true)) {
+                content = null;
+                currentStorage.addAndGet(-size);
+                currentTiles.decrementAndGet();
+                return true;
+            }
+            return false;
         }
     }
 
@@ -0,0 +1,388 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.file;
+
+import static org.geowebcache.storage.blobstore.file.FilePathUtils.filteredGridSetId;
+import static org.geowebcache.storage.blobstore.file.FilePathUtils.findZoomLevel;
+import static org.geowebcache.util.FileUtils.listFilesNullSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Striped;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.IntPredicate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.mime.MimeException;
+import org.geowebcache.mime.MimeType;
+import org.geowebcache.storage.DiscontinuousTileRange;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.StorageObject.Status;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.TileRange;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * A {@link FileBlobStore} that packs blocks of {@code bundleSize x bundleSize} tiles into single
+ * {@link TileBundle bundle files} instead of storing each tile in its own file.
+ *
+ * <p>Layers, gridsets, zoom levels and parameters use the same directory layout as the plain file
+ * blob store, so all the layer level operations are inherited. Only the tiles are stored
+ * differently, in files named {@code <bx>_<by>.<extension>.bundle} inside the zoom level
+ * directories. This reduces the number of files and directories by a factor of {@code bundleSize ^
+ * 2}, and allows to truncate tile ranges by dropping whole bundles. The two layouts are not
+ * compatible, tiles stored by a {@link FileBlobStore} are not visible to this blob store and vice
+ * versa.
+ *
+ * <p>Replaced and deleted tiles leave unused space behind in the bundles, which is reclaimed by a
+ * background compaction once it exceeds the {@link #setCompactionThreshold compaction threshold}.
+ *
+ * <p>Tile sizes reported to the {@link org.geowebcache.storage.BlobStoreListener listeners} are the
+ * actual tile sizes, as tiles no longer take whole file system blocks each.
+ */
+public class BundledFileBlobStore extends FileBlobStore {
+
+    private static Log log = LogFactory.getLog(BundledFileBlobStore.class);
+
+    public static final int DEFAULT_BUNDLE_SIZE = 16;
+
+    static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    /** Bundles with less wasted space than this are never compacted */
+    static final long MIN_COMPACTION_WASTE = 256 * 1024;
+
+    private final int bundleSize;
+
+    private final Striped<ReadWriteLock> bundleLocks = Striped.readWriteLock(1024);
+
+    private final Set<File> pendingCompactions = ConcurrentHashMap.newKeySet();
+
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    private ExecutorService compactionExecutorService;
+
+    public BundledFileBlobStore(String rootPath) throws StorageException {
+        this(rootPath, DEFAULT_BUNDLE_SIZE);
+    }
+
+    public BundledFileBlobStore(String rootPath, int bundleSize) throws StorageException {
+        super(rootPath);
+        Preconditions.checkArgument(
+                bundleSize > 0, "bundleSize must be a positive integer: %s", bundleSize);
+        this.bundleSize = bundleSize;
+
+        CustomizableThreadFactory tf;
+        tf = new CustomizableThreadFactory("GWC FileStore bundle compaction thread-");
+        tf.setDaemon(true);
+        tf.setThreadPriority(Thread.MIN_PRIORITY);
+        compactionExecutorService = Executors.newSingleThreadExecutor(tf);
+    }
+
+    /** @return the number of tile columns and rows packed in each bundle */
+    public int getBundleSize() {
+        return bundleSize;
+    }
+
+    /**
+     * Sets the fraction of a bundle's size that can be taken by replaced or deleted tiles before
+     * the bundle gets compacted.
+     *
+     * @param compactionThreshold a value between 0 and 1
+     */
+    public void setCompactionThreshold(double compactionThreshold) {
+        Preconditions.checkArgument(compactionThreshold >= 0 && compactionThreshold <= 1);
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /** Destroy method for Spring */
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (compactionExecutorService != null) {
+            compactionExecutorService.shutdown();
+        }
+    }
+
+    @Override
+    public boolean get(TileObject stObj) throws StorageException {
+        final TileBundle bundle = getBundle(stObj, false);
+        final long[] xyz = stObj.getXYZ();
+        final TileBundle.Tile tile;
+        final Lock lock = bundleLocks.get(bundle.getFile()).readLock();
+        lock.lock();
+        try {
+            tile = bundle.read(bundle.slot(xyz[0], xyz[1]));
+        } catch (IOException e) {
+            throw new StorageException("Error reading tile from " + bundle.getFile(), e);
+        } finally {
+            lock.unlock();
+        }
+        if (tile == null) {
+            stObj.setStatus(Status.MISS);
+            return false;
+        }
+        stObj.setBlob(tile.data);
+        stObj.setCreated(tile.created);
+        stObj.setBlobSize(tile.length);
+        return true;
+    }
+
+    /** Groups the tiles by bundle and reads only the index entries of each bundle, once */
+    @Override
+    public long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        final long[] result = new long[tiles.size()];
+        final Map<File, List<Integer>> byBundle = new LinkedHashMap<>();
+        for (int i = 0; i < result.length; i++) {
+            File bundleFile = getBundle(tiles.get(i), false).getFile();
+            byBundle.computeIfAbsent(bundleFile, f -> new ArrayList<>()).add(i);
+        }
+        for (List<Integer> indexes : byBundle.values()) {
+            final TileBundle bundle = getBundle(tiles.get(indexes.get(0)), false);
+            final int[] slots = new int[indexes.size()];
+            for (int i = 0; i < slots.length; i++) {
+                final long[] xyz = tiles.get(indexes.get(i)).getXYZ();
+                slots[i] = bundle.slot(xyz[0], xyz[1]);
+            }
+            final long[] created;
+            final Lock lock = bundleLocks.get(bundle.getFile()).readLock();
+            lock.lock();
+            try {
+                created = bundle.created(slots);
+            } catch (IOException e) {
+                throw new StorageException("Error reading tile index from " + bundle.getFile(), e);
+            } finally {
+                lock.unlock();
+            }
+            for (int i = 0; i < slots.length; i++) {
+                result[indexes.get(i)] = created[i] < 0 ? NOT_STORED : created[i];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void put(TileObject stObj) throws StorageException {
+        final TileBundle bundle = getBundle(stObj, true);
+        final long[] xyz = stObj.getXYZ();
+        // mark the tile creation time if set, otherwise we'll leave it to the writing time
+        final long created =
+                stObj.getCreated() > 0 ? stObj.getCreated() : System.currentTimeMillis();
+        final long oldSize;
+        final Lock lock = bundleLocks.get(bundle.getFile()).writeLock();
+        lock.lock();
+        try {
+            oldSize = bundle.write(bundle.slot(xyz[0], xyz[1]), stObj.getBlob(), created);
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage() + " for " + bundle.getFile(), e);
+        } finally {
+            lock.unlock();
+        }
+        persistParameterMap(stObj);
+        checkCompaction(bundle);
+
+        if (oldSize >= 0) {
+            listeners.sendTileUpdated(stObj, oldSize);
+        } else {
+            listeners.sendTileStored(stObj);
+        }
+    }
+
+    /** Delete a particular tile */
+    @Override
+    public boolean delete(TileObject stObj) throws StorageException {
+        final TileBundle bundle = getBundle(stObj, false);
+        final long[] xyz = stObj.getXYZ();
+        final int slot = bundle.slot(xyz[0], xyz[1]);
+        final int[] deletedSize = {-1};
+        final Lock lock = bundleLocks.get(bundle.getFile()).writeLock();
+        lock.lock();
+        try {
+            bundle.clear(s -> s == slot, (s, length, created) -> deletedSize[0] = length);
+        } catch (IOException e) {
+            throw new StorageException("Unable to delete tile from " + bundle.getFile(), e);
+        } finally {
+            lock.unlock();
+        }
+        if (deletedSize[0] < 0) {
+            log.trace("delete unexistant tile " + stObj);
+            return false;
+        }
+        checkCompaction(bundle);
+        stObj.setBlobSize(deletedSize[0]);
+        listeners.sendTileDeleted(stObj);
+        return true;
+    }
+
+    /**
+     * Delete tiles within a range. Bundles entirely covered by the range are deleted as a whole,
+     * bundles partially covered get the matching tiles removed from their index.
+     */
+    @Override
+    public boolean delete(TileRange trObj) throws StorageException {
+        final File layerPath = getLayerPath(trObj.getLayerName());
+
+        // If it wasn't there to be deleted,
+        if (!layerPath.exists()) {
+            return true;
+        }
+
+        // We either want to delete it, or stuff within it
+        if (!layerPath.isDirectory() || !layerPath.canWrite()) {
+            throw new StorageException(layerPath + " is not a directory or is not writable.");
+        }
+
+        final String gridsetPrefix = filteredGridSetId(trObj.getGridSetId());
+        final String bundleSuffix =
+                "." + trObj.getMimeType().getFileExtension() + TileBundle.EXTENSION;
+
+        int count = 0;
+        File[] srsZoomDirs = listFilesNullSafe(layerPath, new FilePathFilter(trObj));
+        for (File srsZoomParamId : srsZoomDirs) {
+            final int zoomLevel = findZoomLevel(gridsetPrefix, srsZoomParamId.getName());
+            File[] bundles =
+                    listFilesNullSafe(srsZoomParamId, (dir, name) -> name.endsWith(bundleSuffix));
+            for (File bundleFile : bundles) {
+                count += deleteRange(bundleFile, trObj, zoomLevel);
+            }
+
+            // Try deleting the zoom directory (will be done only if the directory is empty)
+            srsZoomParamId.delete();
+        }
+
+        log.info("Truncated " + count + " tiles");
+
+        return true;
+    }
+
+    private int deleteRange(final File bundleFile, final TileRange trObj, final int zoomLevel)
+            throws StorageException {
+        final String name = bundleFile.getName();
+        final String[] coords = name.substring(0, name.indexOf('.')).split("_");
+        final long minX = Long.parseLong(coords[0]) * bundleSize;
+        final long minY = Long.parseLong(coords[1]) * bundleSize;
+        final long maxX = minX + bundleSize - 1;
+        final long maxY = minY + bundleSize - 1;
+
+        final IntPredicate inRange;
+        if (!(trObj instanceof DiscontinuousTileRange)
+                && trObj.contains(minX, minY, zoomLevel)
+                && trObj.contains(maxX, maxY, zoomLevel)) {
+            // whole bundle covered, drop it
+            inRange = slot -> true;
+        } else {
+            inRange =
+                    slot ->
+                            trObj.contains(
+                                    minX + slot % bundleSize, minY + slot / bundleSize, zoomLevel);
+            boolean intersects = false;
+            for (int slot = 0; slot < bundleSize * bundleSize && !intersects; slot++) {
+                intersects = inRange.test(slot);
+            }
+            if (!intersects) {
+                return 0;
+            }
+        }
+
+        final String layerName = trObj.getLayerName();
+        final String gridSetId = trObj.getGridSetId();
+        final String blobFormat = trObj.getMimeType().getFormat();
+        final String parametersId = trObj.getParametersId();
+
+        final TileBundle bundle = new TileBundle(bundleFile, bundleSize);
+        final Lock lock = bundleLocks.get(bundleFile).writeLock();
+        lock.lock();
+        try {
+            int deleted =
+                    bundle.clear(
+                            inRange,
+                            (slot, length, created) ->
+                                    listeners.sendTileDeleted(
+                                            layerName,
+                                            gridSetId,
+                                            blobFormat,
+                                            parametersId,
+                                            minX + slot % bundleSize,
+                                            minY + slot / bundleSize,
+                                            zoomLevel,
+                                            length));
+            checkCompaction(bundle);
+            return deleted;
+        } catch (IOException e) {
+            throw new StorageException("Unable to delete tiles from " + bundleFile, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TileBundle getBundle(TileObject stObj, boolean create) throws StorageException {
+        final MimeType mimeType;
+        try {
+            mimeType = MimeType.createFromFormat(stObj.getBlobFormat());
+        } catch (MimeException me) {
+            log.error(me.getMessage());
+            throw new RuntimeException(me);
+        }
+
+        final File bundlePath = pathGenerator.bundlePath(stObj, mimeType, bundleSize);
+
+        if (create) {
+            File parent = bundlePath.getParentFile();
+            parent.mkdirs();
+        }
+
+        return new TileBundle(bundlePath, bundleSize);
+    }
+
+    private void checkCompaction(TileBundle bundle) {
+        final long wasted = bundle.getWastedBytes();
+        if (wasted < MIN_COMPACTION_WASTE || wasted < bundle.getFileSize() * compactionThreshold) {
+            return;
+        }
+        final File bundleFile = bundle.getFile();
+        if (pendingCompactions.add(bundleFile)) {
+            compactionExecutorService.submit(
+                    () -> {
+                        try {
+                            compact(bundleFile);
+                        } finally {
+                            pendingCompactions.remove(bundleFile);
+                        }
+                    });
+        }
+    }
+
+    private void compact(File bundleFile) {
+        final Lock lock = bundleLocks.get(bundleFile).writeLock();
+        lock.lock();
+        try {
+            tmp.mkdirs();
+            new TileBundle(bundleFile, bundleSize).compact(tmp);
+        } catch (IOException e) {
+            log.warn("Error compacting tile bundle " + bundleFile, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
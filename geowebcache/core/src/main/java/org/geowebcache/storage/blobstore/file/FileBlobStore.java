@@ -31,11 +31,15 @@ import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -59,6 +63,7 @@ import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.BlobStoreListenerList;
 import org.geowebcache.storage.CompositeBlobStore;
+import org.geowebcache.storage.ContentHash;
 import org.geowebcache.storage.DefaultStorageFinder;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.StorageObject.Status;
@@ -79,18 +84,26 @@ public class FileBlobStore implements BlobStore {
 
     private final File stagingArea;
 
-    private final String path;
+    final String path;
 
     private int diskBlockSize = DEFAULT_DISK_BLOCK_SIZE;
 
-    private final BlobStoreListenerList listeners = new BlobStoreListenerList();
+    final BlobStoreListenerList listeners = new BlobStoreListenerList();
 
-    private FilePathGenerator pathGenerator;
+    FilePathGenerator pathGenerator;
 
-    private File tmp;
+    File tmp;
 
     private ExecutorService deleteExecutorService;
 
+    /** Extended attribute holding the tile content hash, see {@link ContentHash} */
+    static final String CONTENT_HASH_ATTRIBUTE = "gwc.hash";
+
+    private ContentHash contentHashing = ContentHash.fromProperties();
+
+    /** Cleared the first time the file system refuses extended attributes */
+    private volatile boolean contentHashAttributes = true;
+
     public FileBlobStore(DefaultStorageFinder defStoreFinder)
             throws StorageException, ConfigurationException {
         this(defStoreFinder.getDefaultPath());
@@ -351,7 +364,7 @@ public class FileBlobStore implements BlobStore {
         return renamed;
     }
 
-    private File getLayerPath(String layerName) {
+    File getLayerPath(String layerName) {
         String prefix = path + File.separator + filteredLayerName(layerName);
 
         File layerPath = new File(prefix);
@@ -475,10 +488,28 @@ public class FileBlobStore implements BlobStore {
             stObj.setBlob(resource);
             stObj.setCreated(resource.getLastModified());
             stObj.setBlobSize((int) resource.getSize());
+            if (contentHashing.isEnabled() && contentHashAttributes) {
+                stObj.setContentHash(readContentHash(fh));
+            }
             return true;
         }
     }
 
+    /**
+     * Looks up the tiles with a single file system call each, {@link File#lastModified()} returns
+     * {@code 0} for missing files, saving the separate {@link File#exists()} check {@link
+     * #get(TileObject)} performs.
+     */
+    @Override
+    public long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        long[] result = new long[tiles.size()];
+        for (int i = 0; i < result.length; i++) {
+            final long lastModified = getFileHandleTile(tiles.get(i), false).lastModified();
+            result[i] = lastModified == 0 ? NOT_STORED : lastModified;
+        }
+        return result;
+    }
+
     /** Store a tile. */
     public void put(TileObject stObj) throws StorageException {
         final File fh = getFileHandleTile(stObj, true);
@@ -546,6 +577,18 @@ public class FileBlobStore implements BlobStore {
             } catch (IOException ioe) {
                 throw new StorageException(ioe.getMessage() + " for " + target.getAbsolutePath());
             }
+            // recorded on the temporary file, so that it moves along with the contents
+            if (contentHashAttributes) {
+                try {
+                    String contentHash = contentHashing.record(stObj, stObj.getBlob());
+                    if (contentHash != null) {
+                        writeContentHash(temp, contentHash);
+                    }
+                } catch (IOException ioe) {
+                    throw new StorageException(
+                            ioe.getMessage() + " for " + target.getAbsolutePath());
+                }
+            }
 
             // rename to final position. This will fail if another GWC also wrote this
             // file, in such case we'll just eliminate this one
@@ -572,6 +615,53 @@ public class FileBlobStore implements BlobStore {
         }
     }
 
+    private void writeContentHash(File file, String contentHash) {
+        UserDefinedFileAttributeView view =
+                Files.getFileAttributeView(file.toPath(), UserDefinedFileAttributeView.class);
+        try {
+            if (view == null) {
+                throw new UnsupportedOperationException("No user defined attributes");
+            }
+            view.write(
+                    CONTENT_HASH_ATTRIBUTE,
+                    ByteBuffer.wrap(contentHash.getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException | UnsupportedOperationException e) {
+            // the hash will be computed when the tile is served
+            contentHashAttributes = false;
+            log.warn(
+                    "The file system of "
+                            + path
+                            + " does not support extended attributes, "
+                            + "tile content hashes will not be recorded",
+                    e);
+        }
+    }
+
+    private String readContentHash(File file) {
+        UserDefinedFileAttributeView view =
+                Files.getFileAttributeView(file.toPath(), UserDefinedFileAttributeView.class);
+        if (view == null) {
+            return null;
+        }
+        try {
+            // the attribute has a fixed size, see ContentHash
+            ByteBuffer buffer = ByteBuffer.allocate(32);
+            int read = view.read(CONTENT_HASH_ATTRIBUTE, buffer);
+            return new String(buffer.array(), 0, read, StandardCharsets.US_ASCII);
+        } catch (IOException | UnsupportedOperationException e) {
+            // not recorded, e.g. stored before hashing got enabled, or removed meanwhile
+            return null;
+        }
+    }
+
+    /**
+     * Overrides the content hashing configured by the {@link ContentHash#GEOWEBCACHE_CONTENT_ETAGS}
+     * property
+     */
+    public void setContentHashing(ContentHash contentHashing) {
+        this.contentHashing = contentHashing;
+    }
+
     protected void persistParameterMap(TileObject stObj) {
         if (Objects.nonNull(stObj.getParametersId())) {
             putLayerMetadata(
@@ -93,4 +93,48 @@ public class FilePathGenerator {
         File tileFile = new File(path.toString());
         return tileFile;
     }
+
+    /**
+     * Builds the storage path for the bundle file containing a tile, as used by {@link
+     * BundledFileBlobStore}. Bundles live directly in the gridset/zoom level/parameters directory
+     * and are named after the bundle column and row, {@code <bx>_<by>.<extension>.bundle}.
+     *
+     * @param tile information about the tile
+     * @param mimeType the storage mime type
+     * @param bundleSize the number of tile columns and rows packed in each bundle
+     * @return File pointer to the bundle
+     */
+    public File bundlePath(TileObject tile, MimeType mimeType, int bundleSize) {
+        final long[] tileIndex = tile.getXYZ();
+        long bx = tileIndex[0] / bundleSize;
+        long by = tileIndex[1] / bundleSize;
+        long z = tileIndex[2];
+
+        StringBuilder path = new StringBuilder(256);
+
+        path.append(cacheRoot);
+        path.append(File.separatorChar);
+        appendFiltered(tile.getLayerName(), path);
+        path.append(File.separatorChar);
+        appendGridsetZoomLevelDir(tile.getGridSetId(), z, path);
+        String parametersId = tile.getParametersId();
+        Map<String, String> parameters = tile.getParameters();
+        if (parametersId == null && parameters != null && !parameters.isEmpty()) {
+            parametersId = ParametersUtils.getId(parameters);
+            tile.setParametersId(parametersId);
+        }
+        if (parametersId != null) {
+            path.append('_');
+            path.append(parametersId);
+        }
+        path.append(File.separatorChar);
+        path.append(bx);
+        path.append('_');
+        path.append(by);
+        path.append('.');
+        path.append(mimeType.getFileExtension());
+        path.append(TileBundle.EXTENSION);
+
+        return new File(path.toString());
+    }
 }
@@ -0,0 +1,513 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.file;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.IntPredicate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+
+/**
+ * Reads and writes the bundle files used by {@link BundledFileBlobStore}.
+ *
+ * <p>A bundle packs a {@code size x size} block of tiles of a single zoom level in one file. The
+ * file starts with a fixed header, followed by an index holding one entry per tile slot, followed
+ * by the tile records themselves:
+ *
+ * <pre>
+ * header: magic (int), version (int), size (int), reserved (int)
+ * index:  size * size entries of [record offset (long), tile length (int), created (long)]
+ * record: slot (int), tile length (int), tile bytes
+ * </pre>
+ *
+ * <p>Tiles are always appended at the end of the file and the index entry is only updated once the
+ * record has been fully written and forced to disk, so a write interrupted by a crash leaves an
+ * unreferenced record behind instead of a corrupt tile. Records are checked against their index
+ * entry before being returned. The space left by replaced or deleted tiles is reclaimed by {@link
+ * #compact(File)}.
+ *
+ * <p>Instances are cheap, short lived handles over a bundle file, they don't keep the file open
+ * between calls. In-process concurrency control is up to the caller, writes also take an exclusive
+ * {@link FileLock} to play nice with other processes sharing the cache directory. As clearing and
+ * compacting a bundle unlink or replace its file while holding the lock, the lock is only deemed
+ * acquired once the locked file is checked to still be the bundle file.
+ */
+class TileBundle {
+
+    private static final Log log = LogFactory.getLog(TileBundle.class);
+
+    /** File name suffix for bundle files */
+    static final String EXTENSION = ".bundle";
+
+    static final int MAGIC = 0x47574342; // GWCB
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    static final int ENTRY_SIZE = 20;
+
+    static final int RECORD_HEADER_SIZE = 8;
+
+    /** Receives the slots cleared by {@link TileBundle#clear} */
+    interface SlotVisitor {
+        void visit(int slot, int length, long created);
+    }
+
+    /** A tile read from a bundle */
+    static class Tile {
+
+        final int length;
+
+        final long created;
+
+        final Resource data;
+
+        Tile(int length, long created, Resource data) {
+            this.length = length;
+            this.created = created;
+            this.data = data;
+        }
+    }
+
+    private final File file;
+
+    private final int size;
+
+    private long fileSize;
+
+    private long wastedBytes;
+
+    TileBundle(File file, int size) {
+        this.file = file;
+        this.size = size;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /** @return the number of tile slots in the bundle */
+    int getSlotCount() {
+        return size * size;
+    }
+
+    /** @return the slot of the tile at the given column and row, relative to the bundle origin */
+    int slot(long x, long y) {
+        return (int) ((y % size) * size + (x % size));
+    }
+
+    /** @return the size of the bundle file as of the last {@link #write} or {@link #clear} call */
+    long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return the number of unreferenced bytes in the bundle as of the last {@link #write} or
+     *     {@link #clear} call
+     */
+    long getWastedBytes() {
+        return wastedBytes;
+    }
+
+    private long indexEnd() {
+        return HEADER_SIZE + (long) ENTRY_SIZE * getSlotCount();
+    }
+
+    private static long entryPosition(int slot) {
+        return HEADER_SIZE + (long) ENTRY_SIZE * slot;
+    }
+
+    /**
+     * Reads a tile from the bundle using positional reads.
+     *
+     * @return the tile, or {@code null} if the bundle does not exist or does not contain it
+     */
+    Tile read(final int slot) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            final long fileSize = channel.size();
+            if (fileSize < indexEnd()) {
+                return null;
+            }
+            ByteBuffer entry = readFully(channel, entryPosition(slot), ENTRY_SIZE);
+            final long offset = entry.getLong();
+            final int length = entry.getInt();
+            final long created = entry.getLong();
+            if (offset == 0) {
+                return null;
+            }
+            if (offset < indexEnd() || offset + RECORD_HEADER_SIZE + length > fileSize) {
+                log.warn("Ignoring invalid index entry for slot " + slot + " in " + file);
+                return null;
+            }
+            ByteBuffer record = readFully(channel, offset, RECORD_HEADER_SIZE + length);
+            if (record.getInt() != slot || record.getInt() != length) {
+                log.warn("Index entry for slot " + slot + " does not match its record in " + file);
+                return null;
+            }
+            ByteArrayResource data;
+            if (length == 0) {
+                data = new ByteArrayResource(new byte[0]);
+            } else {
+                data = new ByteArrayResource(record.array(), RECORD_HEADER_SIZE, length);
+            }
+            data.setLastModified(created);
+            return new Tile(length, created, data);
+        } catch (NoSuchFileException e) {
+            // deleted in the meantime by another process
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the creation time of several tiles reading only the index, in a single read spanning
+     * from the first to the last of the requested slots.
+     *
+     * @return for each slot, the creation time of its tile, or {@code -1} if empty
+     */
+    long[] created(final int[] slots) throws IOException {
+        final long[] result = new long[slots.length];
+        Arrays.fill(result, -1);
+        if (slots.length == 0 || !file.exists()) {
+            return result;
+        }
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int slot : slots) {
+            first = Math.min(first, slot);
+            last = Math.max(last, slot);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            if (channel.size() < indexEnd()) {
+                return result;
+            }
+            ByteBuffer entries =
+                    readFully(channel, entryPosition(first), ENTRY_SIZE * (last - first + 1));
+            for (int i = 0; i < slots.length; i++) {
+                final int entryOffset = (slots[i] - first) * ENTRY_SIZE;
+                if (entries.getLong(entryOffset) != 0) {
+                    result[i] = entries.getLong(entryOffset + 12);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // deleted in the meantime by another process
+        }
+        return result;
+    }
+
+    /**
+     * Appends a tile to the bundle, creating the bundle if needed, and points the slot's index
+     * entry at it.
+     *
+     * @return the length of the tile previously stored at the slot, or {@code -1} if there was none
+     */
+    long write(final int slot, final Resource blob, final long created) throws IOException {
+        final long length = blob.getSize();
+        if (length < 0 || length > Integer.MAX_VALUE - RECORD_HEADER_SIZE) {
+            throw new IOException("Can't store a tile of " + length + " bytes in " + file);
+        }
+        try (FileChannel channel = openLocked(READ, WRITE, CREATE)) {
+            ByteBuffer index = readOrInitIndex(channel);
+
+            final long end = channel.size();
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            recordHeader.putInt(slot).putInt((int) length).flip();
+            writeFully(channel, recordHeader, end);
+            channel.position(end + RECORD_HEADER_SIZE);
+            long written = blob.transferTo(channel);
+            if (written != length) {
+                throw new IOException(
+                        "Expected to write " + length + " bytes but wrote " + written);
+            }
+            // the record must be on disk before the index entry pointing at it
+            channel.force(false);
+
+            final int entryOffset = slot * ENTRY_SIZE;
+            final long oldOffset = index.getLong(entryOffset);
+            final long oldLength = oldOffset == 0 ? -1 : index.getInt(entryOffset + 8);
+
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.putLong(end).putInt((int) length).putLong(created).flip();
+            writeFully(channel, entry, entryPosition(slot));
+
+            index.putLong(entryOffset, end).putInt(entryOffset + 8, (int) length);
+            this.fileSize = channel.size();
+            this.wastedBytes = fileSize - indexEnd() - liveBytes(index);
+            return oldLength;
+        }
+    }
+
+    /**
+     * Clears the index entries of the slots accepted by {@code filter}. If no tiles would be left
+     * in the bundle it is deleted altogether instead.
+     *
+     * @param filter the slots to clear
+     * @param visitor notified of every cleared slot that contained a tile
+     * @return the number of tiles removed
+     */
+    int clear(final IntPredicate filter, final SlotVisitor visitor) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        final int[] clearedSlots = new int[getSlotCount()];
+        int cleared = 0;
+        boolean empty = true;
+        ByteBuffer index;
+        try (FileChannel channel = openLocked(READ, WRITE)) {
+            if (channel.size() < indexEnd()) {
+                return 0;
+            }
+            index = readFully(channel, HEADER_SIZE, ENTRY_SIZE * getSlotCount());
+            for (int slot = 0; slot < getSlotCount(); slot++) {
+                if (index.getLong(slot * ENTRY_SIZE) == 0) {
+                    continue;
+                }
+                if (filter.test(slot)) {
+                    clearedSlots[cleared++] = slot;
+                } else {
+                    empty = false;
+                }
+            }
+            if (cleared == 0) {
+                return 0;
+            }
+            if (empty) {
+                // delete while holding the lock so no other process appends in between
+                Files.deleteIfExists(file.toPath());
+                this.fileSize = 0;
+                this.wastedBytes = 0;
+            } else {
+                final ByteBuffer emptyEntry = ByteBuffer.allocate(ENTRY_SIZE);
+                for (int i = 0; i < cleared; i++) {
+                    emptyEntry.clear();
+                    writeFully(channel, emptyEntry, entryPosition(clearedSlots[i]));
+                }
+                this.fileSize = channel.size();
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        for (int i = 0; i < cleared; i++) {
+            final int entryOffset = clearedSlots[i] * ENTRY_SIZE;
+            visitor.visit(
+                    clearedSlots[i],
+                    index.getInt(entryOffset + 8),
+                    index.getLong(entryOffset + 12));
+            index.putLong(entryOffset, 0L);
+        }
+        if (!empty) {
+            this.wastedBytes = fileSize - indexEnd() - liveBytes(index);
+        }
+        return cleared;
+    }
+
+    /**
+     * Deletes the whole bundle, notifying {@code visitor} of every tile it contained.
+     *
+     * @return the number of tiles removed
+     */
+    int delete(final SlotVisitor visitor) throws IOException {
+        return clear(slot -> true, visitor);
+    }
+
+    /**
+     * Rewrites the bundle keeping only the tiles referenced by the index. The new bundle is written
+     * to {@code tmpDirectory} and atomically moved over the old one.
+     */
+    void compact(final File tmpDirectory) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        final File target = new File(tmpDirectory, UUID.randomUUID().toString() + EXTENSION);
+        try (FileChannel channel = openLocked(READ, WRITE)) {
+            if (channel.size() < indexEnd()) {
+                return;
+            }
+            ByteBuffer index = readFully(channel, HEADER_SIZE, ENTRY_SIZE * getSlotCount());
+            try (FileChannel out = FileChannel.open(target.toPath(), READ, WRITE, CREATE)) {
+                long position = indexEnd();
+                for (int slot = 0; slot < getSlotCount(); slot++) {
+                    final int entryOffset = slot * ENTRY_SIZE;
+                    final long offset = index.getLong(entryOffset);
+                    if (offset == 0) {
+                        continue;
+                    }
+                    final long recordSize = RECORD_HEADER_SIZE + index.getInt(entryOffset + 8);
+                    long copied = 0;
+                    while (copied < recordSize) {
+                        copied +=
+                                channel.transferTo(
+                                        offset + copied,
+                                        recordSize - copied,
+                                        out.position(position + copied));
+                    }
+                    index.putLong(entryOffset, position);
+                    position += recordSize;
+                }
+                index.rewind();
+                writeFully(out, header(), 0);
+                writeFully(out, index, HEADER_SIZE);
+                out.force(true);
+            }
+            Files.move(
+                    target.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            // deleted in the meantime, nothing to compact
+        } finally {
+            Files.deleteIfExists(target.toPath());
+        }
+    }
+
+    /**
+     * Opens the bundle file and takes an exclusive lock on it, released when the channel is closed.
+     *
+     * <p>Another process may have deleted or replaced the file while this one was waiting for the
+     * lock, in which case the channel points at a file that is not the bundle anymore. The identity
+     * of the file at the bundle path is thus compared before opening, after opening, and once the
+     * lock is acquired, and the whole thing is retried if it changed.
+     *
+     * @throws NoSuchFileException if the bundle does not exist and {@code options} don't include
+     *     {@code CREATE}
+     */
+    private FileChannel openLocked(OpenOption... options) throws IOException {
+        final Path path = file.toPath();
+        final boolean create = Arrays.asList(options).contains(CREATE);
+        while (true) {
+            final Object before = create ? fileKeyIfExists(path) : fileKey(path);
+            FileChannel channel = FileChannel.open(path, options);
+            boolean current = false;
+            try {
+                final Object opened = fileKey(path);
+                if (before == null || before.equals(opened)) {
+                    channel.lock();
+                    current = Objects.equals(opened, fileKey(path));
+                }
+            } catch (NoSuchFileException e) {
+                if (!create) {
+                    throw e;
+                }
+            } finally {
+                if (!current) {
+                    channel.close();
+                }
+            }
+            if (current) {
+                return channel;
+            }
+            log.debug("Bundle " + file + " replaced while waiting for its lock, trying again");
+        }
+    }
+
+    /** @return the key identifying the file at the path, {@code null} if not supported */
+    private static Object fileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    private static Object fileKeyIfExists(Path path) throws IOException {
+        try {
+            return fileKey(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private ByteBuffer readOrInitIndex(FileChannel channel) throws IOException {
+        final int indexSize = ENTRY_SIZE * getSlotCount();
+        if (channel.size() == 0) {
+            writeFully(channel, header(), 0);
+            writeFully(channel, ByteBuffer.allocate(indexSize), HEADER_SIZE);
+            return ByteBuffer.allocate(indexSize);
+        }
+        if (channel.size() < indexEnd()) {
+            throw new IOException("Truncated tile bundle " + file);
+        }
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException(file + " is not a tile bundle");
+        }
+        int version = header.getInt();
+        int bundleSize = header.getInt();
+        if (version != VERSION || bundleSize != size) {
+            throw new IOException(
+                    String.format(
+                            "Unsupported tile bundle %s, version %d, size %d",
+                            file, version, bundleSize));
+        }
+        return readFully(channel, HEADER_SIZE, indexSize);
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0).flip();
+        return header;
+    }
+
+    private long liveBytes(ByteBuffer index) {
+        long live = 0;
+        for (int slot = 0; slot < getSlotCount(); slot++) {
+            final int entryOffset = slot * ENTRY_SIZE;
+            if (index.getLong(entryOffset) != 0) {
+                live += RECORD_HEADER_SIZE + index.getInt(entryOffset + 8);
+            }
+        }
+        return live;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+}
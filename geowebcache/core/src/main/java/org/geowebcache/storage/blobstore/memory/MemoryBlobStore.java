@@ -17,6 +17,8 @@ package org.geowebcache.storage.blobstore.memory;
 import java.io.IOException;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -26,6 +28,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -36,7 +39,9 @@ import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.BlobStoreListener;
+import org.geowebcache.storage.ContentHash;
 import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileKey;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.blobstore.memory.guava.GuavaCacheProvider;
@@ -52,6 +57,12 @@ import org.springframework.context.ApplicationContextAware;
  * {@link BlobStore} is scheduled in a queue and will be done by an executor thread. Operations that
  * require a boolean value will have to wait until previous tasks are completed.
  *
+ * <p>In {@link #setWriteBehind(boolean) write-behind} mode puts only wait for the tile to be
+ * cached, the tiles are queued and written to the wrapped {@link BlobStore} in batches by the
+ * executor thread, several puts of the same tile resulting in a single write. Tiles not found in
+ * cache are read from the wrapped {@link BlobStore} by the requesting threads, in parallel, unless
+ * other operations on the wrapped store are still pending.
+ *
  * @author Nicola Lagomarsini Geosolutions
  */
 public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
@@ -65,9 +76,24 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
     /** {@link CacheProvider} object to use for caching */
     private CacheProvider cacheProvider;
 
+    /** Default maximum number of tiles waiting to be written in write-behind mode */
+    public static final int DEFAULT_WRITE_BEHIND_QUEUE_SIZE = 1000;
+
+    /** Default number of tiles written by each write-behind task */
+    public static final int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 100;
+
     /** Executor service used for scheduling cacheProvider store operations like put,delete,... */
     private final ExecutorService executorService;
 
+    /** Number of operations other than gets submitted to the executor and not completed yet */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    /** Whether puts are written to the wrapped store asynchronously */
+    private volatile boolean writeBehind;
+
+    /** Tiles waiting to be written to the wrapped store in write-behind mode */
+    private final WriteBehindQueue writeBehindQueue;
+
     /**
      * Optional name used for searching the bean related to the CacheProvider to set in the
      * ApplicationContext
@@ -93,6 +119,9 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
      */
     private final ReadLock componentsStateLock;
 
+    /** Records the hash of the cached tiles, if enabled */
+    private ContentHash contentHashing = ContentHash.fromProperties();
+
     public MemoryBlobStore() {
         // Initialization of the various elements
         this.executorService = Executors.newFixedThreadPool(1);
@@ -100,6 +129,12 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         blobStoreStateLock = lock.writeLock();
         componentsStateLock = lock.readLock();
         cacheAlreadySet = new AtomicBoolean(false);
+        writeBehindQueue =
+                new WriteBehindQueue(
+                        executorService,
+                        tile -> store.put(tile),
+                        DEFAULT_WRITE_BEHIND_QUEUE_SIZE,
+                        DEFAULT_WRITE_BEHIND_BATCH_SIZE);
         // Initialization of the cacheProvider and store. Must be overridden, this uses default and
         // caches in memory
         setStore(new NullBlobStore());
@@ -126,6 +161,7 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
             }
             // Remove from cacheProvider
             cacheProvider.removeLayer(layerName);
+            flushWriteBehind();
             // Remove the layer. Wait other scheduled tasks
             boolean executed = executeBlobStoreTask(BlobStoreAction.DELETE_LAYER, store, layerName);
             if (LOG.isDebugEnabled()) {
@@ -155,8 +191,8 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
                 LOG.debug("Scheduling GridSet: " + gridSetId + " removal for Layer: " + layerName);
             }
             // Remove selected gridsets
-            executorService.submit(
-                    new BlobStoreTask(store, BlobStoreAction.DELETE_GRIDSET, layerName, gridSetId));
+            flushWriteBehind();
+            submitBlobStoreTask(BlobStoreAction.DELETE_GRIDSET, store, layerName, gridSetId);
             return true;
         } finally {
             componentsStateLock.unlock();
@@ -172,11 +208,13 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
             }
             // Remove from cacheProvider
             cacheProvider.removeTileObj(obj);
+            // The tile must not be written afterwards
+            writeBehindQueue.remove(TileKey.lookup(obj));
             // Remove selected TileObject
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Scheduling removal of TileObject: " + obj);
             }
-            executorService.submit(new BlobStoreTask(store, BlobStoreAction.DELETE_SINGLE, obj));
+            submitBlobStoreTask(BlobStoreAction.DELETE_SINGLE, store, obj);
             return true;
         } finally {
             componentsStateLock.unlock();
@@ -215,7 +253,8 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
                                 + obj.getGridSetId());
             }
             // Remove selected TileRange
-            executorService.submit(new BlobStoreTask(store, BlobStoreAction.DELETE_RANGE, obj));
+            flushWriteBehind();
+            submitBlobStoreTask(BlobStoreAction.DELETE_RANGE, store, obj);
             return true;
         } finally {
             componentsStateLock.unlock();
@@ -239,7 +278,11 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
                                     + " not found. Try to get it from the wrapped blobstore");
                 }
                 // Try if it can be found in the system. Wait other scheduled tasks
-                found = executeBlobStoreTask(BlobStoreAction.GET, store, obj);
+                if (writeBehind) {
+                    found = getWriteBehind(obj);
+                } else {
+                    found = executeBlobStoreTask(BlobStoreAction.GET, store, obj);
+                }
 
                 // If the file has been found, it is inserted in cacheProvider
                 if (found) {
@@ -264,6 +307,7 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
                 obj.setBlob(resource);
                 obj.setCreated(resource.getLastModified());
                 obj.setBlobSize((int) resource.getSize());
+                obj.setContentHash(cached.getContentHash());
             }
 
             return found;
@@ -272,6 +316,42 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         }
     }
 
+    /**
+     * Answers from the cache where possible, the tiles not in cache are looked up in the wrapped
+     * {@link BlobStore} with a single call. Unlike {@link #get(TileObject)} the tiles found in the
+     * wrapped store are not loaded in cache.
+     */
+    @Override
+    public long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        componentsStateLock.lock();
+        try {
+            final long[] result = new long[tiles.size()];
+            final List<TileObject> notCached = new ArrayList<>();
+            final List<Integer> notCachedIndexes = new ArrayList<>();
+            for (int i = 0; i < result.length; i++) {
+                TileObject cached = cacheProvider.getTileObj(tiles.get(i));
+                if (cached == null) {
+                    cached = writeBehindQueue.get(TileKey.lookup(tiles.get(i)));
+                }
+                if (cached != null) {
+                    result[i] = Math.max(0, cached.getBlob().getLastModified());
+                } else {
+                    notCached.add(tiles.get(i));
+                    notCachedIndexes.add(i);
+                }
+            }
+            if (!notCached.isEmpty()) {
+                long[] stored = store.getCreationTimes(notCached);
+                for (int i = 0; i < stored.length; i++) {
+                    result[notCachedIndexes.get(i)] = stored[i];
+                }
+            }
+            return result;
+        } finally {
+            componentsStateLock.unlock();
+        }
+    }
+
     @Override
     public void put(TileObject obj) throws StorageException {
         componentsStateLock.lock();
@@ -280,10 +360,15 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
                 LOG.debug("Convert Input resource into a Byte Array");
             }
             TileObject cached = getByteResourceTile(obj);
+            obj.setContentHash(cached.getContentHash());
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Adding TileObject: " + obj + " to cache");
             }
             cacheProvider.putTileObj(cached);
+            if (writeBehind) {
+                putWriteBehind(obj, cached);
+                return;
+            }
             // Add selected TileObject. Wait other scheduled tasks
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Adding TileObject: " + obj + " to the wrapped blobstore");
@@ -305,7 +390,8 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
             // flush the cacheProvider
             cacheProvider.clear();
             // Remove all the files
-            executorService.submit(new BlobStoreTask(store, BlobStoreAction.CLEAR, ""));
+            flushWriteBehind();
+            submitBlobStoreTask(BlobStoreAction.CLEAR, store, "");
         } finally {
             componentsStateLock.unlock();
         }
@@ -324,6 +410,8 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Destroy wrapped store");
             }
+            // Write the queued tiles before
+            flushWriteBehind();
             executeBlobStoreTask(BlobStoreAction.DESTROY, store, "");
             // Stop the pending tasks
             executorService.shutdown();
@@ -369,6 +457,7 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
                 LOG.debug("Flushing cache");
             }
             cacheProvider.clear();
+            flushWriteBehind();
             // Rename the layer. Wait other scheduled tasks
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Executing Layer rename task");
@@ -456,6 +545,16 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         }
     }
 
+    /**
+     * Overrides the content hashing configured by the {@link ContentHash#GEOWEBCACHE_CONTENT_ETAGS}
+     * property
+     *
+     * @param contentHashing
+     */
+    public void setContentHashing(ContentHash contentHashing) {
+        this.contentHashing = contentHashing;
+    }
+
     /**
      * Setter for the cacheProvider to use
      *
@@ -521,6 +620,8 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
                         obj.getBlobFormat(),
                         obj.getParameters(),
                         finalBlob);
+        cached.setContentHash(obj.getContentHash());
+        contentHashing.record(cached, finalBlob.getContents());
         return cached;
     }
 
@@ -610,8 +711,133 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
         }
     }
 
+    /**
+     * Enables the write-behind mode: puts return as soon as the tile is cached and the wrapped
+     * store is written asynchronously. Disabled by default, disabling it waits for the queued tiles
+     * to be written.
+     *
+     * @param writeBehind
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        blobStoreStateLock.lock();
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Setting write-behind mode: " + writeBehind);
+            }
+            this.writeBehind = writeBehind;
+            // flush even if nothing is pending, a batch may still be being written
+            if (!writeBehind) {
+                try {
+                    writeBehindQueue.flush().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    if (LOG.isErrorEnabled()) {
+                        LOG.error(e.getMessage(), e);
+                    }
+                }
+            }
+        } finally {
+            blobStoreStateLock.unlock();
+        }
+    }
+
+    /** @return whether the write-behind mode is enabled */
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Setter for the maximum number of tiles waiting to be written in write-behind mode, puts wait
+     * when it is reached
+     *
+     * @param queueSize
+     */
+    public void setWriteBehindQueueSize(int queueSize) {
+        writeBehindQueue.setCapacity(queueSize);
+    }
+
+    /**
+     * Setter for the number of tiles written by each write-behind task
+     *
+     * @param batchSize
+     */
+    public void setWriteBehindBatchSize(int batchSize) {
+        writeBehindQueue.setBatchSize(batchSize);
+    }
+
+    /** Queues a tile already cached for writing to the wrapped store */
+    private void putWriteBehind(TileObject obj, TileObject cached) throws StorageException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Queuing TileObject: " + obj + " for the wrapped blobstore");
+        }
+        // The cache provider may keep the cached TileObject, the store gets its own copy
+        TileObject queued =
+                TileObject.createCompleteTileObject(
+                        obj.getLayerName(),
+                        obj.getXYZ(),
+                        obj.getGridSetId(),
+                        obj.getBlobFormat(),
+                        obj.getParameters(),
+                        cached.getBlob());
+        queued.setParametersId(obj.getParametersId());
+        queued.setContentHash(cached.getContentHash());
+        try {
+            writeBehindQueue.put(TileKey.store(obj), queued);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while queuing TileObject: " + obj, e);
+        }
+    }
+
+    /**
+     * Looks for a tile not cached in write-behind mode. The tile may still be queued, otherwise it
+     * is read directly from the wrapped store unless other operations on it are pending.
+     */
+    private boolean getWriteBehind(TileObject obj) throws StorageException {
+        TileObject queued = writeBehindQueue.get(TileKey.lookup(obj));
+        if (queued != null) {
+            obj.setBlob(queued.getBlob());
+            obj.setContentHash(queued.getContentHash());
+            return true;
+        }
+        if (pendingTasks.get() > 0) {
+            return executeBlobStoreTask(BlobStoreAction.GET, store, obj);
+        }
+        return store.get(obj);
+    }
+
+    /** Schedules the writing of the queued tiles, before the tasks submitted afterwards */
+    private void flushWriteBehind() {
+        if (writeBehindQueue.size() > 0) {
+            writeBehindQueue.flush();
+        }
+    }
+
+    private Future<Boolean> submitBlobStoreTask(
+            BlobStoreAction action, BlobStore store, Object... objs) {
+        final BlobStoreTask task = new BlobStoreTask(store, action, objs);
+        if (action == BlobStoreAction.GET) {
+            return executorService.submit(task);
+        }
+        pendingTasks.incrementAndGet();
+        try {
+            return executorService.submit(
+                    () -> {
+                        try {
+                            return task.call();
+                        } finally {
+                            pendingTasks.decrementAndGet();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            pendingTasks.decrementAndGet();
+            throw e;
+        }
+    }
+
     private boolean executeBlobStoreTask(BlobStoreAction action, BlobStore store, Object... objs) {
-        Future<Boolean> future = executorService.submit(new BlobStoreTask(store, action, objs));
+        Future<Boolean> future = submitBlobStoreTask(action, store, objs);
         // Variable containing the execution result
         boolean executed = false;
         if (LOG.isDebugEnabled()) {
@@ -810,9 +1036,8 @@ public class MemoryBlobStore implements BlobStore, ApplicationContextAware {
                                 + layerName);
             }
             // Remove selected parameters
-            executorService.submit(
-                    new BlobStoreTask(
-                            store, BlobStoreAction.DELETE_PARAMS_ID, layerName, parametersId));
+            flushWriteBehind();
+            submitBlobStoreTask(BlobStoreAction.DELETE_PARAMS_ID, store, layerName, parametersId);
             return true;
         } finally {
             componentsStateLock.unlock();
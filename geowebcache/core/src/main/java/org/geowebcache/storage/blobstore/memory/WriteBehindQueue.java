@@ -0,0 +1,223 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileKey;
+import org.geowebcache.storage.TileObject;
+
+/**
+ * Bounded queue of the tiles waiting to be written to the {@link BlobStore} wrapped by a {@link
+ * MemoryBlobStore} in write-behind mode.
+ *
+ * <p>Puts of the same tile are coalesced, only the last version is written. The queue is drained in
+ * batches by tasks submitted to the {@link MemoryBlobStore} executor, so that the writes stay
+ * ordered with the other operations on the wrapped store. Producers block when the queue is full.
+ */
+final class WriteBehindQueue {
+
+    private static final Log LOG = LogFactory.getLog(WriteBehindQueue.class);
+
+    /** Writes a single tile to the wrapped store */
+    interface TileWriter {
+        void write(TileObject tile) throws StorageException;
+    }
+
+    private final ExecutorService executorService;
+
+    private final TileWriter writer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    /** Tiles waiting to be written, in the order they have been first queued */
+    private final LinkedHashMap<TileKey, TileObject> pending = new LinkedHashMap<>();
+
+    /** Tiles taken by a drain task and being written */
+    private final Map<TileKey, TileObject> inFlight = new HashMap<>();
+
+    private boolean drainScheduled;
+
+    private volatile int capacity;
+
+    private volatile int batchSize;
+
+    WriteBehindQueue(
+            ExecutorService executorService, TileWriter writer, int capacity, int batchSize) {
+        this.executorService = executorService;
+        this.writer = writer;
+        setCapacity(capacity);
+        setBatchSize(batchSize);
+    }
+
+    void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue size must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        lock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Queues a tile, replacing the pending version of the same tile if any. Waits for room in the
+     * queue when it is full.
+     */
+    void put(TileKey key, TileObject tile) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!pending.containsKey(key) && pending.size() >= capacity) {
+                notFull.await();
+            }
+            pending.put(key, tile);
+            if (!drainScheduled) {
+                executorService.submit(this::drainBatch);
+                drainScheduled = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the last version of the tile not written yet, or {@code null} */
+    TileObject get(TileKey key) {
+        lock.lock();
+        try {
+            TileObject tile = pending.get(key);
+            return tile != null ? tile : inFlight.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drops the pending version of a tile, a write already in progress is not affected */
+    void remove(TileKey key) {
+        lock.lock();
+        try {
+            if (pending.remove(key) != null) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the number of tiles waiting to be written */
+    int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Submits a task writing all the pending tiles. As the executor runs a single thread, tasks
+     * submitted afterwards see the wrapped store with these tiles written.
+     */
+    Future<?> flush() {
+        return executorService.submit(
+                () -> {
+                    while (writeBatch()) {
+                        // keep writing
+                    }
+                });
+    }
+
+    /** Writes a batch and schedules the next one if tiles are still pending */
+    private void drainBatch() {
+        boolean more = writeBatch();
+        lock.lock();
+        try {
+            if (more && !pending.isEmpty()) {
+                executorService.submit(this::drainBatch);
+            } else {
+                drainScheduled = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return {@code true} if there may be more tiles to write */
+    private boolean writeBatch() {
+        List<Map.Entry<TileKey, TileObject>> batch = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<TileKey, TileObject>> it = pending.entrySet().iterator();
+            while (it.hasNext() && batch.size() < batchSize) {
+                Map.Entry<TileKey, TileObject> entry = it.next();
+                batch.add(entry);
+                inFlight.put(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+            if (!batch.isEmpty()) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        try {
+            for (Map.Entry<TileKey, TileObject> entry : batch) {
+                try {
+                    writer.write(entry.getValue());
+                } catch (StorageException | RuntimeException e) {
+                    if (LOG.isErrorEnabled()) {
+                        LOG.error("Failed to write TileObject: " + entry.getValue(), e);
+                    }
+                }
+            }
+        } finally {
+            lock.lock();
+            try {
+                for (Map.Entry<TileKey, TileObject> entry : batch) {
+                    inFlight.remove(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return true;
+    }
+}
@@ -26,24 +26,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.log4j.Logger;
+import org.geowebcache.storage.TileKey;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
 import org.geowebcache.storage.blobstore.memory.CacheConfiguration.EvictionPolicy;
 import org.geowebcache.storage.blobstore.memory.CacheProvider;
 import org.geowebcache.storage.blobstore.memory.CacheStatistics;
-import org.geowebcache.util.SuppressFBWarnings;
 
 /**
  * This class is an implementation of the {@link CacheProvider} interface using a backing Guava
@@ -100,7 +96,7 @@ public class GuavaCacheProvider implements CacheProvider {
     }
 
     /** Cache object containing the various {@link TileObject}s */
-    private Cache<String, TileObject> cache;
+    private Cache<TileKey, TileObject> cache;
 
     /** Internal Multimap used for storing the TileObject ids associated to each cached Layer */
     private LayerMap multimap;
@@ -155,34 +151,34 @@ public class GuavaCacheProvider implements CacheProvider {
         // Create the CacheBuilder
         CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
         // Add weigher
-        Weigher<String, TileObject> weigher =
-                new Weigher<String, TileObject>() {
+        Weigher<TileKey, TileObject> weigher =
+                new Weigher<TileKey, TileObject>() {
 
                     @Override
-                    public int weigh(String key, TileObject value) {
+                    public int weigh(TileKey key, TileObject value) {
                         currentSize.addAndGet(value.getBlobSize());
                         return value.getBlobSize();
                     }
                 };
         // Create the builder
-        CacheBuilder<String, TileObject> newBuilder =
+        CacheBuilder<TileKey, TileObject> newBuilder =
                 builder.maximumWeight(maxMemory)
                         .recordStats()
                         .weigher(weigher)
                         .concurrencyLevel(concurrency)
                         .removalListener(
-                                new RemovalListener<String, TileObject>() {
+                                new RemovalListener<TileKey, TileObject>() {
 
                                     @Override
                                     public void onRemoval(
-                                            RemovalNotification<String, TileObject> notification) {
+                                            RemovalNotification<TileKey, TileObject> notification) {
                                         // TODO This operation is not atomic
                                         TileObject obj = notification.getValue();
                                         // Update the current size
                                         currentSize.addAndGet(-obj.getBlobSize());
-                                        final String tileKey = generateTileKey(obj);
-                                        final String layerName = obj.getLayerName();
-                                        multimap.removeTile(layerName, tileKey);
+                                        final TileKey tileKey = notification.getKey();
+                                        final String layerName = tileKey.getLayerName();
+                                        multimap.removeTile(tileKey);
                                         if (LOGGER.isDebugEnabled()) {
                                             LOGGER.debug(
                                                     "Removed tile "
@@ -292,7 +288,7 @@ public class GuavaCacheProvider implements CacheProvider {
                     LOGGER.debug("Retrieving TileObject: " + obj + " from cache");
                 }
                 // Generate the TileObject key
-                String id = generateTileKey(obj);
+                TileKey id = TileKey.lookup(obj);
                 // Get the key from the cache
                 return cache.getIfPresent(id);
             } finally {
@@ -325,10 +321,10 @@ public class GuavaCacheProvider implements CacheProvider {
                     LOGGER.debug("Adding TileObject: " + obj + " to cache");
                 }
                 // Generate the TileObject key
-                String id = generateTileKey(obj);
+                TileKey id = TileKey.store(obj);
                 // Add the TileObject to the cache and its id in the multimap
                 cache.put(id, obj);
-                multimap.putTile(obj.getLayerName(), id);
+                multimap.putTile(id);
             } finally {
                 // Decrement the number of current operations.
                 actualOperations.decrementAndGet();
@@ -358,7 +354,7 @@ public class GuavaCacheProvider implements CacheProvider {
                     LOGGER.debug("Removing TileObject: " + obj + " from cache");
                 }
                 // Generate the TileObject key
-                String id = generateTileKey(obj);
+                TileKey id = TileKey.lookup(obj);
                 // Remove the key
                 cache.invalidate(id);
             } finally {
@@ -390,7 +386,7 @@ public class GuavaCacheProvider implements CacheProvider {
                     LOGGER.debug("Removing Layer: " + layername + " from cache");
                 }
                 // Get all the TileObject ids associated to the Layer and removes them
-                Set<String> keys = multimap.removeLayer(layername);
+                Set<TileKey> keys = multimap.removeLayer(layername);
                 if (keys != null) {
                     cache.invalidateAll(keys);
                 }
@@ -628,122 +624,53 @@ public class GuavaCacheProvider implements CacheProvider {
      * because it returns quicly all the cached keys of the selected layer, without having to cycle
      * on the cache and checking if each TileObject belongs to the selected Layer.
      *
+     * <p>Tiles are added and removed without locking, the key sets of the layers are only dropped
+     * when the layer is removed.
+     *
      * @author Nicola Lagomarsini, GeoSolutions
      */
     static class LayerMap {
 
-        /** {@link ReentrantReadWriteLock} used for handling concurrency */
-        private final ReentrantReadWriteLock lock;
-
-        /** {@link WriteLock} used when trying to change the map */
-        private final WriteLock writeLock;
-
-        /** {@link ReadLock} used when accessing the map */
-        private final ReadLock readLock;
-
         /** MultiMap containing the {@link TileObject} keys for the Layers */
-        private final ConcurrentHashMap<String, Set<String>> layerMap =
-                new ConcurrentHashMap<String, Set<String>>();
-
-        public LayerMap() {
-            // Lock initialization
-            lock = new ReentrantReadWriteLock(true);
-            writeLock = lock.writeLock();
-            readLock = lock.readLock();
-        }
+        private final ConcurrentHashMap<String, Set<TileKey>> layerMap = new ConcurrentHashMap<>();
 
         /**
          * Insertion of a {@link TileObject} key in the map for the associated Layer.
          *
-         * @param layer
          * @param id
          */
-        // not sure why locking is used on top of concurrent structures to start with... just
-        // ignoring to move on, but imho all locks should be removed and concurrent structure
-        // be used as intended (e.g., putIfAbsent and the like
-        @SuppressFBWarnings({
-            "AT_OPERATION_SEQUENCE_ON_CONCURRENT_ABSTRACTION",
-            "UL_UNRELEASED_LOCK",
-            "UL_UNRELEASED_LOCK_EXCEPTION_PATH"
-        })
-        public void putTile(String layer, String id) {
-            // ReadLock is used because we are only accessing the map
-            readLock.lock();
-            Set<String> tileKeys = layerMap.get(layer);
-            if (tileKeys == null) {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("No KeySet for Layer: " + layer);
-                }
-                // If the Map is not present, we must add it
-                // So we do the unlock and try to acquire the writeLock
-                readLock.unlock();
-                writeLock.lock();
-                try {
-                    // Check again if the tileKey has not been added already
-                    tileKeys = layerMap.get(layer);
-                    if (tileKeys == null) {
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug("Creating new KeySet for Layer: " + layer);
-                        }
-                        // If no key is present then a new KeySet is created and then added to the
-                        // multimap
-                        tileKeys = new ConcurrentSkipListSet<String>();
-                        layerMap.put(layer, tileKeys);
+        public void putTile(TileKey id) {
+            while (true) {
+                Set<TileKey> tileKeys = layerMap.get(id.getLayerName());
+                if (tileKeys == null) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Creating new KeySet for Layer: " + id.getLayerName());
                     }
-                    // Downgrade by acquiring read lock before releasing write lock
-                    readLock.lock();
-                } finally {
-                    // Release the writeLock
-                    writeLock.unlock();
-                }
-            }
-            try {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Add the TileObject id to the Map");
+                    tileKeys =
+                            layerMap.computeIfAbsent(
+                                    id.getLayerName(), layer -> ConcurrentHashMap.newKeySet());
                 }
-                // Finally the tile key is added.
                 tileKeys.add(id);
-            } finally {
-                readLock.unlock();
+                // Check the layer has not been removed in the meantime, the key would be lost
+                if (layerMap.get(id.getLayerName()) == tileKeys) {
+                    return;
+                }
+                tileKeys.remove(id);
             }
         }
 
         /**
          * Removal of a {@link TileObject} key in the map for the associated Layer.
          *
-         * @param layer
          * @param id
          */
-        public void removeTile(String layer, String id) {
-            // ReadLock is used because we are only accessing the map
-            readLock.lock();
-            try {
-                // KeySet associated to the image
-                Set<String> tileKeys = layerMap.get(layer);
-                if (tileKeys != null) {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Remove TileObject id to the Map");
-                    }
-                    // Removal of the keys
-                    tileKeys.remove(id);
-                    // If the KeySet is empty then it is removed from the multimap
-                    if (tileKeys.isEmpty()) {
-                        readLock.unlock();
-                        writeLock.lock();
-                        try {
-                            if (tileKeys.isEmpty()) {
-                                // Here writeLock is acquired again, but it is reentrant
-                                removeLayer(layer);
-                            }
-                            // Downgrade by acquiring read lock before releasing write lock
-                            readLock.lock();
-                        } finally {
-                            writeLock.unlock();
-                        }
-                    }
+        public void removeTile(TileKey id) {
+            Set<TileKey> tileKeys = layerMap.get(id.getLayerName());
+            if (tileKeys != null) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Remove TileObject id to the Map");
                 }
-            } finally {
-                readLock.unlock();
+                tileKeys.remove(id);
             }
         }
 
@@ -753,21 +680,11 @@ public class GuavaCacheProvider implements CacheProvider {
          * @param layer
          * @return the keys associated to the Layer
          */
-        public Set<String> removeLayer(String layer) {
-            writeLock.lock();
-            try {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Removing KeySet for Layer: " + layer);
-                }
-                // Get the Set from the map
-                Set<String> layers = layerMap.get(layer);
-                // Removes the set from the map
-                layerMap.remove(layer);
-                // Returns the set
-                return layers;
-            } finally {
-                writeLock.unlock();
+        public Set<TileKey> removeLayer(String layer) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Removing KeySet for Layer: " + layer);
             }
+            return layerMap.remove(layer);
         }
     }
 }
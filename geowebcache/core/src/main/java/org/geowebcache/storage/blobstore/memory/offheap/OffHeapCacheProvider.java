@@ -0,0 +1,328 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.memory.offheap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.storage.TileKey;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration.EvictionPolicy;
+import org.geowebcache.storage.blobstore.memory.CacheProvider;
+import org.geowebcache.storage.blobstore.memory.CacheStatistics;
+import org.geowebcache.storage.blobstore.memory.guava.GuavaCacheProvider;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * {@link CacheProvider} keeping the tiles out of the Java heap, in direct memory, so that large
+ * caches do not weigh on the garbage collector.
+ *
+ * <p>The cache is split in {@link CacheConfiguration#getConcurrencyLevel() concurrency level}
+ * segments, each one with its own lock, its own share of the {@link
+ * CacheConfiguration#getHardMemoryLimit() memory limit} and its own eviction. Tiles are stored in
+ * fixed size blocks, the direct memory being allocated in slabs as the cache fills up. Cached tiles
+ * are returned as read-only views on their blocks, without any copy.
+ *
+ * <p>The direct memory used is bounded by {@code -XX:MaxDirectMemorySize}, which defaults to the
+ * maximum heap size, it has to be raised to the memory limit of the cache.
+ */
+public class OffHeapCacheProvider implements CacheProvider {
+
+    private static final Log LOGGER = LogFactory.getLog(OffHeapCacheProvider.class);
+
+    /** Default size of the blocks tiles are stored in */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    /** Size of the direct buffers the blocks are allocated in */
+    static final int SLAB_SIZE = 64 * 1024 * 1024;
+
+    private static final String OFF_HEAP_NAME = "Off-Heap Cache";
+
+    /** Array containing the supported Policies */
+    public static final List<EvictionPolicy> POLICIES =
+            Collections.unmodifiableList(
+                    Arrays.asList(
+                            EvictionPolicy.NULL,
+                            EvictionPolicy.LRU,
+                            EvictionPolicy.LFU,
+                            EvictionPolicy.EXPIRE_AFTER_ACCESS,
+                            EvictionPolicy.EXPIRE_AFTER_WRITE));
+
+    private final int blockSize;
+
+    /** Names of the Layers that must not be cached */
+    private final Set<String> layers = ConcurrentHashMap.newKeySet();
+
+    /** The cache segments, {@code null} when the cache is not configured */
+    private volatile OffHeapSegment[] segments;
+
+    /** Cache total memory in bytes */
+    private long maxMemory;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private ScheduledExecutorService scheduledPool;
+
+    public OffHeapCacheProvider(CacheConfiguration config) {
+        this(config, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize size of the blocks tiles are stored in, tiles take a whole number of blocks
+     *     so it is a trade off between the memory wasted in the last block of each tile and the
+     *     size of the on heap index
+     */
+    public OffHeapCacheProvider(CacheConfiguration config, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        configure(config);
+    }
+
+    @Override
+    public synchronized void configure(CacheConfiguration configuration) {
+        reset();
+        EvictionPolicy policy = configuration.getPolicy();
+        if (policy == null) {
+            policy = EvictionPolicy.NULL;
+        }
+        long evictionTime =
+                policy == EvictionPolicy.EXPIRE_AFTER_ACCESS
+                                || policy == EvictionPolicy.EXPIRE_AFTER_WRITE
+                        ? TimeUnit.SECONDS.toMillis(configuration.getEvictionTime())
+                        : 0;
+        maxMemory = configuration.getHardMemoryLimit() * GuavaCacheProvider.BYTES_TO_MB;
+        int count = Math.max(1, configuration.getConcurrencyLevel());
+        OffHeapSegment[] newSegments = new OffHeapSegment[count];
+        for (int i = 0; i < count; i++) {
+            newSegments[i] =
+                    new OffHeapSegment(
+                            maxMemory / count,
+                            blockSize,
+                            SLAB_SIZE,
+                            policy,
+                            evictionTime,
+                            evictions);
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        segments = newSegments;
+
+        if (evictionTime > 0) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Configuring Scheduled Task for cache eviction");
+            }
+            CustomizableThreadFactory threadFactory =
+                    new CustomizableThreadFactory("GWC Off-Heap Cache eviction-");
+            threadFactory.setDaemon(true);
+            scheduledPool = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            scheduledPool.scheduleAtFixedRate(
+                    () -> {
+                        OffHeapSegment[] current = segments;
+                        if (current != null) {
+                            long now = System.currentTimeMillis();
+                            for (OffHeapSegment segment : current) {
+                                segment.expire(now);
+                            }
+                        }
+                    },
+                    10,
+                    configuration.getEvictionTime() + 1,
+                    TimeUnit.SECONDS);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(
+                    "Configured off-heap cache of "
+                            + maxMemory
+                            + " bytes in "
+                            + count
+                            + " segments, eviction policy "
+                            + policy);
+        }
+    }
+
+    private OffHeapSegment segment(OffHeapSegment[] segments, TileKey key) {
+        int hash = key.hashCode();
+        // spread the hash bits, as HashMap does
+        hash ^= hash >>> 16;
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+    @Override
+    public TileObject getTileObj(TileObject obj) {
+        final OffHeapSegment[] current = segments;
+        if (current == null || layers.contains(obj.getLayerName())) {
+            return null;
+        }
+        TileKey key = TileKey.lookup(obj);
+        OffHeapResource resource = segment(current, key).get(key, System.currentTimeMillis());
+        if (resource == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        TileObject cached =
+                TileObject.createCompleteTileObject(
+                        obj.getLayerName(),
+                        obj.getXYZ(),
+                        obj.getGridSetId(),
+                        obj.getBlobFormat(),
+                        obj.getParameters(),
+                        resource);
+        cached.setParametersId(obj.getParametersId());
+        cached.setCreated(resource.getLastModified());
+        return cached;
+    }
+
+    @Override
+    public void putTileObj(TileObject obj) {
+        final OffHeapSegment[] current = segments;
+        if (current == null || layers.contains(obj.getLayerName()) || obj.getBlob() == null) {
+            return;
+        }
+        TileKey key = TileKey.store(obj);
+        OffHeapSegment segment = segment(current, key);
+        if (!segment.put(key, obj.getBlob(), System.currentTimeMillis())) {
+            // do not serve the previous version of the tile
+            segment.remove(key);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("No room for TileObject: " + obj + " in the off-heap cache");
+            }
+        }
+    }
+
+    @Override
+    public void removeTileObj(TileObject obj) {
+        final OffHeapSegment[] current = segments;
+        if (current == null || layers.contains(obj.getLayerName())) {
+            return;
+        }
+        TileKey key = TileKey.lookup(obj);
+        segment(current, key).remove(key);
+    }
+
+    @Override
+    public void removeLayer(String layername) {
+        final OffHeapSegment[] current = segments;
+        if (current == null || layers.contains(layername)) {
+            return;
+        }
+        for (OffHeapSegment segment : current) {
+            segment.removeLayer(layername);
+        }
+    }
+
+    @Override
+    public void clear() {
+        final OffHeapSegment[] current = segments;
+        if (current != null) {
+            for (OffHeapSegment segment : current) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Drops the cache segments. Their direct memory is released by the garbage collector once the
+     * views on the tiles they contain are gone.
+     */
+    @Override
+    public synchronized void reset() {
+        segments = null;
+        layers.clear();
+        if (scheduledPool != null) {
+            scheduledPool.shutdownNow();
+            scheduledPool = null;
+        }
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        final OffHeapSegment[] current = segments;
+        if (current == null) {
+            return new CacheStatistics();
+        }
+        long actualSize = 0;
+        for (OffHeapSegment segment : current) {
+            actualSize += segment.getUsedBytes();
+        }
+        long hitCount = hits.sum();
+        long requestCount = hitCount + misses.sum();
+        CacheStatistics statistics = new CacheStatistics();
+        statistics.setHitCount(hitCount);
+        statistics.setMissCount(requestCount - hitCount);
+        statistics.setEvictionCount(evictions.sum());
+        statistics.setTotalCount(requestCount);
+        statistics.setHitRate(requestCount == 0 ? 100 : (int) (100 * hitCount / requestCount));
+        statistics.setMissRate(100 - statistics.getHitRate());
+        statistics.setCurrentMemoryOccupation(
+                maxMemory == 0 ? 0 : Math.min(100, (long) (100d * actualSize / maxMemory)));
+        statistics.setActualSize(actualSize);
+        statistics.setTotalSize(maxMemory);
+        return statistics;
+    }
+
+    @Override
+    public void addUncachedLayer(String layername) {
+        if (segments != null) {
+            layers.add(layername);
+        }
+    }
+
+    @Override
+    public void removeUncachedLayer(String layername) {
+        layers.remove(layername);
+    }
+
+    @Override
+    public boolean containsUncachedLayer(String layername) {
+        return segments != null && layers.contains(layername);
+    }
+
+    @Override
+    public List<EvictionPolicy> getSupportedPolicies() {
+        return POLICIES;
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return false;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return OFF_HEAP_NAME;
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.memory.offheap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import org.geowebcache.io.Resource;
+
+/**
+ * Read-only {@link Resource} view over the off-heap blocks of a cached tile, no bytes are copied on
+ * heap.
+ *
+ * <p>The view holds a pin that prevents the blocks from being reused for other tiles as long as the
+ * view is reachable, see {@link OffHeapSegment}.
+ */
+final class OffHeapResource implements Resource {
+
+    private final Object pin;
+
+    private final ByteBuffer[] blocks;
+
+    private final int length;
+
+    private final long lastModified;
+
+    OffHeapResource(OffHeapSegment.Entry entry, Object pin, ByteBuffer[] blocks) {
+        this.pin = pin;
+        this.blocks = blocks;
+        this.length = entry.length;
+        this.lastModified = entry.created;
+    }
+
+    @Override
+    public long getSize() {
+        return length;
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        try {
+            for (ByteBuffer block : blocks) {
+                ByteBuffer buffer = block.duplicate();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } finally {
+            reachabilityFence(pin);
+        }
+        return length;
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel channel) throws IOException {
+        throw new UnsupportedOperationException("Cached tiles are read only");
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new BlocksInputStream(pin, blocks);
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new UnsupportedOperationException("Cached tiles are read only");
+    }
+
+    @Override
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Keeps the pin reachable up to this point, the blocks must not be reused while being read even
+     * if the view is not used anymore. Same as Java 9 {@code Reference.reachabilityFence}.
+     */
+    static void reachabilityFence(Object pin) {
+        synchronized (pin) {
+            // nothing to do
+        }
+    }
+
+    /** Reads the blocks in sequence */
+    private static final class BlocksInputStream extends InputStream {
+
+        private final Object pin;
+
+        private final ByteBuffer[] blocks;
+
+        private int current;
+
+        BlocksInputStream(Object pin, ByteBuffer[] blocks) {
+            this.pin = pin;
+            this.blocks = new ByteBuffer[blocks.length];
+            for (int i = 0; i < blocks.length; i++) {
+                this.blocks[i] = blocks[i].duplicate();
+            }
+        }
+
+        /** @return the block to read from, or {@code null} at the end of the stream */
+        private ByteBuffer block() {
+            while (current < blocks.length && !blocks[current].hasRemaining()) {
+                current++;
+            }
+            return current < blocks.length ? blocks[current] : null;
+        }
+
+        @Override
+        public int read() {
+            try {
+                ByteBuffer block = block();
+                return block == null ? -1 : block.get() & 0xFF;
+            } finally {
+                reachabilityFence(pin);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                ByteBuffer block = block();
+                if (block == null) {
+                    return -1;
+                }
+                int read = Math.min(len, block.remaining());
+                block.get(b, off, read);
+                return read;
+            } finally {
+                reachabilityFence(pin);
+            }
+        }
+
+        @Override
+        public int available() {
+            int available = 0;
+            for (int i = current; i < blocks.length; i++) {
+                available += blocks[i].remaining();
+            }
+            return available;
+        }
+    }
+}
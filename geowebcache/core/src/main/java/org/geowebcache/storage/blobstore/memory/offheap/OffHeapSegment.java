@@ -0,0 +1,531 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.memory.offheap;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.TileKey;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration.EvictionPolicy;
+
+/**
+ * A slice of the {@link OffHeapCacheProvider} cache, holding the tiles whose keys hash to it.
+ *
+ * <p>The tiles are stored in fixed size blocks carved out of direct {@link ByteBuffer} slabs, the
+ * slabs being allocated as the cache fills up. The on-heap index only keeps, for each tile, the
+ * numbers of its blocks and a few counters. Eviction frees as many least recently (or least
+ * frequently) used tiles as needed to fit the new one.
+ *
+ * <p>Tiles are handed out as {@link OffHeapResource} views on their blocks. Each view holds a small
+ * pin object, tracked with a {@link PhantomReference}, so that the blocks of a removed tile are
+ * only reused once the garbage collector found all its views unreachable. Pins are short lived
+ * objects, they are usually collected by the next young collection.
+ *
+ * <p>Admission only depends on the tiles in the index: when the free blocks are still pinned by the
+ * views of removed tiles, the new tile gets a direct buffer of its own, released by the garbage
+ * collector along with its last view, instead of being refused.
+ */
+final class OffHeapSegment {
+
+    private static final Log LOGGER = LogFactory.getLog(OffHeapSegment.class);
+
+    /** Number of least recently used entries the LFU eviction picks its victim among */
+    static final int LFU_SAMPLE_SIZE = 16;
+
+    private static final int[] NO_BLOCKS = new int[0];
+
+    /** On-heap index entry of a cached tile */
+    static final class Entry {
+
+        final TileKey key;
+
+        final int[] blocks;
+
+        /** Buffer of a tile stored outside of the slabs, {@code null} for tiles in the slabs */
+        final ByteBuffer overflow;
+
+        final int length;
+
+        final long created;
+
+        final long written;
+
+        long accessed;
+
+        int hits;
+
+        /** Number of views whose pin has not been collected yet */
+        int pins;
+
+        /** Removed from the index while pinned, the blocks are to be freed with the last pin */
+        boolean removed;
+
+        Entry(TileKey key, int[] blocks, ByteBuffer overflow, int length, long created, long now) {
+            this.key = key;
+            this.blocks = blocks;
+            this.overflow = overflow;
+            this.length = length;
+            this.created = created;
+            this.written = now;
+            this.accessed = now;
+        }
+    }
+
+    /** Notified when the pin of a view has been collected */
+    private static final class PinReference extends PhantomReference<Object> {
+
+        final Entry entry;
+
+        PinReference(Object pin, Entry entry, ReferenceQueue<Object> queue) {
+            super(pin, queue);
+            this.entry = entry;
+        }
+    }
+
+    private final int blockSize;
+
+    private final int blocksPerSlab;
+
+    private final ByteBuffer[] slabs;
+
+    /** Number of blocks the segment can hold, lowered if direct memory runs out */
+    private int capacityBlocks;
+
+    /** Number of blocks handed out at least once, the next fresh block */
+    private int usedBlocks;
+
+    /** Blocks freed by removed tiles */
+    private final int[] freeBlocks;
+
+    private int freeCount;
+
+    /** Blocks taken by the tiles in the index and those being put, in the slabs or not */
+    private int liveBlocks;
+
+    private final LinkedHashMap<TileKey, Entry> index;
+
+    private final ReferenceQueue<Object> pinQueue = new ReferenceQueue<>();
+
+    /** Keeps the pin references reachable until they are enqueued */
+    private final Set<PinReference> pinReferences = new HashSet<>();
+
+    private final EvictionPolicy policy;
+
+    /** Eviction time in milliseconds, {@code 0} if tiles do not expire */
+    private final long evictionTime;
+
+    private final LongAdder evictions;
+
+    private volatile long usedBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    OffHeapSegment(
+            long capacity,
+            int blockSize,
+            int slabSize,
+            EvictionPolicy policy,
+            long evictionTime,
+            LongAdder evictions) {
+        this.blockSize = blockSize;
+        this.blocksPerSlab = Math.max(1, slabSize / blockSize);
+        this.capacityBlocks = (int) Math.min(capacity / blockSize, Integer.MAX_VALUE - 8);
+        this.slabs = new ByteBuffer[(capacityBlocks + blocksPerSlab - 1) / blocksPerSlab];
+        this.freeBlocks = new int[capacityBlocks];
+        this.policy = policy;
+        this.evictionTime = evictionTime;
+        this.evictions = evictions;
+        // expire after write is the only policy that does not care about accesses
+        this.index = new LinkedHashMap<>(16, 0.75f, policy != EvictionPolicy.EXPIRE_AFTER_WRITE);
+    }
+
+    /** @return a view on the tile, or {@code null} if not cached or expired */
+    OffHeapResource get(TileKey key, long now) {
+        lock.lock();
+        try {
+            reclaim();
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry, now)) {
+                remove(entry);
+                return null;
+            }
+            entry.accessed = now;
+            if (entry.hits < Integer.MAX_VALUE) {
+                entry.hits++;
+            }
+            Object pin = new Object();
+            pinReferences.add(new PinReference(pin, entry, pinQueue));
+            entry.pins++;
+            return new OffHeapResource(entry, pin, slices(entry));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the tile in the segment, evicting other tiles if needed
+     *
+     * @return {@code false} if the tile could not be cached
+     */
+    boolean put(TileKey key, Resource blob, long now) {
+        final long size = blob.getSize();
+        if (size < 0 || size > (long) capacityBlocks * blockSize) {
+            return false;
+        }
+        final int length = (int) size;
+        final int count = blocks(length);
+        int[] blocks;
+        ByteBuffer overflow = null;
+        lock.lock();
+        try {
+            if (!admit(count)) {
+                return false;
+            }
+            blocks = allocate(count);
+            if (blocks == null) {
+                // the free blocks are still pinned by the views of removed tiles
+                blocks = NO_BLOCKS;
+                overflow = allocateOverflow(length);
+                if (overflow == null) {
+                    liveBlocks -= count;
+                    return false;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        final Entry entry = new Entry(key, blocks, overflow, length, blob.getLastModified(), now);
+        try {
+            // the blocks are not reachable by anyone else until the entry is published
+            blob.transferTo(new BlocksChannel(slices(entry)));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to copy tile " + key + " in the off-heap cache", e);
+            lock.lock();
+            try {
+                free(blocks);
+                liveBlocks -= count;
+            } finally {
+                lock.unlock();
+            }
+            return false;
+        }
+        lock.lock();
+        try {
+            Entry previous = index.put(key, entry);
+            if (previous != null) {
+                release(previous);
+            }
+            usedBytes += length;
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    void remove(TileKey key) {
+        lock.lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry != null) {
+                remove(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void removeLayer(String layerName) {
+        lock.lock();
+        try {
+            for (Iterator<Entry> it = index.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (layerName.equals(entry.key.getLayerName())) {
+                    it.remove();
+                    release(entry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            for (Entry entry : index.values()) {
+                release(entry);
+            }
+            index.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes the expired tiles, if the eviction policy expires them */
+    void expire(long now) {
+        if (evictionTime <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            // the index is sorted by the time the policy expires on
+            for (Iterator<Entry> it = index.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (!isExpired(entry, now)) {
+                    break;
+                }
+                it.remove();
+                release(entry);
+                evictions.increment();
+            }
+            reclaim();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the total size of the cached tiles */
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        if (evictionTime <= 0) {
+            return false;
+        }
+        if (policy == EvictionPolicy.EXPIRE_AFTER_ACCESS) {
+            return now - entry.accessed > evictionTime;
+        }
+        if (policy == EvictionPolicy.EXPIRE_AFTER_WRITE) {
+            return now - entry.written > evictionTime;
+        }
+        return false;
+    }
+
+    private void remove(Entry entry) {
+        index.remove(entry.key);
+        release(entry);
+    }
+
+    /** Frees the blocks of a tile removed from the index, or defers it if the tile is pinned */
+    private void release(Entry entry) {
+        usedBytes -= entry.length;
+        liveBlocks -= blocks(entry.length);
+        if (entry.pins == 0 || entry.overflow != null) {
+            free(entry.blocks);
+        } else {
+            entry.removed = true;
+        }
+    }
+
+    private void free(int[] blocks) {
+        for (int block : blocks) {
+            freeBlocks[freeCount++] = block;
+        }
+    }
+
+    /** Frees the blocks of the removed tiles whose views have all been collected */
+    private void reclaim() {
+        PinReference reference;
+        while ((reference = (PinReference) pinQueue.poll()) != null) {
+            pinReferences.remove(reference);
+            Entry entry = reference.entry;
+            if (--entry.pins == 0 && entry.removed) {
+                free(entry.blocks);
+            }
+        }
+    }
+
+    private int available() {
+        return freeCount + capacityBlocks - usedBlocks;
+    }
+
+    /** @return the number of blocks a tile of the given length takes */
+    private int blocks(int length) {
+        return (length + blockSize - 1) / blockSize;
+    }
+
+    /**
+     * Evicts tiles from the index until there is room for the new one, and reserves its blocks
+     *
+     * @return {@code false} if there is nothing left to evict
+     */
+    private boolean admit(final int count) {
+        reclaim();
+        while (liveBlocks + count > capacityBlocks) {
+            if (!evictOne()) {
+                return false;
+            }
+        }
+        liveBlocks += count;
+        return true;
+    }
+
+    /** @return the allocated blocks, or {@code null} if there are not enough free blocks */
+    private int[] allocate(final int count) {
+        if (available() < count) {
+            return null;
+        }
+        int fresh = count - Math.min(count, freeCount);
+        if (fresh > 0 && !allocateSlabs(usedBlocks + fresh)) {
+            return null;
+        }
+        int[] blocks = new int[count];
+        for (int i = 0; i < count; i++) {
+            blocks[i] = freeCount > 0 ? freeBlocks[--freeCount] : usedBlocks++;
+        }
+        return blocks;
+    }
+
+    /** Makes sure the slabs holding the first {@code blockCount} blocks are allocated */
+    private boolean allocateSlabs(int blockCount) {
+        for (int slab = 0; slab * blocksPerSlab < blockCount; slab++) {
+            if (slabs[slab] == null) {
+                int blocks = Math.min(blocksPerSlab, capacityBlocks - slab * blocksPerSlab);
+                try {
+                    slabs[slab] = ByteBuffer.allocateDirect(blocks * blockSize);
+                } catch (OutOfMemoryError e) {
+                    // the cache is larger than the direct memory available, shrink it
+                    LOGGER.warn(
+                            "Unable to allocate off-heap memory, the tile cache is limited to "
+                                    + (long) slab * blocksPerSlab * blockSize
+                                    + " bytes in this segment, consider raising "
+                                    + "-XX:MaxDirectMemorySize",
+                            e);
+                    capacityBlocks = slab * blocksPerSlab;
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** @return a direct buffer for a tile that does not fit in the free blocks, or {@code null} */
+    private ByteBuffer allocateOverflow(int length) {
+        try {
+            return ByteBuffer.allocateDirect(length);
+        } catch (OutOfMemoryError e) {
+            LOGGER.warn("Unable to allocate off-heap memory for a tile", e);
+            return null;
+        }
+    }
+
+    /** @return {@code false} if there is nothing left to evict */
+    private boolean evictOne() {
+        Iterator<Entry> it = index.values().iterator();
+        if (!it.hasNext()) {
+            return false;
+        }
+        Entry victim = it.next();
+        if (policy == EvictionPolicy.LFU) {
+            // the least frequently used among the least recently used ones, aging the others
+            for (int i = 1; i < LFU_SAMPLE_SIZE && it.hasNext(); i++) {
+                Entry candidate = it.next();
+                if (candidate.hits < victim.hits) {
+                    victim.hits >>= 1;
+                    victim = candidate;
+                } else {
+                    candidate.hits >>= 1;
+                }
+            }
+        }
+        remove(victim);
+        evictions.increment();
+        return true;
+    }
+
+    /** @return read only buffers on the blocks of the tile, the last one trimmed to its length */
+    private ByteBuffer[] slices(Entry entry) {
+        if (entry.overflow != null) {
+            return new ByteBuffer[] {entry.overflow.duplicate()};
+        }
+        ByteBuffer[] slices = new ByteBuffer[entry.blocks.length];
+        int remaining = entry.length;
+        for (int i = 0; i < slices.length; i++) {
+            int block = entry.blocks[i];
+            int offset = (block % blocksPerSlab) * blockSize;
+            int length = Math.min(blockSize, remaining);
+            ByteBuffer slice = slabs[block / blocksPerSlab].duplicate();
+            slice.limit(offset + length).position(offset);
+            slices[i] = slice.slice();
+            remaining -= length;
+        }
+        return slices;
+    }
+
+    /** Writes sequentially into the blocks of a tile */
+    private static final class BlocksChannel implements WritableByteChannel {
+
+        private final ByteBuffer[] blocks;
+
+        private int current;
+
+        BlocksChannel(ByteBuffer[] blocks) {
+            this.blocks = blocks;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = 0;
+            while (src.hasRemaining()) {
+                while (current < blocks.length && !blocks[current].hasRemaining()) {
+                    current++;
+                }
+                if (current == blocks.length) {
+                    throw new IOException("Tile larger than its declared size");
+                }
+                ByteBuffer block = blocks[current];
+                int count = Math.min(block.remaining(), src.remaining());
+                ByteBuffer chunk = src.duplicate();
+                chunk.limit(chunk.position() + count);
+                block.put(chunk);
+                src.position(src.position() + count);
+                written += count;
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,602 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.tiered;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.BlobStoreListener;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileKey;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.UnsuitableStorageException;
+import org.geowebcache.storage.blobstore.file.FileBlobStore;
+import org.geowebcache.util.FileUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * {@link BlobStore} wrapping a remote one, such as S3 or Azure, with a bounded local disk tier
+ * holding copies of the most requested tiles, so that they are served without a round trip to the
+ * remote store.
+ *
+ * <p>Tiles are read from the local tier when present there, otherwise from the remote tier, and
+ * copied to the local tier if admitted. Admission follows the TinyLFU policy: the recent access
+ * frequency of every tile looked up is estimated with a {@link FrequencySketch}, and once the local
+ * tier is full a tile only gets in if it is more frequently accessed than the least recently used
+ * tiles it would evict. Tiles read once in a while, as during a seed or a crawl, thus don't flush
+ * the popular ones.
+ *
+ * <p>Writes and deletes go to the remote tier, then invalidate the local copies, the index of the
+ * local tier being kept up to date by the delete and truncate events of the local {@link
+ * FileBlobStore}. The listeners registered on this store are registered on the remote one, and only
+ * see the remote tier events.
+ *
+ * <p>The local tier only knows about changes made through this store, it should not be used in
+ * front of a remote store other GeoWebCache instances write to. Its contents don't survive a
+ * restart, the local directory being emptied on startup. Only directories marked with a {@link
+ * #MARKER_FILE} by a previous local tier are emptied, any other non empty directory is refused.
+ */
+public class TieredBlobStore implements BlobStore {
+
+    private static final Log log = LogFactory.getLog(TieredBlobStore.class);
+
+    /** Tile size assumed to size the {@link FrequencySketch} after the local tier size */
+    static final int AVERAGE_TILE_SIZE = 16 * 1024;
+
+    /** File telling apart a local tier directory, which can be emptied, from any other directory */
+    public static final String MARKER_FILE = "localtier.properties";
+
+    private final BlobStore remote;
+
+    private final FileBlobStore local;
+
+    private final long maxSize;
+
+    /**
+     * Runs the copies to the local tier and the invalidations following the asynchronous calls,
+     * rather than the remote store client threads
+     */
+    private final ExecutorService localExecutor;
+
+    /** The tiles in the local tier, least recently used first, guards the fields below */
+    private final LinkedHashMap<TileKey, LocalTile> index = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    /** Bytes held by the local tier, including the tiles being copied there */
+    private long used;
+
+    /**
+     * Number of invalidations so far, a tile copied to the local tier is dropped if any happened
+     * since it was read from the remote tier, as it could have been a stale copy
+     */
+    private long invalidations;
+
+    /**
+     * @param remote the store to cache the tiles of
+     * @param localDirectory the directory of the local tier, emptied if it holds a previous local
+     *     tier
+     * @param maxSize the maximum size of the local tier, in bytes
+     * @throws UnsuitableStorageException if the local directory holds something else than a local
+     *     tier
+     */
+    public TieredBlobStore(BlobStore remote, String localDirectory, long maxSize)
+            throws StorageException {
+        checkNotNull(remote);
+        checkNotNull(localDirectory);
+        checkArgument(maxSize > 0, "maxSize must be positive: %s", maxSize);
+        this.remote = remote;
+        this.maxSize = maxSize;
+        this.sketch = new FrequencySketch(maxSize / AVERAGE_TILE_SIZE);
+        final File directory = new File(localDirectory);
+        clearLocalDirectory(directory);
+        this.local = new FileBlobStore(localDirectory);
+        this.local.addListener(new IndexUpdater());
+        try {
+            new File(directory, MARKER_FILE).createNewFile();
+        } catch (IOException e) {
+            local.destroy();
+            throw new StorageException("Unable to mark " + directory + " as a local tier", e);
+        }
+        CustomizableThreadFactory tf = new CustomizableThreadFactory("GWC local tier thread-");
+        tf.setDaemon(true);
+        this.localExecutor =
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), tf);
+    }
+
+    /**
+     * Empties the directory of a previous local tier, keeping its marker file so that an
+     * interrupted cleanup is resumed on the next startup, and the file blob store metadata file for
+     * the directory to be reused
+     */
+    private static void clearLocalDirectory(File directory) throws StorageException {
+        File[] contents = directory.listFiles();
+        if (contents == null || contents.length == 0) {
+            return;
+        }
+        final File marker = new File(directory, MARKER_FILE);
+        if (!marker.isFile()) {
+            throw new UnsuitableStorageException(
+                    "Attempted to create a local tier in "
+                            + directory
+                            + " but it is not empty and has no "
+                            + MARKER_FILE
+                            + " file telling it holds a previous local tier");
+        }
+        for (File file : contents) {
+            if (file.equals(marker) || file.getName().equals("metadata.properties")) {
+                continue;
+            }
+            boolean deleted =
+                    file.isDirectory() ? FileUtils.rmFileCacheDir(file, null) : file.delete();
+            if (!deleted) {
+                throw new StorageException("Unable to empty the local tier directory " + directory);
+            }
+        }
+    }
+
+    /** @return the remote tier */
+    public BlobStore getRemote() {
+        return remote;
+    }
+
+    /** @return the bytes held by the local tier */
+    public long getLocalSize() {
+        synchronized (index) {
+            return used;
+        }
+    }
+
+    /** @return whether the tile is held by the local tier */
+    boolean isLocal(TileObject obj) {
+        synchronized (index) {
+            return index.containsKey(TileKey.lookup(obj));
+        }
+    }
+
+    @Override
+    public boolean get(TileObject obj) throws StorageException {
+        final TileKey key = TileKey.lookup(obj);
+        final LocalTile cached;
+        final long epoch;
+        synchronized (index) {
+            sketch.increment(key.hashCode());
+            cached = index.get(key);
+            epoch = invalidations;
+        }
+        if (cached != null && getLocal(obj, key, cached)) {
+            return true;
+        }
+        if (!remote.get(obj)) {
+            return false;
+        }
+        fill(obj, key, epoch);
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> getAsync(TileObject obj) {
+        final TileKey key = TileKey.lookup(obj);
+        final LocalTile cached;
+        final long epoch;
+        synchronized (index) {
+            sketch.increment(key.hashCode());
+            cached = index.get(key);
+            epoch = invalidations;
+        }
+        try {
+            if (cached != null && getLocal(obj, key, cached)) {
+                return CompletableFuture.completedFuture(true);
+            }
+        } catch (StorageException e) {
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return remote.getAsync(obj)
+                .thenApplyAsync(
+                        found -> {
+                            if (found) {
+                                fill(obj, key, epoch);
+                            }
+                            return found;
+                        },
+                        localExecutor);
+    }
+
+    private boolean getLocal(TileObject obj, TileKey key, LocalTile cached)
+            throws StorageException {
+        TileObject copy = key.toTileObject(null);
+        if (local.get(copy)) {
+            obj.setBlob(copy.getBlob());
+            obj.setCreated(copy.getCreated());
+            obj.setBlobSize((int) copy.getBlob().getSize());
+            obj.setContentHash(cached.contentHash);
+            return true;
+        }
+        // deleted behind our back, forget about it
+        synchronized (index) {
+            if (index.get(key) == cached) {
+                remove(key);
+            }
+        }
+        return false;
+    }
+
+    /** Copies the tile just read from the remote tier to the local tier, if admitted */
+    private void fill(TileObject obj, TileKey key, long epoch) {
+        final Resource blob = obj.getBlob();
+        final long size = blob.getSize();
+        if (key.getParametersId() != null && obj.getParameters() == null) {
+            // the local tier needs the parameters along with their id
+            return;
+        }
+        final List<TileKey> evicted = new ArrayList<>();
+        synchronized (index) {
+            if (!admit(key, size, evicted)) {
+                return;
+            }
+            used += size;
+        }
+        deleteLocal(evicted);
+
+        TileObject copy = key.toTileObject(obj.getParameters());
+        copy.setBlob(blob);
+        copy.setCreated(obj.getCreated());
+        boolean stored = false;
+        try {
+            local.put(copy);
+            synchronized (index) {
+                if (epoch == invalidations) {
+                    LocalTile previous = index.put(key, new LocalTile(size, obj.getContentHash()));
+                    if (previous != null) {
+                        used -= previous.size;
+                    }
+                    stored = true;
+                }
+            }
+            // the tiles not held in memory are served from the copy rather than read again from
+            // the remote tier
+            if (stored && !(blob instanceof ByteArrayResource) && local.get(copy)) {
+                obj.setBlob(copy.getBlob());
+            }
+        } catch (StorageException | RuntimeException e) {
+            log.warn("Unable to copy " + obj + " to the local tier", e);
+        } finally {
+            if (!stored) {
+                synchronized (index) {
+                    used -= size;
+                }
+                deleteLocal(copy);
+            }
+        }
+    }
+
+    /**
+     * Decides whether a tile gets in the local tier, and picks the tiles to evict to make room for
+     * it, which are removed from the index right away
+     */
+    private boolean admit(TileKey key, long size, List<TileKey> evicted) {
+        if (size > maxSize || index.containsKey(key)) {
+            return false;
+        }
+        long needed = used + size - maxSize;
+        if (needed <= 0) {
+            return true;
+        }
+        final int frequency = sketch.frequency(key.hashCode());
+        List<TileKey> victims = new ArrayList<>();
+        Iterator<Map.Entry<TileKey, LocalTile>> eldest = index.entrySet().iterator();
+        while (needed > 0 && eldest.hasNext()) {
+            Map.Entry<TileKey, LocalTile> victim = eldest.next();
+            if (sketch.frequency(victim.getKey().hashCode()) >= frequency) {
+                return false;
+            }
+            victims.add(victim.getKey());
+            needed -= victim.getValue().size;
+        }
+        if (needed > 0) {
+            // the room is held by tiles being copied
+            return false;
+        }
+        victims.forEach(this::remove);
+        evicted.addAll(victims);
+        return true;
+    }
+
+    /** Removes a tile from the index, to be called holding its lock */
+    private void remove(TileKey key) {
+        LocalTile removed = index.remove(key);
+        if (removed != null) {
+            used -= removed.size;
+        }
+    }
+
+    private void removeIf(Predicate<TileKey> filter) {
+        synchronized (index) {
+            Iterator<Map.Entry<TileKey, LocalTile>> it = index.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<TileKey, LocalTile> entry = it.next();
+                if (filter.test(entry.getKey())) {
+                    used -= entry.getValue().size;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /** To be called once a change reached the remote tier, before applying it to the local one */
+    private void invalidated() {
+        synchronized (index) {
+            invalidations++;
+        }
+    }
+
+    private void invalidate(TileObject obj) {
+        TileKey key = TileKey.lookup(obj);
+        synchronized (index) {
+            invalidations++;
+            remove(key);
+        }
+        deleteLocal(key.toTileObject(null));
+    }
+
+    private void deleteLocal(List<TileKey> keys) {
+        for (TileKey key : keys) {
+            deleteLocal(key.toTileObject(null));
+        }
+    }
+
+    private void deleteLocal(TileObject copy) {
+        try {
+            local.delete(copy);
+        } catch (StorageException e) {
+            // not in the index anymore, it just wastes some space until overwritten
+            log.warn("Unable to delete " + copy + " from the local tier", e);
+        }
+    }
+
+    @Override
+    public void put(TileObject obj) throws StorageException {
+        remote.put(obj);
+        invalidate(obj);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(TileObject obj) {
+        return remote.putAsync(obj).thenRunAsync(() -> invalidate(obj), localExecutor);
+    }
+
+    @Override
+    public boolean delete(TileObject obj) throws StorageException {
+        boolean deleted = remote.delete(obj);
+        invalidate(obj);
+        return deleted;
+    }
+
+    @Override
+    public boolean delete(TileRange tileRange) throws StorageException {
+        boolean deleted = remote.delete(tileRange);
+        invalidated();
+        local.delete(tileRange);
+        return deleted;
+    }
+
+    @Override
+    public boolean delete(String layerName) throws StorageException {
+        boolean deleted = remote.delete(layerName);
+        invalidated();
+        local.delete(layerName);
+        return deleted;
+    }
+
+    @Override
+    public boolean deleteByGridsetId(String layerName, String gridSetId) throws StorageException {
+        boolean deleted = remote.deleteByGridsetId(layerName, gridSetId);
+        invalidated();
+        local.deleteByGridsetId(layerName, gridSetId);
+        return deleted;
+    }
+
+    @Override
+    public boolean deleteByParametersId(String layerName, String parametersId)
+            throws StorageException {
+        boolean deleted = remote.deleteByParametersId(layerName, parametersId);
+        invalidated();
+        local.deleteByParametersId(layerName, parametersId);
+        return deleted;
+    }
+
+    @Override
+    public boolean rename(String oldLayerName, String newLayerName) throws StorageException {
+        boolean renamed = remote.rename(oldLayerName, newLayerName);
+        invalidated();
+        // simpler to fetch the tiles again under the new name than to rename the index
+        local.delete(oldLayerName);
+        return renamed;
+    }
+
+    @Override
+    public void clear() throws StorageException {
+        remote.clear();
+        Set<String> layers = new HashSet<>();
+        synchronized (index) {
+            invalidations++;
+            index.keySet().forEach(key -> layers.add(key.getLayerName()));
+        }
+        for (String layerName : layers) {
+            local.delete(layerName);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        localExecutor.shutdown();
+        remote.destroy();
+        local.destroy();
+    }
+
+    @Override
+    public long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        return remote.getCreationTimes(tiles);
+    }
+
+    @Override
+    public void addListener(BlobStoreListener listener) {
+        remote.addListener(listener);
+    }
+
+    @Override
+    public boolean removeListener(BlobStoreListener listener) {
+        return remote.removeListener(listener);
+    }
+
+    @Override
+    public String getLayerMetadata(String layerName, String key) {
+        return remote.getLayerMetadata(layerName, key);
+    }
+
+    @Override
+    public void putLayerMetadata(String layerName, String key, String value) {
+        remote.putLayerMetadata(layerName, key, value);
+    }
+
+    @Override
+    public boolean layerExists(String layerName) {
+        return remote.layerExists(layerName);
+    }
+
+    @Override
+    public Set<Map<String, String>> getParameters(String layerName) throws StorageException {
+        return remote.getParameters(layerName);
+    }
+
+    @Override
+    public Set<String> getParameterIds(String layerName) throws StorageException {
+        return remote.getParameterIds(layerName);
+    }
+
+    @Override
+    public Map<String, Optional<Map<String, String>>> getParametersMapping(String layerName) {
+        return remote.getParametersMapping(layerName);
+    }
+
+    /** Drops the tiles deleted from the local tier from the index */
+    private class IndexUpdater implements BlobStoreListener {
+
+        @Override
+        public void tileStored(
+                String layerName,
+                String gridSetId,
+                String blobFormat,
+                String parametersId,
+                long x,
+                long y,
+                int z,
+                long blobSize) {
+            // indexed once the copy completed
+        }
+
+        @Override
+        public void tileDeleted(
+                String layerName,
+                String gridSetId,
+                String blobFormat,
+                String parametersId,
+                long x,
+                long y,
+                int z,
+                long blobSize) {
+            TileKey key = new TileKey(layerName, gridSetId, blobFormat, parametersId, x, y, z);
+            synchronized (index) {
+                remove(key);
+            }
+        }
+
+        @Override
+        public void tileUpdated(
+                String layerName,
+                String gridSetId,
+                String blobFormat,
+                String parametersId,
+                long x,
+                long y,
+                int z,
+                long blobSize,
+                long oldSize) {
+            // only written when copied from the remote tier
+        }
+
+        @Override
+        public void layerDeleted(String layerName) {
+            removeIf(key -> key.getLayerName().equals(layerName));
+        }
+
+        @Override
+        public void layerRenamed(String oldLayerName, String newLayerName) {
+            removeIf(key -> key.getLayerName().equals(oldLayerName));
+        }
+
+        @Override
+        public void gridSubsetDeleted(String layerName, String gridSetId) {
+            removeIf(
+                    key ->
+                            key.getLayerName().equals(layerName)
+                                    && key.getGridSetId().equals(gridSetId));
+        }
+
+        @Override
+        public void parametersDeleted(String layerName, String parametersId) {
+            removeIf(
+                    key ->
+                            key.getLayerName().equals(layerName)
+                                    && Objects.equals(key.getParametersId(), parametersId));
+        }
+    }
+
+    /** A tile in the local tier */
+    private static final class LocalTile {
+
+        final long size;
+
+        final String contentHash;
+
+        LocalTile(long size, String contentHash) {
+            this.size = size;
+            this.contentHash = contentHash;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.util;
+
+/**
+ * Thread safe formatting and parsing of the HTTP-date values used by the {@code Expires}, {@code
+ * Last-Modified} and {@code If-Modified-Since} headers, as defined by <a
+ * href="https://tools.ietf.org/html/rfc7231#section-7.1.1.1">RFC 7231</a>.
+ *
+ * <p>Dates are formatted in the preferred IMF-fixdate format ({@code Sun, 06 Nov 1994 08:49:37
+ * GMT}), the formatted values are cached per second so that the headers of the tiles served in the
+ * same second share the same string. Parsing accepts the three formats allowed by the specification
+ * and does not allocate.
+ */
+public class HttpDateUtils {
+
+    /** Returned by {@link #parseDate(CharSequence)} for values that are not a valid HTTP-date */
+    public static final long INVALID_DATE = -1;
+
+    private static final String DAYS = "SunMonTueWedThuFriSat";
+
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+    private static final int IMF_FIXDATE_LENGTH = 29;
+
+    private static final int CACHE_SIZE = 64;
+
+    /**
+     * Direct mapped cache of the formatted dates, indexed by second. Entries are immutable, so
+     * threads racing on a slot at worst format the same date twice.
+     */
+    private static final CachedDate[] CACHE = new CachedDate[CACHE_SIZE];
+
+    private HttpDateUtils() {}
+
+    /**
+     * Formats a timestamp as an IMF-fixdate, the milliseconds are dropped
+     *
+     * @param timestamp milliseconds since the epoch, of a date between the years 1 and 9999
+     * @return the formatted date, e.g. {@code Sun, 06 Nov 1994 08:49:37 GMT}
+     */
+    public static String formatDate(long timestamp) {
+        final long seconds = Math.floorDiv(timestamp, 1000L);
+        final int slot = (int) Math.floorMod(seconds, (long) CACHE_SIZE);
+        CachedDate cached = CACHE[slot];
+        if (cached == null || cached.seconds != seconds) {
+            cached = new CachedDate(seconds, format(seconds));
+            CACHE[slot] = cached;
+        }
+        return cached.value;
+    }
+
+    private static String format(long seconds) {
+        final long days = Math.floorDiv(seconds, 86400L);
+        final int secondOfDay = (int) Math.floorMod(seconds, 86400L);
+
+        // civil date from the days since the epoch, see
+        // http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        final long z = days + 719468;
+        final long era = Math.floorDiv(z, 146097L);
+        final int dayOfEra = (int) (z - era * 146097);
+        final int yearOfEra =
+                (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int mp = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        // 1970-01-01 was a Thursday
+        final int dayOfWeek = (int) Math.floorMod(days + 4, 7L);
+
+        char[] chars = new char[IMF_FIXDATE_LENGTH];
+        DAYS.getChars(dayOfWeek * 3, dayOfWeek * 3 + 3, chars, 0);
+        chars[3] = ',';
+        chars[4] = ' ';
+        twoDigits(chars, 5, day);
+        chars[7] = ' ';
+        MONTHS.getChars((month - 1) * 3, month * 3, chars, 8);
+        chars[11] = ' ';
+        twoDigits(chars, 12, (int) (year / 100));
+        twoDigits(chars, 14, (int) (year % 100));
+        chars[16] = ' ';
+        twoDigits(chars, 17, secondOfDay / 3600);
+        chars[19] = ':';
+        twoDigits(chars, 20, secondOfDay / 60 % 60);
+        chars[22] = ':';
+        twoDigits(chars, 23, secondOfDay % 60);
+        chars[25] = ' ';
+        chars[26] = 'G';
+        chars[27] = 'M';
+        chars[28] = 'T';
+        return new String(chars);
+    }
+
+    private static void twoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * Parses an HTTP-date in any of the IMF-fixdate ({@code Sun, 06 Nov 1994 08:49:37 GMT}), RFC
+     * 850 ({@code Sunday, 06-Nov-94 08:49:37 GMT}) or asctime ({@code Sun Nov 6 08:49:37 1994})
+     * formats. Two digit RFC 850 years below 70 are taken as 20xx, the others as 19xx. The day name
+     * is not checked against the date.
+     *
+     * @param value the header value, may be {@code null}
+     * @return the date in milliseconds since the epoch, or {@link #INVALID_DATE} if the value can't
+     *     be parsed
+     */
+    public static long parseDate(CharSequence value) {
+        if (value == null) {
+            return INVALID_DATE;
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int comma = -1;
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == ',') {
+                comma = i;
+                break;
+            }
+        }
+
+        final int year, month, day, secondOfDay;
+        if (comma < 0) {
+            // asctime: Sun Nov  6 08:49:37 1994
+            int p = start;
+            if (end - p != 24
+                    || value.charAt(p + 3) != ' '
+                    || value.charAt(p + 7) != ' '
+                    || value.charAt(p + 10) != ' '
+                    || value.charAt(p + 19) != ' ') {
+                return INVALID_DATE;
+            }
+            month = month(value, p + 4);
+            day = value.charAt(p + 8) == ' ' ? digits(value, p + 9, 1) : digits(value, p + 8, 2);
+            secondOfDay = time(value, p + 11);
+            year = digits(value, p + 20, 4);
+        } else {
+            int p = comma + 1;
+            if (p < end && value.charAt(p) == ' ') {
+                p++;
+            }
+            if (end - p == 24) {
+                // IMF-fixdate: 06 Nov 1994 08:49:37 GMT
+                if (comma - start != 3
+                        || value.charAt(p + 2) != ' '
+                        || value.charAt(p + 6) != ' '
+                        || value.charAt(p + 11) != ' '
+                        || !isGMT(value, p + 20)) {
+                    return INVALID_DATE;
+                }
+                day = digits(value, p, 2);
+                month = month(value, p + 3);
+                year = digits(value, p + 7, 4);
+                secondOfDay = time(value, p + 12);
+            } else if (end - p == 22) {
+                // RFC 850: 06-Nov-94 08:49:37 GMT
+                if (value.charAt(p + 2) != '-'
+                        || value.charAt(p + 6) != '-'
+                        || !isGMT(value, p + 18)) {
+                    return INVALID_DATE;
+                }
+                day = digits(value, p, 2);
+                month = month(value, p + 3);
+                int twoDigitYear = digits(value, p + 7, 2);
+                year = twoDigitYear < 0 ? -1 : twoDigitYear + (twoDigitYear < 70 ? 2000 : 1900);
+                secondOfDay = time(value, p + 10);
+            } else {
+                return INVALID_DATE;
+            }
+        }
+
+        if (year < 1 || month < 0 || secondOfDay < 0 || day < 1 || day > daysIn(month, year)) {
+            return INVALID_DATE;
+        }
+        return (daysFromCivil(year, month, day) * 86400L + secondOfDay) * 1000L;
+    }
+
+    /** @return {@code " GMT"} at the given offset */
+    private static boolean isGMT(CharSequence value, int offset) {
+        return value.charAt(offset) == ' '
+                && value.charAt(offset + 1) == 'G'
+                && value.charAt(offset + 2) == 'M'
+                && value.charAt(offset + 3) == 'T';
+    }
+
+    /** @return the decimal value of {@code count} digits at the offset, -1 if not all digits */
+    private static int digits(CharSequence value, int offset, int count) {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /** @return the month, from 1 to 12, of the three letters name at the offset, -1 if unknown */
+    private static int month(CharSequence value, int offset) {
+        char c0 = value.charAt(offset);
+        char c1 = value.charAt(offset + 1);
+        char c2 = value.charAt(offset + 2);
+        for (int i = 0; i < 12; i++) {
+            if (MONTHS.charAt(i * 3) == c0
+                    && MONTHS.charAt(i * 3 + 1) == c1
+                    && MONTHS.charAt(i * 3 + 2) == c2) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** @return the second of the day of the {@code HH:mm:ss} time at the offset, -1 if invalid */
+    private static int time(CharSequence value, int offset) {
+        if (value.charAt(offset + 2) != ':' || value.charAt(offset + 5) != ':') {
+            return -1;
+        }
+        int hours = digits(value, offset, 2);
+        int minutes = digits(value, offset + 3, 2);
+        int seconds = digits(value, offset + 6, 2);
+        // 60 is a leap second, counted as the last second of the minute
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 60) {
+            return -1;
+        }
+        return hours * 3600 + minutes * 60 + Math.min(seconds, 59);
+    }
+
+    private static int daysIn(int month, int year) {
+        switch (month) {
+            case 2:
+                boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return the days since the epoch of a civil date, see
+     *     http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static final class CachedDate {
+
+        final long seconds;
+
+        final String value;
+
+        CachedDate(long seconds, String value) {
+            this.seconds = seconds;
+            this.value = value;
+        }
+    }
+}
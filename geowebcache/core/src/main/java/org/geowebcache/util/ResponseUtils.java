@@ -21,12 +21,10 @@ import java.io.OutputStream;
 import java.net.URL;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
-import java.util.Date;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.httpclient.util.DateParseException;
-import org.apache.commons.httpclient.util.DateUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheDispatcher;
@@ -45,7 +43,9 @@ import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.mime.ImageMime;
 import org.geowebcache.stats.RuntimeStats;
+import org.geowebcache.storage.ContentHash;
 import org.geowebcache.storage.DefaultStorageFinder;
+import org.geowebcache.storage.TileObject;
 import org.springframework.http.MediaType;
 
 /**
@@ -63,7 +63,7 @@ public final class ResponseUtils {
     /**
      * Helper method that will get a tile from the target service that correspond to the conveyor
      * data. Security permissions will be checked and the tile will be directly wrote to the output
-     * stream.
+     * stream, without sendfile support nor content hashing.
      *
      * @param secDispatcher security dispatcher
      * @param conv tile request information
@@ -83,6 +83,45 @@ public final class ResponseUtils {
             DefaultStorageFinder defaultStorageFinder,
             RuntimeStats runtimeStats)
             throws GeoWebCacheException, RequestFilterException, IOException {
+        writeTile(
+                secDispatcher,
+                conv,
+                layerName,
+                tileLayerDispatcher,
+                defaultStorageFinder,
+                runtimeStats,
+                null,
+                null);
+    }
+
+    /**
+     * Helper method that will get a tile from the target service that correspond to the conveyor
+     * data. Security permissions will be checked and the tile will be directly wrote to the output
+     * stream, or handed over to the servlet container as allowed by the sendfile support.
+     *
+     * @param secDispatcher security dispatcher
+     * @param conv tile request information
+     * @param layerName layer name
+     * @param tileLayerDispatcher tiles dispatcher
+     * @param defaultStorageFinder storage finder
+     * @param runtimeStats runtime statistics
+     * @param sendFile the servlet container sendfile support, may be {@code null}
+     * @param contentHashing whether to serve the hash of the tile contents as ETag, may be {@code
+     *     null}
+     * @throws GeoWebCacheException
+     * @throws RequestFilterException
+     * @throws IOException
+     */
+    public static void writeTile(
+            SecurityDispatcher secDispatcher,
+            Conveyor conv,
+            String layerName,
+            TileLayerDispatcher tileLayerDispatcher,
+            DefaultStorageFinder defaultStorageFinder,
+            RuntimeStats runtimeStats,
+            SendFileSupport sendFile,
+            ContentHash contentHashing)
+            throws GeoWebCacheException, RequestFilterException, IOException {
         ConveyorTile convTile = (ConveyorTile) conv;
 
         // Get the configuration that has to respond to this request
@@ -102,7 +141,7 @@ public final class ResponseUtils {
             convTile = layer.getTile(convTile);
 
             // A6) Write response
-            writeData(convTile, runtimeStats);
+            writeData(convTile, runtimeStats, sendFile, contentHashing);
 
             // Alternatively:
         } catch (OutsideCoverageException e) {
@@ -111,7 +150,12 @@ public final class ResponseUtils {
     }
 
     /** Happy ending, sets the headers and writes the response back to the client. */
-    private static void writeData(ConveyorTile tile, RuntimeStats runtimeStats) throws IOException {
+    private static void writeData(
+            ConveyorTile tile,
+            RuntimeStats runtimeStats,
+            SendFileSupport sendFile,
+            ContentHash contentHashing)
+            throws IOException {
         HttpServletResponse servletResp = tile.servletResp;
         final HttpServletRequest servletReq = tile.servletReq;
 
@@ -132,37 +176,42 @@ public final class ResponseUtils {
 
         final long tileTimeStamp = tile.getTSCreated();
         final String ifModSinceHeader = servletReq.getHeader("If-Modified-Since");
-        // commons-httpclient's DateUtil can encode and decode timestamps formatted as per RFC-1123,
-        // which is one of the three formats allowed for Last-Modified and If-Modified-Since headers
-        // (e.g. 'Sun, 06 Nov 1994 08:49:37 GMT'). See
-        // http://www.w3.org/Protocols/rfc2616/rfc2616-sec3.html#sec3.3.1
-
-        final String lastModified =
-                org.apache.commons.httpclient.util.DateUtil.formatDate(new Date(tileTimeStamp));
-        servletResp.setHeader("Last-Modified", lastModified);
+        servletResp.setHeader("Last-Modified", HttpDateUtils.formatDate(tileTimeStamp));
 
-        final Date ifModifiedSince;
         if (ifModSinceHeader != null && ifModSinceHeader.length() > 0) {
-            try {
-                ifModifiedSince = DateUtil.parseDate(ifModSinceHeader);
-                // the HTTP header has second precision
-                long ifModSinceSeconds = 1000 * (ifModifiedSince.getTime() / 1000);
-                long tileTimeStampSeconds = 1000 * (tileTimeStamp / 1000);
-                if (ifModSinceSeconds >= tileTimeStampSeconds) {
-                    httpCode = HttpServletResponse.SC_NOT_MODIFIED;
-                    blob = null;
-                }
-            } catch (DateParseException e) {
+            final long ifModifiedSince = HttpDateUtils.parseDate(ifModSinceHeader);
+            if (ifModifiedSince == HttpDateUtils.INVALID_DATE) {
                 if (log.isDebugEnabled()) {
                     log.debug(
                             "Can't parse client's If-Modified-Since header: '"
                                     + ifModSinceHeader
                                     + "'");
                 }
+            } else {
+                // the HTTP header has second precision
+                long tileTimeStampSeconds = 1000 * (tileTimeStamp / 1000);
+                if (ifModifiedSince >= tileTimeStampSeconds) {
+                    httpCode = HttpServletResponse.SC_NOT_MODIFIED;
+                    blob = null;
+                }
             }
         }
 
-        if (httpCode == HttpServletResponse.SC_OK && tile.getLayer().useETags()) {
+        if (tile.getLayer().useETags() && contentHashing != null && contentHashing.isEnabled()) {
+            String etag = contentETag(tile.getStorageObject());
+            String ifNoneMatch = servletReq.getHeader("If-None-Match");
+            // If-None-Match takes precedence over If-Modified-Since, see RFC 7232 section 6
+            if (ifNoneMatch != null) {
+                if (etagMatches(ifNoneMatch, etag)) {
+                    httpCode = HttpServletResponse.SC_NOT_MODIFIED;
+                    blob = null;
+                } else {
+                    httpCode = HttpServletResponse.SC_OK;
+                    blob = tile.getBlob();
+                }
+            }
+            servletResp.setHeader("ETag", etag);
+        } else if (httpCode == HttpServletResponse.SC_OK && tile.getLayer().useETags()) {
             String ifNoneMatch = servletReq.getHeader("If-None-Match");
             String hexTag = Long.toHexString(tileTimeStamp);
 
@@ -179,7 +228,45 @@ public final class ResponseUtils {
 
         int contentLength = (int) (blob == null ? -1 : blob.getSize());
         writeFixedResponse(
-                servletResp, httpCode, mimeType, blob, cacheResult, contentLength, runtimeStats);
+                sendFile,
+                servletReq,
+                servletResp,
+                httpCode,
+                mimeType,
+                blob,
+                cacheResult,
+                contentLength,
+                runtimeStats);
+    }
+
+    /**
+     * @return the strong ETag of the tile contents, using the hash recorded by the blob store if
+     *     any
+     */
+    private static String contentETag(TileObject tile) throws IOException {
+        String hash = tile.getContentHash();
+        if (hash == null) {
+            hash = ContentHash.of(tile.getBlob());
+            tile.setContentHash(hash);
+        }
+        return '"' + hash + '"';
+    }
+
+    /**
+     * Weak comparison of an entity tag with the ones of an {@code If-None-Match} header, as
+     * required by RFC 7232 section 3.2
+     */
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -259,6 +346,43 @@ public final class ResponseUtils {
             CacheResult cacheRes,
             int contentLength,
             RuntimeStats runtimeStats) {
+        writeFixedResponse(
+                null,
+                null,
+                response,
+                httpCode,
+                contentType,
+                resource,
+                cacheRes,
+                contentLength,
+                runtimeStats);
+    }
+
+    /**
+     * Helper method that writes an HTTP response setting the provided HTTP code. Using the provided
+     * content length. If the request is provided file backed resources may be sent by the servlet
+     * container without copying them through the JVM, see {@link #writeResource}.
+     *
+     * @param sendFile the servlet container sendfile support, may be {@code null}
+     * @param request HTTP request, may be {@code null}
+     * @param response HTTP response
+     * @param httpCode HTTP status code
+     * @param contentType HTTP response content type
+     * @param resource HTTP response resource
+     * @param cacheRes provides information about the tile retrieving
+     * @param contentLength HTTP response content length
+     * @param runtimeStats runtime statistics
+     */
+    public static void writeFixedResponse(
+            SendFileSupport sendFile,
+            HttpServletRequest request,
+            HttpServletResponse response,
+            int httpCode,
+            String contentType,
+            Resource resource,
+            CacheResult cacheRes,
+            int contentLength,
+            RuntimeStats runtimeStats) {
 
         response.setStatus(httpCode);
         response.setContentType(contentType);
@@ -266,8 +390,7 @@ public final class ResponseUtils {
         response.setContentLength((int) contentLength);
         if (resource != null) {
             try {
-                OutputStream os = response.getOutputStream();
-                resource.transferTo(Channels.newChannel(os));
+                writeResource(sendFile, request, response, resource);
 
                 runtimeStats.log(contentLength, cacheRes);
 
@@ -277,6 +400,40 @@ public final class ResponseUtils {
         }
     }
 
+    /**
+     * Writes the contents of a resource to the response body. The status, content type and content
+     * length are expected to be already set.
+     *
+     * <p>When the resource is a file and the sendfile support allows it, the file is handed over to
+     * the servlet container instead, see {@link SendFileSupport#sendFile}. Otherwise, the resource
+     * is transferred to the response output stream, using it directly as a channel if the
+     * container's implementation happens to be one.
+     *
+     * @param sendFile the servlet container sendfile support, may be {@code null}
+     * @param request HTTP request, may be {@code null}
+     * @param response HTTP response
+     * @param resource the response body
+     * @throws IOException
+     */
+    public static void writeResource(
+            SendFileSupport sendFile,
+            HttpServletRequest request,
+            HttpServletResponse response,
+            Resource resource)
+            throws IOException {
+        if (sendFile != null && sendFile.sendFile(request, response, resource)) {
+            return;
+        }
+        OutputStream os = response.getOutputStream();
+        WritableByteChannel channel;
+        if (os instanceof WritableByteChannel) {
+            channel = (WritableByteChannel) os;
+        } else {
+            channel = Channels.newChannel(os);
+        }
+        resource.transferTo(channel);
+    }
+
     private static ByteArrayResource loadBlankTile(DefaultStorageFinder defaultStorageFinder) {
         ByteArrayResource blankTile = null;
         String blankTilePath =
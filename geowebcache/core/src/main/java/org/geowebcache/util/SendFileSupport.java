@@ -0,0 +1,153 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.util;
+
+import java.io.File;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.io.FileResource;
+import org.geowebcache.io.Resource;
+
+/**
+ * Hands file backed responses over to the servlet container's sendfile support, so that they are
+ * sent straight from the file system cache to the socket.
+ *
+ * <p>Only the Tomcat sendfile contract is supported, through the {@code
+ * org.apache.tomcat.sendfile.*} request attributes. As the container then writes the file itself,
+ * bypassing any filter wrapping the request or the response, sendfile is only used when both are
+ * the container's own, unwrapped, objects.
+ */
+public class SendFileSupport {
+
+    private static Log log = LogFactory.getLog(SendFileSupport.class);
+
+    /**
+     * Set to {@code false} to disable handing over file backed tiles to the servlet container's
+     * sendfile support
+     */
+    public static final String GEOWEBCACHE_SENDFILE = "GEOWEBCACHE_SENDFILE";
+
+    /** Minimum size in bytes of the files handed over to the servlet container */
+    public static final String GEOWEBCACHE_SENDFILE_MIN_SIZE = "GEOWEBCACHE_SENDFILE_MIN_SIZE";
+
+    /** Default minimum size, as Tomcat's own default servlet, below which copying is cheaper */
+    public static final long DEFAULT_MIN_SIZE = 48 * 1024;
+
+    /** Request attribute set by Tomcat when the connector supports sendfile */
+    static final String TOMCAT_SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    static final String TOMCAT_SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    static final String TOMCAT_SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    static final String TOMCAT_SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    static final String TOMCAT_REQUEST_FACADE = "org.apache.catalina.connector.RequestFacade";
+
+    static final String TOMCAT_RESPONSE_FACADE = "org.apache.catalina.connector.ResponseFacade";
+
+    private final boolean enabled;
+
+    private final long minSize;
+
+    /**
+     * @param enabled whether to use the container's sendfile support at all
+     * @param minSize the minimum size in bytes of the files to hand over to the container
+     */
+    public SendFileSupport(boolean enabled, long minSize) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+    }
+
+    /**
+     * @return the sendfile support configured by the {@link #GEOWEBCACHE_SENDFILE} and {@link
+     *     #GEOWEBCACHE_SENDFILE_MIN_SIZE} properties
+     */
+    public static SendFileSupport fromProperties() {
+        boolean enabled =
+                !"false".equalsIgnoreCase(GeoWebCacheExtensions.getProperty(GEOWEBCACHE_SENDFILE));
+        long minSize = DEFAULT_MIN_SIZE;
+        String minSizeProperty = GeoWebCacheExtensions.getProperty(GEOWEBCACHE_SENDFILE_MIN_SIZE);
+        if (minSizeProperty != null) {
+            try {
+                minSize = Long.parseLong(minSizeProperty.trim());
+            } catch (NumberFormatException e) {
+                log.warn(
+                        "Invalid "
+                                + GEOWEBCACHE_SENDFILE_MIN_SIZE
+                                + " value '"
+                                + minSizeProperty
+                                + "', using "
+                                + DEFAULT_MIN_SIZE);
+            }
+        }
+        return new SendFileSupport(enabled, minSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Hands the resource over to the container if it is a file at least {@link #getMinSize()} long,
+     * and both the container and the request allow it. The response content length is set to the
+     * current length of the file.
+     *
+     * @param request HTTP request, may be {@code null}
+     * @param response HTTP response
+     * @param resource the response body
+     * @return {@code true} if the container is going to send the file, {@code false} if the
+     *     resource must be written to the response
+     */
+    public boolean sendFile(
+            HttpServletRequest request, HttpServletResponse response, Resource resource) {
+        if (!enabled
+                || request == null
+                || !(resource instanceof FileResource)
+                || !Boolean.TRUE.equals(request.getAttribute(TOMCAT_SENDFILE_SUPPORT))
+                || !isContainerRequest(request)
+                || !isContainerResponse(response)) {
+            return false;
+        }
+        File file = ((FileResource) resource).getFile();
+        // the file may have been replaced since the resource was created
+        final long length = file.length();
+        if (length <= 0 || length < minSize) {
+            return false;
+        }
+        response.setContentLengthLong(length);
+        request.setAttribute(TOMCAT_SENDFILE_FILENAME, file.getAbsolutePath());
+        request.setAttribute(TOMCAT_SENDFILE_START, Long.valueOf(0));
+        request.setAttribute(TOMCAT_SENDFILE_END, Long.valueOf(length));
+        return true;
+    }
+
+    /** @return whether the request is the container's own, not wrapped by a filter */
+    protected boolean isContainerRequest(HttpServletRequest request) {
+        return TOMCAT_REQUEST_FACADE.equals(request.getClass().getName());
+    }
+
+    /** @return whether the response is the container's own, not wrapped by a filter */
+    protected boolean isContainerResponse(HttpServletResponse response) {
+        return TOMCAT_RESPONSE_FACADE.equals(response.getClass().getName());
+    }
+}
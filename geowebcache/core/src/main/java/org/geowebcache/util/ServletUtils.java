@@ -19,17 +19,11 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Collections;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TimeZone;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.collections.map.CaseInsensitiveMap;
 import org.apache.commons.logging.Log;
@@ -38,15 +32,6 @@ import org.apache.commons.logging.LogFactory;
 public class ServletUtils {
     private static Log log = LogFactory.getLog(org.geowebcache.util.ServletUtils.class);
 
-    // Calendar objects are unfortunately expensive and not thread safe :(
-    private static Calendar calendar = new GregorianCalendar();
-
-    private static TimeZone timeZone = TimeZone.getTimeZone("GMT");
-
-    private static SimpleDateFormat format = null;
-
-    private static long localOffset = TimeZone.getDefault().getRawOffset();
-
     /**
      * Case insensitive lookup
      *
@@ -227,8 +212,6 @@ public class ServletUtils {
     /**
      * Makes HTTP Expire header value
      *
-     * <p>Has to be synchronized due to the shared Calendar objects
-     *
      * @param seconds
      * @return
      */
@@ -236,51 +219,28 @@ public class ServletUtils {
         return formatTimestamp(System.currentTimeMillis() + seconds * 1000L);
     }
 
+    /** Formats a timestamp as an HTTP-date, see {@link HttpDateUtils#formatDate(long)} */
     public static String formatTimestamp(long timestamp) {
-        String ret;
-        synchronized (calendar) {
-            if (ServletUtils.format == null) {
-                ServletUtils.format =
-                        new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-                ServletUtils.format.setTimeZone(ServletUtils.timeZone);
-            }
-
-            calendar.setTimeInMillis(timestamp);
-            ret = format.format(calendar.getTime());
-        }
-        return ret;
+        return HttpDateUtils.formatDate(timestamp);
     }
 
     /**
      * Returns the expiration time in milliseconds from now
      *
      * @param expiresHeader
-     * @return
+     * @return the expiration time, or -1 if the header is missing or can't be parsed
      */
     public static long parseExpiresHeader(String expiresHeader) {
         if (expiresHeader == null) {
             return -1;
         }
 
-        long ret;
-
-        synchronized (calendar) {
-            if (ServletUtils.format == null) {
-                ServletUtils.format =
-                        new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-                ServletUtils.format.setTimeZone(ServletUtils.timeZone);
-            }
-
-            try {
-                format.parse(expiresHeader);
-            } catch (ParseException pe) {
-                log.debug("Cannot parse " + expiresHeader + ", " + pe.getMessage());
-                return -1;
-            }
-
-            ret = calendar.getTimeInMillis() - System.currentTimeMillis() - localOffset;
+        long expires = HttpDateUtils.parseDate(expiresHeader);
+        if (expires == HttpDateUtils.INVALID_DATE) {
+            log.debug("Cannot parse " + expiresHeader);
+            return -1;
         }
-        return ret;
+        return expires - System.currentTimeMillis();
     }
 
     public static String hexOfBytes(byte[] bytes) {
@@ -0,0 +1,31 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.blobstore.file;
+
+import org.geowebcache.storage.AbstractBlobStoreTest;
+import org.geowebcache.storage.blobstore.file.BundledFileBlobStore;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+public class BundledFileBlobStoreComformanceTest
+        extends AbstractBlobStoreTest<BundledFileBlobStore> {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    @Override
+    public void createTestUnit() throws Exception {
+        this.store = new BundledFileBlobStore(temp.getRoot().getAbsolutePath(), 4);
+    }
+}
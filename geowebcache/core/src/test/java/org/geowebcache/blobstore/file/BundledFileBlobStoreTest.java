@@ -0,0 +1,189 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.blobstore.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.util.Arrays;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.storage.BlobStoreListener;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.blobstore.file.BundledFileBlobStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BundledFileBlobStoreTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private BundledFileBlobStore store;
+
+    private BlobStoreListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new BundledFileBlobStore(temp.getRoot().getAbsolutePath(), 4);
+        listener = mock(BlobStoreListener.class);
+        store.addListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    public void testTilesPackedInBundle() throws Exception {
+        for (long x = 0; x < 4; x++) {
+            for (long y = 0; y < 4; y++) {
+                store.put(tile(x, y, 3, new byte[] {(byte) x, (byte) y}));
+            }
+        }
+        store.put(tile(4, 0, 3, new byte[] {4, 0}));
+
+        File zoomDir = new File(temp.getRoot(), "testLayer/EPSG_4326_03");
+        String[] bundles = zoomDir.list();
+        Arrays.sort(bundles);
+        assertArrayEquals(new String[] {"0_0.png.bundle", "1_0.png.bundle"}, bundles);
+
+        for (long x = 0; x < 4; x++) {
+            for (long y = 0; y < 4; y++) {
+                TileObject query = query(x, y, 3);
+                assertTrue(store.get(query));
+                assertArrayEquals(
+                        new byte[] {(byte) x, (byte) y},
+                        ((ByteArrayResource) query.getBlob()).getContents());
+            }
+        }
+        assertFalse(store.get(query(5, 0, 3)));
+    }
+
+    @Test
+    public void testReplaceTile() throws Exception {
+        store.put(tile(1, 2, 3, new byte[] {1, 2, 3}));
+        store.put(tile(1, 2, 3, new byte[] {4, 5}));
+
+        TileObject query = query(1, 2, 3);
+        assertTrue(store.get(query));
+        assertArrayEquals(new byte[] {4, 5}, ((ByteArrayResource) query.getBlob()).getContents());
+        verify(listener)
+                .tileUpdated(
+                        eq("testLayer"),
+                        eq("EPSG:4326"),
+                        eq("image/png"),
+                        (String) isNull(),
+                        eq(1L),
+                        eq(2L),
+                        eq(3),
+                        eq(2L),
+                        eq(3L));
+    }
+
+    @Test
+    public void testDeleteLastTileRemovesBundle() throws Exception {
+        store.put(tile(1, 2, 3, new byte[] {1, 2, 3}));
+        File bundle = new File(temp.getRoot(), "testLayer/EPSG_4326_03/0_0.png.bundle");
+        assertTrue(bundle.exists());
+
+        assertTrue(store.delete(query(1, 2, 3)));
+        assertFalse(bundle.exists());
+        assertFalse(store.delete(query(1, 2, 3)));
+    }
+
+    @Test
+    public void testTruncateDropsCoveredBundles() throws Exception {
+        for (long x = 0; x < 8; x++) {
+            for (long y = 0; y < 4; y++) {
+                store.put(tile(x, y, 3, new byte[] {(byte) x, (byte) y}));
+            }
+        }
+        // covers the first bundle entirely and half of the second one
+        long[][] bounds = {{0, 0, 5, 3, 3}};
+        TileRange range =
+                new TileRange("testLayer", "EPSG:4326", 3, 3, bounds, ImageMime.png, null);
+        assertTrue(store.delete(range));
+
+        File zoomDir = new File(temp.getRoot(), "testLayer/EPSG_4326_03");
+        assertFalse(new File(zoomDir, "0_0.png.bundle").exists());
+        assertTrue(new File(zoomDir, "1_0.png.bundle").exists());
+        verify(listener, times(24))
+                .tileDeleted(
+                        eq("testLayer"),
+                        eq("EPSG:4326"),
+                        eq("image/png"),
+                        anyString(),
+                        anyLong(),
+                        anyLong(),
+                        eq(3),
+                        eq(2L));
+
+        for (long x = 0; x < 8; x++) {
+            for (long y = 0; y < 4; y++) {
+                assertEquals(x > 5, store.get(query(x, y, 3)));
+            }
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        store.setCompactionThreshold(0.5);
+        File bundle = new File(temp.getRoot(), "testLayer/EPSG_4326_03/0_0.png.bundle");
+        byte[] data = new byte[128 * 1024];
+        for (int i = 0; i < 4; i++) {
+            Arrays.fill(data, (byte) i);
+            store.put(tile(0, 0, 3, data));
+        }
+        // wait for the background compaction to kick in
+        for (int i = 0; i < 100 && bundle.length() > 3 * data.length; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(bundle.length() < 3 * data.length);
+
+        TileObject query = query(0, 0, 3);
+        assertTrue(store.get(query));
+        assertArrayEquals(data, ((ByteArrayResource) query.getBlob()).getContents());
+    }
+
+    private static TileObject tile(long x, long y, int z, byte[] data) {
+        return TileObject.createCompleteTileObject(
+                "testLayer",
+                new long[] {x, y, z},
+                "EPSG:4326",
+                "image/png",
+                null,
+                new ByteArrayResource(data));
+    }
+
+    private static TileObject query(long x, long y, int z) {
+        return TileObject.createQueryTileObject(
+                "testLayer", new long[] {x, y, z}, "EPSG:4326", "image/png", null);
+    }
+}
@@ -14,7 +14,10 @@
  */
 package org.geowebcache.config;
 
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 
 import com.google.common.base.Preconditions;
@@ -23,6 +26,7 @@ import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.locks.LockProvider;
 import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.blobstore.file.BundledFileBlobStore;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -94,4 +98,26 @@ public class FileBlobStoreConfigTest {
         BlobStore store = config.createInstance(layers, lockProvider);
         assertNotNull(store);
     }
+
+    @Test
+    public void testCreateInstanceBundled() throws StorageException {
+        config.setName("myblobstore");
+        config.setEnabled(true);
+        config.setBaseDirectory(tmp.getRoot().getAbsolutePath());
+        config.setTileBundleSize(8);
+        BlobStore store = config.createInstance(layers, lockProvider);
+        assertThat(store, instanceOf(BundledFileBlobStore.class));
+        assertEquals(8, ((BundledFileBlobStore) store).getBundleSize());
+    }
+
+    @Test
+    public void testCreateInstanceIllegalBundleSize() throws StorageException {
+        config.setName("myblobstore");
+        config.setEnabled(true);
+        config.setBaseDirectory(tmp.getRoot().getAbsolutePath());
+        config.setTileBundleSize(-1);
+        ex.expect(IllegalStateException.class);
+        ex.expectMessage("tileBundleSize must be a positive integer");
+        config.createInstance(layers, lockProvider);
+    }
 }
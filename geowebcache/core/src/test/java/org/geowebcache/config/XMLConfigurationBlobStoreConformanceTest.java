@@ -103,6 +103,20 @@ public class XMLConfigurationBlobStoreConformanceTest extends BlobStoreConfigura
                 fileInfo.getBaseDirectory());
     }
 
+    @Test
+    public void testPersistLocalTier() throws Exception {
+        BlobStoreInfo info = getGoodInfo("tiered", 1);
+        LocalTierInfo localTier = new LocalTierInfo();
+        localTier.setBaseDirectory("/tmp/localTier");
+        localTier.setMaxSizeMB(256);
+        info.setLocalTier(localTier);
+        config.addBlobStore(info);
+
+        BlobStoreConfiguration config2 = getSecondConfig();
+        BlobStoreInfo retrieved = config2.getBlobStore("tiered").get();
+        assertEquals(localTier, retrieved.getLocalTier());
+    }
+
     @Override
     protected void doModifyInfo(BlobStoreInfo info, int rand) throws Exception {
         ((FileBlobStoreInfo) info).setFileSystemBlockSize(rand);
@@ -0,0 +1,124 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.layer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+import org.junit.After;
+import org.junit.Test;
+
+public class MetaTileCoalescerTest {
+
+    private static final String KEY = "meta_layer_EPSG:4326_0_0_1.png";
+
+    private static final long[][] POSITIONS = {{0, 0, 1}, {1, 0, 1}, {0, 1, 1}, {1, 1, 1}};
+
+    private MetaTileCoalescer coalescer = new MetaTileCoalescer();
+
+    private ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testNoFlight() {
+        assertNull(coalescer.await(KEY, POSITIONS, POSITIONS[0], 10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFollowerGetsLeaderTile() throws Exception {
+        CompletableFuture<Resource[]> flight = coalescer.takeOff(KEY);
+        assertNotNull(flight);
+        assertNull(coalescer.takeOff(KEY));
+        assertEquals(1, coalescer.getInFlightCount());
+
+        Future<Resource> follower =
+                executor.submit(
+                        () ->
+                                coalescer.await(
+                                        KEY,
+                                        POSITIONS,
+                                        new long[] {1, 1, 1},
+                                        10,
+                                        TimeUnit.SECONDS));
+
+        Resource[] tiles = new Resource[POSITIONS.length];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new ByteArrayResource(new byte[] {(byte) i});
+        }
+        awaitFollower(flight);
+        coalescer.land(KEY, flight, tiles);
+
+        assertSame(tiles[3], follower.get(10, TimeUnit.SECONDS));
+        assertEquals(0, coalescer.getInFlightCount());
+        // once landed, the next miss starts a new flight
+        assertNotNull(coalescer.takeOff(KEY));
+    }
+
+    @Test
+    public void testFollowerFallsBackWhenTileMissing() throws Exception {
+        CompletableFuture<Resource[]> flight = coalescer.takeOff(KEY);
+        Future<Resource> follower =
+                executor.submit(
+                        () -> coalescer.await(KEY, POSITIONS, POSITIONS[2], 10, TimeUnit.SECONDS));
+
+        awaitFollower(flight);
+        coalescer.land(KEY, flight, new Resource[POSITIONS.length]);
+        assertNull(follower.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFollowerFallsBackWhenLeaderFails() throws Exception {
+        CompletableFuture<Resource[]> flight = coalescer.takeOff(KEY);
+        Future<Resource> follower =
+                executor.submit(
+                        () -> coalescer.await(KEY, POSITIONS, POSITIONS[1], 10, TimeUnit.SECONDS));
+
+        awaitFollower(flight);
+        coalescer.abort(KEY, flight, new GeoWebCacheException("backend down"));
+        assertNull(follower.get(10, TimeUnit.SECONDS));
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void testFollowerFallsBackOnTimeout() throws Exception {
+        CompletableFuture<Resource[]> flight = coalescer.takeOff(KEY);
+        // the leader never lands
+        assertNull(coalescer.await(KEY, POSITIONS, POSITIONS[0], 50, TimeUnit.MILLISECONDS));
+        assertEquals(1, coalescer.getInFlightCount());
+        coalescer.land(KEY, flight, null);
+    }
+
+    /** Waits for a follower to be blocked on the flight */
+    private void awaitFollower(CompletableFuture<Resource[]> flight) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (flight.getNumberOfDependents() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.layer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.config.TileLayerConfiguration;
+import org.geowebcache.grid.GridSetBroker;
+import org.geowebcache.layer.wms.WMSLayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the {@link TileLayerDispatcher} layer lookups with 10k layers spread over 8
+ * configurations, under 32 threads contention. The {@code scan} benchmark looks up the same layers
+ * in all the configurations in order, as a reference for the lookup without index.
+ *
+ * <p>Not run as part of the build, launch the {@link #main} method from the IDE or the test
+ * classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(32)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TileLayerDispatcherBenchmark {
+
+    static final int LAYERS = 10_000;
+
+    static final int CONFIGURATIONS = 8;
+
+    List<TileLayerConfiguration> configs;
+
+    TileLayerDispatcher dispatcher;
+
+    String[] names;
+
+    @Setup
+    public void setup() throws GeoWebCacheException {
+        configs = new ArrayList<>();
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            configs.add(new MemoryConfiguration("config" + i));
+        }
+        names = new String[LAYERS];
+        for (int i = 0; i < LAYERS; i++) {
+            names[i] = "workspace:layer" + i;
+            configs.get(i % CONFIGURATIONS).addLayer(layer(names[i]));
+        }
+        dispatcher = new TileLayerDispatcher(new GridSetBroker(), configs);
+        // fill the index, as the first requests would
+        for (String name : names) {
+            dispatcher.getTileLayer(name);
+        }
+    }
+
+    private static TileLayer layer(String name) {
+        return new WMSLayer(
+                name,
+                new String[] {"http://example.com/"},
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                false,
+                null);
+    }
+
+    private String randomName() {
+        return names[ThreadLocalRandom.current().nextInt(names.length)];
+    }
+
+    @Benchmark
+    public TileLayer getTileLayer() throws GeoWebCacheException {
+        return dispatcher.getTileLayer(randomName());
+    }
+
+    @Benchmark
+    public boolean layerExists() {
+        return dispatcher.layerExists(randomName());
+    }
+
+    @Benchmark
+    public TileLayer scan() {
+        String name = randomName();
+        for (int i = 0; i < configs.size(); i++) {
+            Optional<TileLayer> layer = configs.get(i).getLayer(name);
+            if (layer.isPresent()) {
+                return layer.get();
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(TileLayerDispatcherBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+
+    /** Keeps the layers in memory, with the same lookup cost as the XML configuration */
+    static class MemoryConfiguration implements TileLayerConfiguration {
+
+        private final String identifier;
+
+        private final Map<String, TileLayer> layers = new ConcurrentHashMap<>();
+
+        MemoryConfiguration(String identifier) {
+            this.identifier = identifier;
+        }
+
+        @Override
+        public Collection<? extends TileLayer> getLayers() {
+            return layers.values();
+        }
+
+        @Override
+        public Optional<TileLayer> getLayer(String layerName) {
+            return Optional.ofNullable(layers.get(layerName));
+        }
+
+        @Override
+        public int getLayerCount() {
+            return layers.size();
+        }
+
+        @Override
+        public Set<String> getLayerNames() {
+            return layers.keySet();
+        }
+
+        @Override
+        public void removeLayer(String layerName) {
+            if (layers.remove(layerName) == null) {
+                throw new NoSuchElementException("Layer " + layerName + " does not exist");
+            }
+        }
+
+        @Override
+        public void modifyLayer(TileLayer tl) {
+            if (layers.replace(tl.getName(), tl) == null) {
+                throw new NoSuchElementException("Layer " + tl.getName() + " does not exist");
+            }
+        }
+
+        @Override
+        public void renameLayer(String oldName, String newName) {
+            throw new UnsupportedOperationException("renameLayer is not supported");
+        }
+
+        @Override
+        public void addLayer(TileLayer tl) {
+            if (layers.putIfAbsent(tl.getName(), tl) != null) {
+                throw new IllegalArgumentException("Layer " + tl.getName() + " already exists");
+            }
+        }
+
+        @Override
+        public boolean containsLayer(String layerName) {
+            return layers.containsKey(layerName);
+        }
+
+        @Override
+        public boolean canSave(TileLayer tl) {
+            return true;
+        }
+
+        @Override
+        public void setGridSetBroker(GridSetBroker broker) {
+            // not needed
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public String getLocation() {
+            return "memory";
+        }
+
+        @Override
+        public void afterPropertiesSet() {
+            // nothing to do
+        }
+
+        @Override
+        public void deinitialize() {
+            layers.clear();
+        }
+    }
+}
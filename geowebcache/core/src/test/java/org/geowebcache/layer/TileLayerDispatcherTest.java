@@ -15,12 +15,16 @@
 package org.geowebcache.layer;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.io.IOException;
 import java.util.Set;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.config.GWCConfigIntegrationTest;
 import org.geowebcache.config.GWCConfigIntegrationTestData;
+import org.geowebcache.config.TileLayerConfiguration;
 import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSet;
 import org.geowebcache.grid.GridSetFactory;
@@ -156,6 +160,76 @@ public class TileLayerDispatcherTest extends GWCConfigIntegrationTest {
         assertNull(modifiedLayer.getGridSubset(GWCConfigIntegrationTestData.GRIDSET_EPSG2163));
     }
 
+    @Test
+    public void testListener() throws GeoWebCacheException {
+        TileLayerDispatcherListener listener = mock(TileLayerDispatcherListener.class);
+        tileLayerDispatcher.addListener(listener);
+
+        TileLayer layer =
+                new WMSLayer(
+                        "newLayer",
+                        new String[] {"http://example.com/"},
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        false,
+                        null);
+        tileLayerDispatcher.addLayer(layer);
+        verify(listener).handleAddLayer(layer);
+
+        layer.setAdvertised(!layer.isAdvertised());
+        tileLayerDispatcher.modify(layer);
+        verify(listener).handleModifyLayer(layer);
+
+        tileLayerDispatcher.removeLayer("newLayer");
+        verify(listener).handleRemoveLayer("newLayer");
+
+        // failed changes are not notified
+        try {
+            tileLayerDispatcher.removeLayer("newLayer");
+            fail("Expected failure when trying to remove nonexistant layer");
+        } catch (Exception e) {
+        }
+        tileLayerDispatcher.removeListener(listener);
+        tileLayerDispatcher.removeLayer(GWCConfigIntegrationTestData.LAYER_TOPP_STATES);
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void testLayersChangedOnConfiguration() throws GeoWebCacheException {
+        String layerName = GWCConfigIntegrationTestData.LAYER_TOPP_STATES;
+        TileLayer layer = tileLayerDispatcher.getTileLayer(layerName);
+        TileLayerConfiguration config = tileLayerDispatcher.getConfiguration(layerName);
+
+        // changed behind the dispatcher back, the indexed layer is looked up again
+        config.removeLayer(layerName);
+        assertFalse(tileLayerDispatcher.layerExists(layerName));
+        config.addLayer(layer);
+        assertTrue(tileLayerDispatcher.layerExists(layerName));
+        assertSame(config, tileLayerDispatcher.getConfiguration(layerName));
+
+        TileLayer newLayer =
+                new WMSLayer(
+                        "newLayer",
+                        new String[] {"http://example.com/"},
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        false,
+                        null);
+        assertFalse(tileLayerDispatcher.layerExists("newLayer"));
+        config.addLayer(newLayer);
+        assertEquals(newLayer, tileLayerDispatcher.getTileLayer("newLayer"));
+    }
+
     @Test
     public void testModifyBadLayer() {
         String layerName = "newLayer";
@@ -43,12 +43,15 @@ import java.io.InputStream;
 import java.net.URL;
 import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -128,7 +131,9 @@ public class WMSLayerTest extends TileLayerTest {
 
         final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
         Capture<TileObject> captured = new Capture<TileObject>();
-        expect(mockStorageBroker.put(EasyMock.capture(captured))).andReturn(true).anyTimes();
+        expect(mockStorageBroker.putAsync(EasyMock.capture(captured)))
+                .andReturn(CompletableFuture.completedFuture(null))
+                .anyTimes();
         replay(mockStorageBroker);
 
         String layerId = layer.getName();
@@ -167,6 +172,55 @@ public class WMSLayerTest extends TileLayerTest {
         lockProvider.clear();
     }
 
+    @Test
+    public void testSeedMetaTiledStoresAllTiles() throws Exception {
+        WMSLayer layer = createWMSLayer("image/png");
+
+        MockLockProvider lockProvider = new MockLockProvider();
+        layer.setSourceHelper(new MockWMSSourceHelper());
+        layer.setLockProvider(lockProvider);
+
+        final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
+        Capture<TileObject> captured = new Capture<TileObject>(CaptureType.ALL);
+        expect(mockStorageBroker.putAsync(EasyMock.capture(captured)))
+                .andReturn(CompletableFuture.completedFuture(null))
+                .anyTimes();
+        replay(mockStorageBroker);
+
+        // a full 3x3 meta tile, the tiles get encoded and stored in parallel
+        long[] gridLoc = {901, 604, 10};
+        GridSet gridSet = gridSetBroker.getWorldEpsg4326();
+        ConveyorTile tile =
+                new ConveyorTile(
+                        mockStorageBroker,
+                        layer.getName(),
+                        gridSet.getName(),
+                        gridLoc,
+                        layer.getMimeTypes().get(0),
+                        null,
+                        new MockHttpServletRequest(),
+                        new MockHttpServletResponse());
+
+        layer.seedTile(tile, false);
+
+        List<TileObject> stored = captured.getValues();
+        assertEquals(9, stored.size());
+        Set<List<Long>> positions = new HashSet<>();
+        for (TileObject to : stored) {
+            assertTrue(to.getBlob().getSize() > 0);
+            long[] xyz = to.getXYZ();
+            positions.add(Arrays.asList(xyz[0], xyz[1], xyz[2]));
+            if (Arrays.equals(gridLoc, xyz)) {
+                assertTrue(tile.getBlob() == to.getBlob());
+            }
+        }
+        assertEquals(9, positions.size());
+
+        verify(mockStorageBroker);
+        lockProvider.verify();
+        lockProvider.clear();
+    }
+
     @Test
     public void testSeedJpegPngMetaTiled() throws Exception {
         checkJpegPng(
@@ -265,8 +319,12 @@ public class WMSLayerTest extends TileLayerTest {
 
         final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
         Capture<TileObject> captured = new Capture<TileObject>(CaptureType.ALL);
-        expect(mockStorageBroker.put(EasyMock.capture(captured)))
-                .andAnswer(tileVerifier)
+        expect(mockStorageBroker.putAsync(EasyMock.capture(captured)))
+                .andAnswer(
+                        () -> {
+                            tileVerifier.answer();
+                            return CompletableFuture.completedFuture(null);
+                        })
                 .anyTimes();
         replay(mockStorageBroker);
 
@@ -761,7 +819,22 @@ public class WMSLayerTest extends TileLayerTest {
                             }));
             expectLastCall().anyTimes();
 
-            final HashSet<String> puts = new HashSet<String>();
+            // tiles of a meta tile are stored concurrently
+            final Set<String> puts = Collections.synchronizedSet(new HashSet<String>());
+            expect(
+                            storageBroker.putAsync(
+                                    capture(
+                                            new Capture<TileObject>() {
+                                                @Override
+                                                public void setValue(TileObject value) {
+                                                    puts.add(
+                                                            TransientCache.computeTransientKey(
+                                                                    value));
+                                                    storagePutCounter.incrementAndGet();
+                                                }
+                                            })))
+                    .andReturn(CompletableFuture.completedFuture(null))
+                    .anyTimes();
             expect(
                             storageBroker.put(
                                     capture(
@@ -0,0 +1,151 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.locks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.locks.LockProvider.Lock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class JDBCLockProviderTest {
+
+    @Rule public TestName name = new TestName();
+
+    private BasicDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:" + name.getMethodName() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaxActive(16);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new JdbcTemplate(dataSource).execute("SHUTDOWN");
+        dataSource.close();
+    }
+
+    @Test
+    public void testLockRelease() throws Exception {
+        JDBCLockProvider provider = new JDBCLockProvider(dataSource);
+        Lock lock = provider.getLock("meta_layer_EPSG:4326_0_0_1.png");
+        assertEquals(1, countLocks());
+        lock.release();
+        // releasing twice is harmless
+        lock.release();
+        assertEquals(0, countLocks());
+
+        // can be locked again
+        provider.getLock("meta_layer_EPSG:4326_0_0_1.png").release();
+        assertEquals(0, countLocks());
+    }
+
+    @Test
+    public void testNodesExclusion() throws Exception {
+        // two providers on the same database simulate two cluster nodes
+        final JDBCLockProvider node1 = new JDBCLockProvider(dataSource);
+        final JDBCLockProvider node2 = new JDBCLockProvider(dataSource);
+        final AtomicInteger holders = new AtomicInteger();
+        final AtomicInteger maxHolders = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[32];
+            for (int i = 0; i < futures.length; i++) {
+                final JDBCLockProvider node = i % 2 == 0 ? node1 : node2;
+                futures[i] =
+                        executor.submit(
+                                () -> {
+                                    Lock lock = node.getLock("shared");
+                                    try {
+                                        int current = holders.incrementAndGet();
+                                        maxHolders.accumulateAndGet(current, Math::max);
+                                        Thread.sleep(5);
+                                        holders.decrementAndGet();
+                                    } finally {
+                                        lock.release();
+                                    }
+                                    return null;
+                                });
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, maxHolders.get());
+        assertEquals(0, countLocks());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        JDBCLockProvider node1 = new JDBCLockProvider(dataSource);
+        JDBCLockProvider node2 = new JDBCLockProvider(dataSource);
+        node2.setMaxWait(200);
+        Lock lock = node1.getLock("key");
+        try {
+            node2.getLock("key");
+            fail("Should have timed out");
+        } catch (GeoWebCacheException e) {
+            assertTrue(e.getMessage().contains("Failed to get a lock on key key"));
+        } finally {
+            lock.release();
+        }
+        // the failed attempt did not leave anything behind
+        node2.getLock("key").release();
+        assertEquals(0, countLocks());
+    }
+
+    @Test
+    public void testStaleLockTakeOver() throws Exception {
+        JDBCLockProvider crashed = new JDBCLockProvider(dataSource);
+        JDBCLockProvider node = new JDBCLockProvider(dataSource);
+        node.setLeaseTimeout(100);
+        node.setMaxWait(10000);
+        // never released, as if the node died
+        crashed.getLock("key");
+
+        long start = System.currentTimeMillis();
+        Lock lock = node.getLock("key");
+        assertFalse(System.currentTimeMillis() - start > 5000);
+        assertEquals(1, countLocks());
+        lock.release();
+        assertEquals(0, countLocks());
+    }
+
+    private int countLocks() {
+        return new JdbcTemplate(dataSource)
+                .queryForObject("SELECT COUNT(*) FROM " + JDBCLockProvider.TABLE, Integer.class);
+    }
+}
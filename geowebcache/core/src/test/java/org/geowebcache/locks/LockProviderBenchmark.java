@@ -0,0 +1,115 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.locks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.locks.LockProvider.Lock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the cost of acquiring and releasing meta tile locks with {@link MemoryLockProvider} and
+ * {@link StripedLockProvider}, under 64 threads contention. Each operation locks a random meta
+ * tile, building the lock key the same way {@code WMSLayer} does when the provider needs one.
+ *
+ * <p>Not run as part of the build, launch the {@link #main} method from the IDE or the test
+ * classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(64)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LockProviderBenchmark {
+
+    static final String LAYER = "topp:states";
+
+    static final String GRIDSET = "EPSG:4326";
+
+    static final String FORMAT = "png";
+
+    static final int TILES = 4096;
+
+    MemoryLockProvider memory;
+
+    StripedLockProvider striped;
+
+    @Setup
+    public void setup() {
+        memory = new MemoryLockProvider();
+        striped = new StripedLockProvider();
+    }
+
+    @Benchmark
+    public void memoryLockProvider() throws GeoWebCacheException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long x = random.nextInt(TILES) * 4;
+        long y = random.nextInt(TILES) * 4;
+        Lock lock = memory.getLock(buildLockKey(x, y, 12));
+        lock.release();
+    }
+
+    @Benchmark
+    public void stripedLockProviderKey() throws GeoWebCacheException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long x = random.nextInt(TILES) * 4;
+        long y = random.nextInt(TILES) * 4;
+        Lock lock = striped.getLock(buildLockKey(x, y, 12));
+        lock.release();
+    }
+
+    @Benchmark
+    public void stripedLockProviderCoordinates() throws GeoWebCacheException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long x = random.nextInt(TILES) * 4;
+        long y = random.nextInt(TILES) * 4;
+        Lock lock = striped.getLock("meta_", LAYER, GRIDSET, x, y, 12, null, FORMAT);
+        lock.release();
+    }
+
+    /** Same key layout as {@code WMSLayer.buildLockKey} */
+    static String buildLockKey(long x, long y, long z) {
+        StringBuilder metaKey = new StringBuilder("meta_");
+        metaKey.append(LAYER);
+        metaKey.append("_").append(GRIDSET);
+        metaKey.append("_").append(x).append("_").append(y).append("_").append(z);
+        metaKey.append(".").append(FORMAT);
+        return metaKey.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(LockProviderBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+}
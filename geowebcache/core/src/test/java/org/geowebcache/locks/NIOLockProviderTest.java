@@ -0,0 +1,162 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.locks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.locks.LockProvider.Lock;
+import org.geowebcache.storage.DefaultStorageFinder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class NIOLockProviderTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private NIOLockProvider provider(int waitBeforeRetry, int maxLockAttempts) throws Exception {
+        DefaultStorageFinder finder = Mockito.mock(DefaultStorageFinder.class);
+        Mockito.when(finder.getDefaultPath()).thenReturn(temp.getRoot().getPath());
+        return new NIOLockProvider(finder, waitBeforeRetry, maxLockAttempts);
+    }
+
+    @Test
+    public void testLockRelease() throws Exception {
+        NIOLockProvider provider = provider(20, 100);
+        Lock lock = provider.getLock("key", "layer");
+        File lockFiles = new File(temp.getRoot(), "lockfiles");
+        // the lock file is there as long as the lock is held
+        assertEquals(1, lockFiles.list().length);
+        lock.release();
+        assertEquals(0, lockFiles.list().length);
+
+        LockStatistics stats = provider.getStatistics();
+        assertEquals(1, stats.getAcquisitions());
+        assertEquals(0, stats.getContentions());
+        assertTrue(stats.getTimeouts().isEmpty());
+    }
+
+    @Test
+    public void testContention() throws Exception {
+        // two providers on the same directory behave like two cluster nodes
+        final NIOLockProvider node1 = provider(5, 2000);
+        final NIOLockProvider node2 = provider(5, 2000);
+        final AtomicInteger holders = new AtomicInteger();
+        final AtomicInteger maxHolders = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[16];
+            for (int i = 0; i < futures.length; i++) {
+                final NIOLockProvider node = i % 2 == 0 ? node1 : node2;
+                futures[i] =
+                        executor.submit(
+                                () -> {
+                                    Lock lock = node.getLock("shared", "layer");
+                                    try {
+                                        int current = holders.incrementAndGet();
+                                        maxHolders.accumulateAndGet(current, Math::max);
+                                        Thread.sleep(5);
+                                        holders.decrementAndGet();
+                                    } finally {
+                                        lock.release();
+                                    }
+                                    return null;
+                                });
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, maxHolders.get());
+        long acquisitions =
+                node1.getStatistics().getAcquisitions() + node2.getStatistics().getAcquisitions();
+        assertEquals(16, acquisitions);
+        long contentions =
+                node1.getStatistics().getContentions() + node2.getStatistics().getContentions();
+        assertTrue(contentions > 0);
+    }
+
+    @Test
+    public void testTimeoutByLayer() throws Exception {
+        NIOLockProvider node1 = provider(5, 1000);
+        NIOLockProvider node2 = provider(5, 20);
+        Lock lock = node1.getLock("key", "layer");
+        try {
+            node2.getLock("key", "layer");
+            fail("Should have timed out");
+        } catch (GeoWebCacheException e) {
+            assertTrue(e.getMessage().startsWith("Failed to get a lock on key key"));
+        } finally {
+            lock.release();
+        }
+        assertEquals(Long.valueOf(1), node2.getStatistics().getTimeouts().get("layer"));
+        assertFalse(node1.getStatistics().getTimeouts().containsKey("layer"));
+
+        // the failed attempt did not break the lock for the others
+        node2.getLock("key", "layer").release();
+    }
+
+    @Test
+    public void testInterruptedWhileWaiting() throws Exception {
+        NIOLockProvider node1 = provider(5, 1000);
+        NIOLockProvider node2 = provider(5, 1000);
+        Lock lock = node1.getLock("key", "layer");
+        try {
+            Thread.currentThread().interrupt();
+            node2.getLock("key", "layer");
+            fail("Should have given up waiting");
+        } catch (GeoWebCacheException e) {
+            assertTrue(e.getMessage().startsWith("Interrupted while waiting for lock on key key"));
+            // the interruption is left for the caller to see
+            assertTrue(Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+            lock.release();
+        }
+        assertFalse(node2.getStatistics().getTimeouts().containsKey("layer"));
+        node2.getLock("key", "layer").release();
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        assertEquals(0, LockStatistics.bucket(0));
+        assertEquals(1, LockStatistics.bucket(1));
+        assertEquals(2, LockStatistics.bucket(2));
+        assertEquals(2, LockStatistics.bucket(3));
+        assertEquals(11, LockStatistics.bucket(1500));
+        assertEquals(LockStatistics.BUCKETS - 1, LockStatistics.bucket(Long.MAX_VALUE));
+
+        LockStatistics stats = new LockStatistics();
+        stats.acquired(3, true);
+        stats.acquired(0, false);
+        assertEquals(1, stats.getWaitHistogram()[0]);
+        assertEquals(1, stats.getWaitHistogram()[2]);
+        assertEquals(1, stats.getContentions());
+        assertEquals(3, stats.getTotalWait());
+    }
+}
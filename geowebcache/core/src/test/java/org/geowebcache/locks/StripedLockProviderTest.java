@@ -0,0 +1,143 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.locks;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.geowebcache.locks.LockProvider.Lock;
+import org.junit.Test;
+
+public class StripedLockProviderTest {
+
+    @Test
+    public void testDistribution() {
+        StripedLockProvider provider = new StripedLockProvider(1000);
+        // rounded up to a power of two
+        int[] counts = new int[1024];
+        int keys = 0;
+        for (int z = 10; z < 12; z++) {
+            for (int x = 0; x < 96; x += 3) {
+                for (int y = 0; y < 96; y += 3) {
+                    String key = "meta_topp:states_EPSG:4326_" + x + "_" + y + "_" + z + ".png";
+                    counts[provider.getStripe(key)]++;
+                    keys++;
+                }
+            }
+        }
+        // 2048 keys on 1024 stripes, a good hash does not pile them up
+        int max = 0;
+        for (int count : counts) {
+            max = Math.max(max, count);
+        }
+        assertTrue("Too many collisions: " + max + " out of " + keys, max <= 10);
+    }
+
+    @Test
+    public void testReusableHandles() throws Exception {
+        StripedLockProvider provider = new StripedLockProvider();
+        Lock lock = provider.getLock("meta_", "layer", "EPSG:4326", 1, 2, 3, null, "png");
+        lock.release();
+        // releasing twice is harmless
+        lock.release();
+        Lock other = provider.getLock("meta_", "layer", "EPSG:4326", 1, 2, 3, null, "png");
+        assertSame(lock, other);
+        other.release();
+    }
+
+    @Test
+    public void testExclusive() throws Exception {
+        final StripedLockProvider provider = new StripedLockProvider();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean acquired = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> holder =
+                    executor.submit(
+                            () -> {
+                                Lock lock = provider.getLock("test");
+                                locked.countDown();
+                                release.await();
+                                lock.release();
+                                return null;
+                            });
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            Future<?> waiter =
+                    executor.submit(
+                            () -> {
+                                Lock lock = provider.getLock("test");
+                                acquired.set(true);
+                                lock.release();
+                                return null;
+                            });
+            Thread.sleep(100);
+            assertFalse(acquired.get());
+            release.countDown();
+            holder.get(10, TimeUnit.SECONDS);
+            waiter.get(10, TimeUnit.SECONDS);
+            assertTrue(acquired.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStructuredKeysSpread() throws Exception {
+        StripedLockProvider provider = new StripedLockProvider(16);
+        // neighbouring meta tiles should not all end up on the same stripe
+        Lock first = provider.getLock("meta_", "layer", "EPSG:4326", 0, 0, 5, null, "png");
+        first.release();
+        int same = 0;
+        for (int x = 3; x < 48; x += 3) {
+            Lock lock = provider.getLock("meta_", "layer", "EPSG:4326", x, 0, 5, null, "png");
+            if (lock == first) {
+                same++;
+            }
+            lock.release();
+        }
+        assertTrue("Too many collisions: " + same, same <= 4);
+    }
+
+    @Test
+    public void testCoordinatesMatchKey() throws Exception {
+        StripedLockProvider provider = new StripedLockProvider();
+        for (long x = 0; x < 2000; x += 7) {
+            String key = "meta_topp:states_EPSG:4326_" + x + "_" + (x * 3) + "_12.png";
+            Lock byKey = provider.getLock(key);
+            byKey.release();
+            Lock byCoordinates =
+                    provider.getLock(
+                            "meta_", "topp:states", "EPSG:4326", x, x * 3, 12, null, "png");
+            byCoordinates.release();
+            assertSame(key, byKey, byCoordinates);
+        }
+        String key = "tile_layer_EPSG:900913_-1_" + Long.MAX_VALUE + "_0_abcdef.jpeg";
+        Lock byKey = provider.getLock(key);
+        byKey.release();
+        Lock byCoordinates =
+                provider.getLock(
+                        "tile_", "layer", "EPSG:900913", -1, Long.MAX_VALUE, 0, "abcdef", "jpeg");
+        byCoordinates.release();
+        assertSame(key, byKey, byCoordinates);
+    }
+}
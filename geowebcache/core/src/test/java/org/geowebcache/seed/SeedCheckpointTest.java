@@ -0,0 +1,198 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.seed;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.TileRangeIterator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SeedCheckpointTest {
+
+    private static final String JOB_ID = "6f0c1a52-9d4e-4b7a-8f3e-2c5d7e9a1b30";
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private SeedCheckpointStore store;
+
+    private TileRange tileRange;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new SeedCheckpointStore(new File(temp.getRoot(), SeedCheckpointStore.DIRECTORY));
+        long[][] bounds = new long[4][];
+        for (int z = 0; z < bounds.length; z++) {
+            long size = 1L << (z + 4);
+            bounds[z] = new long[] {0, 0, size - 1, size - 1, z};
+        }
+        tileRange =
+                new TileRange(
+                        "topp:states",
+                        "EPSG:4326",
+                        1,
+                        3,
+                        bounds,
+                        ImageMime.png,
+                        Collections.singletonMap("STYLES", "population"));
+    }
+
+    @Test
+    public void testStoreRoundTrip() throws Exception {
+        SeedCheckpoint checkpoint =
+                new SeedCheckpoint(
+                        JOB_ID, TYPE.RESEED, tileRange, new int[] {4, 4}, 8, true, 100, 5000);
+        checkpoint.update(42, 1234);
+        store.save(checkpoint);
+
+        SeedCheckpoint read = store.get(JOB_ID);
+        assertNotNull(read);
+        assertEquals(TYPE.RESEED, read.getType());
+        assertEquals("topp:states", read.getLayerName());
+        assertEquals("EPSG:4326", read.getGridSetId());
+        assertEquals("image/png", read.getFormat());
+        assertArrayEquals(new int[] {4, 4}, read.getMetaTilingFactors());
+        assertEquals(8, read.getThreadCount());
+        assertTrue(read.isFilterUpdate());
+        assertEquals(100, read.getChunkCount());
+        assertEquals(42, read.getCompletedChunks());
+        assertEquals(1234, read.getTilesDone());
+        assertEquals(5000, read.getTilesTotal());
+        assertEquals(checkpoint.getLastUpdate(), read.getLastUpdate());
+
+        TileRange range = read.toTileRange();
+        assertEquals(tileRange.getZoomStart(), range.getZoomStart());
+        assertEquals(tileRange.getZoomStop(), range.getZoomStop());
+        for (int z = 1; z <= 3; z++) {
+            assertArrayEquals(tileRange.rangeBounds(z), range.rangeBounds(z));
+        }
+        assertEquals(tileRange.getParameters(), range.getParameters());
+        assertEquals(tileRange.getParametersId(), range.getParametersId());
+        assertEquals(ImageMime.png, range.getMimeType());
+
+        assertEquals(1, store.list().size());
+        assertTrue(store.delete(JOB_ID));
+        assertNull(store.get(JOB_ID));
+        assertTrue(store.list().isEmpty());
+    }
+
+    @Test
+    public void testUnreadableCheckpointSkipped() throws Exception {
+        File directory = new File(temp.getRoot(), SeedCheckpointStore.DIRECTORY);
+        directory.mkdirs();
+        Files.write(new File(directory, JOB_ID + ".properties").toPath(), "type=SEED".getBytes());
+        assertNull(store.get(JOB_ID));
+        assertTrue(store.list().isEmpty());
+    }
+
+    @Test
+    public void testJobIdValidated() throws Exception {
+        assertTrue(SeedCheckpointStore.isJobId(JOB_ID));
+        assertFalse(SeedCheckpointStore.isJobId(null));
+        assertFalse(SeedCheckpointStore.isJobId("../../geowebcache"));
+        assertFalse(SeedCheckpointStore.isJobId(JOB_ID.toUpperCase()));
+        assertFalse(SeedCheckpointStore.isJobId(JOB_ID + "/../x"));
+
+        File outside = temp.newFile("outside.properties");
+        try {
+            store.delete("../outside");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(outside.exists());
+        }
+    }
+
+    @Test
+    public void testCheckpointKeptWhenInterrupted() throws Exception {
+        TileRangeIterator trIter = new TileRangeIterator(tileRange, new int[] {4, 4});
+        SeedCheckpoint checkpoint =
+                new SeedCheckpoint(
+                        JOB_ID,
+                        TYPE.SEED,
+                        tileRange,
+                        new int[] {4, 4},
+                        1,
+                        false,
+                        trIter.getChunkCount(),
+                        trIter.getTilesBefore(trIter.getChunkCount()));
+        AtomicBoolean finished = new AtomicBoolean();
+        SeedCheckpointer checkpointer =
+                new SeedCheckpointer(store, checkpoint, trIter, 0, 1, () -> finished.set(true));
+
+        long[] gridLoc = new long[3];
+        for (int i = 0; i < 100; i++) {
+            gridLoc = trIter.nextMetaGridLocation(gridLoc);
+            checkpointer.progress();
+        }
+        SeedCheckpoint saved = store.get(JOB_ID);
+        assertNotNull(saved);
+        assertTrue(saved.getCompletedChunks() > 0);
+        assertEquals(trIter.getTilesBefore(saved.getCompletedChunks()), saved.getTilesDone());
+
+        // stopped by a shutdown, not by the user
+        checkpointer.taskFinished(false);
+        assertTrue(finished.get());
+        assertEquals(trIter.getCompletedChunks(), store.get(JOB_ID).getCompletedChunks());
+    }
+
+    @Test
+    public void testCheckpointRemovedOnCompletion() throws Exception {
+        TileRangeIterator trIter = new TileRangeIterator(tileRange, new int[] {4, 4});
+        SeedCheckpoint checkpoint =
+                new SeedCheckpoint(JOB_ID, TYPE.SEED, tileRange, new int[] {4, 4}, 1, false, 1, 1);
+        SeedCheckpointer checkpointer =
+                new SeedCheckpointer(store, checkpoint, trIter, 0, 1, () -> {});
+        long[] gridLoc = new long[3];
+        while ((gridLoc = trIter.nextMetaGridLocation(gridLoc)) != null) {
+            checkpointer.progress();
+        }
+        assertNotNull(store.get(JOB_ID));
+        checkpointer.taskFinished(false);
+        assertNull(store.get(JOB_ID));
+    }
+
+    @Test
+    public void testCheckpointRemovedWhenKilled() throws Exception {
+        TileRangeIterator trIter = new TileRangeIterator(tileRange, new int[] {4, 4});
+        SeedCheckpoint checkpoint =
+                new SeedCheckpoint(JOB_ID, TYPE.SEED, tileRange, new int[] {4, 4}, 2, false, 1, 1);
+        SeedCheckpointer checkpointer =
+                new SeedCheckpointer(store, checkpoint, trIter, 0, 2, () -> {});
+        trIter.nextMetaGridLocation(new long[3]);
+        checkpointer.progress();
+        assertNotNull(store.get(JOB_ID));
+
+        // one task killed, the other one stops later, the job is not resumable
+        checkpointer.taskFinished(true);
+        assertNotNull(store.get(JOB_ID));
+        checkpointer.taskFinished(false);
+        assertFalse(new File(temp.getRoot(), "seeding/job.properties").exists());
+    }
+}
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import junit.framework.TestCase;
@@ -47,7 +48,9 @@ import org.geowebcache.layer.wms.WMSMetaTile;
 import org.geowebcache.layer.wms.WMSSourceHelper;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.seed.GWCTask.TYPE;
+import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.TileRangeIterator;
@@ -126,8 +129,11 @@ public class SeedTaskTest extends TestCase {
          * Create a mock storage broker that does nothing
          */
         final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
-        expect(mockStorageBroker.put((TileObject) anyObject())).andReturn(true).anyTimes();
+        expect(mockStorageBroker.putAsync((TileObject) anyObject()))
+                .andReturn(CompletableFuture.completedFuture(null))
+                .anyTimes();
         expect(mockStorageBroker.get((TileObject) anyObject())).andReturn(false).anyTimes();
+        expectCreationTimes(mockStorageBroker, BlobStore.NOT_STORED);
         replay(mockStorageBroker);
 
         boolean reseed = false;
@@ -155,6 +161,102 @@ public class SeedTaskTest extends TestCase {
         verify(sleeper);
     }
 
+    /** Meta tiles whose tiles are all cached already are skipped without fetching them */
+    public void testSeedSkipsCachedMetaTiles() throws Exception {
+        WMSLayer tl = createWMSLayer("image/png");
+
+        // no requests expected
+        WMSSourceHelper mockSourceHelper = EasyMock.createMock(WMSSourceHelper.class);
+        mockSourceHelper.setConcurrency(32);
+        mockSourceHelper.setBackendTimeout(120);
+        replay(mockSourceHelper);
+        tl.setSourceHelper(mockSourceHelper);
+
+        SeedRequest req = createRequest(tl, TYPE.SEED, 4, 4);
+        TileRange tr = TileBreeder.createTileRange(req, tl);
+        TileRangeIterator trIter = new TileRangeIterator(tr, tl.getMetaTilingFactors());
+
+        // all tiles stored, no put nor get expected
+        final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
+        expectCreationTimes(mockStorageBroker, System.currentTimeMillis());
+        replay(mockStorageBroker);
+
+        SeedTask seedTask = new SeedTask(mockStorageBroker, trIter, tl, false, false);
+        seedTask.setTaskId(1L);
+        seedTask.setThreadInfo(new AtomicInteger(), 0);
+        Thread.currentThread().setName("pool-fake-thread-1");
+        seedTask.doAction();
+
+        verify(mockSourceHelper);
+        verify(mockStorageBroker);
+    }
+
+    /**
+     * Meta tiles sticking out of the coverage are skipped when all their covered tiles are cached
+     */
+    public void testSeedSkipsCachedMetaTilesAtCoverageEdge() throws Exception {
+        WMSLayer tl = createWMSLayer("image/png");
+
+        // no requests expected
+        WMSSourceHelper mockSourceHelper = EasyMock.createMock(WMSSourceHelper.class);
+        mockSourceHelper.setConcurrency(32);
+        mockSourceHelper.setBackendTimeout(120);
+        replay(mockSourceHelper);
+        tl.setSourceHelper(mockSourceHelper);
+
+        SeedRequest req = createRequest(tl, TYPE.SEED, 4, 4);
+        TileRange tr = TileBreeder.createTileRange(req, tl);
+        TileRangeIterator trIter = new TileRangeIterator(tr, tl.getMetaTilingFactors());
+
+        // the 3x3 meta tiles are aligned on multiples of 3, the coverage is not
+        final GridSubset gridSubset = tl.getGridSubset(req.getGridSetId());
+        long[] coverage = gridSubset.getCoverage(4);
+        assertTrue(coverage[0] % 3 != 0 || coverage[1] % 3 != 0);
+
+        // covered tiles stored, any lookup outside the coverage reports nothing stored
+        final long now = System.currentTimeMillis();
+        final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
+        expect(mockStorageBroker.getCreationTimes(anyObject()))
+                .andAnswer(
+                        () -> {
+                            List<?> tiles = (List<?>) EasyMock.getCurrentArguments()[0];
+                            long[] times = new long[tiles.size()];
+                            for (int i = 0; i < times.length; i++) {
+                                TileObject tile = (TileObject) tiles.get(i);
+                                times[i] =
+                                        gridSubset.covers(tile.getXYZ())
+                                                ? now
+                                                : BlobStore.NOT_STORED;
+                            }
+                            return times;
+                        })
+                .anyTimes();
+        replay(mockStorageBroker);
+
+        SeedTask seedTask = new SeedTask(mockStorageBroker, trIter, tl, false, false);
+        seedTask.setTaskId(1L);
+        seedTask.setThreadInfo(new AtomicInteger(), 0);
+        Thread.currentThread().setName("pool-fake-thread-1");
+        seedTask.doAction();
+
+        verify(mockSourceHelper);
+        verify(mockStorageBroker);
+    }
+
+    /** Answers {@link StorageBroker#getCreationTimes(List)} with the same time for all tiles */
+    private static void expectCreationTimes(StorageBroker storageBroker, long created)
+            throws StorageException {
+        expect(storageBroker.getCreationTimes(anyObject()))
+                .andAnswer(
+                        () -> {
+                            List<?> tiles = (List<?>) EasyMock.getCurrentArguments()[0];
+                            long[] times = new long[tiles.size()];
+                            Arrays.fill(times, created);
+                            return times;
+                        })
+                .anyTimes();
+    }
+
     /**
      * For a metatiled seed request over a given zoom level, make sure the correct wms calls are
      * issued
@@ -216,8 +318,11 @@ public class SeedTaskTest extends TestCase {
          * Create a mock storage broker that does nothing
          */
         final StorageBroker mockStorageBroker = EasyMock.createMock(StorageBroker.class);
-        expect(mockStorageBroker.put((TileObject) anyObject())).andReturn(true).anyTimes();
+        expect(mockStorageBroker.putAsync((TileObject) anyObject()))
+                .andReturn(CompletableFuture.completedFuture(null))
+                .anyTimes();
         expect(mockStorageBroker.get((TileObject) anyObject())).andReturn(false).anyTimes();
+        expectCreationTimes(mockStorageBroker, BlobStore.NOT_STORED);
         replay(mockStorageBroker);
 
         long tileFailureRetryWaitTime = 10;
@@ -294,8 +399,11 @@ public class SeedTaskTest extends TestCase {
                         super.getValues().add(o);
                     }
                 };
-        expect(mockStorageBroker.put(capture(storedObjects))).andReturn(true).anyTimes();
+        expect(mockStorageBroker.putAsync(capture(storedObjects)))
+                .andReturn(CompletableFuture.completedFuture(null))
+                .anyTimes();
         expect(mockStorageBroker.get((TileObject) anyObject())).andReturn(false).anyTimes();
+        expectCreationTimes(mockStorageBroker, BlobStore.NOT_STORED);
         replay(mockStorageBroker);
 
         TileRange tr = TileBreeder.createTileRange(req, tl);
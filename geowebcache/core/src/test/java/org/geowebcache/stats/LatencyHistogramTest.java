@@ -0,0 +1,111 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBounds() {
+        int last = LatencyHistogram.bucketIndex(LatencyHistogram.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.bucketUpperBound(last));
+        long lowerBound = 0;
+        for (int i = 0; i <= last; i++) {
+            long upperBound = LatencyHistogram.bucketUpperBound(i);
+            assertEquals(i, LatencyHistogram.bucketIndex(lowerBound));
+            assertEquals(i, LatencyHistogram.bucketIndex(upperBound));
+            // bounded relative error
+            assertTrue(upperBound - lowerBound <= lowerBound / LatencyHistogram.SUB_BUCKETS);
+            lowerBound = upperBound + 1;
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMean(), 0);
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMean(), 0);
+        assertEquals(1_000_000, snapshot.getMax());
+        assertPercentile(500_000, snapshot.getValueAtPercentile(50));
+        assertPercentile(900_000, snapshot.getValueAtPercentile(90));
+        assertPercentile(990_000, snapshot.getValueAtPercentile(99));
+        assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+        assertPercentile(1000, snapshot.getValueAtPercentile(0));
+    }
+
+    private void assertPercentile(long expected, long actual) {
+        assertTrue(actual + " < " + expected, actual >= expected);
+        assertTrue(
+                actual + " too far from " + expected,
+                actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    @Test
+    public void testOutOfRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    public void testRecordNanos() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(3));
+        assertEquals(3000, histogram.snapshot().getMax());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(
+                    () -> {
+                        for (int i = 0; i < 10_000; i++) {
+                            histogram.record(i);
+                        }
+                    });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(80_000, histogram.getCount());
+        assertEquals(80_000, histogram.snapshot().getCount());
+        assertEquals(9999, histogram.snapshot().getMax());
+    }
+}
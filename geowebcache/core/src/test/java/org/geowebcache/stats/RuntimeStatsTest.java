@@ -14,9 +14,13 @@
  */
 package org.geowebcache.stats;
 
+import static org.junit.Assert.assertEquals;
+
 import java.time.Clock;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import org.easymock.EasyMock;
+import org.geowebcache.conveyor.Conveyor.CacheResult;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -40,4 +44,44 @@ public class RuntimeStatsTest {
         // Shouldn't get a divide by zero
         EasyMock.verify(clock);
     }
+
+    @Test
+    public void testLatencies() {
+        RuntimeStats stats = new RuntimeStats(1, Arrays.asList(60), Arrays.asList("Minutes"));
+        // not collected until started
+        stats.logLatency("layer", "wms", CacheResult.HIT, 1000, 0);
+        assertEquals(0, stats.getStatistics().getLayers().size());
+
+        stats.start();
+        try {
+            long ms = TimeUnit.MILLISECONDS.toNanos(1);
+            stats.logLatency("layer", "wmts", CacheResult.HIT, 2 * ms, 0);
+            stats.logLatency("layer", "wms", CacheResult.HIT, ms, 0);
+            stats.logLatency("layer", "wms", CacheResult.HIT, ms, 0);
+            stats.logLatency("layer", "wms", CacheResult.MISS, 50 * ms, 40 * ms);
+            stats.logLatency("layer", "wms", CacheResult.WMS, 50 * ms, 40 * ms);
+            stats.logLatency("another", "wms", CacheResult.MISS, 10 * ms, 0);
+
+            RuntimeStatistics statistics = stats.getStatistics();
+            assertEquals(3, statistics.getLayers().size());
+            LayerStatistics another = statistics.getLayers().get(0);
+            assertEquals("another", another.getLayer());
+            assertEquals(1, another.getMisses());
+            assertEquals(0, another.getBackendLatency().getCount());
+
+            LayerStatistics wms = statistics.getLayers().get(1);
+            assertEquals("layer", wms.getLayer());
+            assertEquals("wms", wms.getService());
+            assertEquals(2, wms.getHits());
+            assertEquals(1, wms.getMisses());
+            assertEquals(200.0 / 3, wms.getHitRatio(), 0.001);
+            assertEquals(1000, wms.getHitLatency().getP99());
+            assertEquals(50_000, wms.getMissLatency().getMax());
+            assertEquals(40_000, wms.getBackendLatency().getMax());
+
+            assertEquals("wmts", statistics.getLayers().get(2).getService());
+        } finally {
+            stats.destroy();
+        }
+    }
 }
@@ -25,6 +25,7 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.describedAs;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
@@ -33,8 +34,10 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import org.easymock.Capture;
@@ -130,6 +133,37 @@ public abstract class AbstractBlobStoreTest<TestClass extends BlobStore> {
                                         "1,2,4,5,6 test".getBytes(StandardCharsets.UTF_8)))));
     }
 
+    @Test
+    public void testGetCreationTimes() throws Exception {
+        for (long[] xyz : new long[][] {{0, 0, 2}, {1, 0, 2}, {1, 1, 2}}) {
+            store.put(
+                    TileObject.createCompleteTileObject(
+                            "testLayer",
+                            xyz,
+                            "testGridSet",
+                            "image/png",
+                            null,
+                            new ByteArrayResource("tile".getBytes(StandardCharsets.UTF_8))));
+        }
+        List<TileObject> tiles = new ArrayList<>();
+        for (long[] xyz : new long[][] {{0, 0, 2}, {1, 0, 2}, {0, 1, 2}, {1, 1, 2}, {0, 0, 3}}) {
+            tiles.add(
+                    TileObject.createQueryTileObject(
+                            "testLayer", xyz, "testGridSet", "image/png", null));
+        }
+        long[] created = store.getCreationTimes(tiles);
+        assertThat(created.length, equalTo(5));
+        assertThat(created[0], greaterThanOrEqualTo(0L));
+        assertThat(created[1], greaterThanOrEqualTo(0L));
+        assertThat(created[2], equalTo(BlobStore.NOT_STORED));
+        assertThat(created[3], greaterThanOrEqualTo(0L));
+        assertThat(created[4], equalTo(BlobStore.NOT_STORED));
+        // no contents fetched
+        for (TileObject tile : tiles) {
+            assertThat(tile.getBlob(), nullValue());
+        }
+    }
+
     @Test
     public void testStoreTilesInMultipleLayers() throws Exception {
         BlobStoreListener listener = EasyMock.createMock(BlobStoreListener.class);
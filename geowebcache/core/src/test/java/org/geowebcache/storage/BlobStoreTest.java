@@ -17,6 +17,7 @@ package org.geowebcache.storage;
 import java.io.File;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
 import java.util.HashMap;
 import java.util.Map;
 import junit.framework.TestCase;
@@ -25,6 +26,7 @@ import org.apache.commons.io.IOUtils;
 import org.easymock.EasyMock;
 import org.geowebcache.grid.SRS;
 import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.FileResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.mime.ImageMime;
 import org.geowebcache.mime.MimeType;
@@ -79,6 +81,36 @@ public class BlobStoreTest extends TestCase {
         }
     }
 
+    public void testTileContentHash() throws Exception {
+        FileBlobStore store = (FileBlobStore) setup();
+        fbs = store;
+        store.setContentHashing(new ContentHash(true));
+
+        byte[] contents = "1 2 3 4 5 6 test".getBytes();
+        long[] xyz = {1L, 2L, 3L};
+        TileObject to =
+                TileObject.createCompleteTileObject(
+                        "test:layer",
+                        xyz,
+                        "EPSG:4326",
+                        "image/jpeg",
+                        null,
+                        new ByteArrayResource(contents));
+        fbs.put(to);
+        assertEquals(ContentHash.of(contents), to.getContentHash());
+
+        TileObject to2 =
+                TileObject.createQueryTileObject(
+                        "test:layer", xyz, "EPSG:4326", "image/jpeg", null);
+        assertTrue(fbs.get(to2));
+        File file = ((FileResource) to2.getBlob()).getFile();
+        if (Files.getFileStore(file.toPath())
+                .supportsFileAttributeView(UserDefinedFileAttributeView.class)) {
+            // recorded along with the tile, not computed when served
+            assertEquals(ContentHash.of(contents), to2.getContentHash());
+        }
+    }
+
     public void testTileDelete() throws Exception {
         fbs = setup();
 
@@ -81,7 +81,7 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
 
     @Test
     public void testAdd() throws IOException {
-        assertFalse(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+        assertFalse(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
 
         BlobStoreInfo info =
                 createInfo(
@@ -92,12 +92,12 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
                         1024);
         blobStoreAggregator.addBlobStore(info);
 
-        assertTrue(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+        assertTrue(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
     }
 
     @Test
     public void testAddDefault() throws IOException {
-        assertFalse(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+        assertFalse(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
 
         BlobStoreInfo info =
                 createInfo(
@@ -108,10 +108,10 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
                         1024);
         blobStoreAggregator.addBlobStore(info);
 
-        assertTrue(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+        assertTrue(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
         assertEquals(
-                compositeBlobStore.blobStores.get("newFileBlobStore"),
-                compositeBlobStore.blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID));
+                compositeBlobStore.blobStores().get("newFileBlobStore"),
+                compositeBlobStore.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID));
     }
 
     @Test
@@ -119,17 +119,17 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
         testAdd();
 
         BlobStore oldLiveInstance =
-                compositeBlobStore.blobStores.get("newFileBlobStore").liveInstance;
+                compositeBlobStore.blobStores().get("newFileBlobStore").liveInstance;
 
         FileBlobStoreInfo info =
                 (FileBlobStoreInfo) blobStoreAggregator.getBlobStore("newFileBlobStore");
         info.setFileSystemBlockSize(2048);
 
         blobStoreAggregator.modifyBlobStore(info);
-        assertTrue(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+        assertTrue(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
         assertNotEquals(
                 oldLiveInstance,
-                compositeBlobStore.blobStores.get("newFileBlobStore").liveInstance);
+                compositeBlobStore.blobStores().get("newFileBlobStore").liveInstance);
     }
 
     @Test
@@ -137,20 +137,20 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
         testAddDefault();
 
         BlobStore oldLiveInstance =
-                compositeBlobStore.blobStores.get("newFileBlobStore").liveInstance;
+                compositeBlobStore.blobStores().get("newFileBlobStore").liveInstance;
 
         FileBlobStoreInfo info =
                 (FileBlobStoreInfo) blobStoreAggregator.getBlobStore("newFileBlobStore");
         info.setFileSystemBlockSize(2048);
 
         blobStoreAggregator.modifyBlobStore(info);
-        assertTrue(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+        assertTrue(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
         assertNotEquals(
                 oldLiveInstance,
-                compositeBlobStore.blobStores.get("newFileBlobStore").liveInstance);
+                compositeBlobStore.blobStores().get("newFileBlobStore").liveInstance);
         assertEquals(
-                compositeBlobStore.blobStores.get("newFileBlobStore"),
-                compositeBlobStore.blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID));
+                compositeBlobStore.blobStores().get("newFileBlobStore"),
+                compositeBlobStore.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID));
     }
 
     @Test
@@ -162,10 +162,10 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
         info.setDefault(true);
 
         blobStoreAggregator.modifyBlobStore(info);
-        assertTrue(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+        assertTrue(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
         assertEquals(
-                compositeBlobStore.blobStores.get("newFileBlobStore"),
-                compositeBlobStore.blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID));
+                compositeBlobStore.blobStores().get("newFileBlobStore"),
+                compositeBlobStore.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID));
     }
 
     @Test
@@ -176,8 +176,8 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
                 (FileBlobStoreInfo) blobStoreAggregator.getBlobStore("newFileBlobStore");
 
         blobStoreAggregator.renameBlobStore("newFileBlobStore", "renamedFileBlobStore");
-        assertFalse(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
-        assertTrue(compositeBlobStore.blobStores.containsKey("renamedFileBlobStore"));
+        assertFalse(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
+        assertTrue(compositeBlobStore.blobStores().containsKey("renamedFileBlobStore"));
     }
 
     @Test
@@ -188,11 +188,11 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
                 (FileBlobStoreInfo) blobStoreAggregator.getBlobStore("newFileBlobStore");
 
         blobStoreAggregator.renameBlobStore("newFileBlobStore", "renamedFileBlobStore");
-        assertFalse(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
-        assertTrue(compositeBlobStore.blobStores.containsKey("renamedFileBlobStore"));
+        assertFalse(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
+        assertTrue(compositeBlobStore.blobStores().containsKey("renamedFileBlobStore"));
         assertEquals(
-                compositeBlobStore.blobStores.get("renamedFileBlobStore"),
-                compositeBlobStore.blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID));
+                compositeBlobStore.blobStores().get("renamedFileBlobStore"),
+                compositeBlobStore.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID));
     }
 
     @Test
@@ -200,7 +200,7 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
         testAdd();
 
         blobStoreAggregator.removeBlobStore("newFileBlobStore");
-        assertFalse(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+        assertFalse(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
     }
 
     @Ignore // The state of not having a default blobstore is allowed, so removing it should be
@@ -220,7 +220,7 @@ public class CompositeBlobStoreConfigurationIntegrationTest extends GWCConfigInt
             blobStoreAggregator.removeBlobStore("newFileBlobStore");
             System.out.println("FOO");
         } finally {
-            assertTrue(compositeBlobStore.blobStores.containsKey("newFileBlobStore"));
+            assertTrue(compositeBlobStore.blobStores().containsKey("newFileBlobStore"));
             assertTrue(blobStoreAggregator.blobStoreExists("newFileBlobStore"));
         }
     }
@@ -15,33 +15,44 @@
 package org.geowebcache.storage;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.config.BlobStoreInfo;
 import org.geowebcache.config.ConfigurationException;
 import org.geowebcache.config.FileBlobStoreInfo;
+import org.geowebcache.config.LocalTierInfo;
 import org.geowebcache.config.XMLConfiguration;
+import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.storage.CompositeBlobStore.LiveStore;
+import org.geowebcache.storage.blobstore.file.FileBlobStore;
+import org.geowebcache.storage.blobstore.tiered.TieredBlobStore;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -120,8 +131,8 @@ public class CompositeBlobStoreTest {
     public void noStoresDefinedCreatesLegacyDefaultStore() throws Exception {
         store = create();
 
-        assertEquals(1, store.blobStores.size());
-        LiveStore liveStore = store.blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
+        assertEquals(1, store.blobStores().size());
+        LiveStore liveStore = store.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
         assertNotNull(liveStore);
         assertTrue(liveStore.config instanceof FileBlobStoreInfo);
         FileBlobStoreInfo config = (FileBlobStoreInfo) liveStore.config;
@@ -140,7 +151,7 @@ public class CompositeBlobStoreTest {
 
         store = create();
 
-        Map<String, LiveStore> stores = store.blobStores;
+        Map<String, LiveStore> stores = store.blobStores();
         assertEquals(3, stores.size());
         LiveStore defaultStore = stores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
         assertNotNull(defaultStore);
@@ -207,8 +218,8 @@ public class CompositeBlobStoreTest {
                 config("storeId", false, enabled, tmpFolder.newFolder().getAbsolutePath(), 1024));
 
         store = create();
-        assertNotNull(store.blobStores.get("storeId"));
-        assertNull(store.blobStores.get("storeId").liveInstance);
+        assertNotNull(store.blobStores().get("storeId"));
+        assertNull(store.blobStores().get("storeId").liveInstance);
     }
 
     @Test
@@ -240,9 +251,9 @@ public class CompositeBlobStoreTest {
         // store
         assertSame(
                 defaultStore,
-                store.blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID).config);
-        assertSame(defaultStore, store.blobStores.get("default-store").config);
-        assertEquals(3, store.blobStores.size());
+                store.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID).config);
+        assertSame(defaultStore, store.blobStores().get("default-store").config);
+        assertEquals(3, store.blobStores().size());
     }
 
     @Test
@@ -261,7 +272,7 @@ public class CompositeBlobStoreTest {
     public void getTileDefaultsToDefaultBlobStore() throws Exception {
         store = create();
 
-        LiveStore liveStore = store.blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
+        LiveStore liveStore = store.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
         liveStore.liveInstance = spy(liveStore.liveInstance);
 
         when(defaultLayer.getBlobStoreId()).thenReturn(null);
@@ -274,7 +285,7 @@ public class CompositeBlobStoreTest {
     public void getTileInvalidLayer() throws Exception {
         store = create();
 
-        LiveStore liveStore = store.blobStores.get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
+        LiveStore liveStore = store.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
         liveStore.liveInstance = spy(liveStore.liveInstance);
 
         when(defaultLayer.getBlobStoreId()).thenReturn(null);
@@ -301,6 +312,168 @@ public class CompositeBlobStoreTest {
         store.get(tile);
     }
 
+    @Test
+    public void getTileRoutingIsCached() throws Exception {
+        store = create();
+
+        LiveStore liveStore = store.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
+        liveStore.liveInstance = spy(liveStore.liveInstance);
+
+        when(defaultLayer.getBlobStoreId()).thenReturn(null);
+        store.get(queryTile(0, 0, 0));
+        store.get(queryTile(1, 0, 0));
+        verify(layers, times(1)).getTileLayer(DEFAULT_LAYER);
+        verify(liveStore.liveInstance, times(2)).get(Mockito.any());
+
+        // a layer change made through the dispatcher routes the layer again
+        store.handleModifyLayer(defaultLayer);
+        store.get(queryTile(2, 0, 0));
+        verify(layers, times(2)).getTileLayer(DEFAULT_LAYER);
+    }
+
+    @Test
+    public void getTileRoutingFollowsBlobStoreId() throws Exception {
+        configs.add(config("store1", false, true, tmpFolder.newFolder().getAbsolutePath(), 1024));
+        store = create();
+
+        LiveStore defaultStore =
+                store.blobStores().get(CompositeBlobStore.DEFAULT_STORE_DEFAULT_ID);
+        defaultStore.liveInstance = spy(defaultStore.liveInstance);
+        LiveStore store1 = store.blobStores().get("store1");
+        store1.liveInstance = spy(store1.liveInstance);
+
+        when(defaultLayer.getBlobStoreId()).thenReturn(null);
+        TileObject tile = queryTile(0, 0, 0);
+        store.get(tile);
+        verify(defaultStore.liveInstance).get(tile);
+
+        // changed in place on the layer, without going through the dispatcher
+        when(defaultLayer.getBlobStoreId()).thenReturn("store1");
+        tile = queryTile(1, 0, 0);
+        store.get(tile);
+        verify(store1.liveInstance).get(tile);
+    }
+
+    @Test
+    public void getTileRoutingFollowsBlobStoreChanges() throws Exception {
+        store = create();
+
+        when(defaultLayer.getBlobStoreId()).thenReturn("store1");
+        try {
+            store.get(queryTile(0, 0, 0));
+            fail("Expected StorageException");
+        } catch (StorageException e) {
+            assertThat(e.getMessage(), equalTo("No BlobStore with id 'store1' found"));
+        }
+
+        store.handleAddBlobStore(
+                config("store1", false, true, tmpFolder.newFolder().getAbsolutePath(), 1024));
+        LiveStore store1 = store.blobStores().get("store1");
+        store1.liveInstance = spy(store1.liveInstance);
+        TileObject tile = queryTile(1, 0, 0);
+        store.get(tile);
+        verify(store1.liveInstance).get(tile);
+    }
+
+    @Test
+    public void getTileAsyncIsRouted() throws Exception {
+        configs.add(config("store1", false, true, tmpFolder.newFolder().getAbsolutePath(), 1024));
+        store = create();
+
+        when(defaultLayer.getBlobStoreId()).thenReturn("store1");
+        assertFalse(store.getAsync(queryTile(0, 0, 0)).get());
+
+        // routing failures complete the future rather than being thrown
+        when(defaultLayer.getBlobStoreId()).thenReturn("nonExistentStore");
+        CompletableFuture<Boolean> future = store.getAsync(queryTile(1, 0, 0));
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("Expected StorageException");
+        } catch (ExecutionException e) {
+            assertThat(
+                    e.getCause().getMessage(),
+                    equalTo("No BlobStore with id 'nonExistentStore' found"));
+        }
+    }
+
+    @Test
+    public void localTierWrapsStore() throws Exception {
+        when(defaultStorageFinder.getDefaultPath())
+                .thenReturn(tmpFolder.newFolder("default").getAbsolutePath());
+        FileBlobStoreInfo config =
+                config("store1", false, true, tmpFolder.newFolder().getAbsolutePath(), 1024);
+        LocalTierInfo localTier = new LocalTierInfo();
+        localTier.setBaseDirectory(tmpFolder.newFolder().getAbsolutePath());
+        localTier.setMaxSizeMB(1);
+        config.setLocalTier(localTier);
+        configs.add(config);
+        store = create();
+
+        BlobStore liveStore = store.blobStores().get("store1").liveInstance;
+        assertThat(liveStore, instanceOf(TieredBlobStore.class));
+        assertThat(((TieredBlobStore) liveStore).getRemote(), instanceOf(FileBlobStore.class));
+
+        when(defaultLayer.getBlobStoreId()).thenReturn("store1");
+        TileObject tile = queryTile(0, 0, 0);
+        tile.setBlob(new ByteArrayResource(new byte[] {1, 2, 3}));
+        store.put(tile);
+        assertTrue(store.get(queryTile(0, 0, 0)));
+        assertEquals(3, ((TieredBlobStore) liveStore).getLocalSize());
+    }
+
+    @Test
+    public void replacedStoreDestroyed() throws Exception {
+        final BlobStoreInfo info = mock(BlobStoreInfo.class);
+        when(info.getName()).thenReturn("testStore");
+        when(info.isEnabled()).thenReturn(true);
+        BlobStore first = mock(BlobStore.class);
+        BlobStore second = mock(BlobStore.class);
+        BlobStore third = mock(BlobStore.class);
+        when(info.createInstance(Mockito.any(), Mockito.any())).thenReturn(first, second, third);
+        store = create();
+        store.handleAddBlobStore(info);
+
+        store.handleModifyBlobStore(info);
+        verify(first).destroy();
+        verify(second, Mockito.never()).destroy();
+        assertSame(second, store.blobStores().get("testStore").liveInstance);
+
+        store.handleRenameBlobStore("testStore", info);
+        verify(second).destroy();
+        verify(third, Mockito.never()).destroy();
+    }
+
+    @Test
+    public void localTierOverlappingFileStoreRefused() throws Exception {
+        File cache = tmpFolder.newFolder("cache");
+        configs.add(config("store1", true, true, cache.getAbsolutePath(), 1024));
+        FileBlobStoreInfo config =
+                config("store2", false, true, tmpFolder.newFolder().getAbsolutePath(), 1024);
+        LocalTierInfo localTier = new LocalTierInfo();
+        localTier.setBaseDirectory(new File(cache, "local").getAbsolutePath());
+        config.setLocalTier(localTier);
+        configs.add(config);
+
+        ex.expect(ConfigurationException.class);
+        ex.expectMessage("overlaps the directory of blob store store1");
+        store = create();
+    }
+
+    @Test
+    public void localTierOverlappingDefaultDirectoryRefused() throws Exception {
+        FileBlobStoreInfo config =
+                config("store1", false, true, tmpFolder.newFolder().getAbsolutePath(), 1024);
+        LocalTierInfo localTier = new LocalTierInfo();
+        localTier.setBaseDirectory(tmpFolder.getRoot().getAbsolutePath());
+        config.setLocalTier(localTier);
+        configs.add(config);
+
+        ex.expect(ConfigurationException.class);
+        ex.expectMessage("overlaps the directory of the default cache directory");
+        store = create();
+    }
+
     @Test
     public void testSuitabilityOnStartup() throws Exception {
         // Default to EXISTING
@@ -0,0 +1,73 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.FileResource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentHashTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testHash() throws Exception {
+        byte[] contents = new byte[20000];
+        new Random(42).nextBytes(contents);
+        String hash = ContentHash.of(contents);
+        assertEquals(16, hash.length());
+        assertEquals(hash, ContentHash.of(contents.clone()));
+        assertEquals(hash, ContentHash.of(new ByteArrayResource(contents)));
+
+        File file = temp.newFile("tile.png");
+        Files.write(file.toPath(), contents);
+        assertEquals(hash, ContentHash.of(new FileResource(file)));
+
+        contents[10000]++;
+        assertNotEquals(hash, ContentHash.of(contents));
+    }
+
+    @Test
+    public void testRecord() {
+        byte[] contents = {1, 2, 3};
+        TileObject tile =
+                TileObject.createCompleteTileObject(
+                        "layer",
+                        new long[] {0, 0, 0},
+                        "EPSG:4326",
+                        "image/png",
+                        null,
+                        new ByteArrayResource(contents));
+
+        assertNull(new ContentHash(false).record(tile, contents));
+        assertNull(tile.getContentHash());
+
+        assertEquals(ContentHash.of(contents), new ContentHash(true).record(tile, contents));
+        assertEquals(ContentHash.of(contents), tile.getContentHash());
+
+        // a new blob invalidates the hash
+        tile.setBlob(new ByteArrayResource(new byte[] {4}));
+        assertNull(tile.getContentHash());
+    }
+}
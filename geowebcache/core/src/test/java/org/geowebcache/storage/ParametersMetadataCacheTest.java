@@ -0,0 +1,94 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ParametersMetadataCacheTest {
+
+    private List<String> listed = new ArrayList<>();
+
+    @Test
+    public void testListedOnce() {
+        ParametersMetadataCache cache =
+                new ParametersMetadataCache(
+                        layer -> {
+                            listed.add(layer);
+                            return "layer1".equals(layer)
+                                    ? Arrays.asList("p1", "p2")
+                                    : Collections.emptyList();
+                        });
+
+        assertTrue(cache.isStored("layer1", "p1"));
+        assertTrue(cache.isStored("layer1", "p2"));
+        assertFalse(cache.isStored("layer1", "p3"));
+        assertFalse(cache.isStored("layer2", "p1"));
+        assertEquals(Arrays.asList("layer1", "layer2"), listed);
+
+        cache.stored("layer1", "p3");
+        cache.stored("layer2", "p1");
+        assertTrue(cache.isStored("layer1", "p3"));
+        assertTrue(cache.isStored("layer2", "p1"));
+        assertEquals(2, listed.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        ParametersMetadataCache cache =
+                new ParametersMetadataCache(
+                        layer -> {
+                            listed.add(layer);
+                            return Collections.singletonList("p1");
+                        });
+        cache.stored("layer1", "p2");
+        assertTrue(cache.isStored("layer1", "p1"));
+        cache.stored("layer1", "p2");
+        assertTrue(cache.isStored("layer1", "p2"));
+
+        cache.invalidate("layer1", "p2");
+        assertFalse(cache.isStored("layer1", "p2"));
+        assertTrue(cache.isStored("layer1", "p1"));
+        assertEquals(1, listed.size());
+
+        cache.stored("layer1", "p2");
+        cache.invalidate("layer1");
+        assertFalse(cache.isStored("layer1", "p2"));
+        assertTrue(cache.isStored("layer1", "p1"));
+        assertEquals(2, listed.size());
+    }
+
+    @Test
+    public void testListingFailure() {
+        ParametersMetadataCache cache =
+                new ParametersMetadataCache(
+                        layer -> {
+                            listed.add(layer);
+                            throw new IllegalStateException("unreachable");
+                        });
+        assertFalse(cache.isStored("layer1", "p1"));
+        cache.stored("layer1", "p1");
+        assertTrue(cache.isStored("layer1", "p1"));
+        // not listed again until invalidated
+        assertEquals(1, listed.size());
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.geowebcache.filter.parameters.ParametersUtils;
+import org.junit.Test;
+
+public class TileKeyTest {
+
+    @Test
+    public void testParametersIdRecordedOnTile() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("STYLES", "population");
+        TileObject tile = query(parameters);
+        String expected = ParametersUtils.getId(parameters);
+
+        TileKey key = TileKey.lookup(tile);
+        assertEquals(expected, key.getParametersId());
+        assertEquals(expected, tile.getParametersId());
+
+        // matches the keys built from the blob store events
+        assertEquals(new TileKey("layer", "EPSG:4326", "png", expected, 1, 2, 3), key);
+        assertEquals(key, TileKey.store(query(new HashMap<>(parameters))));
+
+        // the remembered id follows the parameters, not the map instance
+        parameters.put("STYLES", "density");
+        TileKey other = TileKey.lookup(query(parameters));
+        assertEquals(ParametersUtils.getId(parameters), other.getParametersId());
+        assertNotEquals(key, other);
+    }
+
+    @Test
+    public void testNoParameters() {
+        TileObject tile = query(null);
+        assertNull(TileKey.lookup(tile).getParametersId());
+        assertNull(tile.getParametersId());
+        assertEquals(TileKey.lookup(tile), TileKey.lookup(query(new HashMap<>())));
+    }
+
+    private static TileObject query(Map<String, String> parameters) {
+        return TileObject.createQueryTileObject(
+                "layer", new long[] {1, 2, 3}, "EPSG:4326", "png", parameters);
+    }
+}
@@ -7,10 +7,13 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -194,6 +197,117 @@ public class TileRangeIteratorTest extends TestCase {
         verify(rasterMask);
     }
 
+    /** A single thread gets the locations row by row, level by level */
+    public void testSingleThreadOrder() throws Exception {
+        int zoomStart = gridSubSet.getZoomStart();
+        int zoomStop = gridSubSet.getZoomStop();
+        int[] metaTilingFactors = {3, 3};
+        TileRange tileRange =
+                new TileRange(
+                        "layer", "gridset", zoomStart, zoomStop, gridCoverages, mimeType, null);
+        TileRangeIterator tri = new TileRangeIterator(tileRange, metaTilingFactors);
+
+        long[] gridLoc = new long[3];
+        for (int z = zoomStart; z <= zoomStop; z++) {
+            long[] bounds = gridCoverages[z];
+            for (long y = bounds[1]; y <= bounds[3]; y += 3) {
+                for (long x = bounds[0]; x <= bounds[2]; x += 3) {
+                    gridLoc = tri.nextMetaGridLocation(gridLoc);
+                    assertNotNull(gridLoc);
+                    assertEquals(x, gridLoc[0]);
+                    assertEquals(y, gridLoc[1]);
+                    assertEquals(z, gridLoc[2]);
+                }
+            }
+        }
+        assertNull(tri.nextMetaGridLocation(gridLoc));
+        // and keeps on saying there is nothing left
+        assertNull(tri.nextMetaGridLocation(new long[3]));
+    }
+
+    /** Many threads get each location exactly once, and the tile counts add up exactly */
+    public void testMultiThreadedExactCounts() throws Exception {
+        final int zoomStart = gridSubSet.getZoomStart();
+        final int zoomStop = gridSubSet.getZoomStop();
+        final int[] metaTilingFactors = {4, 3};
+        TileRange tileRange =
+                new TileRange(
+                        "layer", "gridset", zoomStart, zoomStop, gridCoverages, mimeType, null);
+        final TileRangeIterator tri = new TileRangeIterator(tileRange, metaTilingFactors);
+        final Set<List<Long>> locations = ConcurrentHashMap.newKeySet();
+
+        final int nThreads = 16;
+        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+        List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(nThreads);
+        for (int taskN = 0; taskN < nThreads; taskN++) {
+            tasks.add(
+                    () -> {
+                        long tiles = 0;
+                        long[] gridLoc = new long[3];
+                        while (null != (gridLoc = tri.nextMetaGridLocation(gridLoc))) {
+                            tiles += tri.tilesForMetaGridLocation(gridLoc);
+                            assertTrue(
+                                    locations.add(
+                                            Arrays.asList(gridLoc[0], gridLoc[1], gridLoc[2])));
+                        }
+                        return tiles;
+                    });
+        }
+        long tiles = sumValues(executorService.invokeAll(tasks));
+        executorService.shutdown();
+
+        long expectedTiles = 0;
+        for (int z = zoomStart; z <= zoomStop; z++) {
+            long[] bounds = gridCoverages[z];
+            expectedTiles += (1 + bounds[2] - bounds[0]) * (1 + bounds[3] - bounds[1]);
+        }
+        assertEquals(
+                countMetaTiles(gridCoverages, zoomStart, zoomStop, metaTilingFactors),
+                locations.size());
+        assertEquals(expectedTiles, tiles);
+        assertEquals(expectedTiles, tri.getTilesRendered());
+        assertEquals(0, tri.getTilesSkipped());
+    }
+
+    /** An iterator started from the completed chunks of another one returns the rest */
+    public void testResumeFromCompletedChunks() throws Exception {
+        int zoomStart = gridSubSet.getZoomStart();
+        int zoomStop = gridSubSet.getZoomStop();
+        int[] metaTilingFactors = {3, 3};
+        TileRange tileRange =
+                new TileRange(
+                        "layer", "gridset", zoomStart, zoomStop, gridCoverages, mimeType, null);
+        TileRangeIterator tri = new TileRangeIterator(tileRange, metaTilingFactors);
+        assertEquals(0, tri.getCompletedChunks());
+
+        final long total = countMetaTiles(gridCoverages, zoomStart, zoomStop, metaTilingFactors);
+        List<List<Long>> seen = new ArrayList<List<Long>>();
+        long[] gridLoc = new long[3];
+        for (int i = 0; i < total / 2; i++) {
+            gridLoc = tri.nextMetaGridLocation(gridLoc);
+            seen.add(Arrays.asList(gridLoc[0], gridLoc[1], gridLoc[2]));
+        }
+        // the chunk of the last location returned is still in progress
+        final long completed = tri.getCompletedChunks();
+        assertTrue(completed > 0);
+        assertTrue(completed < tri.getChunkCount());
+        final long tilesCompleted = tri.getTilesBefore(completed);
+        assertTrue(tilesCompleted <= tri.getTilesRendered());
+
+        TileRangeIterator resumed = new TileRangeIterator(tileRange, metaTilingFactors, completed);
+        assertEquals(completed, resumed.getStartChunk());
+        long resumedTiles = 0;
+        gridLoc = resumed.nextMetaGridLocation(new long[3]);
+        // resumes at or before the last location handed out, never past it
+        assertTrue(seen.contains(Arrays.asList(gridLoc[0], gridLoc[1], gridLoc[2])));
+        while (gridLoc != null) {
+            resumedTiles += resumed.tilesForMetaGridLocation(gridLoc);
+            gridLoc = resumed.nextMetaGridLocation(gridLoc);
+        }
+        assertEquals(tri.getTilesBefore(tri.getChunkCount()), tilesCompleted + resumedTiles);
+        assertEquals(resumed.getChunkCount(), resumed.getCompletedChunks());
+    }
+
     /** @return */
     private long traverseTileRangeIter(
             final int nThreads,
@@ -16,12 +16,23 @@
 package org.geowebcache.storage;
 
 import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.*;
 
 import com.google.common.base.Ticker;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.stats.TransientCacheStatistics;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -153,6 +164,118 @@ public class TransientCacheTest {
         assertThat(result2, notNullValue()); // Should still be cached
     }
 
+    @Test
+    public void testRetrievedResourcesReleased() throws Exception {
+        // a resource never retrieved stays at the head of the insertion queue
+        transCache.put("pinned", new ByteArrayResource(new byte[1]));
+        for (int i = 0; i < 10000; i++) {
+            String key = "foo" + i;
+            transCache.put(key, new ByteArrayResource(new byte[1024]));
+            assertThat(transCache.get(key), notNullValue());
+        }
+        assertThat(transCache.size(), is(1));
+        assertThat(transCache.storageSize(), is(1L));
+        assertThat(transCache.queuedStorage(), is(1L));
+        assertThat(transCache.queueLength(), lessThanOrEqualTo(100));
+        assertThat(transCache.get("pinned"), notNullValue());
+    }
+
+    @Test
+    public void testTileKeys() throws Exception {
+        TileObject tile =
+                TileObject.createCompleteTileObject(
+                        "topp:states",
+                        new long[] {1, 2, 3},
+                        "EPSG:4326",
+                        ImageMime.png.getFormat(),
+                        Collections.singletonMap("STYLES", "population"),
+                        new ByteArrayResource(new byte[] {1, 2, 3}));
+        transCache.put(tile);
+
+        TileObject otherStyle =
+                TileObject.createQueryTileObject(
+                        "topp:states",
+                        new long[] {1, 2, 3},
+                        "EPSG:4326",
+                        ImageMime.png.getFormat(),
+                        Collections.singletonMap("STYLES", "polygon"));
+        assertThat(transCache.get(otherStyle), nullValue());
+
+        TileObject query =
+                TileObject.createQueryTileObject(
+                        "topp:states",
+                        new long[] {1, 2, 3},
+                        "EPSG:4326",
+                        ImageMime.png.getFormat(),
+                        Collections.singletonMap("STYLES", "population"));
+        Resource result = transCache.get(query);
+        assertThat(result, notNullValue());
+        assertThat(result.getSize(), is(3L));
+        assertThat(transCache.size(), is(0));
+        assertThat(transCache.storageSize(), is(0L));
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        transCache.put("foo", new ByteArrayResource(new byte[] {1}));
+        transCache.put("bar", new ByteArrayResource(new byte[] {2}));
+        assertThat(transCache.get("foo"), notNullValue());
+        assertThat(transCache.get("foo"), nullValue());
+
+        ticker.advanceMilli(EXPIRE_TIME + 1);
+        assertThat(transCache.get("bar"), nullValue());
+
+        assertThat(transCache.getHitCount(), is(1L));
+        assertThat(transCache.getMissCount(), is(2L));
+        assertThat(transCache.getEvictionCount(), is(1L));
+
+        TransientCacheStatistics statistics = transCache.getStatistics();
+        assertThat(statistics.getHits(), is(1L));
+        assertThat(statistics.getMisses(), is(2L));
+        assertThat(statistics.getEvictions(), is(1L));
+        assertThat(statistics.getTiles(), is(0));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final int threads = 8;
+        final int tiles = 1000;
+        transCache = new TransientCache(tiles * threads, tiles * threads, EXPIRE_TIME);
+        transCache.setTicker(ticker);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                results.add(
+                        executor.submit(
+                                () -> {
+                                    start.await();
+                                    int found = 0;
+                                    for (int i = 0; i < tiles; i++) {
+                                        String key = thread + "_" + i;
+                                        transCache.put(
+                                                key, new ByteArrayResource(new byte[] {1, 2}));
+                                        if (transCache.get(key) != null) {
+                                            found++;
+                                        }
+                                    }
+                                    return found;
+                                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                assertThat(result.get(), is(tiles));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(transCache.size(), is(0));
+        assertThat(transCache.storageSize(), is(0L));
+        assertThat(transCache.getHitCount(), is((long) tiles * threads));
+    }
+
     private static class TestTicker extends Ticker {
         long time;
 
@@ -168,7 +291,7 @@ public class TransientCacheTest {
         }
 
         public void advanceMilli(long millis) {
-            advanceNano(millis * 1000);
+            advanceNano(TimeUnit.MILLISECONDS.toNanos(millis));
         }
 
         public void advanceNano(long nanos) {
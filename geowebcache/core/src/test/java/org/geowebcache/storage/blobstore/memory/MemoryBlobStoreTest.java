@@ -18,8 +18,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
@@ -27,7 +32,9 @@ import org.apache.commons.logging.LogFactory;
 import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.storage.BlobStore;
+import org.geowebcache.storage.ContentHash;
 import org.geowebcache.storage.StorageBrokerTest;
+import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.blobstore.file.FileBlobStore;
 import org.geowebcache.storage.blobstore.memory.guava.GuavaCacheProvider;
@@ -121,6 +128,36 @@ public class MemoryBlobStoreTest {
         assertFalse(nbs.get(to));
     }
 
+    @Test
+    public void testContentHash() throws Exception {
+        nbs = new NullBlobStore();
+        cache.clear();
+
+        mbs = new MemoryBlobStore();
+        mbs.setStore(nbs);
+        mbs.setCacheProvider(cache);
+
+        byte[] contents = "1 2 3 4 5 6 test".getBytes();
+        long[] xyz = {1L, 2L, 3L};
+        mbs.setContentHashing(new ContentHash(true));
+        TileObject to =
+                TileObject.createCompleteTileObject(
+                        "test:123123 112",
+                        xyz,
+                        "EPSG:4326",
+                        "image/jpeg",
+                        null,
+                        new ByteArrayResource(contents));
+        mbs.put(to);
+        assertEquals(ContentHash.of(contents), to.getContentHash());
+
+        TileObject to2 =
+                TileObject.createQueryTileObject(
+                        "test:123123 112", xyz, "EPSG:4326", "image/jpeg", null);
+        assertTrue(mbs.get(to2));
+        assertEquals(ContentHash.of(contents), to2.getContentHash());
+    }
+
     @Test
     public void testTilePut() throws Exception {
         // Add a fileblobstore to the memory blobstore
@@ -260,6 +297,136 @@ public class MemoryBlobStoreTest {
         assertEquals(to2.getCreated(), to3.getCreated());
     }
 
+    @Test
+    public void testWriteBehindCoalescesPuts() throws Exception {
+        BlockingBlobStore store = new BlockingBlobStore();
+        mbs = new MemoryBlobStore();
+        mbs.setStore(store);
+        mbs.setCacheProvider(cache);
+        mbs.setWriteBehind(true);
+        mbs.setWriteBehindBatchSize(1);
+
+        mbs.put(tile(1, "first"));
+        // wait for the first version to be written, the next ones are queued
+        assertTrue(store.entered.await(10, TimeUnit.SECONDS));
+        mbs.put(tile(1, "second"));
+        mbs.put(tile(1, "third"));
+        mbs.put(tile(2, "other"));
+
+        // not cached anymore, but still queued
+        cache.clear();
+        TileObject query = query(1);
+        assertTrue(mbs.get(query));
+        assertEquals("third", new String(IOUtils.toByteArray(query.getBlob().getInputStream())));
+        assertEquals(
+                "third",
+                new String(
+                        IOUtils.toByteArray(cache.getTileObj(query).getBlob().getInputStream())));
+
+        store.release.countDown();
+        // waits for the queued tiles to be written
+        mbs.setWriteBehind(false);
+        assertEquals(3, store.puts.size());
+        assertEquals("first", store.puts.get(0));
+        assertEquals("third", store.puts.get(1));
+        assertEquals("other", store.puts.get(2));
+    }
+
+    @Test
+    public void testWriteBehindDelete() throws Exception {
+        BlockingBlobStore store = new BlockingBlobStore();
+        mbs = new MemoryBlobStore();
+        mbs.setStore(store);
+        mbs.setCacheProvider(cache);
+        mbs.setWriteBehind(true);
+        mbs.setWriteBehindBatchSize(1);
+
+        mbs.put(tile(1, "first"));
+        assertTrue(store.entered.await(10, TimeUnit.SECONDS));
+        mbs.put(tile(2, "deleted"));
+        mbs.delete(query(2));
+
+        store.release.countDown();
+        // waits for the pending delete
+        assertFalse(mbs.get(query(2)));
+        mbs.setWriteBehind(false);
+        assertEquals(Collections.singletonList("first"), store.puts);
+    }
+
+    @Test
+    public void testWriteBehindBackpressure() throws Exception {
+        BlockingBlobStore store = new BlockingBlobStore();
+        mbs = new MemoryBlobStore();
+        mbs.setStore(store);
+        mbs.setCacheProvider(cache);
+        mbs.setWriteBehind(true);
+        mbs.setWriteBehindQueueSize(1);
+
+        mbs.put(tile(1, "first"));
+        assertTrue(store.entered.await(10, TimeUnit.SECONDS));
+        mbs.put(tile(2, "queued"));
+        // same tile, coalesced without waiting
+        mbs.put(tile(2, "coalesced"));
+
+        CountDownLatch queued = new CountDownLatch(1);
+        Thread producer =
+                new Thread(
+                        () -> {
+                            try {
+                                mbs.put(tile(3, "waiting"));
+                                queued.countDown();
+                            } catch (StorageException e) {
+                                LOG.error(e.getMessage(), e);
+                            }
+                        });
+        producer.start();
+        assertFalse(queued.await(200, TimeUnit.MILLISECONDS));
+
+        store.release.countDown();
+        assertTrue(queued.await(10, TimeUnit.SECONDS));
+        producer.join();
+        mbs.setWriteBehind(false);
+        assertEquals(3, store.puts.size());
+        assertEquals("coalesced", store.puts.get(1));
+        assertEquals("waiting", store.puts.get(2));
+    }
+
+    private static TileObject tile(long x, String contents) {
+        return TileObject.createCompleteTileObject(
+                "test:layer",
+                new long[] {x, 0, 3},
+                "EPSG:4326",
+                "image/png",
+                null,
+                new ByteArrayResource(contents.getBytes()));
+    }
+
+    private static TileObject query(long x) {
+        return TileObject.createQueryTileObject(
+                "test:layer", new long[] {x, 0, 3}, "EPSG:4326", "image/png", null);
+    }
+
+    /** Records the contents of the tiles put, blocking the first put until released */
+    static class BlockingBlobStore extends NullBlobStore {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final List<String> puts = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void put(TileObject obj) throws StorageException {
+            entered.countDown();
+            try {
+                release.await();
+                puts.add(new String(IOUtils.toByteArray(obj.getBlob().getInputStream())));
+            } catch (InterruptedException | IOException e) {
+                throw new StorageException(e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * * Private method for creating a {@link FileBlobStore}
      *
@@ -0,0 +1,136 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.memory.guava;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the {@link GuavaCacheProvider} get and put throughput under 32 threads contention, on a
+ * cache holding all the tiles requested. The {@code stringKey} benchmark builds the former string
+ * key of the same tiles as a reference for the cost of the key alone.
+ *
+ * <p>Not run as part of the build, launch the {@link #main} method from the IDE or the test
+ * classpath. Add {@code -prof gc} to the JMH options to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(32)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GuavaCacheProviderBenchmark {
+
+    static final String LAYER = "topp:states";
+
+    static final String GRIDSET = "EPSG:4326";
+
+    static final String FORMAT = "image/png";
+
+    static final Map<String, String> PARAMETERS = Collections.singletonMap("STYLES", "population");
+
+    static final int TILES = 64;
+
+    GuavaCacheProvider cache;
+
+    /** Query tiles, as the requests would build them */
+    TileObject[] queries;
+
+    @Setup
+    public void setup() {
+        CacheConfiguration configuration = new CacheConfiguration();
+        configuration.setHardMemoryLimit(256);
+        configuration.setConcurrencyLevel(32);
+        cache = new GuavaCacheProvider(configuration);
+        queries = new TileObject[TILES * TILES];
+        byte[] contents = new byte[1024];
+        for (int x = 0; x < TILES; x++) {
+            for (int y = 0; y < TILES; y++) {
+                long[] xyz = {x, y, 12};
+                queries[x * TILES + y] =
+                        TileObject.createQueryTileObject(LAYER, xyz, GRIDSET, FORMAT, PARAMETERS);
+                cache.putTileObj(
+                        TileObject.createCompleteTileObject(
+                                LAYER,
+                                xyz,
+                                GRIDSET,
+                                FORMAT,
+                                PARAMETERS,
+                                new ByteArrayResource(contents)));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.reset();
+    }
+
+    private TileObject randomTile() {
+        return queries[ThreadLocalRandom.current().nextInt(queries.length)];
+    }
+
+    @Benchmark
+    public TileObject get() {
+        return cache.getTileObj(randomTile());
+    }
+
+    @Benchmark
+    public void put() {
+        TileObject query = randomTile();
+        cache.putTileObj(
+                TileObject.createCompleteTileObject(
+                        LAYER,
+                        query.getXYZ(),
+                        GRIDSET,
+                        FORMAT,
+                        PARAMETERS,
+                        new ByteArrayResource(new byte[1024])));
+    }
+
+    @Benchmark
+    public String stringKey() {
+        return GuavaCacheProvider.generateTileKey(randomTile());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(GuavaCacheProviderBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.memory.guava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.storage.TileKey;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GuavaCacheProviderTest {
+
+    private GuavaCacheProvider cache;
+
+    @Before
+    public void setUp() {
+        cache = new GuavaCacheProvider(new CacheConfiguration());
+    }
+
+    @After
+    public void tearDown() {
+        cache.reset();
+    }
+
+    private static TileObject tile(String layer, long x, Map<String, String> parameters) {
+        return TileObject.createCompleteTileObject(
+                layer,
+                new long[] {x, 1, 2},
+                "EPSG:4326",
+                "image/png",
+                parameters,
+                new ByteArrayResource(new byte[] {1, 2, 3}));
+    }
+
+    private static TileObject query(String layer, long x, Map<String, String> parameters) {
+        return TileObject.createQueryTileObject(
+                layer, new long[] {x, 1, 2}, "EPSG:4326", "image/png", parameters);
+    }
+
+    @Test
+    public void testTileKey() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("STYLES", "population");
+        parameters.put("CQL_FILTER", "PERSONS > 1000000");
+        TileKey stored = TileKey.store(tile(new String("topp:states"), 1, parameters));
+        // same parameters in another map implementation
+        TileKey lookup =
+                TileKey.lookup(query("topp:states", 1, new TreeMap<String, String>(parameters)));
+        assertEquals(stored, lookup);
+        assertEquals(stored.hashCode(), lookup.hashCode());
+        assertSame(
+                TileKey.store(tile("topp:states", 2, null)).getLayerName(), stored.getLayerName());
+
+        // stored keys do not depend on the tile parameters
+        parameters.put("STYLES", "polygon");
+        assertNotEquals(TileKey.lookup(query("topp:states", 1, parameters)), stored);
+
+        // no parameters and empty parameters are the same
+        assertEquals(
+                TileKey.store(tile("topp:states", 1, null)),
+                TileKey.lookup(query("topp:states", 1, Collections.emptyMap())));
+        assertNotEquals(
+                TileKey.store(tile("topp:states", 1, null)),
+                TileKey.lookup(query("topp:states", 2, null)));
+    }
+
+    @Test
+    public void testPutGet() {
+        Map<String, String> parameters = Collections.singletonMap("STYLES", "population");
+        TileObject tile = tile("topp:states", 1, parameters);
+        cache.putTileObj(tile);
+        assertSame(tile, cache.getTileObj(query("topp:states", 1, new HashMap<>(parameters))));
+        assertNull(cache.getTileObj(query("topp:states", 1, null)));
+        assertEquals(1, cache.getStatistics().getHitCount());
+
+        cache.removeTileObj(query("topp:states", 1, parameters));
+        assertNull(cache.getTileObj(query("topp:states", 1, parameters)));
+    }
+
+    @Test
+    public void testRemoveLayer() {
+        for (int x = 0; x < 10; x++) {
+            cache.putTileObj(tile("topp:states", x, null));
+            cache.putTileObj(tile("sf:roads", x, null));
+        }
+        cache.removeLayer("topp:states");
+        for (int x = 0; x < 10; x++) {
+            assertNull(cache.getTileObj(query("topp:states", x, null)));
+            assertNotNull(cache.getTileObj(query("sf:roads", x, null)));
+        }
+        // the layer can be cached again
+        cache.putTileObj(tile("topp:states", 0, null));
+        cache.removeTileObj(query("sf:roads", 0, null));
+        cache.removeLayer("sf:roads");
+        assertNotNull(cache.getTileObj(query("topp:states", 0, null)));
+        assertNull(cache.getTileObj(query("sf:roads", 1, null)));
+    }
+}
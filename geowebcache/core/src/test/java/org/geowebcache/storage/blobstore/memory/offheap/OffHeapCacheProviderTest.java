@@ -0,0 +1,245 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.memory.offheap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.io.IOUtils;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.TileKey;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration;
+import org.geowebcache.storage.blobstore.memory.CacheConfiguration.EvictionPolicy;
+import org.geowebcache.storage.blobstore.memory.CacheStatistics;
+import org.geowebcache.storage.blobstore.memory.MemoryBlobStore;
+import org.geowebcache.storage.blobstore.memory.NullBlobStore;
+import org.junit.After;
+import org.junit.Test;
+
+public class OffHeapCacheProviderTest {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private OffHeapCacheProvider cache;
+
+    @After
+    public void resetCache() {
+        if (cache != null) {
+            cache.reset();
+        }
+    }
+
+    /** A 1MB single segment cache of 16 blocks */
+    private OffHeapCacheProvider smallCache(EvictionPolicy policy) {
+        CacheConfiguration configuration = new CacheConfiguration();
+        configuration.setHardMemoryLimit(1);
+        configuration.setConcurrencyLevel(1);
+        configuration.setPolicy(policy);
+        return new OffHeapCacheProvider(configuration, BLOCK_SIZE);
+    }
+
+    private static TileObject tile(long x, byte[] contents) {
+        return TileObject.createCompleteTileObject(
+                "layer",
+                new long[] {x, 0, 5},
+                "EPSG:4326",
+                "image/png",
+                null,
+                new ByteArrayResource(contents));
+    }
+
+    private static TileObject query(long x) {
+        return TileObject.createQueryTileObject(
+                "layer", new long[] {x, 0, 5}, "EPSG:4326", "image/png", null);
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] read(Resource resource) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resource.transferTo(Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        cache = new OffHeapCacheProvider(new CacheConfiguration(), 16);
+        byte[] contents = bytes(50, 3);
+        TileObject tile = tile(1, contents);
+        ((ByteArrayResource) tile.getBlob()).setLastModified(1234);
+        cache.putTileObj(tile);
+
+        assertNull(cache.getTileObj(query(2)));
+        TileObject cached = cache.getTileObj(query(1));
+        assertNotNull(cached);
+        assertEquals(50, cached.getBlobSize());
+        assertEquals(1234, cached.getCreated());
+        assertArrayEquals(contents, read(cached.getBlob()));
+        assertArrayEquals(contents, IOUtils.toByteArray(cached.getBlob().getInputStream()));
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(50, statistics.getActualSize());
+        assertEquals(
+                CacheConfiguration.DEFAULT_MEMORY_LIMIT * 1024 * 1024, statistics.getTotalSize());
+
+        cache.removeTileObj(query(1));
+        assertNull(cache.getTileObj(query(1)));
+        assertEquals(0, cache.getStatistics().getActualSize());
+    }
+
+    @Test
+    public void testLRUEviction() throws Exception {
+        cache = smallCache(EvictionPolicy.LRU);
+        for (int x = 0; x < 16; x++) {
+            cache.putTileObj(tile(x, bytes(BLOCK_SIZE, x)));
+        }
+        // tile 0 becomes the most recently used
+        assertNotNull(cache.getTileObj(query(0)));
+        cache.putTileObj(tile(16, bytes(BLOCK_SIZE, 16)));
+
+        assertNull(cache.getTileObj(query(1)));
+        assertArrayEquals(bytes(BLOCK_SIZE, 0), read(cache.getTileObj(query(0)).getBlob()));
+        assertArrayEquals(bytes(BLOCK_SIZE, 16), read(cache.getTileObj(query(16)).getBlob()));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testLFUEviction() throws Exception {
+        cache = smallCache(EvictionPolicy.LFU);
+        for (int x = 0; x < 16; x++) {
+            cache.putTileObj(tile(x, bytes(BLOCK_SIZE, x)));
+            // the oldest tiles are the most used ones
+            for (int i = 0; i < 16 - x; i++) {
+                cache.getTileObj(query(x));
+            }
+        }
+        // the least frequently used is the last one, even if it was used last
+        cache.putTileObj(tile(16, bytes(BLOCK_SIZE, 16)));
+        assertNull(cache.getTileObj(query(15)));
+        assertNotNull(cache.getTileObj(query(0)));
+    }
+
+    @Test
+    public void testViewsOutliveEviction() throws Exception {
+        cache = smallCache(EvictionPolicy.LRU);
+        for (int x = 0; x < 16; x++) {
+            cache.putTileObj(tile(x, bytes(BLOCK_SIZE, x)));
+        }
+        Resource view = cache.getTileObj(query(0)).getBlob();
+        cache.removeTileObj(query(0));
+        // overwrite the whole cache, the blocks of the pinned tile are not reused
+        for (int x = 16; x < 48; x++) {
+            cache.putTileObj(tile(x, bytes(BLOCK_SIZE, x)));
+        }
+        assertArrayEquals(bytes(BLOCK_SIZE, 0), read(view));
+        // the cache still holds as many tiles, regardless of when the view gets collected
+        for (int x = 32; x < 48; x++) {
+            assertArrayEquals(bytes(BLOCK_SIZE, x), read(cache.getTileObj(query(x)).getBlob()));
+        }
+        assertNull(cache.getTileObj(query(31)));
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        cache = smallCache(EvictionPolicy.LRU);
+        cache.putTileObj(tile(0, bytes(100, 0)));
+        cache.putTileObj(tile(0, bytes(2 * 1024 * 1024, 0)));
+        // the previous version is not served
+        assertNull(cache.getTileObj(query(0)));
+    }
+
+    @Test
+    public void testLayers() throws Exception {
+        cache = smallCache(EvictionPolicy.NULL);
+        cache.putTileObj(tile(0, bytes(10, 0)));
+        TileObject other =
+                TileObject.createCompleteTileObject(
+                        "other",
+                        new long[] {0, 0, 5},
+                        "EPSG:4326",
+                        "image/png",
+                        null,
+                        new ByteArrayResource(bytes(10, 0)));
+        cache.putTileObj(other);
+        cache.removeLayer("layer");
+        assertNull(cache.getTileObj(query(0)));
+        assertNotNull(cache.getTileObj(other));
+
+        cache.addUncachedLayer("layer");
+        assertTrue(cache.containsUncachedLayer("layer"));
+        cache.putTileObj(tile(0, bytes(10, 0)));
+        assertNull(cache.getTileObj(query(0)));
+        cache.removeUncachedLayer("layer");
+        assertFalse(cache.containsUncachedLayer("layer"));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        OffHeapSegment segment =
+                new OffHeapSegment(
+                        1024,
+                        16,
+                        OffHeapCacheProvider.SLAB_SIZE,
+                        EvictionPolicy.EXPIRE_AFTER_WRITE,
+                        1000,
+                        new LongAdder());
+        TileKey a = TileKey.store(query(1));
+        TileKey b = TileKey.store(query(2));
+        segment.put(a, new ByteArrayResource(bytes(20, 0)), 0);
+        segment.put(b, new ByteArrayResource(bytes(20, 0)), 500);
+        assertNotNull(segment.get(a, 900));
+        segment.expire(1200);
+        assertNull(segment.get(a, 1200));
+        assertNotNull(segment.get(b, 1200));
+        assertNull(segment.get(b, 1600));
+        assertEquals(0, segment.size());
+    }
+
+    @Test
+    public void testMemoryBlobStore() throws Exception {
+        cache = new OffHeapCacheProvider(new CacheConfiguration());
+        MemoryBlobStore store = new MemoryBlobStore();
+        try {
+            store.setStore(new NullBlobStore());
+            store.setCacheProvider(cache);
+            byte[] contents = bytes(10000, 7);
+            store.put(tile(3, contents));
+            TileObject query = query(3);
+            assertTrue(store.get(query));
+            assertEquals(contents.length, query.getBlobSize());
+            assertTrue(Arrays.equals(contents, read(query.getBlob())));
+        } finally {
+            store.destroy();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.tiered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        assertEquals(0, sketch.frequency(42));
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment(42);
+            assertEquals(Math.min(i, FrequencySketch.MAX_FREQUENCY), sketch.frequency(42));
+        }
+        assertEquals(0, sketch.frequency(43));
+    }
+
+    @Test
+    public void testAging() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment(42);
+        }
+        assertEquals(10, sketch.frequency(42));
+        // enough distinct items to reach the sample size and halve the counters
+        for (int item = 0; item < 16 * 10; item++) {
+            sketch.increment(1000 + item);
+        }
+        assertTrue(sketch.frequency(42) <= 5);
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.storage.blobstore.tiered;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.mime.MimeType;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileObject;
+import org.geowebcache.storage.TileRange;
+import org.geowebcache.storage.UnsuitableStorageException;
+import org.geowebcache.storage.blobstore.file.FileBlobStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TieredBlobStoreTest {
+
+    private static final String LAYER = "topp:states";
+
+    private static final String GRIDSET = "EPSG:4326";
+
+    private static final int TILE_SIZE = 1000;
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileBlobStore remote;
+
+    private TieredBlobStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        remote = spy(new FileBlobStore(temp.newFolder("remote").getAbsolutePath()));
+        // room for four tiles
+        store = new TieredBlobStore(remote, temp.newFolder("local").getAbsolutePath(), 4500);
+    }
+
+    @After
+    public void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    public void testReadFromLocalTier() throws Exception {
+        store.put(tile(0, 0, 0, null, 1));
+        assertFalse(store.isLocal(query(0, 0, 0)));
+
+        TileObject first = query(0, 0, 0);
+        assertTrue(store.get(first));
+        assertContents(1, first);
+        assertTrue(store.isLocal(query(0, 0, 0)));
+        assertEquals(TILE_SIZE, store.getLocalSize());
+
+        TileObject second = query(0, 0, 0);
+        assertTrue(store.get(second));
+        assertContents(1, second);
+        assertEquals(first.getCreated(), second.getCreated());
+        verify(remote, times(1)).get(any(TileObject.class));
+
+        assertTrue(store.getAsync(query(0, 0, 0)).get());
+        verify(remote, times(1)).get(any(TileObject.class));
+
+        assertFalse(store.get(query(1, 0, 0)));
+    }
+
+    @Test
+    public void testPutInvalidates() throws Exception {
+        store.put(tile(0, 0, 0, null, 1));
+        store.get(query(0, 0, 0));
+        assertTrue(store.isLocal(query(0, 0, 0)));
+
+        store.put(tile(0, 0, 0, null, 2));
+        assertFalse(store.isLocal(query(0, 0, 0)));
+        assertEquals(0, store.getLocalSize());
+        TileObject updated = query(0, 0, 0);
+        assertTrue(store.get(updated));
+        assertContents(2, updated);
+    }
+
+    @Test
+    public void testDeleteInvalidates() throws Exception {
+        store.put(tile(0, 0, 0, null, 1));
+        store.get(query(0, 0, 0));
+
+        assertTrue(store.delete(query(0, 0, 0)));
+        assertFalse(store.isLocal(query(0, 0, 0)));
+        assertFalse(store.get(query(0, 0, 0)));
+    }
+
+    @Test
+    public void testTruncateInvalidates() throws Exception {
+        for (int x = 0; x < 2; x++) {
+            store.put(tile(x, 0, 1, null, x));
+            store.get(query(x, 0, 1));
+        }
+        assertEquals(2 * TILE_SIZE, store.getLocalSize());
+
+        long[][] bounds = {{0, 0, 0, 0, 1}};
+        TileRange range =
+                new TileRange(
+                        LAYER, GRIDSET, 1, 1, bounds, MimeType.createFromExtension("png"), null);
+        store.delete(range);
+
+        assertFalse(store.isLocal(query(0, 0, 1)));
+        assertTrue(store.isLocal(query(1, 0, 1)));
+        assertEquals(TILE_SIZE, store.getLocalSize());
+        assertFalse(store.get(query(0, 0, 1)));
+        assertTrue(store.get(query(1, 0, 1)));
+    }
+
+    @Test
+    public void testLayerOperationsInvalidate() throws Exception {
+        Map<String, String> style = ImmutableMap.of("STYLES", "population");
+        store.put(tile(0, 0, 0, null, 1));
+        store.put(tile(0, 0, 0, style, 2));
+        TileObject styled =
+                TileObject.createQueryTileObject(
+                        LAYER, new long[] {0, 0, 0}, GRIDSET, "image/png", style);
+        assertTrue(store.get(styled));
+        assertContents(2, styled);
+        store.get(query(0, 0, 0));
+        assertEquals(2 * TILE_SIZE, store.getLocalSize());
+
+        store.deleteByParametersId(LAYER, styled.getParametersId());
+        assertFalse(store.isLocal(styled));
+        assertTrue(store.isLocal(query(0, 0, 0)));
+
+        store.deleteByGridsetId(LAYER, GRIDSET);
+        assertFalse(store.isLocal(query(0, 0, 0)));
+        assertEquals(0, store.getLocalSize());
+
+        store.put(tile(0, 0, 0, null, 3));
+        store.get(query(0, 0, 0));
+        store.rename(LAYER, "topp:renamed");
+        assertEquals(0, store.getLocalSize());
+        assertFalse(store.get(query(0, 0, 0)));
+    }
+
+    @Test
+    public void testFrequencyAdmission() throws Exception {
+        for (int x = 0; x < 5; x++) {
+            store.put(tile(x, 0, 2, null, x));
+        }
+        // the first four tiles fill the local tier and are popular
+        for (int i = 0; i < 3; i++) {
+            for (int x = 0; x < 4; x++) {
+                store.get(query(x, 0, 2));
+            }
+        }
+        assertEquals(4 * TILE_SIZE, store.getLocalSize());
+
+        // a tile read once does not evict them
+        TileObject once = query(4, 0, 2);
+        assertTrue(store.get(once));
+        assertContents(4, once);
+        assertFalse(store.isLocal(query(4, 0, 2)));
+        for (int x = 0; x < 4; x++) {
+            assertTrue(store.isLocal(query(x, 0, 2)));
+        }
+
+        // until it gets more popular than the least recently used one
+        for (int i = 0; i < 3; i++) {
+            store.get(query(4, 0, 2));
+        }
+        assertTrue(store.isLocal(query(4, 0, 2)));
+        assertFalse(store.isLocal(query(0, 0, 2)));
+        assertEquals(4 * TILE_SIZE, store.getLocalSize());
+    }
+
+    @Test
+    public void testLocalDirectoryEmptiedOnStartup() throws Exception {
+        store.put(tile(0, 0, 0, null, 1));
+        store.get(query(0, 0, 0));
+        store.destroy();
+
+        File local = temp.getRoot().toPath().resolve("local").toFile();
+        store = new TieredBlobStore(remote, local.getAbsolutePath(), 4500);
+        assertFalse(store.isLocal(query(0, 0, 0)));
+        assertArrayEquals(
+                new String[] {"localtier.properties", "metadata.properties", "tmp"},
+                sortedList(local));
+    }
+
+    @Test(expected = UnsuitableStorageException.class)
+    public void testForeignLocalDirectory() throws Exception {
+        File foreign = temp.newFolder("foreign");
+        new File(foreign, "important.txt").createNewFile();
+        new TieredBlobStore(remote, foreign.getAbsolutePath(), 4500);
+    }
+
+    @Test
+    public void testFileBlobStoreDirectoryRefused() throws Exception {
+        File cache = temp.newFolder("cache");
+        FileBlobStore fileStore = new FileBlobStore(cache.getAbsolutePath());
+        fileStore.put(tile(0, 0, 0, null, 1));
+        fileStore.destroy();
+        String[] contents = sortedList(cache);
+
+        try {
+            new TieredBlobStore(remote, cache.getAbsolutePath(), 4500);
+            fail("Expected UnsuitableStorageException");
+        } catch (UnsuitableStorageException e) {
+            assertThat(e.getMessage(), containsString(TieredBlobStore.MARKER_FILE));
+        }
+        assertArrayEquals(contents, sortedList(cache));
+        fileStore = new FileBlobStore(cache.getAbsolutePath());
+        TileObject stored = query(0, 0, 0);
+        assertTrue(fileStore.get(stored));
+        assertContents(1, stored);
+        fileStore.destroy();
+    }
+
+    private static String[] sortedList(File directory) {
+        String[] names = directory.list();
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static void assertContents(int value, TileObject tile) throws IOException {
+        byte[] contents;
+        try (InputStream in = tile.getBlob().getInputStream()) {
+            contents = IOUtils.toByteArray(in);
+        }
+        assertEquals(TILE_SIZE, contents.length);
+        assertEquals(value, contents[0]);
+    }
+
+    private static TileObject query(long x, long y, int z) {
+        return TileObject.createQueryTileObject(
+                LAYER, new long[] {x, y, z}, GRIDSET, "image/png", null);
+    }
+
+    private static TileObject tile(long x, long y, int z, Map<String, String> parameters, int value)
+            throws StorageException {
+        byte[] contents = new byte[TILE_SIZE];
+        Arrays.fill(contents, (byte) value);
+        return TileObject.createCompleteTileObject(
+                LAYER,
+                new long[] {x, y, z},
+                GRIDSET,
+                "image/png",
+                parameters,
+                new ByteArrayResource(contents));
+    }
+}
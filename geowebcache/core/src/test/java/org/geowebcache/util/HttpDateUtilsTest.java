@@ -0,0 +1,98 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+import java.util.Random;
+import org.apache.commons.httpclient.util.DateUtil;
+import org.junit.Test;
+
+public class HttpDateUtilsTest {
+
+    /** Sun, 06 Nov 1994 08:49:37 GMT */
+    static final long EXAMPLE = 784111777000L;
+
+    @Test
+    public void testFormat() {
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDateUtils.formatDate(EXAMPLE));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDateUtils.formatDate(EXAMPLE + 999));
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HttpDateUtils.formatDate(0));
+        assertEquals("Wed, 31 Dec 1969 23:59:59 GMT", HttpDateUtils.formatDate(-1));
+        assertEquals("Tue, 29 Feb 2000 12:00:00 GMT", HttpDateUtils.formatDate(951825600000L));
+    }
+
+    @Test
+    public void testFormatCached() {
+        String formatted = HttpDateUtils.formatDate(EXAMPLE);
+        assertSame(formatted, HttpDateUtils.formatDate(EXAMPLE + 500));
+    }
+
+    @Test
+    public void testFormatMatchesHttpClient() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // between 1970 and 2100
+            long timestamp = (long) (random.nextDouble() * 4102444800000L);
+            assertEquals(
+                    DateUtil.formatDate(new Date(timestamp)), HttpDateUtils.formatDate(timestamp));
+        }
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(EXAMPLE, HttpDateUtils.parseDate("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(EXAMPLE, HttpDateUtils.parseDate("Sunday, 06-Nov-94 08:49:37 GMT"));
+        assertEquals(EXAMPLE, HttpDateUtils.parseDate("Sun Nov  6 08:49:37 1994"));
+        assertEquals(EXAMPLE, HttpDateUtils.parseDate(" Sun, 06 Nov 1994 08:49:37 GMT "));
+        assertEquals(1234569600000L, HttpDateUtils.parseDate("Saturday, 14-Feb-09 00:00:00 GMT"));
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertEquals(HttpDateUtils.INVALID_DATE, HttpDateUtils.parseDate(null));
+        assertEquals(HttpDateUtils.INVALID_DATE, HttpDateUtils.parseDate(""));
+        assertEquals(HttpDateUtils.INVALID_DATE, HttpDateUtils.parseDate("yesterday"));
+        assertEquals(
+                HttpDateUtils.INVALID_DATE,
+                HttpDateUtils.parseDate("Sun, 06 Nov 1994 08:49:37 CET"));
+        assertEquals(
+                HttpDateUtils.INVALID_DATE,
+                HttpDateUtils.parseDate("Sun, 06 Foo 1994 08:49:37 GMT"));
+        assertEquals(
+                HttpDateUtils.INVALID_DATE,
+                HttpDateUtils.parseDate("Sun, 31 Nov 1994 08:49:37 GMT"));
+        assertEquals(
+                HttpDateUtils.INVALID_DATE,
+                HttpDateUtils.parseDate("Sun, 06 Nov 1994 24:49:37 GMT"));
+        assertEquals(
+                HttpDateUtils.INVALID_DATE,
+                HttpDateUtils.parseDate("Sun, 06 Nov 1994 08-49-37 GMT"));
+        assertEquals(
+                HttpDateUtils.INVALID_DATE,
+                HttpDateUtils.parseDate("Sun, 6 Nov 1994 08:49:37 GMT"));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long timestamp = 1000 * (long) (random.nextDouble() * 253402300799L);
+            assertEquals(timestamp, HttpDateUtils.parseDate(HttpDateUtils.formatDate(timestamp)));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.FileResource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ResponseUtilsTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private static final byte[] DATA = {1, 2, 3, 4, 5};
+
+    /** Sendfile support taking the mock request and response for the container's own */
+    private static final SendFileSupport SENDFILE =
+            new SendFileSupport(true, DATA.length) {
+                @Override
+                protected boolean isContainerRequest(HttpServletRequest request) {
+                    return request instanceof MockHttpServletRequest;
+                }
+
+                @Override
+                protected boolean isContainerResponse(HttpServletResponse response) {
+                    return response instanceof MockHttpServletResponse;
+                }
+            };
+
+    @Test
+    public void testSendFileWhenSupported() throws Exception {
+        File file = temp.newFile("tile.png");
+        Files.write(file.toPath(), DATA);
+        MockHttpServletRequest request = sendFileRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseUtils.writeResource(SENDFILE, request, response, new FileResource(file));
+
+        assertEquals(
+                file.getAbsolutePath(),
+                request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_FILENAME));
+        assertEquals(0L, request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_START));
+        assertEquals((long) DATA.length, request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_END));
+        assertEquals(DATA.length, response.getContentLength());
+        // the container sends the file, nothing gets written to the output stream
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testSendFileUsesCurrentLength() throws Exception {
+        File file = temp.newFile("tile.png");
+        Files.write(file.toPath(), DATA);
+        FileResource resource = new FileResource(file);
+        MockHttpServletRequest request = sendFileRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setContentLength(DATA.length);
+
+        // replaced after the resource was created
+        byte[] replaced = new byte[2 * DATA.length];
+        Files.write(file.toPath(), replaced);
+        ResponseUtils.writeResource(SENDFILE, request, response, resource);
+
+        assertEquals(
+                (long) replaced.length, request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_END));
+        assertEquals(replaced.length, response.getContentLength());
+    }
+
+    @Test
+    public void testCopySmallFile() throws Exception {
+        File file = temp.newFile("tile.png");
+        Files.write(file.toPath(), DATA);
+        MockHttpServletRequest request = sendFileRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseUtils.writeResource(
+                new SendFileSupport(true, SendFileSupport.DEFAULT_MIN_SIZE),
+                request,
+                response,
+                new FileResource(file));
+
+        assertNull(request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_FILENAME));
+        assertArrayEquals(DATA, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testCopyFileWhenWrapped() throws Exception {
+        File file = temp.newFile("tile.png");
+        Files.write(file.toPath(), DATA);
+        MockHttpServletRequest request = sendFileRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // a filter may transform the response, the container must not bypass it
+        ResponseUtils.writeResource(
+                SENDFILE,
+                new HttpServletRequestWrapper(request),
+                new HttpServletResponseWrapper(response),
+                new FileResource(file));
+
+        assertNull(request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_FILENAME));
+        assertArrayEquals(DATA, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testCopyFileWhenSendFileDisabled() throws Exception {
+        File file = temp.newFile("tile.png");
+        Files.write(file.toPath(), DATA);
+        MockHttpServletRequest request = sendFileRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseUtils.writeResource(
+                new SendFileSupport(false, 0), request, response, new FileResource(file));
+
+        assertNull(request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_FILENAME));
+        assertArrayEquals(DATA, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testCopyFileWhenSendFileNotSupported() throws Exception {
+        File file = temp.newFile("tile.png");
+        Files.write(file.toPath(), DATA);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseUtils.writeResource(SENDFILE, request, response, new FileResource(file));
+
+        assertNull(request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_FILENAME));
+        assertArrayEquals(DATA, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testCopyInMemoryResource() throws Exception {
+        MockHttpServletRequest request = sendFileRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseUtils.writeResource(SENDFILE, request, response, new ByteArrayResource(DATA));
+
+        assertNull(request.getAttribute(SendFileSupport.TOMCAT_SENDFILE_FILENAME));
+        assertArrayEquals(DATA, response.getContentAsByteArray());
+    }
+
+    private static MockHttpServletRequest sendFileRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(SendFileSupport.TOMCAT_SENDFILE_SUPPORT, Boolean.TRUE);
+        return request;
+    }
+
+    @Test
+    public void testETagMatches() {
+        String etag = "\"0123456789abcdef\"";
+        assertTrue(ResponseUtils.etagMatches(etag, etag));
+        assertTrue(ResponseUtils.etagMatches("W/" + etag, etag));
+        assertTrue(ResponseUtils.etagMatches("\"a\", " + etag + ", \"b\"", etag));
+        assertTrue(ResponseUtils.etagMatches("*", etag));
+        assertFalse(ResponseUtils.etagMatches("\"0123456789abcdee\"", etag));
+        assertFalse(ResponseUtils.etagMatches("0123456789abcdef", etag));
+    }
+}
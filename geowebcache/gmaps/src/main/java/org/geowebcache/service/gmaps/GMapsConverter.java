@@ -139,7 +139,7 @@ public class GMapsConverter extends Service {
             tile.setTileLayer(tl);
             tl.getNoncachedTile(tile);
 
-            Service.writeTileResponse(tile, false);
+            writeTileResponse(tile, false, null, null, getSendFileSupport());
         }
     }
 
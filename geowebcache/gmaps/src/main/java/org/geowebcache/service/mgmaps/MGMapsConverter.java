@@ -128,7 +128,7 @@ public class MGMapsConverter extends Service {
             tile.setTileLayer(tl);
             tl.getNoncachedTile(tile);
 
-            Service.writeTileResponse(tile, false);
+            writeTileResponse(tile, false, null, null, getSendFileSupport());
         }
     }
 
@@ -224,7 +224,7 @@ public class KMLService extends Service {
                 }
 
                 String mimeStr = getMimeTypeOverride(tile);
-                writeTileResponse(tile, false, stats, mimeStr);
+                writeTileResponse(tile, false, stats, mimeStr, getSendFileSupport());
                 return;
             }
         } else if (tile.getHint() == HINT_SITEMAP_GLOBAL) {
@@ -361,7 +361,7 @@ public class KMLService extends Service {
         tile.setMimeType(XMLMime.kml);
         tile.setStatus(200);
         String mimeStr = getMimeTypeOverride(tile);
-        writeTileResponse(tile, true, stats, mimeStr);
+        writeTileResponse(tile, true, stats, mimeStr, getSendFileSupport());
     }
 
     /**
@@ -491,7 +491,7 @@ public class KMLService extends Service {
 
         String mimeStr = getMimeTypeOverride(tile);
 
-        writeTileResponse(tile, true, stats, mimeStr);
+        writeTileResponse(tile, true, stats, mimeStr, getSendFileSupport());
     }
 
     private String getMimeTypeOverride(ConveyorKMLTile tile) {
@@ -0,0 +1,124 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.rest.controller;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.json.JsonHierarchicalStreamDriver;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.servlet.http.HttpServletRequest;
+import org.geowebcache.config.ServerConfiguration;
+import org.geowebcache.io.GeoWebCacheXStream;
+import org.geowebcache.locks.LockProvider;
+import org.geowebcache.locks.LockStatistics;
+import org.geowebcache.locks.NIOLockProvider;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Lock acquisition statistics of the configured lock provider, when it collects them */
+@Component
+@RestController
+@RequestMapping(path = "${gwc.context.suffix:}/rest")
+public class LockStatisticsController {
+
+    @Autowired ServerConfiguration serverConfiguration;
+
+    // set by spring
+    public void setServerConfiguration(ServerConfiguration serverConfiguration) {
+        this.serverConfiguration = serverConfiguration;
+    }
+
+    @RequestMapping(value = "/lockStats", method = RequestMethod.GET)
+    public ResponseEntity<?> doGet(HttpServletRequest request) {
+        LockProvider lockProvider = serverConfiguration.getLockProvider();
+        if (!(lockProvider instanceof NIOLockProvider)) {
+            return new ResponseEntity<Object>(
+                    "Lock statistics are only collected by the NIO lock provider",
+                    HttpStatus.NOT_FOUND);
+        }
+        Statistics statistics = new Statistics(((NIOLockProvider) lockProvider).getStatistics());
+        if (request.getPathInfo().contains("json")) {
+            try {
+                XStream xs =
+                        getConfiguredXStream(
+                                new GeoWebCacheXStream(new JsonHierarchicalStreamDriver()));
+                JSONObject obj = new JSONObject(xs.toXML(statistics));
+                return new ResponseEntity<Object>(obj.toString(), HttpStatus.OK);
+            } catch (JSONException e) {
+                return new ResponseEntity<Object>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        XStream xs = getConfiguredXStream(new GeoWebCacheXStream());
+        String xmlText = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xs.toXML(statistics);
+        return new ResponseEntity<Object>(xmlText, HttpStatus.OK);
+    }
+
+    /**
+     * Adds to the input {@link XStream} the aliases for the lock statistics
+     *
+     * @param xs
+     * @return an updated XStream
+     */
+    public static XStream getConfiguredXStream(XStream xs) {
+        xs.setMode(XStream.NO_REFERENCES);
+        xs.alias("gwcLockStatistics", Statistics.class);
+        xs.alias("timeout", Timeout.class);
+        return xs;
+    }
+
+    /** A snapshot of the {@link LockStatistics}, as encoded in the responses */
+    static class Statistics {
+
+        final long acquisitions;
+
+        final long contentions;
+
+        final long totalWait;
+
+        final long[] waitHistogram;
+
+        final List<Timeout> timeouts = new ArrayList<>();
+
+        Statistics(LockStatistics statistics) {
+            this.acquisitions = statistics.getAcquisitions();
+            this.contentions = statistics.getContentions();
+            this.totalWait = statistics.getTotalWait();
+            this.waitHistogram = statistics.getWaitHistogram();
+            Map<String, Long> byLayer = new TreeMap<>(statistics.getTimeouts());
+            byLayer.forEach((layer, count) -> timeouts.add(new Timeout(layer, count)));
+        }
+    }
+
+    static class Timeout {
+
+        final String layer;
+
+        final long count;
+
+        Timeout(String layer, long count) {
+            this.layer = layer;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.rest.controller;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.json.JsonHierarchicalStreamDriver;
+import javax.servlet.http.HttpServletRequest;
+import org.geowebcache.io.GeoWebCacheXStream;
+import org.geowebcache.stats.LatencyStatistics;
+import org.geowebcache.stats.LayerStatistics;
+import org.geowebcache.stats.RuntimeStatistics;
+import org.geowebcache.stats.RuntimeStats;
+import org.geowebcache.stats.TransientCacheStatistics;
+import org.geowebcache.storage.StorageBroker;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Machine readable version of the runtime statistics shown on the GeoWebCache home page, including
+ * the per layer and service latency percentiles.
+ */
+@Component
+@RestController
+@RequestMapping(path = "${gwc.context.suffix:}/rest")
+public class RuntimeStatsController {
+
+    @Autowired(required = false)
+    RuntimeStats stats;
+
+    @Autowired(required = false)
+    StorageBroker broker;
+
+    // set by spring
+    public void setRuntimeStats(RuntimeStats stats) {
+        this.stats = stats;
+    }
+
+    // set by spring
+    public void setStorageBroker(StorageBroker broker) {
+        this.broker = broker;
+    }
+
+    @RequestMapping(value = "/runtimeStats", method = RequestMethod.GET)
+    public ResponseEntity<?> doGet(HttpServletRequest request) {
+        if (stats == null || !stats.isStarted()) {
+            return new ResponseEntity<Object>(
+                    "Runtime statistics are disabled", HttpStatus.NOT_FOUND);
+        }
+        RuntimeStatistics statistics = stats.getStatistics();
+        if (broker != null) {
+            statistics.setTransientCache(broker.getTransientCacheStatistics());
+        }
+        if (request.getPathInfo().contains("json")) {
+            try {
+                XStream xs =
+                        getConfiguredXStream(
+                                new GeoWebCacheXStream(new JsonHierarchicalStreamDriver()));
+                JSONObject obj = new JSONObject(xs.toXML(statistics));
+                return new ResponseEntity<Object>(obj.toString(), HttpStatus.OK);
+            } catch (JSONException e) {
+                return new ResponseEntity<Object>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        XStream xs = getConfiguredXStream(new GeoWebCacheXStream());
+        String xmlText = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xs.toXML(statistics);
+        return new ResponseEntity<Object>(xmlText, HttpStatus.OK);
+    }
+
+    /**
+     * Adds to the input {@link XStream} the aliases for the runtime statistics
+     *
+     * @param xs
+     * @return an updated XStream
+     */
+    public static XStream getConfiguredXStream(XStream xs) {
+        xs.setMode(XStream.NO_REFERENCES);
+        xs.alias("gwcRuntimeStatistics", RuntimeStatistics.class);
+        xs.alias("layer", LayerStatistics.class);
+        xs.alias("latency", LatencyStatistics.class);
+        xs.alias("transientCache", TransientCacheStatistics.class);
+        return xs;
+    }
+}
@@ -21,6 +21,7 @@ package org.geowebcache.rest.service;
 import java.text.NumberFormat;
 import java.util.*;
 import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.text.StringEscapeUtils;
 import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.filter.parameters.FloatParameterFilter;
 import org.geowebcache.filter.parameters.ParameterFilter;
@@ -33,6 +34,7 @@ import org.geowebcache.mime.ImageMime;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.rest.exception.RestException;
 import org.geowebcache.seed.GWCTask;
+import org.geowebcache.seed.SeedCheckpoint;
 import org.geowebcache.seed.SeedRequest;
 import org.geowebcache.seed.TileBreeder;
 import org.geowebcache.storage.TileRange;
@@ -131,6 +133,53 @@ public class FormService {
         return new ResponseEntity<Object>(doc.toString(), getHeaders(), HttpStatus.OK);
     }
 
+    public ResponseEntity<?> handleInterruptedJobPost(Map<String, String> form, TileLayer tl) {
+        String id = form.get("job_id");
+        String escapedId = StringEscapeUtils.escapeHtml4(id);
+
+        StringBuilder doc = new StringBuilder();
+
+        makeHeader(doc);
+
+        // only act on the jobs of the layer the form was posted to
+        if (!isInterruptedJob(id, tl)) {
+            doc.append("<ul><li>Sorry, seed job " + escapedId + " was not found.</li></ul>");
+        } else if (form.containsKey("resume_job")) {
+            try {
+                seeder.resume(id);
+                doc.append("<ul><li>Resumed seed job " + escapedId + ".</li></ul>");
+            } catch (GeoWebCacheException e) {
+                doc.append(
+                        "<ul><li>Could not resume seed job: "
+                                + StringEscapeUtils.escapeHtml4(e.getMessage())
+                                + "</li></ul>");
+            }
+        } else if (seeder.discardInterruptedJob(id)) {
+            doc.append("<ul><li>Discarded seed job " + escapedId + ".</li></ul>");
+        } else {
+            doc.append("<ul><li>Sorry, seed job " + escapedId + " was not found.</li></ul>");
+        }
+
+        if (tl != null) {
+            doc.append("<p><a href=\"./" + tl.getName() + "\">Go back</a></p>\n");
+        }
+
+        return new ResponseEntity<Object>(doc.toString(), getHeaders(), HttpStatus.OK);
+    }
+
+    /** @return whether the job is an interrupted seed job of the given layer */
+    private boolean isInterruptedJob(String jobId, TileLayer tl) {
+        if (jobId == null || tl == null) {
+            return false;
+        }
+        for (SeedCheckpoint job : seeder.getInterruptedJobs()) {
+            if (jobId.equals(job.getJobId())) {
+                return tl.getName().equals(job.getLayerName());
+            }
+        }
+        return false;
+    }
+
     public ResponseEntity<?> handleFormPost(String layer, Map<String, String> params)
             throws RestException, GeoWebCacheException {
         final TileLayer tl;
@@ -157,6 +206,8 @@ public class FormService {
             return handleKillThreadPost(params, tl);
         } else if (params.containsKey("kill_all")) {
             return handleKillAllThreadsPost(params, tl);
+        } else if (params.containsKey("resume_job") || params.containsKey("discard_job")) {
+            return handleInterruptedJobPost(params, tl);
         } else if (params.get("minX") != null) {
             if (tl == null) {
                 throw new RestException("No layer specified", HttpStatus.BAD_REQUEST);
@@ -679,6 +730,62 @@ public class FormService {
             doc.append("</table>");
         }
         doc.append("<p><a href=\"./" + layerName + "\">Refresh list</a></p>\n");
+
+        makeInterruptedJobList(doc, tl);
+    }
+
+    private void makeInterruptedJobList(StringBuilder doc, TileLayer tl) {
+        List<SeedCheckpoint> jobs = new ArrayList<SeedCheckpoint>();
+        for (SeedCheckpoint job : seeder.getInterruptedJobs()) {
+            if (tl.getName().equals(job.getLayerName())) {
+                jobs.add(job);
+            }
+        }
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+        nf.setGroupingUsed(true);
+        doc.append("<h4>Interrupted seed jobs that can be resumed:</h4>\n");
+        doc.append("<table border=\"0\">");
+        doc.append(
+                "<tr style=\"font-weight: bold;\"><td style=\"padding-right:20px;\">Type</td><td style=\"padding-right:20px;\">Grid set</td><td style=\"padding-right:20px;\">Format</td><td style=\"padding-right:20px;\">Zoom levels</td>"
+                        + "<td style=\"padding-right:20px;\">Tiles completed</td><td style=\"padding-right:20px;\">Last checkpoint</td><td>&nbsp;</td></tr>");
+        int row = 0;
+        for (SeedCheckpoint job : jobs) {
+            String bgColor = ++row % 2 == 0 ? "#FFFFFF" : "#DDDDDD";
+            doc.append("<tr style=\"background-color:" + bgColor + ";\">");
+            doc.append("<td>").append(job.getType()).append("</td>");
+            doc.append("<td>").append(job.getGridSetId()).append("</td>");
+            doc.append("<td>").append(job.getFormat()).append("</td>");
+            doc.append("<td>")
+                    .append(job.getZoomStart())
+                    .append(" - ")
+                    .append(job.getZoomStop())
+                    .append("</td>");
+            doc.append("<td>").append(nf.format(job.getTilesDone()));
+            if (job.getTilesTotal() >= 0) {
+                doc.append(" of ").append(nf.format(job.getTilesTotal()));
+            }
+            doc.append("</td>");
+            doc.append("<td>").append(new Date(job.getLastUpdate())).append("</td>");
+            doc.append("<td>").append(makeInterruptedJobForm(job.getJobId(), tl)).append("</td>");
+            doc.append("</tr>");
+        }
+        doc.append("</table>");
+    }
+
+    private String makeInterruptedJobForm(String jobId, TileLayer tl) {
+        return "<form form id=\"resume\" action=\"./"
+                + tl.getName()
+                + "\" method=\"post\">"
+                + "<input type=\"hidden\" name=\"job_id\"  value=\""
+                + StringEscapeUtils.escapeHtml4(jobId)
+                + "\" />"
+                + "<span><input style=\"padding: 0; margin-bottom: -12px; border: 1;\" type=\"submit\" name=\"resume_job\" value=\"Resume\">"
+                + "<input style=\"padding: 0; margin-bottom: -12px; border: 1;\" type=\"submit\" name=\"discard_job\" value=\"Discard\"></span>"
+                + "</form>";
     }
 
     private String toTimeString(long timeSeconds, final long tilesDone, final long tilesTotal) {
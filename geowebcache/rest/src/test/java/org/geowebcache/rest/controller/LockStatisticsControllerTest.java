@@ -0,0 +1,67 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.rest.controller;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.easymock.EasyMock;
+import org.geowebcache.config.ServerConfiguration;
+import org.geowebcache.locks.LockProvider;
+import org.geowebcache.locks.MemoryLockProvider;
+import org.geowebcache.locks.NIOLockProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+public class LockStatisticsControllerTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private MockMvc setUp(LockProvider lockProvider) {
+        ServerConfiguration config = EasyMock.createMock(ServerConfiguration.class);
+        EasyMock.expect(config.getLockProvider()).andReturn(lockProvider).anyTimes();
+        EasyMock.replay(config);
+        LockStatisticsController controller = new LockStatisticsController();
+        controller.setServerConfiguration(config);
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        NIOLockProvider lockProvider = new NIOLockProvider(temp.getRoot().getPath());
+        lockProvider.getLock("test").release();
+        MockMvc mockMvc = setUp(lockProvider);
+
+        mockMvc.perform(get("/rest/lockStats.xml"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("<gwcLockStatistics>")))
+                .andExpect(content().string(containsString("<acquisitions>1</acquisitions>")));
+        mockMvc.perform(get("/rest/lockStats.json"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"acquisitions\":1")));
+    }
+
+    @Test
+    public void testNotCollected() throws Exception {
+        setUp(new MemoryLockProvider())
+                .perform(get("/rest/lockStats.xml"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -18,11 +18,13 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.junit.Assert.assertThat;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import org.easymock.EasyMock;
 import org.geowebcache.MockWepAppContextRule;
 import org.geowebcache.layer.TileLayer;
+import org.geowebcache.seed.SeedCheckpoint;
 import org.geowebcache.seed.TileBreeder;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -62,4 +64,47 @@ public class FormServiceTest {
                 response,
                 hasProperty("body", Matchers.containsString("Requested to terminate task 2")));
     }
+
+    @Test
+    public void testInterruptedJobOfOtherLayer() throws Exception {
+        Map<String, String> form = new HashMap<>();
+        form.put("resume_job", "Resume");
+        form.put("job_id", "job1");
+        TileLayer tl = EasyMock.createMock("tl", TileLayer.class);
+        EasyMock.expect(tl.getName()).andStubReturn("testLayer");
+        SeedCheckpoint job = EasyMock.createMock("job", SeedCheckpoint.class);
+        EasyMock.expect(job.getJobId()).andStubReturn("job1");
+        EasyMock.expect(job.getLayerName()).andStubReturn("otherLayer");
+        // neither resumed nor discarded
+        EasyMock.expect(breeder.getInterruptedJobs()).andStubReturn(Collections.singletonList(job));
+        EasyMock.replay(tl, job, breeder);
+        ResponseEntity<?> response = service.handleInterruptedJobPost(form, tl);
+        form.remove("resume_job");
+        form.put("discard_job", "Discard");
+        ResponseEntity<?> discarded = service.handleInterruptedJobPost(form, tl);
+        EasyMock.verify(tl, job, breeder);
+
+        assertThat(response, hasProperty("body", Matchers.containsString("was not found")));
+        assertThat(discarded, hasProperty("body", Matchers.containsString("was not found")));
+    }
+
+    @Test
+    public void testResumeInterruptedJob() throws Exception {
+        Map<String, String> form = new HashMap<>();
+        form.put("resume_job", "Resume");
+        form.put("job_id", "job1");
+        TileLayer tl = EasyMock.createMock("tl", TileLayer.class);
+        EasyMock.expect(tl.getName()).andStubReturn("testLayer");
+        SeedCheckpoint job = EasyMock.createMock("job", SeedCheckpoint.class);
+        EasyMock.expect(job.getJobId()).andStubReturn("job1");
+        EasyMock.expect(job.getLayerName()).andStubReturn("testLayer");
+        EasyMock.expect(breeder.getInterruptedJobs()).andStubReturn(Collections.singletonList(job));
+        breeder.resume("job1");
+        EasyMock.expectLastCall();
+        EasyMock.replay(tl, job, breeder);
+        ResponseEntity<?> response = service.handleInterruptedJobPost(form, tl);
+        EasyMock.verify(tl, job, breeder);
+
+        assertThat(response, hasProperty("body", Matchers.containsString("Resumed seed job")));
+    }
 }
@@ -0,0 +1,108 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.rest.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.xpath;
+
+import java.util.Arrays;
+import org.easymock.EasyMock;
+import org.geowebcache.conveyor.Conveyor.CacheResult;
+import org.geowebcache.rest.controller.RuntimeStatsController;
+import org.geowebcache.stats.RuntimeStats;
+import org.geowebcache.stats.TransientCacheStatistics;
+import org.geowebcache.storage.StorageBroker;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+public class RuntimeStatsControllerTest {
+
+    private MockMvc mockMvc;
+
+    private RuntimeStats stats;
+
+    private StorageBroker broker;
+
+    @Before
+    public void setup() {
+        stats = new RuntimeStats(1, Arrays.asList(60), Arrays.asList("Minutes"));
+        broker = EasyMock.createMock(StorageBroker.class);
+        EasyMock.expect(broker.getTransientCacheStatistics())
+                .andStubReturn(new TransientCacheStatistics(12, 3, 1, 4, 4096));
+        EasyMock.replay(broker);
+        RuntimeStatsController controller = new RuntimeStatsController();
+        controller.setRuntimeStats(stats);
+        controller.setStorageBroker(broker);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() {
+        stats.destroy();
+    }
+
+    @Test
+    public void testNotStarted() throws Exception {
+        mockMvc.perform(get("/rest/runtimeStats.xml").contextPath(""))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testStatisticsXml() throws Exception {
+        stats.start();
+        stats.logLatency("topp:states", "wmts", CacheResult.HIT, 1_000_000, 0);
+        mockMvc.perform(get("/rest/runtimeStats.xml").contextPath(""))
+                .andExpect(status().is2xxSuccessful())
+                .andExpect(xpath("/gwcRuntimeStatistics/totalHits").string("0"))
+                .andExpect(xpath("/gwcRuntimeStatistics/layers/layer/layer").string("topp:states"))
+                .andExpect(xpath("/gwcRuntimeStatistics/layers/layer/hits").string("1"))
+                .andExpect(
+                        xpath("/gwcRuntimeStatistics/layers/layer/hitLatency/p50").string("1000"))
+                .andExpect(xpath("/gwcRuntimeStatistics/transientCache/hits").string("12"))
+                .andExpect(xpath("/gwcRuntimeStatistics/transientCache/evictions").string("1"));
+    }
+
+    @Test
+    public void testStatisticsJson() throws Exception {
+        stats.start();
+        stats.logLatency("topp:states", "wms", CacheResult.MISS, 2_000_000, 1_000_000);
+        String json =
+                mockMvc.perform(get("/rest/runtimeStats.json").contextPath(""))
+                        .andExpect(status().is2xxSuccessful())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        JSONObject layer =
+                new JSONObject(json)
+                        .getJSONObject("gwcRuntimeStatistics")
+                        .getJSONArray("layers")
+                        .getJSONObject(0);
+        assertEquals("wms", layer.getString("service"));
+        assertEquals(1, layer.getLong("misses"));
+        assertEquals(1000, layer.getJSONObject("backendLatency").getLong("max"));
+        JSONObject transientCache =
+                new JSONObject(json)
+                        .getJSONObject("gwcRuntimeStatistics")
+                        .getJSONObject("transientCache");
+        assertEquals(3, transientCache.getLong("misses"));
+        assertEquals(4096, transientCache.getLong("storage"));
+    }
+}
@@ -19,10 +19,10 @@ import static java.util.Objects.isNull;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.BucketPolicy;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
-import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
@@ -32,13 +32,10 @@ import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.google.common.base.Function;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -47,13 +44,19 @@ import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.GeoWebCacheExtensions;
 import org.geowebcache.filter.parameters.ParametersUtils;
+import org.geowebcache.grid.GridSubset;
 import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.FileResource;
 import org.geowebcache.io.Resource;
+import org.geowebcache.layer.TileLayer;
 import org.geowebcache.layer.TileLayerDispatcher;
 import org.geowebcache.locks.LockProvider;
 import org.geowebcache.mime.MimeException;
@@ -62,6 +65,8 @@ import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.BlobStoreListener;
 import org.geowebcache.storage.BlobStoreListenerList;
 import org.geowebcache.storage.CompositeBlobStore;
+import org.geowebcache.storage.ContentHash;
+import org.geowebcache.storage.ParametersMetadataCache;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
@@ -71,12 +76,31 @@ public class S3BlobStore implements BlobStore {
 
     static Log log = LogFactory.getLog(S3BlobStore.class);
 
+    /** User metadata holding the tile content hash, see {@link ContentHash} */
+    static final String CONTENT_HASH_METADATA = "gwc-content-hash";
+
+    /**
+     * Size in bytes of the tiles read in a single request and held in memory, the contents of the
+     * larger ones being streamed from S3 when read, see {@link S3ObjectResource}
+     */
+    static final String STREAMING_THRESHOLD_PROPERTY = "GEOWEBCACHE_S3_STREAMING_THRESHOLD";
+
+    static final int DEFAULT_STREAMING_THRESHOLD = 256 * 1024;
+
+    /**
+     * Share of the columns of a zoom level a tile range has to cover for {@link #delete(TileRange)}
+     * to list the whole zoom level at once rather than each column of the range
+     */
+    static final double ZOOM_LISTING_RATIO = 0.5;
+
     private final BlobStoreListenerList listeners = new BlobStoreListenerList();
 
     private AmazonS3Client conn;
 
     private final TMSKeyBuilder keyBuilder;
 
+    private final TileLayerDispatcher layers;
+
     private String bucketName;
 
     private volatile boolean shutDown;
@@ -85,6 +109,13 @@ public class S3BlobStore implements BlobStore {
 
     private CannedAccessControlList acl;
 
+    private final ParametersMetadataCache parametersMetadata =
+            new ParametersMetadataCache(this::listParametersIds);
+
+    private final int streamingThreshold = getStreamingThreshold();
+
+    private ContentHash contentHashing = ContentHash.fromProperties();
+
     public S3BlobStore(
             S3BlobStoreInfo config, TileLayerDispatcher layers, LockProvider lockProvider)
             throws StorageException {
@@ -94,6 +125,7 @@ public class S3BlobStore implements BlobStore {
         this.bucketName = config.getBucket();
         String prefix = config.getPrefix() == null ? "" : config.getPrefix();
         this.keyBuilder = new TMSKeyBuilder(prefix, layers);
+        this.layers = layers;
 
         conn = config.buildClient();
         acl = config.getAccessControlList();
@@ -109,7 +141,16 @@ public class S3BlobStore implements BlobStore {
             throw new StorageException("Unable to connect to AWS S3", ce);
         }
 
-        this.s3Ops = new S3Ops(conn, bucketName, keyBuilder, lockProvider);
+        final Integer maxConnections = config.getMaxConnections();
+        this.s3Ops =
+                new S3Ops(
+                        conn,
+                        bucketName,
+                        keyBuilder,
+                        lockProvider,
+                        maxConnections == null || maxConnections <= 0
+                                ? ClientConfiguration.DEFAULT_MAX_CONNECTIONS
+                                : maxConnections);
 
         boolean empty = !s3Ops.prefixExists(prefix);
         boolean existing = Objects.nonNull(s3Ops.getObjectMetadata(keyBuilder.storeMetadata()));
@@ -142,6 +183,14 @@ public class S3BlobStore implements BlobStore {
         return listeners.removeListener(listener);
     }
 
+    /**
+     * Overrides the content hashing configured by the {@link ContentHash#GEOWEBCACHE_CONTENT_ETAGS}
+     * property
+     */
+    public void setContentHashing(ContentHash contentHashing) {
+        this.contentHashing = contentHashing;
+    }
+
     @Override
     public void put(TileObject obj) throws StorageException {
         final Resource blob = obj.getBlob();
@@ -172,9 +221,17 @@ public class S3BlobStore implements BlobStore {
             existed = oldObj != null;
         }
 
-        final ByteArrayInputStream input = toByteArray(blob);
+        final String contentHash;
+        try {
+            contentHash = contentHashing.record(obj, blob);
+        } catch (IOException e) {
+            throw new StorageException("Error reading blob contents", e);
+        }
+        if (contentHash != null) {
+            objectMetadata.addUserMetadata(CONTENT_HASH_METADATA, contentHash);
+        }
         PutObjectRequest putObjectRequest =
-                new PutObjectRequest(bucketName, key, input, objectMetadata).withCannedAcl(acl);
+                putObjectRequest(key, blob, objectMetadata).withCannedAcl(acl);
 
         log.trace(log.isTraceEnabled() ? ("Storing " + key) : "");
         s3Ops.putObject(putObjectRequest);
@@ -194,42 +251,103 @@ public class S3BlobStore implements BlobStore {
         }
     }
 
-    private ByteArrayInputStream toByteArray(final Resource blob) throws StorageException {
-        final byte[] bytes;
-        if (blob instanceof ByteArrayResource) {
-            bytes = ((ByteArrayResource) blob).getContents();
-        } else {
-            ByteArrayOutputStream out = new ByteArrayOutputStream((int) blob.getSize());
-            WritableByteChannel channel = Channels.newChannel(out);
-            try {
-                blob.transferTo(channel);
-            } catch (IOException e) {
-                throw new StorageException("Error copying blob contents", e);
-            }
-            bytes = out.toByteArray();
+    /**
+     * Builds the upload request streaming the tile contents: tiles held in memory are read in
+     * place, files are handed over to the client, and the other resources are buffered by the
+     * client only as far as needed to retry the upload.
+     */
+    private PutObjectRequest putObjectRequest(String key, Resource blob, ObjectMetadata metadata)
+            throws StorageException {
+        if (blob instanceof FileResource) {
+            return new PutObjectRequest(bucketName, key, ((FileResource) blob).getFile())
+                    .withMetadata(metadata);
+        }
+        final InputStream input;
+        try {
+            input = blob.getInputStream();
+        } catch (IOException e) {
+            throw new StorageException("Error reading blob contents", e);
         }
-        ByteArrayInputStream input = new ByteArrayInputStream(bytes);
-        return input;
+        PutObjectRequest request = new PutObjectRequest(bucketName, key, input, metadata);
+        if (!input.markSupported()) {
+            request.getRequestClientOptions().setReadLimit((int) blob.getSize() + 1);
+        }
+        return request;
     }
 
     @Override
     public boolean get(TileObject obj) throws StorageException {
         final String key = keyBuilder.forTile(obj);
-        final S3Object object = s3Ops.getObject(key);
+        // the tiles up to the threshold are fetched in a single request, the larger ones streamed
+        final S3Object object = s3Ops.getObject(key, 0, streamingThreshold - 1, null);
         if (object == null) {
             return false;
         }
+        final ObjectMetadata metadata = object.getObjectMetadata();
+        final long size = metadata.getInstanceLength();
+        final long lastModified = metadata.getLastModified().getTime();
         try (S3ObjectInputStream in = object.getObjectContent()) {
-            byte[] bytes = ByteStreams.toByteArray(in);
-            obj.setBlobSize(bytes.length);
-            obj.setBlob(new ByteArrayResource(bytes));
-            obj.setCreated(object.getObjectMetadata().getLastModified().getTime());
+            // the length is known, read straight into an array of the right size
+            byte[] bytes = new byte[(int) metadata.getContentLength()];
+            ByteStreams.readFully(in, bytes);
+            if (bytes.length == size) {
+                obj.setBlob(new ByteArrayResource(bytes));
+            } else {
+                obj.setBlob(
+                        new S3ObjectResource(
+                                s3Ops, key, metadata.getETag(), bytes, size, lastModified));
+            }
+            obj.setBlobSize((int) size);
+            obj.setCreated(lastModified);
+            obj.setContentHash(metadata.getUserMetaDataOf(CONTENT_HASH_METADATA));
         } catch (IOException e) {
             throw new StorageException("Error getting " + key, e);
         }
         return true;
     }
 
+    private static int getStreamingThreshold() {
+        String value = GeoWebCacheExtensions.getProperty(STREAMING_THRESHOLD_PROPERTY);
+        if (value != null) {
+            try {
+                int threshold = Integer.parseInt(value.trim());
+                if (threshold > 0) {
+                    return threshold;
+                }
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+            log.warn(
+                    "Invalid value for "
+                            + STREAMING_THRESHOLD_PROPERTY
+                            + ": "
+                            + value
+                            + ", using "
+                            + DEFAULT_STREAMING_THRESHOLD);
+        }
+        return DEFAULT_STREAMING_THRESHOLD;
+    }
+
+    /**
+     * Checks the tiles with concurrent metadata (HEAD) requests. A prefix listing would return the
+     * whole tile column, the row is the last part of the key, so it would not be any cheaper for a
+     * meta tile.
+     */
+    @Override
+    public long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        List<String> keys = new ArrayList<>(tiles.size());
+        for (TileObject tile : tiles) {
+            keys.add(keyBuilder.forTile(tile));
+        }
+        long[] result = s3Ops.getLastModified(keys);
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] < 0) {
+                result[i] = NOT_STORED;
+            }
+        }
+        return result;
+    }
+
     private class TileToKey implements Function<long[], KeyVersion> {
 
         private final String coordsPrefix;
@@ -252,6 +370,49 @@ public class S3BlobStore implements BlobStore {
         }
     }
 
+    /** A tile found listing a zoom level, see {@link #delete(TileRange)} */
+    private static class StoredTile {
+
+        final String key;
+
+        final long x;
+
+        final long y;
+
+        final long size;
+
+        StoredTile(String key, long x, long y, long size) {
+            this.key = key;
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        /**
+         * @param zoomPrefix the key prefix of the zoom level, the keys being {@code
+         *     <zoomPrefix><x>/<y><extension>}
+         * @return the tile, or {@code null} if the object is not a tile of the expected format
+         */
+        @Nullable
+        static StoredTile parse(S3ObjectSummary object, String zoomPrefix, String extension) {
+            String key = object.getKey();
+            if (!key.startsWith(zoomPrefix) || !key.endsWith(extension)) {
+                return null;
+            }
+            String xy = key.substring(zoomPrefix.length(), key.length() - extension.length());
+            int slash = xy.indexOf('/');
+            try {
+                return new StoredTile(
+                        key,
+                        Long.parseLong(xy.substring(0, slash)),
+                        Long.parseLong(xy.substring(slash + 1)),
+                        object.getSize());
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+    }
+
     @Override
     public boolean delete(final TileRange tileRange) throws StorageException {
 
@@ -275,41 +436,89 @@ public class S3BlobStore implements BlobStore {
                 };
 
         if (listeners.isEmpty()) {
-            // if there are no listeners, don't bother requesting every tile
-            // metadata to notify the listeners
-            Iterator<List<long[]>> partition = Iterators.partition(tileLocations, 1000);
+            // if there are no listeners, don't bother listing the stored tiles to notify the
+            // listeners, just delete every key in the range
             final TileToKey tileToKey = new TileToKey(coordsPrefix, tileRange.getMimeType());
-
-            while (partition.hasNext() && !shutDown) {
-                List<long[]> locations = partition.next();
-                List<KeyVersion> keys = Lists.transform(locations, tileToKey);
-
-                DeleteObjectsRequest req = new DeleteObjectsRequest(bucketName);
-                req.setQuiet(true);
-                req.setKeys(keys);
-                conn.deleteObjects(req);
-            }
+            s3Ops.deleteObjects(
+                    Iterators.transform(tileLocations, tileToKey),
+                    KeyVersion::getKey,
+                    key -> {},
+                    () -> shutDown);
 
         } else {
-            long[] xyz;
-            String layerName = tileRange.getLayerName();
-            String gridSetId = tileRange.getGridSetId();
-            String format = tileRange.getMimeType().getFormat();
-            Map<String, String> parameters = tileRange.getParameters();
-
-            while (tileLocations.hasNext()) {
-                xyz = tileLocations.next();
-                TileObject tile =
-                        TileObject.createQueryTileObject(
-                                layerName, xyz, gridSetId, format, parameters);
-                tile.setParametersId(tileRange.getParametersId());
-                delete(tile);
+            // list the tiles actually stored rather than looking up every tile in the range, the
+            // listing gives the sizes to notify the listeners with. A range covering most of a zoom
+            // level lists it at once, a narrow one only lists its own columns
+            final String layerName = tileRange.getLayerName();
+            final String gridSetId = tileRange.getGridSetId();
+            final String format = tileRange.getMimeType().getFormat();
+            final String parametersId = tileRange.getParametersId();
+            final String extension = "." + tileRange.getMimeType().getInternalName();
+
+            for (int z = tileRange.getZoomStart(); z <= tileRange.getZoomStop() && !shutDown; z++) {
+                final int zoom = z;
+                final String zoomPrefix = coordsPrefix + z + "/";
+                final long[] bounds = tileRange.rangeBounds(z);
+                Stream<S3ObjectSummary> objects;
+                if (listsZoomLevel(tileRange, z, bounds)) {
+                    objects = s3Ops.objectStream(zoomPrefix);
+                } else {
+                    objects =
+                            LongStream.rangeClosed(bounds[0], bounds[2])
+                                    .mapToObj(x -> zoomPrefix + x + "/")
+                                    .flatMap(s3Ops::objectStream);
+                }
+                Iterator<StoredTile> tiles =
+                        objects.map(o -> StoredTile.parse(o, zoomPrefix, extension))
+                                .filter(t -> t != null && tileRange.contains(t.x, t.y, zoom))
+                                .iterator();
+                s3Ops.deleteObjects(
+                        tiles,
+                        t -> t.key,
+                        t ->
+                                listeners.sendTileDeleted(
+                                        layerName,
+                                        gridSetId,
+                                        format,
+                                        parametersId,
+                                        t.x,
+                                        t.y,
+                                        zoom,
+                                        t.size),
+                        () -> shutDown);
             }
         }
 
         return true;
     }
 
+    /**
+     * @return whether the range covers enough of the zoom level for a single listing of the level
+     *     to be cheaper than a listing per column. If the layer coverage is unknown, the columns
+     *     are listed, bounding the requests to the range size
+     */
+    private boolean listsZoomLevel(TileRange tileRange, int z, long[] bounds) {
+        long columns = bounds[2] - bounds[0] + 1;
+        if (columns <= 1) {
+            return false;
+        }
+        long[] coverage = null;
+        try {
+            TileLayer layer = layers.getTileLayer(tileRange.getLayerName());
+            GridSubset gridSubset = layer.getGridSubset(tileRange.getGridSetId());
+            if (gridSubset != null) {
+                coverage = gridSubset.getCoverage(z);
+            }
+        } catch (GeoWebCacheException e) {
+            log.debug("Unable to get the coverage of " + tileRange.getLayerName(), e);
+        }
+        if (coverage == null) {
+            return false;
+        }
+        long levelColumns = coverage[2] - coverage[0] + 1;
+        return columns >= levelColumns * ZOOM_LISTING_RATIO;
+    }
+
     @Override
     public boolean delete(String layerName) throws StorageException {
         checkNotNull(layerName, "layerName");
@@ -318,10 +527,14 @@ public class S3BlobStore implements BlobStore {
         final String layerPrefix = keyBuilder.forLayer(layerName);
 
         s3Ops.deleteObject(metadataKey);
+        parametersMetadata.invalidate(layerName);
 
         boolean layerExists;
         try {
-            layerExists = s3Ops.scheduleAsyncDelete(layerPrefix);
+            // the parameters metadata objects may be listed again while being deleted
+            layerExists =
+                    s3Ops.scheduleAsyncDelete(
+                            layerPrefix, () -> parametersMetadata.invalidate(layerName));
         } catch (GeoWebCacheException e) {
             throw new RuntimeException(e);
         }
@@ -376,6 +589,7 @@ public class S3BlobStore implements BlobStore {
     @Override
     public boolean rename(String oldLayerName, String newLayerName) throws StorageException {
         log.debug("No need to rename layers, S3BlobStore uses layer id as key root");
+        parametersMetadata.invalidate(oldLayerName);
         if (s3Ops.prefixExists(oldLayerName)) {
             listeners.sendLayerRenamed(oldLayerName, newLayerName);
         }
@@ -415,7 +629,7 @@ public class S3BlobStore implements BlobStore {
     private void putParametersMetadata(
             String layerName, String parametersId, Map<String, String> parameters) {
         assert (isNull(parametersId) == isNull(parameters));
-        if (isNull(parametersId)) {
+        if (isNull(parametersId) || parametersMetadata.isStored(layerName, parametersId)) {
             return;
         }
         Properties properties = new Properties();
@@ -426,6 +640,18 @@ public class S3BlobStore implements BlobStore {
         } catch (StorageException e) {
             throw new RuntimeException(e);
         }
+        parametersMetadata.stored(layerName, parametersId);
+    }
+
+    /** @return the ids of the parameters metadata objects stored for the layer */
+    private Set<String> listParametersIds(String layerName) {
+        final String prefix = keyBuilder.parametersMetadataPrefix(layerName);
+        final String suffix = TMSKeyBuilder.PARAMETERS_METADATA_OBJECT_SUFFIX;
+        return s3Ops.objectStream(prefix)
+                .map(S3ObjectSummary::getKey)
+                .filter(key -> key.endsWith(suffix))
+                .map(key -> key.substring(prefix.length(), key.length() - suffix.length()))
+                .collect(Collectors.toSet());
     }
 
     @Override
@@ -441,6 +667,7 @@ public class S3BlobStore implements BlobStore {
         checkNotNull(layerName, "layerName");
         checkNotNull(parametersId, "parametersId");
 
+        parametersMetadata.invalidate(layerName, parametersId);
         boolean prefixExists =
                 keyBuilder
                         .forParameters(layerName, parametersId)
@@ -0,0 +1,116 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.s3;
+
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import org.geowebcache.io.Resource;
+
+/**
+ * Read-only {@link Resource} over a tile larger than the {@link S3BlobStore} streaming threshold.
+ * The first bytes are fetched along with the object metadata, the rest is fetched with a range
+ * request every time the contents are read, and streamed to the target rather than copied on heap.
+ *
+ * <p>The range request is conditional on the ETag the object had when first fetched, so that a tile
+ * replaced in the meantime cannot be read half old and half new.
+ */
+final class S3ObjectResource implements Resource {
+
+    private final S3Ops s3Ops;
+
+    private final String key;
+
+    private final String eTag;
+
+    private final byte[] head;
+
+    private final long size;
+
+    private final long lastModified;
+
+    /**
+     * @param head the first bytes of the object, fetched along with its metadata
+     * @param size the length of the whole object
+     */
+    S3ObjectResource(
+            S3Ops s3Ops, String key, String eTag, byte[] head, long size, long lastModified) {
+        this.s3Ops = s3Ops;
+        this.key = key;
+        this.eTag = eTag;
+        this.head = head;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(head);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        long written = head.length;
+        try (InputStream tail = openTail()) {
+            written += ByteStreams.copy(Channels.newChannel(tail), channel);
+        }
+        if (written != size) {
+            throw new EOFException("Read " + written + " bytes out of " + size + " from " + key);
+        }
+        return written;
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel channel) throws IOException {
+        throw new UnsupportedOperationException("S3 tiles are read only");
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new SequenceInputStream(new ByteArrayInputStream(head), openTail());
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new UnsupportedOperationException("S3 tiles are read only");
+    }
+
+    private InputStream openTail() throws IOException {
+        S3Object object = s3Ops.getObject(key, head.length, size - 1, eTag);
+        if (object == null) {
+            throw new FileNotFoundException(key + " was deleted or replaced while being read");
+        }
+        return object.getObjectContent();
+    }
+}
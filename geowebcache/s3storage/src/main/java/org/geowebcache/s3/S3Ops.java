@@ -14,17 +14,22 @@
  */
 package org.geowebcache.s3;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.iterable.S3Objects;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.collect.Iterators;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -32,17 +37,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -57,8 +71,19 @@ import org.geowebcache.storage.StorageException;
 
 class S3Ops {
 
+    /** Max number of keys per delete request, as accepted by S3 */
+    static final int DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * Number of delete requests {@link #deleteObjects} keeps in flight, well below the default size
+     * of the client connection pool
+     */
+    static final int DELETE_CONCURRENCY = 8;
+
     private final AmazonS3Client conn;
 
+    private final int maxConnections;
+
     private final String bucketName;
 
     private final TMSKeyBuilder keyBuilder;
@@ -67,16 +92,24 @@ class S3Ops {
 
     private ExecutorService deleteExecutorService;
 
+    private ExecutorService lookupExecutorService;
+
     private Map<String, Long> pendingDeletesKeyTime = new ConcurrentHashMap<>();
 
     public S3Ops(
-            AmazonS3Client conn, String bucketName, TMSKeyBuilder keyBuilder, LockProvider locks)
+            AmazonS3Client conn,
+            String bucketName,
+            TMSKeyBuilder keyBuilder,
+            LockProvider locks,
+            int maxConnections)
             throws StorageException {
         this.conn = conn;
+        this.maxConnections = maxConnections;
         this.bucketName = bucketName;
         this.keyBuilder = keyBuilder;
         this.locks = locks == null ? new NoOpLockProvider() : locks;
         this.deleteExecutorService = createDeleteExecutorService();
+        this.lookupExecutorService = createLookupExecutorService();
         issuePendingBulkDeletes();
     }
 
@@ -91,8 +124,22 @@ class S3Ops {
         return Executors.newCachedThreadPool(tf);
     }
 
+    /**
+     * Lookups use at most half the client connections, so that concurrent tile requests do not
+     * starve waiting for a connection
+     */
+    private ExecutorService createLookupExecutorService() {
+        ThreadFactory tf =
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("GWC S3BlobStore lookup thread-%d. Bucket: " + bucketName)
+                        .build();
+        return Executors.newFixedThreadPool(Math.max(1, maxConnections / 2), tf);
+    }
+
     public void shutDown() {
         deleteExecutorService.shutdownNow();
+        lookupExecutorService.shutdownNow();
     }
 
     private void issuePendingBulkDeletes() throws StorageException {
@@ -113,7 +160,7 @@ class S3Ops {
                         String.format(
                                 "Restarting pending bulk delete on '%s/%s':%d",
                                 bucketName, prefix, timestamp));
-                asyncDelete(prefix, timestamp);
+                asyncDelete(prefix, timestamp, null);
             }
         } finally {
             try {
@@ -157,6 +204,15 @@ class S3Ops {
     }
 
     public boolean scheduleAsyncDelete(final String prefix) throws GeoWebCacheException {
+        return scheduleAsyncDelete(prefix, null);
+    }
+
+    /**
+     * @param onCompletion run once the objects have been deleted, or the delete failed or was
+     *     aborted, not run if there is nothing to delete
+     */
+    public boolean scheduleAsyncDelete(final String prefix, @Nullable Runnable onCompletion)
+            throws GeoWebCacheException {
         final long timestamp = currentTimeSeconds();
         String msg =
                 String.format(
@@ -166,7 +222,7 @@ class S3Ops {
 
         Lock lock = locks.getLock(prefix);
         try {
-            boolean taskRuns = asyncDelete(prefix, timestamp);
+            boolean taskRuns = asyncDelete(prefix, timestamp, onCompletion);
             if (taskRuns) {
                 final String pendingDeletesKey = keyBuilder.pendingDeletes();
                 Properties deletes = getProperties(pendingDeletesKey);
@@ -188,7 +244,8 @@ class S3Ops {
         return timestamp;
     }
 
-    private synchronized boolean asyncDelete(final String prefix, final long timestamp) {
+    private synchronized boolean asyncDelete(
+            final String prefix, final long timestamp, @Nullable Runnable onCompletion) {
         if (!prefixExists(prefix)) {
             return false;
         }
@@ -198,7 +255,7 @@ class S3Ops {
             return false;
         }
 
-        BulkDelete task = new BulkDelete(conn, bucketName, prefix, timestamp);
+        BulkDelete task = new BulkDelete(conn, bucketName, prefix, timestamp, onCompletion);
         deleteExecutorService.submit(task);
         pendingDeletesKeyTime.put(prefix, timestamp);
 
@@ -219,6 +276,39 @@ class S3Ops {
         return obj;
     }
 
+    /**
+     * Looks up the last modified time of several objects issuing the metadata requests
+     * concurrently, the number of requests in flight being bounded by the lookup thread pool.
+     *
+     * @return for each key, in the same order, the last modified time of the object, or {@code -1}
+     *     if it does not exist
+     */
+    public long[] getLastModified(List<String> keys) throws StorageException {
+        List<Future<ObjectMetadata>> lookups = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            lookups.add(lookupExecutorService.submit(() -> getObjectMetadata(key)));
+        }
+        long[] result = new long[keys.size()];
+        try {
+            for (int i = 0; i < result.length; i++) {
+                ObjectMetadata metadata = lookups.get(i).get();
+                result[i] = metadata == null ? -1 : metadata.getLastModified().getTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while checking the existence of tiles", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof StorageException
+                    ? (StorageException) cause
+                    : new StorageException(
+                            "Error checking the existence of tiles: " + cause.getMessage(), cause);
+        } finally {
+            lookups.forEach(lookup -> lookup.cancel(true));
+        }
+        return result;
+    }
+
     public void putObject(PutObjectRequest putObjectRequest) throws StorageException {
         try {
             conn.putObject(putObjectRequest);
@@ -229,15 +319,48 @@ class S3Ops {
 
     @Nullable
     public S3Object getObject(String key) throws StorageException {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    /**
+     * Fetches a range of the object contents, the object metadata telling its whole length
+     *
+     * @param first the first byte to fetch
+     * @param last the last byte to fetch, inclusive, may be past the end of the object
+     * @param eTag if not {@code null}, fetches the range only if the object still has this ETag
+     * @return the object, or {@code null} if it does not exist or its ETag changed
+     */
+    @Nullable
+    public S3Object getObject(String key, long first, long last, @Nullable String eTag)
+            throws StorageException {
+        GetObjectRequest request = new GetObjectRequest(bucketName, key).withRange(first, last);
+        if (eTag != null) {
+            request.withMatchingETagConstraint(eTag);
+        }
+        return getObject(request);
+    }
+
+    @Nullable
+    private S3Object getObject(GetObjectRequest request) throws StorageException {
+        final String key = request.getKey();
         final S3Object object;
         try {
-            object = conn.getObject(bucketName, key);
+            object = conn.getObject(request);
         } catch (AmazonS3Exception e) {
             if (404 == e.getStatusCode()) { // 404 == not found
                 return null;
             }
+            long[] range = request.getRange();
+            if (416 == e.getStatusCode() && range != null && range[0] == 0) {
+                // range not satisfiable from the first byte, the object is empty
+                return getObject(key);
+            }
             throw new StorageException("Error fetching " + key + ": " + e.getMessage(), e);
         }
+        if (object == null) {
+            // the ETag constraint was not met
+            return null;
+        }
         if (isPendingDelete(object)) {
             closeObject(object);
             return null;
@@ -254,6 +377,87 @@ class S3Ops {
         }
     }
 
+    /**
+     * Deletes objects in batches of {@link #DELETE_BATCH_SIZE} keys, sending up to {@link
+     * #DELETE_CONCURRENCY} batches at a time.
+     *
+     * @param objects the objects to delete, consumed as the batches are sent
+     * @param toKey maps an object to its key
+     * @param deleted called on the calling thread with every object actually deleted, the objects
+     *     S3 failed to delete are logged and skipped
+     * @param cancelled checked before sending every batch, to stop early
+     * @return the number of objects deleted
+     */
+    public <T> long deleteObjects(
+            Iterator<T> objects,
+            Function<T, String> toKey,
+            Consumer<T> deleted,
+            BooleanSupplier cancelled)
+            throws StorageException {
+        Iterator<List<T>> batches = Iterators.partition(objects, DELETE_BATCH_SIZE);
+        Deque<Future<List<T>>> inFlight = new ArrayDeque<>(DELETE_CONCURRENCY);
+        long count = 0;
+        try {
+            while (batches.hasNext() && !cancelled.getAsBoolean()) {
+                List<T> batch = batches.next();
+                inFlight.add(deleteExecutorService.submit(() -> deleteBatch(batch, toKey)));
+                if (inFlight.size() == DELETE_CONCURRENCY) {
+                    count += notifyDeleted(inFlight.remove().get(), deleted);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                count += notifyDeleted(inFlight.remove().get(), deleted);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while deleting objects", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof StorageException
+                    ? (StorageException) cause
+                    : new StorageException("Error deleting objects: " + cause.getMessage(), cause);
+        } finally {
+            inFlight.forEach(batch -> batch.cancel(true));
+        }
+        return count;
+    }
+
+    private <T> List<T> deleteBatch(List<T> batch, Function<T, String> toKey)
+            throws StorageException {
+        List<KeyVersion> keys = new ArrayList<>(batch.size());
+        for (T object : batch) {
+            keys.add(new KeyVersion(toKey.apply(object)));
+        }
+        DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName);
+        request.setQuiet(true);
+        request.setKeys(keys);
+        try {
+            conn.deleteObjects(request);
+            return batch;
+        } catch (MultiObjectDeleteException e) {
+            Set<String> failed =
+                    e.getErrors().stream().map(DeleteError::getKey).collect(Collectors.toSet());
+            S3BlobStore.log.warn(
+                    String.format(
+                            "Unable to delete %d out of %d objects from '%s', first error: %s",
+                            failed.size(),
+                            keys.size(),
+                            bucketName,
+                            e.getErrors().isEmpty() ? null : e.getErrors().get(0).getMessage()));
+            return batch.stream()
+                    .filter(object -> !failed.contains(toKey.apply(object)))
+                    .collect(Collectors.toList());
+        } catch (AmazonClientException e) {
+            throw new StorageException(
+                    "Error deleting objects from " + bucketName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static <T> int notifyDeleted(List<T> batch, Consumer<T> deleted) {
+        batch.forEach(deleted);
+        return batch.size();
+    }
+
     public boolean deleteObject(final String key) {
         try {
             conn.deleteObject(bucketName, key);
@@ -357,19 +561,33 @@ class S3Ops {
 
         private final String bucketName;
 
+        @Nullable private final Runnable onCompletion;
+
         public BulkDelete(
                 final AmazonS3 conn,
                 final String bucketName,
                 final String prefix,
-                final long timestamp) {
+                final long timestamp,
+                @Nullable final Runnable onCompletion) {
             this.conn = conn;
             this.bucketName = bucketName;
             this.prefix = prefix;
             this.timestamp = timestamp;
+            this.onCompletion = onCompletion;
         }
 
         @Override
         public Long call() throws Exception {
+            try {
+                return delete();
+            } finally {
+                if (onCompletion != null) {
+                    onCompletion.run();
+                }
+            }
+        }
+
+        private Long delete() throws Exception {
             long count = 0L;
             try {
                 checkInterrupted();
@@ -14,6 +14,7 @@
  */
 package org.geowebcache.s3;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -30,13 +31,18 @@ import static org.mockito.Mockito.when;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geowebcache.config.DefaultGridsets;
@@ -54,6 +60,7 @@ import org.geowebcache.locks.NoOpLockProvider;
 import org.geowebcache.mime.MimeException;
 import org.geowebcache.mime.MimeType;
 import org.geowebcache.storage.BlobStoreListener;
+import org.geowebcache.storage.ContentHash;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileObject;
 import org.geowebcache.storage.TileRange;
@@ -93,6 +100,16 @@ public abstract class AbstractS3BlobStoreIntegrationTest {
         when(layers.getTileLayer(eq(DEFAULT_LAYER))).thenReturn(layer);
         when(layer.getName()).thenReturn(DEFAULT_LAYER);
         when(layer.getId()).thenReturn(DEFAULT_LAYER);
+        // covers the levels as seeded, 2^z columns and rows
+        GridSubset gridSubset = mock(GridSubset.class);
+        when(gridSubset.getCoverage(anyInt()))
+                .thenAnswer(
+                        invocation -> {
+                            int z = (Integer) invocation.getArguments()[0];
+                            long max = (1L << z) - 1;
+                            return new long[] {0, 0, max, max, z};
+                        });
+        when(layer.getGridSubset(eq(DEFAULT_GRIDSET))).thenReturn(gridSubset);
         blobStore = new S3BlobStore(config, layers, lockProvider);
     }
 
@@ -120,6 +137,21 @@ public abstract class AbstractS3BlobStoreIntegrationTest {
         assertEquals(bytes.length, resource.getSize());
     }
 
+    @Test
+    public void testPutGetContentHash() throws MimeException, StorageException {
+        byte[] bytes = new byte[1024];
+        Arrays.fill(bytes, (byte) 0xaf);
+        blobStore.setContentHashing(new ContentHash(true));
+        TileObject tile = queryTile(20, 30, 12);
+        tile.setBlob(new ByteArrayResource(bytes));
+        blobStore.put(tile);
+        assertEquals(ContentHash.of(bytes), tile.getContentHash());
+
+        TileObject queryTile = queryTile(20, 30, 12);
+        assertTrue(blobStore.get(queryTile));
+        assertEquals(ContentHash.of(bytes), queryTile.getContentHash());
+    }
+
     @Test
     public void testPutGetBlobIsNotByteArrayResource() throws MimeException, IOException {
         File tileFile = File.createTempFile("tile", ".png");
@@ -138,6 +170,30 @@ public abstract class AbstractS3BlobStoreIntegrationTest {
         assertEquals(1024, resource.getSize());
     }
 
+    @Test
+    public void testPutGetStreamed() throws MimeException, IOException {
+        // larger than the streaming threshold
+        byte[] bytes = new byte[S3BlobStore.DEFAULT_STREAMING_THRESHOLD * 2 + 100];
+        new Random(1).nextBytes(bytes);
+        TileObject tile = queryTile(20, 30, 12);
+        tile.setBlob(new ByteArrayResource(bytes));
+        blobStore.put(tile);
+
+        TileObject queryTile = queryTile(20, 30, 12);
+        assertTrue(blobStore.get(queryTile));
+        Resource resource = queryTile.getBlob();
+        assertEquals(bytes.length, resource.getSize());
+        assertEquals(bytes.length, queryTile.getBlobSize());
+
+        // can be read several times
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(bytes.length, resource.transferTo(Channels.newChannel(out)));
+        assertArrayEquals(bytes, out.toByteArray());
+        try (InputStream in = resource.getInputStream()) {
+            assertArrayEquals(bytes, ByteStreams.toByteArray(in));
+        }
+    }
+
     @Test
     public void testPutWithListener() throws MimeException, StorageException {
         byte[] bytes = new byte[1024];
@@ -473,6 +529,109 @@ public abstract class AbstractS3BlobStoreIntegrationTest {
         assertTrue(blobStore.get(queryTile(3, 3, 2)));
     }
 
+    /**
+     * With {@link BlobStoreListener}s, truncate lists the stored tiles rather than looking up every
+     * tile in the range, and notifies the listeners with the listed sizes
+     */
+    @Test
+    public void testTruncateWithListenersListsStoredTiles() throws StorageException, MimeException {
+
+        final int zoomStart = 0;
+        final int zoomStop = 2;
+
+        seed(zoomStart, zoomStop);
+        BlobStoreListener listener = mock(BlobStoreListener.class);
+        blobStore.addListener(listener);
+
+        // the left half of level 2, listed at once, plus a missing tile at level 3, listed by
+        // column
+        long[][] rangeBounds = { //
+            {0, 0, 1, 3, 2}, //
+            {0, 0, 0, 0, 3} //
+        };
+        TileRange tileRange =
+                tileRange(
+                        DEFAULT_LAYER,
+                        DEFAULT_GRIDSET,
+                        2,
+                        3,
+                        rangeBounds,
+                        MimeType.createFromExtension(DEFAULT_FORMAT),
+                        null);
+
+        blobStore = Mockito.spy(blobStore);
+        assertTrue(blobStore.delete(tileRange));
+
+        verify(blobStore, times(0)).delete(Mockito.any(TileObject.class));
+        verify(listener, times(8))
+                .tileDeleted(
+                        eq(DEFAULT_LAYER),
+                        eq(DEFAULT_GRIDSET),
+                        eq("image/png"),
+                        anyString(),
+                        anyLong(),
+                        anyLong(),
+                        eq(2),
+                        eq(256L));
+        for (int y = 0; y < 4; y++) {
+            verify(listener)
+                    .tileDeleted(
+                            anyString(),
+                            anyString(),
+                            anyString(),
+                            anyString(),
+                            eq(1L),
+                            eq((long) y),
+                            eq(2),
+                            anyLong());
+            assertFalse(blobStore.get(queryTile(0, y, 2)));
+            assertFalse(blobStore.get(queryTile(1, y, 2)));
+            assertTrue(blobStore.get(queryTile(2, y, 2)));
+            assertTrue(blobStore.get(queryTile(3, y, 2)));
+        }
+        assertTrue(blobStore.get(queryTile(0, 0, 0)));
+        assertTrue(blobStore.get(queryTile(1, 1, 1)));
+    }
+
+    /** A narrow range on a populated level only deletes, and notifies, the tiles in the range */
+    @Test
+    public void testTruncateWithListenersNarrowRange() throws StorageException, MimeException {
+        seed(3, 3);
+        BlobStoreListener listener = mock(BlobStoreListener.class);
+        blobStore.addListener(listener);
+
+        // two tiles of a column of level 3
+        long[][] rangeBounds = {{1, 2, 1, 3, 3}};
+        TileRange tileRange =
+                tileRange(
+                        DEFAULT_LAYER,
+                        DEFAULT_GRIDSET,
+                        3,
+                        3,
+                        rangeBounds,
+                        MimeType.createFromExtension(DEFAULT_FORMAT),
+                        null);
+
+        assertTrue(blobStore.delete(tileRange));
+
+        verify(listener, times(2))
+                .tileDeleted(
+                        eq(DEFAULT_LAYER),
+                        eq(DEFAULT_GRIDSET),
+                        eq("image/png"),
+                        anyString(),
+                        eq(1L),
+                        anyLong(),
+                        eq(3),
+                        eq(256L));
+        assertFalse(blobStore.get(queryTile(1, 2, 3)));
+        assertFalse(blobStore.get(queryTile(1, 3, 3)));
+        assertTrue(blobStore.get(queryTile(1, 1, 3)));
+        assertTrue(blobStore.get(queryTile(1, 4, 3)));
+        assertTrue(blobStore.get(queryTile(0, 2, 3)));
+        assertTrue(blobStore.get(queryTile(2, 3, 3)));
+    }
+
     private TileRange tileRange(
             String layerName,
             String gridSetId,
@@ -0,0 +1,147 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.s3;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.io.ByteStreams;
+import io.findify.s3mock.S3Mock;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.layer.TileLayerDispatcher;
+import org.geowebcache.locks.NoOpLockProvider;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the heap allocated per tile by {@link S3BlobStore} reads and writes against an in memory
+ * S3 mock, for tiles below and above the streaming threshold. The tiles are written from a
+ * partially filled buffer, as the meta tile encoder produces them, and read to a discarding
+ * channel, as the servlet output would consume them.
+ *
+ * <p>Not run as part of the build, launch the {@link #main} method from the IDE or the test
+ * classpath and look at the {@code gc.alloc.rate.norm} figures, in bytes per operation. They
+ * include the allocations of the S3 client and of the mock itself, which are the same for both
+ * paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class S3BlobStoreBenchmark {
+
+    static final String LAYER = "topp:world";
+
+    static final int PORT = 8003;
+
+    @Param({"16384", "1048576", "4194304"})
+    int tileSize;
+
+    S3Mock api;
+
+    S3BlobStore blobStore;
+
+    ByteArrayResource encoded;
+
+    WritableByteChannel discard = Channels.newChannel(ByteStreams.nullOutputStream());
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        api = new S3Mock.Builder().withPort(PORT).withInMemoryBackend().build();
+        api.start();
+
+        S3BlobStoreInfo config = new S3BlobStoreInfo();
+        config.setAwsAccessKey("");
+        config.setAwsSecretKey("");
+        config.setEndpoint("http://localhost:" + PORT);
+        config.setBucket("benchmark");
+        config.buildClient().createBucket("benchmark");
+
+        TileLayerDispatcher layers = mock(TileLayerDispatcher.class);
+        TileLayer layer = mock(TileLayer.class);
+        when(layers.getTileLayer(eq(LAYER))).thenReturn(layer);
+        when(layer.getName()).thenReturn(LAYER);
+        when(layer.getId()).thenReturn(LAYER);
+        blobStore = new S3BlobStore(config, layers, new NoOpLockProvider());
+
+        // room to spare, like the buffers the encoder writes to
+        byte[] contents = new byte[tileSize];
+        new Random(1).nextBytes(contents);
+        encoded = new ByteArrayResource(tileSize * 2);
+        try (OutputStream out = encoded.getOutputStream()) {
+            out.write(contents);
+        }
+        blobStore.put(tile(0, encoded));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        blobStore.destroy();
+        api.stop();
+    }
+
+    @Benchmark
+    public void put() throws StorageException {
+        blobStore.put(tile(1, encoded));
+    }
+
+    @Benchmark
+    public long get() throws StorageException, IOException {
+        TileObject tile = tile(0, null);
+        blobStore.get(tile);
+        return tile.getBlob().transferTo(discard);
+    }
+
+    static TileObject tile(long x, ByteArrayResource blob) {
+        return TileObject.createCompleteTileObject(
+                LAYER, new long[] {x, 0, 5}, "EPSG:4326", "image/png", null, blob);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(S3BlobStoreBenchmark.class.getSimpleName())
+                                .addProfiler(GCProfiler.class)
+                                .build())
+                .run();
+    }
+}
@@ -57,6 +57,7 @@ public class S3BlobStoreConformanceTest extends AbstractBlobStoreTest<S3BlobStor
                             expect(mock.getMimeTypes())
                                     .andStubReturn(
                                             Arrays.asList(org.geowebcache.mime.ImageMime.png));
+                            expect(mock.getGridSubset(EasyMock.anyString())).andStubReturn(null);
                             try {
                                 expect(layers.getTileLayer(eq(name))).andStubReturn(mock);
                             } catch (GeoWebCacheException e) {
@@ -0,0 +1,212 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.google.common.collect.ImmutableMap;
+import io.findify.s3mock.S3Mock;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.layer.TileLayerDispatcher;
+import org.geowebcache.locks.NoOpLockProvider;
+import org.geowebcache.storage.TileObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the parameters metadata objects are written once per parameters id rather than once per
+ * tile, counting the requests {@link S3BlobStore} sends to an in memory S3 mock.
+ */
+public class S3BlobStoreParametersMetadataTest {
+
+    private static final String LAYER = "topp:world";
+
+    private static final Map<String, String> STYLE = ImmutableMap.of("STYLES", "population");
+
+    private static S3Mock api;
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private TileLayerDispatcher layers;
+
+    private String prefix;
+
+    private S3BlobStore blobStore;
+
+    @BeforeClass
+    public static void beforeClass() {
+        api = new S3Mock.Builder().withPort(8002).withInMemoryBackend().build();
+        api.start();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        api.stop();
+    }
+
+    @Before
+    public void before() throws Exception {
+        layers = mock(TileLayerDispatcher.class);
+        TileLayer layer = mock(TileLayer.class);
+        when(layers.getTileLayer(eq(LAYER))).thenReturn(layer);
+        when(layer.getName()).thenReturn(LAYER);
+        when(layer.getId()).thenReturn(LAYER);
+
+        // a prefix per test, the mock backend is shared
+        prefix = "parameters-metadata-" + System.nanoTime();
+        S3BlobStoreInfo config = getConfiguration();
+        config.buildClient().createBucket("testbucket");
+        blobStore = new S3BlobStore(config, layers, new NoOpLockProvider());
+        requests.clear();
+    }
+
+    private S3BlobStoreInfo getConfiguration() {
+        S3BlobStoreInfo config = new CountingS3BlobStoreInfo(requests);
+        config.setAwsAccessKey("");
+        config.setAwsSecretKey("");
+        config.setEndpoint("http://localhost:8002");
+        config.setBucket("testbucket");
+        config.setPrefix(prefix);
+        return config;
+    }
+
+    @After
+    public void after() {
+        if (blobStore != null) {
+            blobStore.destroy();
+        }
+    }
+
+    @Test
+    public void testSeedStyledLayer() throws Exception {
+        final int tiles = 20;
+        for (int i = 0; i < tiles; i++) {
+            blobStore.put(tile(i, STYLE));
+        }
+        // one listing of the parameters metadata and one write of it, then one put per tile
+        assertEquals(requests.toString(), tiles + 2, requests.size());
+        assertEquals(tiles + 1, count("PUT"));
+        assertEquals(1, count("GET"));
+
+        // a new parameters id gets its metadata written, without listing again
+        requests.clear();
+        blobStore.put(tile(0, ImmutableMap.of("STYLES", "density")));
+        blobStore.put(tile(1, ImmutableMap.of("STYLES", "density")));
+        assertEquals(requests.toString(), 3, count("PUT"));
+        assertEquals(0, count("GET"));
+
+        // the metadata written by the first store is found by listing
+        blobStore.destroy();
+        blobStore = null;
+        S3BlobStore other = new S3BlobStore(getConfiguration(), layers, new NoOpLockProvider());
+        try {
+            requests.clear();
+            other.put(tile(0, STYLE));
+            other.put(tile(1, STYLE));
+            assertEquals(requests.toString(), 2, count("PUT"));
+            assertEquals(1, count("GET"));
+            assertTrue(other.getParametersMapping(LAYER).size() >= 2);
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    public void testDeleteByParametersIdInvalidates() throws Exception {
+        TileObject tile = tile(0, STYLE);
+        blobStore.put(tile);
+        blobStore.deleteByParametersId(LAYER, tile.getParametersId());
+
+        requests.clear();
+        blobStore.put(tile(1, STYLE));
+        // the tile and the metadata again
+        assertTrue(requests.toString(), count("PUT") >= 2);
+    }
+
+    @Test
+    public void testDeleteLayerInvalidatesOnCompletion() throws Exception {
+        blobStore.put(tile(0, STYLE));
+        assertTrue(blobStore.delete(LAYER));
+        // may list the metadata object again before the delete gets to it
+        blobStore.put(tile(1, STYLE));
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (blobStore.get(tile(0, STYLE))) {
+            assertTrue("layer not deleted", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+        // the next puts write the metadata again once the delete is over
+        while (blobStore.getParametersMapping(LAYER).isEmpty()) {
+            assertTrue("metadata not written again", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+            blobStore.put(tile(2, STYLE));
+        }
+    }
+
+    private long count(String method) {
+        return requests.stream().filter(r -> r.startsWith(method + " ")).count();
+    }
+
+    private static TileObject tile(long x, Map<String, String> parameters) {
+        TileObject tile =
+                TileObject.createCompleteTileObject(
+                        LAYER,
+                        new long[] {x, 0, 5},
+                        "EPSG:4326",
+                        "image/png",
+                        parameters,
+                        new ByteArrayResource(new byte[] {1, 2, 3}));
+        return tile;
+    }
+
+    /** Records the method and path of the requests sent by the clients it builds */
+    static class CountingS3BlobStoreInfo extends S3BlobStoreInfo {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<String> requests;
+
+        CountingS3BlobStoreInfo(List<String> requests) {
+            this.requests = requests;
+        }
+
+        @Override
+        public AmazonS3Client buildClient() {
+            AmazonS3Client client = super.buildClient();
+            client.addRequestHandler(
+                    new RequestHandler2() {
+                        @Override
+                        public void beforeRequest(Request<?> request) {
+                            requests.add(request.getHttpMethod() + " " + request.getResourcePath());
+                        }
+                    });
+            return client;
+        }
+    }
+}
@@ -24,13 +24,19 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorCompletionService;
@@ -39,6 +45,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import org.apache.commons.io.IOUtils;
@@ -308,6 +315,112 @@ public final class MbtilesBlobStore extends SqliteBlobStore {
         return exists;
     }
 
+    /**
+     * Looks up the tiles with a single {@code IN} query per database file and zoom level, instead
+     * of loading them one by one.
+     */
+    @Override
+    public long[] getCreationTimes(List<TileObject> tiles) throws StorageException {
+        final long[] result = new long[tiles.size()];
+        Arrays.fill(result, NOT_STORED);
+        // group the tiles by database file and zoom level
+        Map<File, Map<Long, List<Integer>>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < result.length; i++) {
+            groups.computeIfAbsent(fileManager.getFile(tiles.get(i)), f -> new TreeMap<>())
+                    .computeIfAbsent(tiles.get(i).getXYZ()[2], z -> new ArrayList<>())
+                    .add(i);
+        }
+        for (Map.Entry<File, Map<Long, List<Integer>>> fileGroup : groups.entrySet()) {
+            final File file = fileGroup.getKey();
+            if (!file.exists()) {
+                // no database file, no tiles
+                continue;
+            }
+            for (Map.Entry<Long, List<Integer>> levelGroup : fileGroup.getValue().entrySet()) {
+                List<TileObject> levelTiles = new ArrayList<>();
+                for (int index : levelGroup.getValue()) {
+                    levelTiles.add(tiles.get(index));
+                }
+                Map<String, Long> found = getCreationTimes(file, levelGroup.getKey(), levelTiles);
+                for (int index : levelGroup.getValue()) {
+                    long[] xyz = tiles.get(index).getXYZ();
+                    Long created = found.get(xyz[0] + "_" + xyz[1]);
+                    if (created != null) {
+                        result[index] = created;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper method that finds which of the given tiles of a zoom level are stored in a database
+     * file, along with their create time.
+     *
+     * @return the create time of the found tiles, indexed by "column_row"
+     */
+    private Map<String, Long> getCreationTimes(File file, long z, List<TileObject> tiles) {
+        Set<Long> columns = new TreeSet<>();
+        Set<Long> rows = new TreeSet<>();
+        for (TileObject tile : tiles) {
+            columns.add(tile.getXYZ()[0]);
+            rows.add(tile.getXYZ()[1]);
+        }
+        // the requested tiles usually form a block, the extra tiles the IN clauses may match are
+        // filtered out by the caller
+        String inColumns = columns.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String inRows = rows.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String where =
+                "WHERE zoom_level = ? AND tile_column IN ("
+                        + inColumns
+                        + ") AND tile_row IN ("
+                        + inRows
+                        + ")";
+        Map<String, Long> found =
+                connectionManager.executeQuery(
+                        file,
+                        resultSet -> {
+                            Map<String, Long> tilesFound = new HashMap<>();
+                            while (resultSet.next()) {
+                                tilesFound.put(
+                                        resultSet.getLong(1) + "_" + resultSet.getLong(2),
+                                        useCreateTime
+                                                ? file.lastModified()
+                                                : System.currentTimeMillis());
+                            }
+                            return tilesFound;
+                        },
+                        "SELECT tile_column, tile_row FROM tiles " + where,
+                        z);
+        if (useCreateTime && !found.isEmpty()) {
+            try {
+                connectionManager.executeQuery(
+                        file,
+                        resultSet -> {
+                            while (resultSet.next()) {
+                                String key = resultSet.getLong(1) + "_" + resultSet.getLong(2);
+                                // only tiles that are stored, the create time may be stale
+                                if (found.containsKey(key)) {
+                                    found.put(key, resultSet.getLong(3));
+                                }
+                            }
+                            return null;
+                        },
+                        "SELECT tile_column, tile_row, create_time FROM tiles_metadata " + where,
+                        z);
+            } catch (Exception exception) {
+                // probably the table doesn't exists, same as get() the file time is used
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(
+                            String.format("Could not query create times from file '%s'.", file),
+                            exception);
+                }
+            }
+        }
+        return found;
+    }
+
     @Override
     public boolean delete(TileObject tile) throws StorageException {
         File file = fileManager.getFile(tile);
@@ -127,7 +127,7 @@ public class VEConverter extends Service {
             tile.setTileLayer(tl);
             tl.getNoncachedTile(tile);
 
-            Service.writeTileResponse(tile, false);
+            writeTileResponse(tile, false, null, null, getSendFileSupport());
         }
     }
 
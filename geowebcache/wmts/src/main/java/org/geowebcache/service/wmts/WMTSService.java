@@ -60,11 +60,13 @@ public class WMTSService extends Service {
     public static final String GET_CAPABILITIES = "getcapabilities";
     public static final String GET_FEATUREINFO = "getfeatureinfo";
     public static final String GET_TILE = "gettile";
+    public static final String GET_TILE_BATCH = "gettilebatch";
 
     enum RequestType {
         TILE,
         CAPABILITIES,
-        FEATUREINFO
+        FEATUREINFO,
+        TILE_BATCH
     }
 
     static final String buildRestPattern(int numPathElements, boolean hasStyle) {
@@ -77,6 +79,11 @@ public class WMTSService extends Service {
     }
 
     enum RestRequest {
+        // the batches go first, TILE would otherwise match the batch with style path
+        // "/{layer}/{tileMatrixSet}/{tileMatrix}/batch"
+        TILE_BATCH(buildRestPattern(3, false) + "/batch", RequestType.TILE_BATCH, false),
+        // "/{layer}/{style}/{tileMatrixSet}/{tileMatrix}/batch"
+        TILE_BATCH_STYLE(buildRestPattern(4, true) + "/batch", RequestType.TILE_BATCH, true),
         // "/{layer}/{tileMatrixSet}/{tileMatrix}/{tileRow}/{tileCol}"
         TILE(buildRestPattern(5, false), RequestType.TILE, false),
         // "/{layer}/{style}/{tileMatrixSet}/{tileMatrix}/{tileRow}/{tileCol}",
@@ -113,15 +120,20 @@ public class WMTSService extends Service {
             // requests
             int i = 1;
             final boolean isFeatureInfo = type == RequestType.FEATUREINFO;
-            values.put("request", isFeatureInfo ? GET_FEATUREINFO : GET_TILE);
+            final boolean isBatch = type == RequestType.TILE_BATCH;
+            values.put(
+                    "request",
+                    isFeatureInfo ? GET_FEATUREINFO : isBatch ? GET_TILE_BATCH : GET_TILE);
             values.put("layer", matcher.group(i++));
             if (hasStyle) {
                 values.put("style", matcher.group(i++));
             }
             values.put("tilematrixset", matcher.group(i++));
             values.put("tilematrix", matcher.group(i++));
-            values.put("tilerow", matcher.group(i++));
-            values.put("tilecol", matcher.group(i++));
+            if (!isBatch) {
+                values.put("tilerow", matcher.group(i++));
+                values.put("tilecol", matcher.group(i++));
+            }
             if (isFeatureInfo) {
                 values.put("j", matcher.group(i++));
                 values.put("i", matcher.group(i++));
@@ -327,6 +339,11 @@ public class WMTSService extends Service {
             tile.setHint(req);
             tile.setRequestHandler(Conveyor.RequestHandler.SERVICE);
             return tile;
+        } else if (req.equals(GET_TILE_BATCH) && isRestRequest(request)) {
+            ConveyorTile tile = getTile(values, request, response, RequestType.TILE_BATCH);
+            tile.setHint(req);
+            tile.setRequestHandler(Conveyor.RequestHandler.SERVICE);
+            return tile;
         } else {
             // we implement all WMTS supported request, this means that the provided request name is
             // invalid
@@ -393,7 +410,7 @@ public class WMTSService extends Service {
         }
 
         MimeType mimeType = null;
-        if (reqType == RequestType.TILE) {
+        if (reqType != RequestType.FEATUREINFO) {
             String format = values.get("format");
             if (format == null) {
                 throw new OWSException(
@@ -461,23 +478,64 @@ public class WMTSService extends Service {
                     400, "InvalidParameterValue", "TILEMATRIX", "Unknown TILEMATRIX " + tileMatrix);
         }
 
-        // WMTS has 0 in the top left corner -> flip y value
-        final String tileRow = values.get("tilerow");
-        if (tileRow == null) {
-            throw new OWSException(400, "MissingParameterValue", "TILEROW", "No TILEROW specified");
+        long[] tileIndex;
+        if (reqType == RequestType.TILE_BATCH) {
+            // the tiles of the batch are listed in the request parameters, see WMTSTileBatch
+            tileIndex = new long[] {-1, -1, z};
+        } else {
+            final String tileRow = values.get("tilerow");
+            if (tileRow == null) {
+                throw new OWSException(
+                        400, "MissingParameterValue", "TILEROW", "No TILEROW specified");
+            }
+            String tileCol = values.get("tilecol");
+            if (tileCol == null) {
+                throw new OWSException(
+                        400, "MissingParameterValue", "TILECOL", "No TILECOL specified");
+            }
+            tileIndex =
+                    getTileIndex(
+                            gridSubset, (int) z, Long.parseLong(tileRow), Long.parseLong(tileCol));
         }
 
-        final long tilesHigh = gridSubset.getNumTilesHigh((int) z);
+        ConveyorTile convTile =
+                new ConveyorTile(
+                        sb,
+                        layer,
+                        gridSubset.getName(),
+                        tileIndex,
+                        mimeType,
+                        rawParameters,
+                        filteringParameters,
+                        request,
+                        response);
 
-        long y = tilesHigh - Long.parseLong(tileRow) - 1;
+        convTile.setTileLayer(tileLayer);
 
-        String tileCol = values.get("tilecol");
-        if (tileCol == null) {
-            throw new OWSException(400, "MissingParameterValue", "TILECOL", "No TILECOL specified");
-        }
-        long x = Long.parseLong(tileCol);
+        return convTile;
+    }
+
+    /**
+     * Converts the WMTS row and column of a tile into a grid index, checking they are in the
+     * coverage of the grid subset
+     *
+     * @param gridSubset the grid subset of the tile
+     * @param z the zoom level
+     * @param tileRow the WMTS row, 0 being the top row
+     * @param tileCol the WMTS column
+     * @return the tile index, with 0 as the bottom row
+     * @throws OWSException if the tile is out of range
+     */
+    static long[] getTileIndex(GridSubset gridSubset, int z, long tileRow, long tileCol)
+            throws OWSException {
+        // WMTS has 0 in the top left corner -> flip y value
+        final long tilesHigh = gridSubset.getNumTilesHigh(z);
 
-        long[] gridCov = gridSubset.getCoverage((int) z);
+        long y = tilesHigh - tileRow - 1;
+
+        long x = tileCol;
+
+        long[] gridCov = gridSubset.getCoverage(z);
 
         if (x < gridCov[0] || x > gridCov[2]) {
             throw new OWSException(
@@ -505,22 +563,7 @@ public class WMTSService extends Service {
         } catch (OutsideCoverageException e) {
 
         }
-
-        ConveyorTile convTile =
-                new ConveyorTile(
-                        sb,
-                        layer,
-                        gridSubset.getName(),
-                        tileIndex,
-                        mimeType,
-                        rawParameters,
-                        filteringParameters,
-                        request,
-                        response);
-
-        convTile.setTileLayer(tileLayer);
-
-        return convTile;
+        return tileIndex;
     }
 
     public void handleRequest(Conveyor conv) throws OWSException, GeoWebCacheException {
@@ -562,6 +605,9 @@ public class WMTSService extends Service {
                 ConveyorTile convTile = (ConveyorTile) conv;
                 WMTSGetFeatureInfo wmsGFI = new WMTSGetFeatureInfo(convTile);
                 wmsGFI.writeResponse(stats);
+            } else if (tile.getHint().equals(GET_TILE_BATCH)) {
+                WMTSTileBatch batch = new WMTSTileBatch(tile);
+                batch.writeResponse(getSecurityDispatcher(), stats);
             }
         }
     }
@@ -0,0 +1,443 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU Lesser General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * <p>Copyright 2019
+ */
+package org.geowebcache.service.wmts;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.conveyor.Conveyor.CacheResult;
+import org.geowebcache.conveyor.ConveyorTile;
+import org.geowebcache.filter.request.RequestFilterException;
+import org.geowebcache.filter.security.SecurityDispatcher;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.OutsideCoverageException;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.layer.TileLayer;
+import org.geowebcache.service.OWSException;
+import org.geowebcache.stats.RuntimeStats;
+import org.geowebcache.util.ServletUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Serves several tiles of the same layer, style, format and tile matrix in a single response, so
+ * that clients showing a map view do not need a request per tile.
+ *
+ * <p>The tiles are listed with the {@code tiles} parameter, as {@code row,col} pairs separated by
+ * semicolons, or as a rectangle with the {@code minRow}, {@code maxRow}, {@code minCol} and {@code
+ * maxCol} parameters (inclusive). The request is parsed once, the request filters and the security
+ * checks are applied to each tile on the request thread, then the tiles are fetched in parallel on
+ * a shared pool and written back as soon as they are available, in completion order.
+ *
+ * <p>The response, of type {@link #MIME_TYPE}, is a big endian stream made of the number of tiles
+ * as a 32 bit integer followed by a frame per tile:
+ *
+ * <ul>
+ *   <li>the tile row and column, as requested, as 64 bit integers
+ *   <li>the status of the tile, using the HTTP codes, as a 16 bit integer
+ *   <li>the content type, as a 16 bit length followed by the ASCII characters
+ *   <li>the content length, as a 32 bit integer, followed by the content
+ * </ul>
+ *
+ * Tiles outside of the layer coverage get a 204 status and no content, tiles that could not be
+ * served the status and message the same GetTile request would have got.
+ *
+ * <p>The batch size is limited by the {@code GEOWEBCACHE_TILE_BATCH_MAX} property (defaults to
+ * 256), the size of the pool by {@code GEOWEBCACHE_TILE_BATCH_THREADS} (defaults to twice the
+ * number of available processors, {@code 0} fetches the tiles on the request thread).
+ */
+public class WMTSTileBatch {
+
+    private static Log log = LogFactory.getLog(org.geowebcache.service.wmts.WMTSTileBatch.class);
+
+    public static final String MIME_TYPE = "application/vnd.geowebcache.tile-batch";
+
+    static final String MAX_TILES_PROPERTY = "GEOWEBCACHE_TILE_BATCH_MAX";
+
+    static final String THREADS_PROPERTY = "GEOWEBCACHE_TILE_BATCH_THREADS";
+
+    static final int DEFAULT_MAX_TILES = 256;
+
+    private final ConveyorTile convTile;
+
+    /** The requested rows and columns, in WMTS order */
+    private final List<long[]> positions;
+
+    protected WMTSTileBatch(ConveyorTile convTile) throws OWSException {
+        String[] keys = {"tiles", "minrow", "maxrow", "mincol", "maxcol"};
+        Map<String, String> values =
+                ServletUtils.selectedStringsFromMap(
+                        convTile.getRequestParameters(),
+                        convTile.servletReq.getCharacterEncoding(),
+                        keys);
+
+        int maxTiles = (int) getLongProperty(MAX_TILES_PROPERTY, DEFAULT_MAX_TILES);
+        if (values.get("tiles") != null) {
+            this.positions = parseTiles(values.get("tiles"), maxTiles);
+        } else {
+            this.positions =
+                    parseRange(
+                            values.get("minrow"),
+                            values.get("maxrow"),
+                            values.get("mincol"),
+                            values.get("maxcol"),
+                            maxTiles);
+        }
+        this.convTile = convTile;
+    }
+
+    static List<long[]> parseTiles(String tiles, int maxTiles) throws OWSException {
+        List<long[]> positions = new ArrayList<>();
+        for (String tile : tiles.split(";")) {
+            if (tile.trim().isEmpty()) {
+                continue;
+            }
+            String[] rowCol = tile.split(",");
+            if (rowCol.length != 2) {
+                throw new OWSException(
+                        400,
+                        "InvalidParameterValue",
+                        "TILES",
+                        "Expected a row,col pair, got " + tile);
+            }
+            if (positions.size() == maxTiles) {
+                throw tooManyTiles(maxTiles);
+            }
+            positions.add(
+                    new long[] {parseLong(rowCol[0], "TILES"), parseLong(rowCol[1], "TILES")});
+        }
+        if (positions.isEmpty()) {
+            throw new OWSException(400, "MissingParameterValue", "TILES", "No TILES specified");
+        }
+        return positions;
+    }
+
+    static List<long[]> parseRange(
+            String minRow, String maxRow, String minCol, String maxCol, int maxTiles)
+            throws OWSException {
+        if (minRow == null || maxRow == null || minCol == null || maxCol == null) {
+            throw new OWSException(
+                    400,
+                    "MissingParameterValue",
+                    "TILES",
+                    "Either TILES or MINROW, MAXROW, MINCOL and MAXCOL must be specified");
+        }
+        long r0 = parseLong(minRow, "MINROW");
+        long r1 = parseLong(maxRow, "MAXROW");
+        long c0 = parseLong(minCol, "MINCOL");
+        long c1 = parseLong(maxCol, "MAXCOL");
+        if (r0 < 0 || c0 < 0) {
+            throw new OWSException(400, "InvalidParameterValue", "TILES", "Negative row or column");
+        }
+        if (r1 < r0 || c1 < c0) {
+            throw new OWSException(
+                    400, "InvalidParameterValue", "TILES", "Empty range of rows or columns");
+        }
+        // checked one dimension at a time so that the product can't overflow
+        if (r1 - r0 >= maxTiles
+                || c1 - c0 >= maxTiles
+                || (r1 - r0 + 1) * (c1 - c0 + 1) > maxTiles) {
+            throw tooManyTiles(maxTiles);
+        }
+        List<long[]> positions = new ArrayList<>();
+        for (long row = r0; row <= r1; row++) {
+            for (long col = c0; col <= c1; col++) {
+                positions.add(new long[] {row, col});
+            }
+        }
+        return positions;
+    }
+
+    private static long parseLong(String value, String locator) throws OWSException {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new OWSException(
+                    400, "InvalidParameterValue", locator, "Invalid " + locator + " " + value);
+        }
+    }
+
+    private static OWSException tooManyTiles(int maxTiles) {
+        return new OWSException(
+                400,
+                "InvalidParameterValue",
+                "TILES",
+                "Too many tiles requested, the maximum is " + maxTiles);
+    }
+
+    List<long[]> getPositions() {
+        return positions;
+    }
+
+    protected void writeResponse(SecurityDispatcher securityDispatcher, RuntimeStats stats)
+            throws GeoWebCacheException {
+        final TileLayer layer = convTile.getLayer();
+        final GridSubset gridSubset = convTile.getGridSubset();
+        final int z = (int) convTile.getTileIndex()[2];
+        final Executor executor = BatchPool.getExecutor();
+        final BlockingQueue<Frame> completed = new LinkedBlockingQueue<>();
+
+        HttpServletResponse response = convTile.servletResp;
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MIME_TYPE);
+
+        try {
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(response.getOutputStream()));
+            out.writeInt(positions.size());
+
+            int pending = 0;
+            for (long[] position : positions) {
+                final long row = position[0];
+                final long col = position[1];
+                final ConveyorTile tile;
+                try {
+                    tile = createTile(gridSubset, z, row, col);
+                    layer.applyRequestFilters(tile);
+                    securityDispatcher.checkSecurity(tile);
+                } catch (OWSException e) {
+                    writeFrame(
+                            out,
+                            new Frame(
+                                    row,
+                                    col,
+                                    e.getResponseCode(),
+                                    e.getContentType(),
+                                    e.getResponse()));
+                    continue;
+                } catch (RequestFilterException e) {
+                    writeFrame(
+                            out,
+                            new Frame(
+                                    row,
+                                    col,
+                                    e.getResponseCode(),
+                                    e.getContentType(),
+                                    e.getResponse()));
+                    continue;
+                } catch (SecurityException e) {
+                    log.warn(e.getMessage());
+                    writeFrame(out, Frame.error(row, col, 403, "Not Authorized"));
+                    continue;
+                } catch (GeoWebCacheException e) {
+                    // the response is already started, report the error in the frame
+                    log.error("Error checking tile " + row + "," + col + " of a batch", e);
+                    writeFrame(out, Frame.error(row, col, 500, e.getMessage()));
+                    continue;
+                }
+
+                CompletableFuture.supplyAsync(() -> fetch(layer, tile, row, col, stats), executor)
+                        .whenComplete(
+                                (frame, error) ->
+                                        completed.add(
+                                                frame != null
+                                                        ? frame
+                                                        : Frame.error(
+                                                                row,
+                                                                col,
+                                                                500,
+                                                                String.valueOf(error))));
+                pending++;
+            }
+
+            for (; pending > 0; pending--) {
+                writeFrame(out, completed.take());
+                // push the tiles available so far to the client before waiting for the others
+                if (completed.isEmpty()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // the client went away, the tiles being fetched still end up in the cache
+            if (log.isDebugEnabled()) {
+                log.debug("Error writing tile batch of layer " + layer.getName(), e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeoWebCacheException("Interrupted while writing the tile batch");
+        }
+    }
+
+    private ConveyorTile createTile(GridSubset gridSubset, int z, long row, long col)
+            throws OWSException {
+        long[] tileIndex = WMTSService.getTileIndex(gridSubset, z, row, col);
+        // no servlet response, the tiles are fetched in parallel and must not set headers
+        ConveyorTile tile =
+                new ConveyorTile(
+                        convTile.getStorageBroker(),
+                        convTile.getLayerId(),
+                        convTile.getGridSetId(),
+                        tileIndex,
+                        convTile.getMimeType(),
+                        convTile.getRequestParameters(),
+                        convTile.getFilteringParameters(),
+                        convTile.servletReq,
+                        null);
+        tile.setTileLayer(convTile.getLayer());
+        return tile;
+    }
+
+    private static Frame fetch(
+            TileLayer layer, ConveyorTile tile, long row, long col, RuntimeStats stats) {
+        final long start = System.nanoTime();
+        Frame frame;
+        try {
+            layer.getTile(tile);
+            Resource blob = tile.getBlob();
+            if (blob == null) {
+                frame = new Frame(row, col, HttpServletResponse.SC_NO_CONTENT, "", null);
+            } else {
+                frame =
+                        new Frame(
+                                row,
+                                col,
+                                HttpServletResponse.SC_OK,
+                                tile.getMimeType().getMimeType(blob),
+                                blob);
+            }
+        } catch (OutsideCoverageException e) {
+            tile.setCacheResult(CacheResult.OTHER);
+            frame = new Frame(row, col, HttpServletResponse.SC_NO_CONTENT, "", null);
+        } catch (GeoWebCacheException | IOException | RuntimeException e) {
+            log.error("Error fetching tile " + row + "," + col + " of a batch", e);
+            tile.setCacheResult(CacheResult.OTHER);
+            frame = Frame.error(row, col, 500, e.getMessage());
+        }
+        if (stats != null) {
+            stats.log(frame.length(), tile.getCacheResult());
+            stats.logLatency(
+                    tile.getLayerId(),
+                    WMTSService.SERVICE_WMTS,
+                    tile.getCacheResult(),
+                    System.nanoTime() - start,
+                    tile.getBackendTime());
+        }
+        return frame;
+    }
+
+    private static void writeFrame(DataOutputStream out, Frame frame) throws IOException {
+        out.writeLong(frame.row);
+        out.writeLong(frame.col);
+        out.writeShort(frame.status);
+        out.writeUTF(frame.contentType == null ? "" : frame.contentType);
+        out.writeInt(frame.length());
+        if (frame.body != null) {
+            frame.body.transferTo(Channels.newChannel(out));
+        }
+    }
+
+    static final class Frame {
+
+        final long row;
+
+        final long col;
+
+        final int status;
+
+        final String contentType;
+
+        final Resource body;
+
+        Frame(long row, long col, int status, String contentType, Resource body) {
+            this.row = row;
+            this.col = col;
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Frame error(long row, long col, int status, String message) {
+            byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+            return new Frame(row, col, status, "text/plain", new ByteArrayResource(bytes));
+        }
+
+        int length() {
+            return body == null ? 0 : (int) body.getSize();
+        }
+    }
+
+    /** Shared pool fetching the tiles of the batches, modelled on the tile encoder one */
+    static final class BatchPool {
+
+        private static volatile Executor executor;
+
+        static Executor getExecutor() {
+            Executor result = executor;
+            if (result == null) {
+                synchronized (BatchPool.class) {
+                    result = executor;
+                    if (result == null) {
+                        executor = result = createExecutor();
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static Executor createExecutor() {
+            int threads =
+                    (int)
+                            getLongProperty(
+                                    THREADS_PROPERTY,
+                                    2 * Runtime.getRuntime().availableProcessors());
+            if (threads <= 0) {
+                return Runnable::run;
+            }
+            CustomizableThreadFactory tf = new CustomizableThreadFactory("GWC tile batch-");
+            tf.setDaemon(true);
+            ThreadPoolExecutor pool =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            60,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(threads * 64),
+                            tf,
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    private static long getLongProperty(String name, long defaultValue) {
+        String value = GeoWebCacheExtensions.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
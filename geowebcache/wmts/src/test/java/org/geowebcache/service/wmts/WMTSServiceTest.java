@@ -24,6 +24,8 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
@@ -59,6 +61,7 @@ import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSet;
 import org.geowebcache.grid.GridSetBroker;
 import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.OutsideCoverageException;
 import org.geowebcache.grid.SRS;
 import org.geowebcache.io.ByteArrayResource;
 import org.geowebcache.io.XMLBuilder;
@@ -1297,4 +1300,166 @@ public class WMTSServiceTest {
             assertThat(resp.getContentAsString(), not(containsString("TEST FEATURE INFO")));
         }
     }
+
+    @Test
+    public void testGetTileBatch() throws Exception {
+        SecurityDispatcher secDisp = mock(SecurityDispatcher.class);
+
+        service = new WMTSService(sb, tld, null, mock(RuntimeStats.class));
+        service.setSecurityDispatcher(secDisp);
+
+        GridSubset subset = mock(GridSubset.class);
+        when(subset.getName()).thenReturn("testGridset");
+        when(subset.getNumTilesHigh(2)).thenReturn(7L);
+        when(subset.getGridIndex("testGridset:2")).thenReturn(2L);
+        when(subset.getCoverage(2)).thenReturn(new long[] {1, 1, 8, 8});
+
+        String layerName = "mockLayer";
+        TileLayer tileLayer = mock(TileLayer.class);
+        when(tld.getTileLayer(layerName)).thenReturn(tileLayer);
+        when(tileLayer.getGridSubset("testGridset")).thenReturn(subset);
+        when(tileLayer.getTile(any(ConveyorTile.class)))
+                .thenAnswer(
+                        invocation -> {
+                            ConveyorTile tile = (ConveyorTile) invocation.getArguments()[0];
+                            long x = tile.getTileIndex()[0];
+                            if (x == 5) {
+                                throw new OutsideCoverageException(tile.getTileIndex(), 0, 0);
+                            }
+                            tile.setBlob(new ByteArrayResource(("tile " + x).getBytes()));
+                            return tile;
+                        });
+
+        MockHttpServletRequest req = new MockHttpServletRequest();
+        req.setPathInfo("/service/wmts/rest/mockLayer/testGridset/testGridset:2/batch");
+        req.addParameter("format", "image/png");
+        req.addParameter("tiles", "3,4;3,5;3,0");
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+
+        Conveyor conv = service.getConveyor(req, resp);
+        assertThat(conv, hasProperty("hint", equalTo(WMTSService.GET_TILE_BATCH)));
+        assertThat(conv, hasProperty("requestHandler", is(RequestHandler.SERVICE)));
+        assertEquals(layerName, conv.getLayerId());
+
+        service.handleRequest(conv);
+
+        assertEquals(200, resp.getStatus());
+        assertEquals(WMTSTileBatch.MIME_TYPE, resp.getContentType());
+
+        // frames come in completion order, index them by column
+        Map<Long, Object[]> frames = new HashMap<>();
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(resp.getContentAsByteArray()));
+        assertEquals(3, in.readInt());
+        for (int i = 0; i < 3; i++) {
+            long row = in.readLong();
+            long col = in.readLong();
+            int status = in.readShort();
+            String contentType = in.readUTF();
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            assertEquals(3, row);
+            frames.put(col, new Object[] {status, contentType, new String(content)});
+        }
+        assertEquals(-1, in.read());
+
+        assertEquals(200, frames.get(4L)[0]);
+        assertEquals("image/png", frames.get(4L)[1]);
+        assertEquals("tile 4", frames.get(4L)[2]);
+        // outside of the layer coverage
+        assertEquals(204, frames.get(5L)[0]);
+        assertEquals("", frames.get(5L)[2]);
+        // out of the tile matrix range
+        assertEquals(400, frames.get(0L)[0]);
+        assertThat((String) frames.get(0L)[2], containsString("TileOutOfRange"));
+
+        // the request filters and security checks are applied to each tile
+        Mockito.verify(tileLayer, Mockito.times(2)).applyRequestFilters(any(ConveyorTile.class));
+        Mockito.verify(secDisp, Mockito.times(2)).checkSecurity(any(ConveyorTile.class));
+    }
+
+    @Test
+    public void testGetTileBatchSecure() throws Exception {
+        SecurityDispatcher secDisp = mock(SecurityDispatcher.class);
+        doThrow(new SecurityException()).when(secDisp).checkSecurity(any(ConveyorTile.class));
+
+        service = new WMTSService(sb, tld, null, mock(RuntimeStats.class));
+        service.setSecurityDispatcher(secDisp);
+
+        GridSubset subset = mock(GridSubset.class);
+        when(subset.getName()).thenReturn("testGridset");
+        when(subset.getNumTilesHigh(2)).thenReturn(7L);
+        when(subset.getGridIndex("testGridset:2")).thenReturn(2L);
+        when(subset.getCoverage(2)).thenReturn(new long[] {1, 1, 8, 8});
+
+        TileLayer tileLayer = mock(TileLayer.class);
+        when(tld.getTileLayer("mockLayer")).thenReturn(tileLayer);
+        when(tileLayer.getGridSubset("testGridset")).thenReturn(subset);
+
+        MockHttpServletRequest req = new MockHttpServletRequest();
+        req.setPathInfo("/service/wmts/rest/mockLayer/default/testGridset/testGridset:2/batch");
+        req.addParameter("format", "image/png");
+        req.addParameter("minRow", "2");
+        req.addParameter("maxRow", "3");
+        req.addParameter("minCol", "4");
+        req.addParameter("maxCol", "4");
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+
+        Conveyor conv = service.getConveyor(req, resp);
+        assertThat(conv, hasProperty("hint", equalTo(WMTSService.GET_TILE_BATCH)));
+        service.handleRequest(conv);
+
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(resp.getContentAsByteArray()));
+        assertEquals(2, in.readInt());
+        for (int row = 2; row <= 3; row++) {
+            assertEquals(row, in.readLong());
+            assertEquals(4, in.readLong());
+            assertEquals(403, in.readShort());
+            assertEquals("text/plain", in.readUTF());
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            assertEquals("Not Authorized", new String(content));
+        }
+        Mockito.verify(tileLayer, Mockito.never()).getTile(any(ConveyorTile.class));
+    }
+
+    @Test
+    public void testTileBatchParsing() throws Exception {
+        List<long[]> tiles = WMTSTileBatch.parseTiles("1,2; 3,4;", 10);
+        assertEquals(2, tiles.size());
+        assertTrue(Arrays.equals(new long[] {1, 2}, tiles.get(0)));
+        assertTrue(Arrays.equals(new long[] {3, 4}, tiles.get(1)));
+
+        List<long[]> range = WMTSTileBatch.parseRange("1", "2", "5", "7", 6);
+        assertEquals(6, range.size());
+        assertTrue(Arrays.equals(new long[] {1, 5}, range.get(0)));
+        assertTrue(Arrays.equals(new long[] {2, 7}, range.get(5)));
+
+        assertBatchRejected(() -> WMTSTileBatch.parseTiles("1,2;3", 10), "row,col");
+        assertBatchRejected(() -> WMTSTileBatch.parseTiles("1,2;3,4", 1), "Too many tiles");
+        assertBatchRejected(() -> WMTSTileBatch.parseTiles("a,2", 1), "Invalid TILES");
+        assertBatchRejected(() -> WMTSTileBatch.parseTiles(";", 1), "No TILES");
+        assertBatchRejected(() -> WMTSTileBatch.parseRange("1", "2", "5", "7", 5), "Too many");
+        assertBatchRejected(
+                () -> WMTSTileBatch.parseRange("0", "0", "0", "" + Long.MAX_VALUE, 5), "Too many");
+        assertBatchRejected(() -> WMTSTileBatch.parseRange("2", "1", "5", "7", 5), "Empty");
+        assertBatchRejected(
+                () -> WMTSTileBatch.parseRange("0", "0", "-5", "" + Long.MAX_VALUE, 5), "Negative");
+        assertBatchRejected(() -> WMTSTileBatch.parseRange("1", "2", null, "7", 5), "MINCOL");
+    }
+
+    private interface BatchParsing {
+        List<long[]> parse() throws OWSException;
+    }
+
+    private static void assertBatchRejected(BatchParsing parsing, String message) {
+        try {
+            parsing.parse();
+            fail("Expected OWSException");
+        } catch (OWSException e) {
+            assertEquals(400, e.getResponseCode());
+            assertThat(e.toString(), containsString(message));
+        }
+    }
 }